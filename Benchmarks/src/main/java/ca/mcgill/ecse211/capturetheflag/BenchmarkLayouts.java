@@ -0,0 +1,42 @@
+/**
+ * BenchmarkLayouts.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+/**
+ * BenchmarkLayouts holds the board layouts the benchmarks are run on.
+ * SAMPLE is the board of the simulation, with the river crossed by a bridge going right then up, and TRANSPOSED is the
+ * same board mirrored along its diagonal such that the bridge goes up then right and the planner explores differently.
+ * 
+ * @author Michael Vaquier
+ *
+ */
+public class BenchmarkLayouts {
+
+	/**
+	 * Returns the game parameters of a layout.
+	 * @param layout  SAMPLE or TRANSPOSED
+	 * @return  The game parameters of the layout
+	 */
+	public static GameParameters layout(String layout) {
+		GameParameters sample = SimulatedMatch.sampleGameParameters(MainController.TILE);
+		if ("SAMPLE".equals(layout)) {
+			return sample;
+		} else if ("TRANSPOSED".equals(layout)) {
+			return new GameParameters(sample.RedTeam, sample.GreenTeam, sample.RedCorner, sample.GreenCorner, sample.OG, sample.OR,
+					t(sample.Red_LL), t(sample.Red_UR), t(sample.Green_LL), t(sample.Green_UR),
+					t(sample.ZC_R), t(sample.ZO_R), t(sample.ZC_G), t(sample.ZO_G),
+					t(sample.SV_LL), t(sample.SV_UR), t(sample.SH_LL), t(sample.SH_UR),
+					t(sample.SR_LL), t(sample.SR_UR), t(sample.SG_LL), t(sample.SG_UR));
+		}
+		throw new IllegalArgumentException("Unknown layout " + layout);
+	}
+
+	/**
+	 * Mirrors a point along the diagonal of the board, which turns the vertical section of the bridge into the horizontal one.
+	 */
+	private static Coordinate t(Coordinate point) {
+		return new Coordinate(point.y, point.x);
+	}
+}
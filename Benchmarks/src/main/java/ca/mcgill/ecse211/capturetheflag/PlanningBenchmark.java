@@ -0,0 +1,106 @@
+/**
+ * PlanningBenchmark.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import ca.mcgill.ecse211.capturetheflag.GameParameters.Zone;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * PlanningBenchmark measures the path planning: building the zone lookup table and the lattice once per round,
+ * searching a path across the river or within a zone, planning again a path already found, and mapping points to zones.
+ * 
+ * @author Michael Vaquier
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlanningBenchmark {
+
+	private static final double TILE = MainController.TILE;
+	private static final int POINTS = 1024;
+
+	@Param({"SAMPLE", "TRANSPOSED"})
+	public String layout;
+
+	private GameParameters gameParameters;
+	private ZoneMap zoneMap;
+	private PathPlanner pathPlanner;
+	private Coordinate greenStart;
+	private Coordinate redSearch;
+	private Coordinate greenSearch;
+	private double[] pointsX;
+	private double[] pointsY;
+
+	@Setup
+	public void setup() {
+		gameParameters = BenchmarkLayouts.layout(layout);
+		zoneMap = new ZoneMap(gameParameters, TILE, MainController.BOARD_SIZE);
+		pathPlanner = new PathPlanner(zoneMap, gameParameters, TILE);
+		greenStart = new Coordinate(TILE, TILE);
+		redSearch = new Coordinate((gameParameters.SR_LL.x + gameParameters.SR_UR.x) / 2, (gameParameters.SR_LL.y + gameParameters.SR_UR.y) / 2);
+		greenSearch = new Coordinate((gameParameters.SG_LL.x + gameParameters.SG_UR.x) / 2, (gameParameters.SG_LL.y + gameParameters.SG_UR.y) / 2);
+
+		Random random = new Random(42);
+		pointsX = new double[POINTS];
+		pointsY = new double[POINTS];
+		for (int i = 0; i < POINTS; i++) {
+			pointsX[i] = random.nextDouble() * MainController.BOARD_SIZE * TILE;
+			pointsY[i] = random.nextDouble() * MainController.BOARD_SIZE * TILE;
+		}
+	}
+
+	@Benchmark
+	public PathPlanner buildLattice() {
+		return new PathPlanner(new ZoneMap(gameParameters, TILE, MainController.BOARD_SIZE), gameParameters, TILE);
+	}
+
+	@Benchmark
+	public List<Coordinate> planAcrossRiver() {
+		pathPlanner.clearCache();
+		return pathPlanner.plan(greenStart, redSearch);
+	}
+
+	@Benchmark
+	public List<Coordinate> planWithinZone() {
+		pathPlanner.clearCache();
+		return pathPlanner.plan(greenStart, greenSearch);
+	}
+
+	@Benchmark
+	public List<Coordinate> replanAcrossRiver() {
+		return pathPlanner.plan(greenStart, redSearch);
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public int mapPoints() {
+		int river = 0;
+		for (int i = 0; i < POINTS; i++) {
+			if (zoneMap.mapPoint(pointsX[i], pointsY[i]) == Zone.RIVER) {
+				river++;
+			}
+		}
+		return river;
+	}
+}
@@ -0,0 +1,135 @@
+/**
+ * SignalProcessingBenchmark.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * SignalProcessingBenchmark measures one iteration of the periodic tasks: an odometer update and one sample
+ * through the moving averages of ZiplineLightData and UltrasonicLocalisationData.
+ * The samples are chosen such that no event is detected, which keeps the data processing classes in their
+ * filtering path instead of their holdoff.
+ * 
+ * @author Michael Vaquier
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SignalProcessingBenchmark {
+
+	private static final int SAMPLES = 1024;
+
+	private Odometer odometer;
+	private ZiplineLightData ziplineLightData;
+	private UltrasonicLocalisationData ultrasonicLocalisationData;
+	private int[] lightSamples;
+	private int[] distanceSamples;
+	private int index = 0;
+
+	@Setup
+	public void setup() {
+		Feedback.setEnabled(false);
+		Clock clock = new SystemClock();
+		odometer = new Odometer(new TurningMotor(7), new TurningMotor(5), MainController.WHEEL_RADIUS, MainController.TRACK,
+				new SensorScheduler(clock));
+		ziplineLightData = new ZiplineLightData(clock);
+		ultrasonicLocalisationData = new UltrasonicLocalisationData(clock);
+
+		//Floor reflection with noise large enough to never look like the robot is in the air, and walls far away
+		Random random = new Random(42);
+		lightSamples = new int[SAMPLES];
+		distanceSamples = new int[SAMPLES];
+		for (int i = 0; i < SAMPLES; i++) {
+			lightSamples[i] = 40 + random.nextInt(30);
+			distanceSamples[i] = 150 + random.nextInt(100);
+		}
+	}
+
+	@Benchmark
+	public double odometerProcess() {
+		odometer.timedOut();
+		return odometer.getX();
+	}
+
+	@Benchmark
+	public void ziplineLightData() {
+		ziplineLightData.processData(lightSamples[index]);
+		index = (index + 1) % SAMPLES;
+	}
+
+	@Benchmark
+	public void ultrasonicLocalisationData() {
+		ultrasonicLocalisationData.processData(distanceSamples[index]);
+		index = (index + 1) % SAMPLES;
+	}
+
+	/**
+	 * Motor turning by a fixed angle every time its tacho count is read, such that every odometer update moves the robot.
+	 * @author Michael Vaquier
+	 *
+	 */
+	private static class TurningMotor implements DriveMotor {
+
+		private final int step;
+		private int tachoCount = 0;
+
+		TurningMotor(int step) {
+			this.step = step;
+		}
+
+		public int getTachoCount() {
+			tachoCount += step;
+			return tachoCount;
+		}
+
+		public void resetTachoCount() {
+			tachoCount = 0;
+		}
+
+		public boolean isMoving() {
+			return true;
+		}
+
+		public void forward() {
+		}
+
+		public void backward() {
+		}
+
+		public void stop() {
+		}
+
+		public void stop(boolean immediateReturn) {
+		}
+
+		public void rotate(int angle, boolean immediateReturn) {
+		}
+
+		public void rotateTo(int limitAngle, boolean immediateReturn) {
+		}
+
+		public void setSpeed(int speed) {
+		}
+
+		public void setAcceleration(int acceleration) {
+		}
+	}
+}
@@ -0,0 +1,382 @@
+/**
+ * BatchSimulator.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The BatchSimulator class plays the flow of the game of the MainController on many randomly generated board layouts
+ * such that the constants of the robot can be tuned against every layout the game parameters allow instead of a few trial runs.
+ * Every layout is valid: the green and red zones are in opposite corners of the board, separated by the river, and are joined
+ * by a bridge made of a horizontal and a vertical part and by a zipline going diagonally over the river. The search regions
+ * are inside of the zones. The whole layout is then rotated and mirrored such that the robot can start from any corner and play
+ * for either team, and the flag is put in a random tile of the search region of the opponent.
+ * Every round runs on its own VirtualClock and SimulatedRobot, and the rounds are spread over all the cores with a fork-join pool.
+ * A round that reaches the time limit or in which every thread waits on a signal is stopped and counted as not completed.
+ * The completion rate, the percentiles of the round times and the layouts in which a round failed or the planner found no path are reported.
+ * The layouts are generated from the seed given as argument, such that a batch is the same every time it is run.
+ *
+ * @author Michael Vaquier
+ *
+ */
+public class BatchSimulator {
+
+	private static final int DEFAULT_ROUNDS = 1000;
+	private static final long DEFAULT_SEED = 1;
+
+	//Simulated time after which a round is stopped, and time allowed for a round in a match, in seconds
+	private static final long TIME_LIMIT = 900;
+	private static final long ROUND_TIME = 300;
+
+	private static final int BOARD_SIZE = MainController.BOARD_SIZE;
+	private static final double TILE = MainController.TILE;
+
+	/**
+	 * Layout and outcome of a simulated round.
+	 * @author Michael Vaquier
+	 *
+	 */
+	private static class Round {
+		private final int index;
+		private final GameParameters gameParameters;
+		private final int startingCorner;
+		private final double heading;
+		private final Coordinate block;
+
+		private boolean completed = false;
+		private double time;
+		private int planningFailures = 0;
+		private String failure = null;
+
+		private Round(int index, GameParameters gameParameters, int startingCorner, double heading, Coordinate block) {
+			this.index = index;
+			this.gameParameters = gameParameters;
+			this.startingCorner = startingCorner;
+			this.heading = heading;
+			this.block = block;
+		}
+	}
+
+	/**
+	 * Plays a range of rounds, split in two until a single round is left.
+	 * @author Michael Vaquier
+	 *
+	 */
+	private static class Batch extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Round[] rounds;
+		private final int from;
+		private final int to;
+
+		private Batch(Round[] rounds, int from, int to) {
+			this.rounds = rounds;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			if (to - from == 1) {
+				play(rounds[from]);
+				return;
+			}
+			int middle = (from + to) / 2;
+			invokeAll(new Batch(rounds, from, middle), new Batch(rounds, middle, to));
+		}
+	}
+
+	/**
+	 * Generates the layouts, plays every round and prints the report.
+	 * @param args  Optional number of rounds and seed of the layouts
+	 */
+	public static void main(String[] args) {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ROUNDS;
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_SEED;
+		Feedback.setEnabled(false);
+
+		Random random = new Random(seed);
+		Round[] rounds = new Round[count];
+		for (int i = 0; i < count; i++) {
+			rounds[i] = randomRound(i, random);
+		}
+
+		//The games print their progress, only the report is shown
+		PrintStream out = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			public void write(int b) {
+			}
+		}));
+		ForkJoinPool pool = new ForkJoinPool();
+		long wallStartTime = System.currentTimeMillis();
+		pool.invoke(new Batch(rounds, 0, count));
+		long wallEndTime = System.currentTimeMillis();
+		pool.shutdown();
+		System.setOut(out);
+
+		report(rounds, out);
+		out.println("Simulated " + count + " rounds on " + pool.getParallelism() + " threads in " + ((wallEndTime - wallStartTime) / 1000.0) + "s");
+		System.exit(0);
+	}
+
+	/**
+	 * Plays a round on a new VirtualClock and SimulatedRobot. The round is completed if the game ends in time
+	 * with the robot back in its starting corner.
+	 * @param round  The round to play
+	 */
+	private static void play(Round round) {
+		VirtualClock clock = new VirtualClock();
+		clock.setTimeLimit(TIME_LIMIT * 1000);
+		SimulatedRobot robot = new SimulatedRobot(MainController.WHEEL_RADIUS, MainController.TRACK, TILE, BOARD_SIZE, round.gameParameters, clock);
+		Coordinate start = cornerPoint(round.startingCorner, 0.5);
+		robot.setPose(start.x, start.y, round.heading);
+		robot.addBlock(round.block, SimulatedMatch.FLAG_COLOR_ID);
+		robot.start();
+
+		MainController game = new MainController();
+		game.setFlightRecordFile(null);
+		try {
+			SimulatedMatch.playGame(game, robot, round.gameParameters, clock);
+			round.time = clock.currentTimeMillis() / 1000.0;
+			Pose pose = robot.getPose();
+			Coordinate home = cornerPoint(round.startingCorner, 1);
+			round.completed = Math.hypot(pose.x - home.x, pose.y - home.y) < TILE / 2;
+			if (!round.completed) {
+				round.failure = "Ended away from the starting corner";
+			}
+		} catch (VirtualClock.ClockStoppedException e) {
+			round.failure = e.getMessage();
+		} catch (RuntimeException e) {
+			round.failure = e.toString();
+		} finally {
+			clock.stop();
+			if (game.getNavigationController() != null) {
+				round.planningFailures = game.getNavigationController().getPlanningFailures();
+			}
+		}
+	}
+
+	/**
+	 * Prints the completion rate, the percentiles of the round times and the layouts in which something went wrong.
+	 * @param rounds  The rounds played
+	 * @param out  Stream the report is printed to
+	 */
+	private static void report(Round[] rounds, PrintStream out) {
+		int completed = 0;
+		int overTime = 0;
+		int planningFailures = 0;
+		int layoutsWithPlanningFailures = 0;
+		double[] times = new double[rounds.length];
+		for (Round round : rounds) {
+			if (round.completed) {
+				times[completed++] = round.time;
+				if (round.time > ROUND_TIME) {
+					overTime++;
+				}
+			}
+			if (round.planningFailures > 0) {
+				planningFailures += round.planningFailures;
+				layoutsWithPlanningFailures++;
+			}
+			if (round.failure != null || round.planningFailures > 0) {
+				out.println("Layout " + round.index + " : " + (round.failure != null ? round.failure : "completed")
+						+ ", planner failures " + round.planningFailures + ", " + describe(round));
+			}
+		}
+		times = Arrays.copyOf(times, completed);
+		Arrays.sort(times);
+
+		out.println("Completion rate : " + completed + "/" + rounds.length + " (" + String.format("%.1f", 100.0 * completed / rounds.length) + "%)");
+		if (completed > 0) {
+			out.println("Round time : p50 " + percentile(times, 50) + "s, p90 " + percentile(times, 90) + "s, p99 " + percentile(times, 99)
+					+ "s, max " + times[completed - 1] + "s");
+			out.println("Rounds over " + ROUND_TIME + "s : " + overTime);
+		}
+		out.println("Planner failures : " + planningFailures + " in " + layoutsWithPlanningFailures + " layouts");
+	}
+
+	/**
+	 * Returns a percentile of sorted values by the nearest rank.
+	 */
+	private static double percentile(double[] sorted, int percent) {
+		int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+		return sorted[Math.max(0, rank - 1)];
+	}
+
+	/**
+	 * Describes the layout of a round in tiles.
+	 */
+	private static String describe(Round round) {
+		GameParameters p = round.gameParameters;
+		return (p.GreenTeam == SimulatedMatch.TEAM_NUMBER ? "green" : "red") + " team in corner " + round.startingCorner
+				+ ", heading " + Math.round(round.heading)
+				+ ", green " + tiles(p.Green_LL) + "-" + tiles(p.Green_UR) + ", red " + tiles(p.Red_LL) + "-" + tiles(p.Red_UR)
+				+ ", SH " + tiles(p.SH_LL) + "-" + tiles(p.SH_UR) + ", SV " + tiles(p.SV_LL) + "-" + tiles(p.SV_UR)
+				+ ", zipline " + tiles(p.ZO_G) + tiles(p.ZC_G) + "-" + tiles(p.ZC_R) + tiles(p.ZO_R)
+				+ ", SG " + tiles(p.SG_LL) + "-" + tiles(p.SG_UR) + ", SR " + tiles(p.SR_LL) + "-" + tiles(p.SR_UR)
+				+ ", flag " + tiles(round.block);
+	}
+
+	private static String tiles(Coordinate point) {
+		return "(" + (point.x / TILE) + "," + (point.y / TILE) + ")";
+	}
+
+	/**
+	 * Generates a random valid layout and starting pose. The layout is built with the green zone in the lower left corner,
+	 * then rotated and mirrored.
+	 * @param index  Index of the round
+	 * @param random  Generator of the layouts
+	 * @return  The round to play
+	 */
+	private static Round randomRound(int index, Random random) {
+		while (true) {
+			//Green zone in the lower left corner
+			int greenX = 4 + random.nextInt(3);
+			int greenY = 4 + random.nextInt(3);
+
+			//Zipline going diagonally over the river, from the edge of the green zone into the red zone
+			int zipX = greenX - 1 + random.nextInt(2);
+			int zipY = greenY - 1 + random.nextInt(2);
+
+			//Red zone in the upper right corner, the end of the zipline is inside of it
+			int redX = greenX + 1 + random.nextInt(zipX + 2 - greenX);
+			int redY = greenY + 1 + random.nextInt(zipY + 2 - greenY);
+
+			//Horizontal part of the bridge leaving the green zone, vertical part reaching the red zone
+			int bridgeY = 1 + random.nextInt(greenY - 2);
+			int bridgeX = redX + random.nextInt(BOARD_SIZE - 1 - redX);
+			if (zipX == greenX && zipY >= bridgeY && zipY <= bridgeY + 1) {
+				continue; //the zipline starts on the bridge
+			}
+
+			//Search regions of two by two tiles inside of the zones
+			int[] greenSearch = searchRegion(random, 0, 0, greenX, greenY, zipX - 1, zipY - 1, zipX, zipY);
+			int[] redSearch = searchRegion(random, redX, redY, BOARD_SIZE, BOARD_SIZE, zipX + 3, zipY + 3, zipX + 4, zipY + 4);
+			if (greenSearch == null || redSearch == null) {
+				continue;
+			}
+
+			//Rotation and mirror of the whole board
+			int rotations = random.nextInt(4);
+			boolean mirror = random.nextBoolean();
+			boolean greenTeam = random.nextBoolean();
+			int greenCorner = rotations;
+			int redCorner = (rotations + 2) % 4;
+
+			int[] green = rectangle(0, 0, greenX, greenY, rotations, mirror);
+			int[] red = rectangle(redX, redY, BOARD_SIZE, BOARD_SIZE, rotations, mirror);
+			int[] horizontal = rectangle(greenX, bridgeY, bridgeX + 1, bridgeY + 1, rotations, mirror);
+			int[] vertical = rectangle(bridgeX, bridgeY + 1, bridgeX + 1, redY, rotations, mirror);
+			if (horizontal[2] - horizontal[0] < horizontal[3] - horizontal[1]) {
+				int[] swap = horizontal;
+				horizontal = vertical;
+				vertical = swap;
+			}
+			int[] sg = rectangle(greenSearch[0], greenSearch[1], greenSearch[0] + 2, greenSearch[1] + 2, rotations, mirror);
+			int[] sr = rectangle(redSearch[0], redSearch[1], redSearch[0] + 2, redSearch[1] + 2, rotations, mirror);
+
+			int ourTeam = SimulatedMatch.TEAM_NUMBER;
+			int opponent = SimulatedMatch.OPPONENT_TEAM_NUMBER;
+			GameParameters gameParameters = new GameParameters(greenTeam ? opponent : ourTeam, greenTeam ? ourTeam : opponent,
+					redCorner, greenCorner, SimulatedMatch.FLAG_COLOR, SimulatedMatch.FLAG_COLOR,
+					point(red[0], red[1]), point(red[2], red[3]), point(green[0], green[1]), point(green[2], green[3]),
+					transform(zipX + 3, zipY + 3, rotations, mirror), transform(zipX + 4, zipY + 4, rotations, mirror),
+					transform(zipX, zipY, rotations, mirror), transform(zipX - 1, zipY - 1, rotations, mirror),
+					point(horizontal[0], horizontal[1]), point(horizontal[2], horizontal[3]),
+					point(vertical[0], vertical[1]), point(vertical[2], vertical[3]),
+					point(sr[0], sr[1]), point(sr[2], sr[3]), point(sg[0], sg[1]), point(sg[2], sg[3]));
+
+			//The flag is in the search region of the opponent
+			int[] search = greenTeam ? sr : sg;
+			Coordinate block = new Coordinate((search[0] + random.nextInt(2) + 0.5) * TILE, (search[1] + random.nextInt(2) + 0.5) * TILE);
+			return new Round(index, gameParameters, greenTeam ? greenCorner : redCorner, random.nextDouble() * 360, block);
+		}
+	}
+
+	/**
+	 * Picks the lower left corner of a search region of two by two tiles at least a tile away from the edges of a zone
+	 * and away from the two ends of the zipline in the zone.
+	 * @return  The lower left corner of the region, null if the zone has no room for it
+	 */
+	private static int[] searchRegion(Random random, int lowerX, int lowerY, int upperX, int upperY,
+			int originX, int originY, int endX, int endY) {
+		int rangeX = upperX - lowerX - 3;
+		int rangeY = upperY - lowerY - 3;
+		if (rangeX <= 0 || rangeY <= 0) {
+			return null;
+		}
+		int x = lowerX + 1 + random.nextInt(rangeX);
+		int y = lowerY + 1 + random.nextInt(rangeY);
+		if (contains(x, y, originX, originY) || contains(x, y, endX, endY)) {
+			return null;
+		}
+		return new int[] {x, y};
+	}
+
+	private static boolean contains(int x, int y, int pointX, int pointY) {
+		return pointX >= x && pointX <= x + 2 && pointY >= y && pointY <= y + 2;
+	}
+
+	/**
+	 * Rotates and mirrors a rectangle given by two corners, in tiles.
+	 * @return  The lower left and upper right corners of the rectangle
+	 */
+	private static int[] rectangle(int lowerX, int lowerY, int upperX, int upperY, int rotations, boolean mirror) {
+		int[] a = transformTiles(lowerX, lowerY, rotations, mirror);
+		int[] b = transformTiles(upperX, upperY, rotations, mirror);
+		return new int[] {Math.min(a[0], b[0]), Math.min(a[1], b[1]), Math.max(a[0], b[0]), Math.max(a[1], b[1])};
+	}
+
+	/**
+	 * Mirrors a point on the diagonal of the board, then rotates it counterclockwise by quarter turns around the center.
+	 */
+	private static int[] transformTiles(int x, int y, int rotations, boolean mirror) {
+		if (mirror) {
+			int swap = x;
+			x = y;
+			y = swap;
+		}
+		for (int i = 0; i < rotations; i++) {
+			int rotated = BOARD_SIZE - y;
+			y = x;
+			x = rotated;
+		}
+		return new int[] {x, y};
+	}
+
+	private static Coordinate transform(int x, int y, int rotations, boolean mirror) {
+		int[] point = transformTiles(x, y, rotations, mirror);
+		return point(point[0], point[1]);
+	}
+
+	private static Coordinate point(int x, int y) {
+		return new Coordinate(x * TILE, y * TILE);
+	}
+
+	/**
+	 * Returns a point on the diagonal of a corner of the board.
+	 * @param corner  Corner of the board, counterclockwise from the lower left corner
+	 * @param tiles  Distance of the point from both walls of the corner, in tiles
+	 */
+	private static Coordinate cornerPoint(int corner, double tiles) {
+		double near = tiles * TILE;
+		double far = (BOARD_SIZE - tiles) * TILE;
+		switch (corner) {
+		case 1:
+			return new Coordinate(far, near);
+		case 2:
+			return new Coordinate(far, far);
+		case 3:
+			return new Coordinate(near, far);
+		default:
+			return new Coordinate(near, near);
+		}
+	}
+}
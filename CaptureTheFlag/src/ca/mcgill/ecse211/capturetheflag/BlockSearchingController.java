@@ -4,13 +4,10 @@
 
 package ca.mcgill.ecse211.capturetheflag;
 
-import java.io.File;
 import java.util.Arrays;
 
 import ca.mcgill.ecse211.capturetheflag.ColorPoller.ColorPollingState;
 import ca.mcgill.ecse211.capturetheflag.GameParameters.Zone;
-import lejos.hardware.Sound;
-import lejos.hardware.motor.EV3LargeRegulatedMotor;
 
 /**
  * BlockSearchingController is the subtask involving finding a block of a specific
@@ -32,8 +29,8 @@ public class BlockSearchingController {
 	private final ColorPoller colorPoller;
 	
 	//Thread variables
-	private volatile boolean paused = false;
-	private Object pauseLock = new Object();
+	private final Clock clock;
+	private final Signal pauseSignal;
 	
 	private final double tile;
 	private Coordinate lowerLeft;
@@ -53,8 +50,8 @@ public class BlockSearchingController {
 	
 	//Motors
 	private boolean whitchMotor = true;
-	private final EV3LargeRegulatedMotor leftMotor;
-	private final EV3LargeRegulatedMotor rightMotor;
+	private final DriveMotor leftMotor;
+	private final DriveMotor rightMotor;
 	
 	//Associations
 	private final Odometer odometer;
@@ -84,8 +81,11 @@ public class BlockSearchingController {
 	 * @param gameParameters  The game parameters of the round
 	 * @param tile  The width of a tile in centimeters
 	 * @param teamNumber  The team number of the robot
+	 * @param clock  The clock of the system
 	 */
-	public BlockSearchingController(Odometer odometer, NavigationController navigationController, Navigation navigation, Localisation localisation, EV3LargeRegulatedMotor rightMotor, EV3LargeRegulatedMotor leftMotor, ColorPoller colorPoller, GameParameters gameParameters, double tile, int teamNumber) {
+	public BlockSearchingController(Odometer odometer, NavigationController navigationController, Navigation navigation, Localisation localisation, DriveMotor rightMotor, DriveMotor leftMotor, ColorPoller colorPoller, GameParameters gameParameters, double tile, int teamNumber, Clock clock) {
+		this.clock = clock;
+		this.pauseSignal = clock.newSignal();
 		this.rightMotor = rightMotor;
 		this.leftMotor = leftMotor;
 		
@@ -143,12 +143,12 @@ public class BlockSearchingController {
 				}	
 				break;
 			case FOUND:
-				Sound.playSample(new File("mariocoinsound.wav"), 100);
+				Feedback.playSample("mariocoinsound.wav");
 				rightMotor.stop(true);
 				leftMotor.stop();
 				return;
 			case ABANDON:
-				Sound.buzz();
+				Feedback.buzz();
 				return;
 			}
 			pauseThread();
@@ -195,15 +195,7 @@ public class BlockSearchingController {
 	 */
 	private void pauseThread() {
 		if (getBlockSearchingState() == BlockSearchingState.SEARCHING) {
-			paused = true;
-			synchronized (pauseLock) {
-	            if (paused) {
-	                try {
-	                    pauseLock.wait(300); //TODO figure out the timeout
-	                } catch (InterruptedException ex) {
-	                }
-	            }
-	        }
+			pauseSignal.await(300); //TODO figure out the timeout
 		}
 	}
 	
@@ -212,12 +204,7 @@ public class BlockSearchingController {
 	 */
     public void resumeThread() {
     	setBlockSearchingState(BlockSearchingState.FOUND);
-        synchronized (pauseLock) {
-        	if (paused) {
-        		paused = false;
-        		pauseLock.notifyAll(); // Unblocks thread
-        	}
-        }
+        pauseSignal.signal();
     }
     
 	
@@ -26,6 +26,7 @@ public class BlockSearchingData {
 	
 	//Associations
 	private BlockSearchingController blockSearchingController;
+	private SensorEventListener sensorEventListener = null;
 	
 	
 	/**
@@ -48,7 +49,9 @@ public class BlockSearchingData {
 		if(dataFront == target || dataSide == target) {
 			counter++;
 			if (counter > THRESHOLD) {
-				blockSearchingController.resumeThread();
+				fireEvent(SensorEvent.BLOCK_FOUND);
+				if (blockSearchingController != null)
+					blockSearchingController.resumeThread();
 			}
 		} else {
 			counter = 0;
@@ -62,6 +65,24 @@ public class BlockSearchingData {
 	public void setBlockSeachingController(BlockSearchingController blockSearchingController) {
 		this.blockSearchingController = blockSearchingController;
 	}
+
+	/**
+	 * Sets the listener notified of the events detected by this instance.
+	 * @param sensorEventListener  The listener, null if no listener should be notified
+	 */
+	public void setSensorEventListener(SensorEventListener sensorEventListener) {
+		this.sensorEventListener = sensorEventListener;
+	}
+	
+	/**
+	 * Notifies the listener of an event if there is one.
+	 * @param event  The event detected
+	 */
+	private void fireEvent(SensorEvent event) {
+		if (sensorEventListener != null) {
+			sensorEventListener.sensorEvent(event);
+		}
+	}
 	
 	private void determineTargetColor() {
 		int target;
@@ -0,0 +1,55 @@
+/**
+ * Clock.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+/**
+ * The Clock interface is the source of time used by every periodic task and by every thread that waits.
+ * On the brick it is backed by the system time, while the simulation uses a virtual time that advances as fast
+ * as the tasks can be run.
+ * Threads that wait on each other must be started through the clock and must wait using a Signal from the same clock.
+ * 
+ * @author Michael Vaquier
+ *
+ */
+public interface Clock {
+
+	/**
+	 * Returns the current time.
+	 * @return  The current time in milliseconds
+	 */
+	public long currentTimeMillis();
+
+	/**
+	 * Returns the current time with the best resolution available, used to measure short durations.
+	 * The origin is arbitrary.
+	 * @return  The current time in nanoseconds
+	 */
+	public long nanoTime();
+
+	/**
+	 * Makes the calling thread sleep.
+	 * @param millis  Time to sleep in milliseconds
+	 */
+	public void sleep(long millis);
+
+	/**
+	 * Starts a new thread running a task.
+	 * @param task  The task to run
+	 */
+	public void startThread(Runnable task);
+
+	/**
+	 * Creates a signal used by a thread to wait until it is woken up by another thread.
+	 * @return  A new Signal instance
+	 */
+	public Signal newSignal();
+
+	/**
+	 * Creates a latched signal: a signal sent while no thread is waiting is kept until the next wait, such that a
+	 * thread checking a condition before waiting cannot miss the signal sent in between.
+	 * @return  A new Signal instance
+	 */
+	public Signal newLatchedSignal();
+}
@@ -4,11 +4,14 @@
 
 package ca.mcgill.ecse211.capturetheflag;
 
-import lejos.hardware.Sound;
-
 /**
  * The ColorLocalisationData class is used to process the data coming from the color poller
  * An interrupt is sent to the Localisation class when a line is detected.
+ * When the odometer is set, the pose of the robot given by the tacho counts of the wheels is recorded with every sample.
+ * Once a line is detected, the center of the line is found between the samples where the reading went through the middle
+ * of the dark pulse, and the pose of the robot at that instant, a sensor latency earlier, is kept for the Localisation
+ * with the poses of the other lines detected since the last reset.
+ * The heading does not depend on how fast the thread waiting for the line wakes up, nor on the rotation speed.
  * @author Michael Vaquier
  *
  */
@@ -17,6 +20,8 @@ public class ColorLocalisationData {
 	
 	//Associations
 	private Localisation localisation;
+	private Odometer odometer = null;
+	private SensorEventListener sensorEventListener = null;
 	
 	private int lastData = -1;
 	
@@ -26,6 +31,26 @@ public class ColorLocalisationData {
 	
 	private boolean lowPulse = false;
 	
+	//Delay between the sensor passing over the floor and the reading, in samples of the color poller
+	private volatile int sensorLatency = 0;
+	
+	//Last samples and the pose of the robot when they were taken
+	private static final int HISTORY_SIZE = 64;
+	private final int[] historyValues = new int[HISTORY_SIZE];
+	private final double[] historyX = new double[HISTORY_SIZE];
+	private final double[] historyY = new double[HISTORY_SIZE];
+	private final double[] historyTheta = new double[HISTORY_SIZE];
+	private final double[] currentPose = new double[3];
+	private int sampleCount = 0;
+	private int pulseStart = 0;
+	private int resetSample = 0;
+	
+	//Poses of the robot at the lines detected since the last reset
+	private static final int MAX_LINES = 8;
+	private final Pose[] linePoses = new Pose[MAX_LINES];
+	private volatile int lineCount = 0;
+	private volatile Pose lastLinePose = null;
+	
 
 	/**
 	 * Creates a ColorLocalisationData object.
@@ -42,17 +67,32 @@ public class ColorLocalisationData {
 	 */
 	public void processData(int newVal) {
 		int difference;
+		record(newVal);
 		if (lastData < 0) {
 			lastData = newVal;
 		} else {
 			difference = newVal - lastData;
 			lastData = newVal;	
 			if (difference < -DIFFERENCE_THRESHOLD) {
+				if (!lowPulse) {
+					pulseStart = sampleCount - 2; //last sample before the line
+				}
 				lowPulse = true;
 				differenceCounter = DIFFERENCE_POINTS;
 			} else if (lowPulse && difference > DIFFERENCE_THRESHOLD) {
-				Sound.beep();
-				localisation.resumeThread();
+				if (odometer != null) {
+					double crossing = lineCenter() - sensorLatency;
+					Pose pose = poseAt(crossing);
+					lastLinePose = crossing >= resetSample ? pose : null;
+					if (lineCount < MAX_LINES) {
+						linePoses[lineCount] = pose;
+						lineCount++;
+					}
+				}
+				Feedback.beep();
+				fireEvent(SensorEvent.LINE_CROSSED);
+				if (localisation != null)
+					localisation.resumeThread();
 				lowPulse = false;
 				differenceCounter = DIFFERENCE_POINTS;
 			} else {
@@ -66,10 +106,147 @@ public class ColorLocalisationData {
 	}
 	
 	/**
-	 * Resets the last data value to -1
+	 * Adds a sample to the history with the pose of the robot at the tacho counts of the wheels, if the odometer is set.
+	 * @param value  Value read by the sensor
+	 */
+	private void record(int value) {
+		if (odometer == null) {
+			return;
+		}
+		int index = sampleCount % HISTORY_SIZE;
+		odometer.readCurrentPose(currentPose);
+		historyValues[index] = value;
+		historyX[index] = currentPose[0];
+		historyY[index] = currentPose[1];
+		historyTheta[index] = currentPose[2];
+		sampleCount++;
+	}
+	
+	/**
+	 * Finds the center of the dark pulse that just ended, as the middle of the two instants where the reading
+	 * went through the level halfway between the floor before the line and the darkest sample.
+	 * The instants are interpolated between samples. If the reading is not yet back above that level,
+	 * the last sample ends the pulse.
+	 * @return  Number of the sample at the center of the line, with a fractional part
+	 */
+	private double lineCenter() {
+		int last = sampleCount - 1;
+		int first = Math.max(pulseStart, sampleCount - HISTORY_SIZE);
+		int darkest = first;
+		for (int i = first + 1; i <= last; i++) {
+			if (value(i) < value(darkest)) {
+				darkest = i;
+			}
+		}
+		double level = 0.5 * (value(first) + value(darkest));
+		double falling = darkest;
+		for (int i = first + 1; i <= darkest; i++) {
+			if (value(i) <= level) {
+				falling = crossing(i - 1, level);
+				break;
+			}
+		}
+		double rising = last;
+		for (int i = darkest + 1; i <= last; i++) {
+			if (value(i) >= level) {
+				rising = crossing(i - 1, level);
+				break;
+			}
+		}
+		return 0.5 * (falling + rising);
+	}
+	
+	/**
+	 * Interpolates the instant a level is crossed between a sample and the next one.
+	 * @param sample  Number of the sample before the crossing
+	 * @param level  Level crossed
+	 * @return  Number of the sample at the crossing, with a fractional part
+	 */
+	private double crossing(int sample, double level) {
+		int before = value(sample);
+		int after = value(sample + 1);
+		if (before == after) {
+			return sample;
+		}
+		return sample + ((level - before) / (after - before));
+	}
+	
+	/**
+	 * Returns the pose of the robot at an instant between two samples, interpolated between the poses of the samples.
+	 * Instants older than the history are moved to its oldest sample.
+	 * @param sample  Number of the sample, with a fractional part
+	 * @return  The pose of the robot
+	 */
+	private Pose poseAt(double sample) {
+		sample = Math.max(sample, sampleCount - HISTORY_SIZE);
+		int before = (int) Math.floor(sample);
+		int after = Math.min(before + 1, sampleCount - 1);
+		double fraction = sample - before;
+		int i = before % HISTORY_SIZE;
+		int j = after % HISTORY_SIZE;
+		double rotation = historyTheta[j] - historyTheta[i];
+		if (rotation > Math.PI) {
+			rotation -= 2 * Math.PI;
+		} else if (rotation < -Math.PI) {
+			rotation += 2 * Math.PI;
+		}
+		double theta = (historyTheta[i] + (fraction * rotation) + (2 * Math.PI)) % (2 * Math.PI);
+		return new Pose(historyX[i] + (fraction * (historyX[j] - historyX[i])), historyY[i] + (fraction * (historyY[j] - historyY[i])),
+				theta, Math.toDegrees(theta));
+	}
+	
+	/**
+	 * Returns a sample of the history.
+	 * @param sample  Number of the sample
+	 * @return  The value read by the sensor
+	 */
+	private int value(int sample) {
+		return historyValues[sample % HISTORY_SIZE];
+	}
+	
+	/**
+	 * Returns the number of lines detected since the last reset, only counted when the odometer is set.
+	 * @return  Number of lines detected, at most MAX_LINES
+	 */
+	public int getLineCount() {
+		return lineCount;
+	}
+	
+	/**
+	 * Returns the pose of the robot when the sensor was over the center of a line detected since the last reset.
+	 * @param line  Index of the line in the order of detection, less than the line count
+	 * @return  The pose of the robot
+	 */
+	public Pose getLinePose(int line) {
+		return linePoses[line];
+	}
+	
+	/**
+	 * Returns the pose of the robot when the sensor was over the center of the last line detected, even past MAX_LINES.
+	 * @return  The pose of the robot, null if no line was detected while the odometer was set or if the line was crossed
+	 * before the last reset, when the poses recorded may not be consistent with the odometer anymore
+	 */
+	public Pose getLastLinePose() {
+		return lastLinePose;
+	}
+	
+	/**
+	 * Sets the delay between the sensor passing over the floor and the reading, which the poses of the lines are moved back by.
+	 * @param samples  Latency of the sensor in samples of the color poller
+	 */
+	public void setSensorLatency(int samples) {
+		this.sensorLatency = samples;
+	}
+	
+	/**
+	 * Resets the last data value to -1 and forgets the lines detected.
 	 */
 	public void resetLastData() {
 		lastData = -1;
+		lineCount = 0;
+		lastLinePose = null;
+		resetSample = sampleCount;
+		lowPulse = false;
 	}
 	
 	/**
@@ -79,4 +256,30 @@ public class ColorLocalisationData {
 	public void setLocalisation(Localisation localisation) {
 		this.localisation = localisation;
 	}
+
+	/**
+	 * Sets the Odometer association of the instance, used to find the heading at which the lines are crossed.
+	 * @param odometer  Association to the Odometer instance
+	 */
+	public void setOdometer(Odometer odometer) {
+		this.odometer = odometer;
+	}
+
+	/**
+	 * Sets the listener notified of the events detected by this instance.
+	 * @param sensorEventListener  The listener, null if no listener should be notified
+	 */
+	public void setSensorEventListener(SensorEventListener sensorEventListener) {
+		this.sensorEventListener = sensorEventListener;
+	}
+	
+	/**
+	 * Notifies the listener of an event if there is one.
+	 * @param event  The event detected
+	 */
+	private void fireEvent(SensorEvent event) {
+		if (sensorEventListener != null) {
+			sensorEventListener.sensorEvent(event);
+		}
+	}
 }
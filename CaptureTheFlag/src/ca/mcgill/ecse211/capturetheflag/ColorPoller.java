@@ -4,19 +4,21 @@
 
 package ca.mcgill.ecse211.capturetheflag;
 
-import lejos.robotics.SampleProvider;
-import lejos.utility.Timer;
+import ca.mcgill.ecse211.capturetheflag.SensorScheduler.PeriodicTask;
 import lejos.utility.TimerListener;
 
 /**
  * The ColorPoller class is used to periodically poll one or multiple color sensors
  * and send the data to be processed to a Data class
  * A state machine is incorporated such that the color sensor polled will be the correct one(s) and the data will be sent to the correct processing class.
+ * The poller has two periodic tasks in the SensorScheduler, the polling task and the timer task, each with its own state
+ * such that two subtasks can use the color sensors at the same time.
+ * A third task sends the back color sensor to the OdometryCorrectionData while the robot is navigating.
  * @author Michael Vaquier
  *
  */
 
-public class ColorPoller implements Runnable, TimerListener {
+public class ColorPoller implements TimerListener {
 	
 	private ColorPollingState state = ColorPollingState.LOCALISATION;
 	private Object stateLock = new Object();
@@ -27,69 +29,58 @@ public class ColorPoller implements Runnable, TimerListener {
 	private ColorLocalisationData colorLocalisationData;
 	private ZiplineLightData ziplineLightData;
 	private BlockSearchingData blockSearchingData;
+	private OdometryCorrectionData odometryCorrectionData;
 	
 	//Pollers
-	private SampleProvider colorRedFront;
-	private float[] colorRedDataFront;
-	private SampleProvider colorRedBack;
-	private float[] colorRedDataBack;
-	private SampleProvider colorRedSide;
-	private float[] colorRedDataSide;
+	private ColorSensor colorRedFront;
+	private ColorSensor colorRedBack;
+	private ColorSensor colorRedSide;
 	
-	//timer and synchronization
-	private Timer timer = null;
-	private volatile boolean polling = false;
+	//scheduling
+	private final PeriodicTask pollingTask;
+	private final PeriodicTask timerTask;
+	private final PeriodicTask correctionTask;
 	private static final int POLLING_PERIOD = 10;
-	private boolean running = false;
-	private boolean runningTimer = false;
+	private FlightRecorder flightRecorder = null;
 	
 	/**
 	 * Creates a CollorPoller object.
 	 * @param colorLocalisationData  Data processing instance for color localisation
 	 * @param ziplineLightData  Data processing instance for zipline landing
 	 * @param blockSearchingData  Data processing instance for confirming the color of the block
+	 * @param odometryCorrectionData  Data processing instance for correcting the odometer on line crossings
 	 * @param colorRedBack  Back color sensor
-	 * @param colorRedDataBack  Back color sensor data fetching array
 	 * @param colorRedFront  Front color sensor
-	 * @param colorRedDataFront  Front color sensor data fetching array
-	 * @param colorRedSide  Side color sensor data
-	 * @param colorRedDataSide  Side color sensor data fetching array
+	 * @param colorRedSide  Side color sensor
+	 * @param scheduler  The scheduler running the poller
 	 */
-	public ColorPoller(SampleProvider colorRedBack, float[] colorRedDataBack, SampleProvider colorRedFront, float[] colorRedDataFront, SampleProvider colorRedSide, float[] colorRedDataSide,
-			ColorLocalisationData colorLocalisationData, ZiplineLightData ziplineLightData, BlockSearchingData blockSearchingData) {
+	public ColorPoller(ColorSensor colorRedBack, ColorSensor colorRedFront, ColorSensor colorRedSide,
+			ColorLocalisationData colorLocalisationData, ZiplineLightData ziplineLightData, BlockSearchingData blockSearchingData,
+			OdometryCorrectionData odometryCorrectionData, SensorScheduler scheduler) {
 		this.colorRedFront = colorRedFront;
-		this.colorRedDataFront = colorRedDataFront;
 		this.colorRedBack = colorRedBack;
-		this.colorRedDataBack = colorRedDataBack;
 		this.colorRedSide = colorRedSide;
-		this.colorRedDataSide = colorRedDataSide;
 		
 		this.colorLocalisationData = colorLocalisationData;
 		this.ziplineLightData = ziplineLightData;
 		this.blockSearchingData = blockSearchingData;
-	}
-	
-	/**
-	 * Method called when a thread is started with this runnable.
-	 */
-	public void run() {
-		long correctionStart, correctionEnd;
-		polling = true;
-		while (polling) {
-			correctionStart = System.currentTimeMillis();
-			colorPollerProcess(getPollingState());
-			correctionEnd = System.currentTimeMillis();
-			if (correctionEnd - correctionStart < POLLING_PERIOD) {
-				try {
-					Thread.sleep(POLLING_PERIOD - (correctionEnd - correctionStart));
-				} catch (InterruptedException e) {
-				}
+		this.odometryCorrectionData = odometryCorrectionData;
+		
+		this.pollingTask = scheduler.addTask("ColorPoller", new TimerListener() {
+			public void timedOut() {
+				colorPollerProcess(getPollingState());
 			}
-		}
+		}, POLLING_PERIOD);
+		this.timerTask = scheduler.addTask("ColorPollerTimer", this, POLLING_PERIOD);
+		this.correctionTask = scheduler.addTask("ColorPollerCorrection", new TimerListener() {
+			public void timedOut() {
+				ColorPoller.this.odometryCorrectionData.processData(fetchBack());
+			}
+		}, POLLING_PERIOD);
 	}
 	
 	/**
-	 * Interrupt service routine called when the poller is running in timer mode.
+	 * Interrupt service routine called when the timer task of the poller is released.
 	 */
 	public void timedOut() {
 		colorPollerProcess(getTimerPollingState());
@@ -119,17 +110,20 @@ public class ColorPoller implements Runnable, TimerListener {
 	 * Polls the front Color sensor and send the data to the blockColorData association to be processed
 	 */
 	private void processBlockSearching() {
-		colorRedFront.fetchSample(colorRedDataFront, 0);
-		colorRedSide.fetchSample(colorRedDataSide, 0);
-		blockSearchingData.processData((int) (colorRedDataFront[0]), (int) (colorRedDataSide[0]));
+		int front = (int) (colorRedFront.fetchSample());
+		int side = (int) (colorRedSide.fetchSample());
+		if (flightRecorder != null) {
+			flightRecorder.recordColor(FlightRecorder.FRONT_SENSOR, front);
+			flightRecorder.recordColor(FlightRecorder.SIDE_SENSOR, side);
+		}
+		blockSearchingData.processData(front, side);
 	}
 
 	/**
 	 * Polls the back Color sensor and send the data to the ziplineLighData association to be processed
 	 */
 	private void processZiplining() {
-		colorRedBack.fetchSample(colorRedDataBack, 0);
-		ziplineLightData.processData((int) (colorRedDataBack[0] * 100));
+		ziplineLightData.processData(fetchBack());
 		
 	}
 
@@ -137,8 +131,19 @@ public class ColorPoller implements Runnable, TimerListener {
 	 * Polls the back Color sensor and send the data to the colorLocalisationData association to be processed
 	 */
 	private void processLocalisation() {
-		colorRedBack.fetchSample(colorRedDataBack, 0);
-		colorLocalisationData.processData((int) (colorRedDataBack[0] * 100));
+		colorLocalisationData.processData(fetchBack());
+	}
+	
+	/**
+	 * Polls the back Color sensor and records the sample.
+	 * @return  The reflected light in percent
+	 */
+	private int fetchBack() {
+		int back = (int) (colorRedBack.fetchSample() * 100);
+		if (flightRecorder != null) {
+			flightRecorder.recordColor(FlightRecorder.BACK_SENSOR, back);
+		}
+		return back;
 	}
 	
 	/**
@@ -185,6 +190,25 @@ public class ColorPoller implements Runnable, TimerListener {
 		return blockSearchingData;
 	}
 	
+	/**
+	 * This method returns the association to the OdometryCorrectionData instance
+	 * @return  The OdometryCorrectionData association
+	 */
+	public OdometryCorrectionData getOdometryCorrectionData() {
+		return odometryCorrectionData;
+	}
+	
+	/**
+	 * Sets the latency of the back color sensor used by both the color localisation and the odometry correction,
+	 * such that the two always move the lines back by the same delay.
+	 * @param millis  Delay between the sensor passing over the floor and the reading, in milliseconds
+	 */
+	public void setFloorSensorLatency(int millis) {
+		int samples = Math.round((float) millis / POLLING_PERIOD);
+		colorLocalisationData.setSensorLatency(samples);
+		odometryCorrectionData.setSensorLatency(samples);
+	}
+	
 	/**
 	 * Returns the polling state of the poller
 	 * @return  Current polling state
@@ -206,58 +230,73 @@ public class ColorPoller implements Runnable, TimerListener {
 	}
 	
 	/**
-	 * This method can be will spawn a new thread and start the polling
+	 * This method starts the polling task of the poller
 	 * @param state  The state in which the poller should be in for polling
 	 */
 	public void startPolling(ColorPollingState state) {
-		if (!running) {
+		if (!pollingTask.isRunning()) {
 			setPollingState(state);
 			if(state == ColorPollingState.LOCALISATION)
 				colorLocalisationData.resetLastData();
-			new Thread(this).start();
-			running = true;
-		} else if (running) {
+			pollingTask.start();
+		} else {
 			setPollingState(state);
 		}
 	}
 	
 	/**
-	 * This method creates a timer and starts the polling process of the light sensor.
+	 * This method starts the timer task of the poller.
 	 * @param state  The state in which the poller should be in to process timer interrupts
 	 */
 	public void startPollingTimer(ColorPollingState state) {
-		if(!runningTimer) {
-			if(timer == null) {
-				timer = new Timer(POLLING_PERIOD, this);
-			}
+		if(!timerTask.isRunning()) {
 			setTimerPollingState(state);
 			if(state == ColorPollingState.LOCALISATION)
 				colorLocalisationData.resetLastData();
-			timer.start();
-			runningTimer = true;
-		} else if (runningTimer) {
+			timerTask.start();
+		} else {
 			setTimerPollingState(state);
 		}
 	}
 	
 	/**
-	 * This method will stop the polling of the poller thread and will let it terminate itself.
+	 * This method starts correcting the odometer on every line crossed. It must not run while
+	 * another task of the poller reads the back color sensor.
 	 */
-	public void stopPolling() {
-		if(running) {
-			polling = false;
-			running = false;
+	public void startCorrection() {
+		if (!correctionTask.isRunning()) {
+			odometryCorrectionData.reset();
+			correctionTask.start();
 		}
 	}
 	
 	/**
-	 * This method will stop the polling of the poller timer.
+	 * Sets the FlightRecorder association of the instance, nothing is recorded if it is not set.
+	 * @param flightRecorder  Association to the FlightRecorder instance
+	 */
+	public void setFlightRecorder(FlightRecorder flightRecorder) {
+		this.flightRecorder = flightRecorder;
+	}
+	
+	/**
+	 * This method will stop the polling task of the poller.
+	 */
+	public void stopPolling() {
+		pollingTask.stop();
+	}
+	
+	/**
+	 * This method will stop the timer task of the poller.
 	 */
 	public void stopTimer() {
-		if(timer != null && runningTimer) {
-			timer.stop();
-			runningTimer = false;
-		}
+		timerTask.stop();
+	}
+	
+	/**
+	 * This method will stop correcting the odometer.
+	 */
+	public void stopCorrection() {
+		correctionTask.stop();
 	}
 	
 	
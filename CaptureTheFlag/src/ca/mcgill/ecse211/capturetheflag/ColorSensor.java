@@ -0,0 +1,23 @@
+/**
+ * ColorSensor.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+/**
+ * The ColorSensor interface is used by the color poller to read a color sensor
+ * without depending on the sensor behind it.
+ * The meaning of a sample depends on the mode in which the sensor was set up: a reflected red intensity
+ * between 0 and 1, or a color ID.
+ * 
+ * @author Michael Vaquier
+ *
+ */
+public interface ColorSensor {
+
+	/**
+	 * Fetches a new sample from the sensor.
+	 * @return  The value read in the mode of the sensor
+	 */
+	public float fetchSample();
+}
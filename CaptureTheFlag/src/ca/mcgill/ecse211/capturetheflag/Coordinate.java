@@ -34,15 +34,23 @@ public class Coordinate {
 	}
 	
 	/**
-	 * Compares two coordinates
-	 * @param other  The other coordinate
+	 * Compares two coordinates by value, such that lists of coordinates can be searched for a point.
+	 * @param object  The other coordinate
 	 * @return  Returns true if the two coordinates are the same.
 	 */
-	public boolean equals(Coordinate other) {
-		if (other == null) {
+	@Override
+	public boolean equals(Object object) {
+		if (!(object instanceof Coordinate)) {
 			return false;
 		}
+		Coordinate other = (Coordinate) object;
 		return (this.x == other.x) && (this.y == other.y);
 	}
 
+	@Override
+	public int hashCode() {
+		long bits = Double.doubleToLongBits(x) * 31 + Double.doubleToLongBits(y);
+		return (int) (bits ^ (bits >>> 32));
+	}
+
 }
@@ -4,6 +4,7 @@
 
 package ca.mcgill.ecse211.capturetheflag;
 
+import ca.mcgill.ecse211.capturetheflag.NavigationController.NavigationState;
 import lejos.hardware.lcd.TextLCD;
 
 /**
@@ -12,12 +13,13 @@ import lejos.hardware.lcd.TextLCD;
  * @author Michael Vaquier
  * @author Oliver Clark
  */
-public class Display extends Thread {
+public class Display extends Thread implements NavigationStateListener {
 	private static final long DISPLAY_PERIOD = 250;
 	private Odometer odometer;
 	private TextLCD t;
 	private boolean display = true;
 	private Object lock = new Object();
+	private volatile NavigationState navigationState = NavigationState.READY;
 
 	/**
 	 * Creates a Display object.
@@ -29,6 +31,14 @@ public class Display extends Thread {
 		this.t = t;
 	}
 
+	/**
+	 * Keeps the navigation state to display, the instance must be added as a listener of the NavigationController.
+	 * @param previousState  The state before the change
+	 * @param state  The new state
+	 */
+	public void navigationStateChanged(NavigationState previousState, NavigationState state) {
+		navigationState = state;
+	}
 	
 	/**
 	 * Creates a thread and periodically updates the LDC display
@@ -58,7 +68,7 @@ public class Display extends Thread {
 				}
 
 				t.drawString("                ", 0, 3);
-				t.drawString("" + NavigationController.getNavigationState(), 0, 3);
+				t.drawString("" + navigationState, 0, 3);
 
 				// throttle the OdometryDisplay
 				displayEnd = System.currentTimeMillis();
@@ -0,0 +1,80 @@
+/**
+ * DriveMotor.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+/**
+ * The DriveMotor interface holds the subset of the regulated motor operations used by the controllers.
+ * It is implemented by an adapter around the EV3 motors and by the motors of the simulator, such that
+ * the same control logic can run on the brick or off of it.
+ * 
+ * @author Michael Vaquier
+ *
+ */
+public interface DriveMotor {
+
+	/**
+	 * Makes the motor turn forward until stopped.
+	 */
+	public void forward();
+
+	/**
+	 * Makes the motor turn backward until stopped.
+	 */
+	public void backward();
+
+	/**
+	 * Stops the motor and waits until it is stopped.
+	 */
+	public void stop();
+
+	/**
+	 * Stops the motor.
+	 * @param immediateReturn  If true the thread does not wait for the motor to be stopped
+	 */
+	public void stop(boolean immediateReturn);
+
+	/**
+	 * Rotates the motor by an angle.
+	 * @param angle  Angle in degrees by which the motor turns
+	 * @param immediateReturn  If true the thread does not wait for the rotation to complete
+	 */
+	public void rotate(int angle, boolean immediateReturn);
+
+	/**
+	 * Rotates the motor to an absolute tacho count.
+	 * @param limitAngle  Tacho count in degrees to which the motor turns
+	 * @param immediateReturn  If true the thread does not wait for the rotation to complete
+	 */
+	public void rotateTo(int limitAngle, boolean immediateReturn);
+
+	/**
+	 * Sets the speed of the motor.
+	 * @param speed  Speed in degrees per second
+	 */
+	public void setSpeed(int speed);
+
+	/**
+	 * Sets the acceleration of the motor.
+	 * @param acceleration  Acceleration in degrees per second squared
+	 */
+	public void setAcceleration(int acceleration);
+
+	/**
+	 * Returns the tacho count of the motor.
+	 * @return  The angle turned by the motor since the last reset in degrees
+	 */
+	public int getTachoCount();
+
+	/**
+	 * Resets the tacho count of the motor to zero.
+	 */
+	public void resetTachoCount();
+
+	/**
+	 * Returns true if the motor is moving.
+	 * @return  True if the motor is moving
+	 */
+	public boolean isMoving();
+}
@@ -0,0 +1,33 @@
+/**
+ * EV3ColorSensorAdapter.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+import lejos.robotics.SampleProvider;
+
+/**
+ * The EV3ColorSensorAdapter class exposes a sample provider of an EV3 color sensor as a ColorSensor.
+ * 
+ * @author Michael Vaquier
+ *
+ */
+public class EV3ColorSensorAdapter implements ColorSensor {
+
+	private final SampleProvider sampleProvider;
+	private final float[] data;
+
+	/**
+	 * Creates an EV3ColorSensorAdapter object.
+	 * @param sampleProvider  Sample provider of the sensor in the mode in which it will be used
+	 */
+	public EV3ColorSensorAdapter(SampleProvider sampleProvider) {
+		this.sampleProvider = sampleProvider;
+		this.data = new float[sampleProvider.sampleSize()];
+	}
+
+	public float fetchSample() {
+		sampleProvider.fetchSample(data, 0);
+		return data[0];
+	}
+}
@@ -0,0 +1,70 @@
+/**
+ * EV3MotorAdapter.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+import lejos.hardware.motor.BaseRegulatedMotor;
+
+/**
+ * The EV3MotorAdapter class exposes an EV3 regulated motor as a DriveMotor.
+ * 
+ * @author Michael Vaquier
+ *
+ */
+public class EV3MotorAdapter implements DriveMotor {
+
+	private final BaseRegulatedMotor motor;
+
+	/**
+	 * Creates an EV3MotorAdapter object.
+	 * @param motor  Reference to the EV3 motor
+	 */
+	public EV3MotorAdapter(BaseRegulatedMotor motor) {
+		this.motor = motor;
+	}
+
+	public void forward() {
+		motor.forward();
+	}
+
+	public void backward() {
+		motor.backward();
+	}
+
+	public void stop() {
+		motor.stop();
+	}
+
+	public void stop(boolean immediateReturn) {
+		motor.stop(immediateReturn);
+	}
+
+	public void rotate(int angle, boolean immediateReturn) {
+		motor.rotate(angle, immediateReturn);
+	}
+
+	public void rotateTo(int limitAngle, boolean immediateReturn) {
+		motor.rotateTo(limitAngle, immediateReturn);
+	}
+
+	public void setSpeed(int speed) {
+		motor.setSpeed(speed);
+	}
+
+	public void setAcceleration(int acceleration) {
+		motor.setAcceleration(acceleration);
+	}
+
+	public int getTachoCount() {
+		return motor.getTachoCount();
+	}
+
+	public void resetTachoCount() {
+		motor.resetTachoCount();
+	}
+
+	public boolean isMoving() {
+		return motor.isMoving();
+	}
+}
@@ -0,0 +1,33 @@
+/**
+ * EV3RangeSensorAdapter.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+import lejos.robotics.SampleProvider;
+
+/**
+ * The EV3RangeSensorAdapter class exposes the distance mode of an EV3 ultrasonic sensor as a RangeSensor.
+ * 
+ * @author Michael Vaquier
+ *
+ */
+public class EV3RangeSensorAdapter implements RangeSensor {
+
+	private final SampleProvider sampleProvider;
+	private final float[] data;
+
+	/**
+	 * Creates an EV3RangeSensorAdapter object.
+	 * @param sampleProvider  Sample provider of the sensor in distance mode
+	 */
+	public EV3RangeSensorAdapter(SampleProvider sampleProvider) {
+		this.sampleProvider = sampleProvider;
+		this.data = new float[sampleProvider.sampleSize()];
+	}
+
+	public float fetchDistance() {
+		sampleProvider.fetchSample(data, 0);
+		return data[0];
+	}
+}
@@ -0,0 +1,66 @@
+/**
+ * Feedback.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+import java.io.File;
+
+import lejos.hardware.Sound;
+
+/**
+ * The Feedback class plays the sounds used to signal events during a round.
+ * Sounds can be turned off, which is needed when the system runs off of the brick.
+ * 
+ * @author Michael Vaquier
+ *
+ */
+public class Feedback {
+
+	private static volatile boolean enabled = true;
+
+	/**
+	 * Turns the sounds on or off.
+	 * @param enabled  Sounds are played if true
+	 */
+	public static void setEnabled(boolean enabled) {
+		Feedback.enabled = enabled;
+	}
+
+	/**
+	 * Plays a beep.
+	 */
+	public static void beep() {
+		if (enabled) {
+			Sound.beep();
+		}
+	}
+
+	/**
+	 * Plays a buzz.
+	 */
+	public static void buzz() {
+		if (enabled) {
+			Sound.buzz();
+		}
+	}
+
+	/**
+	 * Plays a sequence of beeps going up.
+	 */
+	public static void beepSequenceUp() {
+		if (enabled) {
+			Sound.beepSequenceUp();
+		}
+	}
+
+	/**
+	 * Plays a sound file.
+	 * @param fileName  Name of the wav file to play
+	 */
+	public static void playSample(String fileName) {
+		if (enabled) {
+			Sound.playSample(new File(fileName), 100);
+		}
+	}
+}
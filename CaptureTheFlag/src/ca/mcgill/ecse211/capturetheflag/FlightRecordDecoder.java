@@ -0,0 +1,126 @@
+/**
+ * FlightRecordDecoder.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * FlightRecordDecoder turns a file written by the FlightRecorder into CSV. It is meant to be run on a computer
+ * after copying the file from the brick:
+ * java ca.mcgill.ecse211.capturetheflag.FlightRecordDecoder flight.bin [output.csv]
+ * Every line holds the time in milliseconds, the record type, the channel and the values of the record.
+ *
+ * @author Michael Vaquier
+ *
+ */
+public class FlightRecordDecoder {
+
+	/**
+	 * Decodes a flight record.
+	 * @param args  The file to decode and optionally the CSV file to write, the CSV is printed if it is not given
+	 * @throws IOException  If a file cannot be read or written
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage : FlightRecordDecoder <record file> [csv file]");
+			System.exit(1);
+		}
+		PrintStream out = args.length > 1 ? new PrintStream(args[1]) : System.out;
+		decode(args[0], out);
+		out.flush();
+		if (out != System.out) {
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads a flight record and prints it as CSV.
+	 * @param fileName  Name of the record file
+	 * @param out  Stream to print the CSV to
+	 * @throws IOException  If the file cannot be read or is not a flight record
+	 */
+	public static void decode(String fileName, PrintStream out) throws IOException {
+		int[] records = readRecords(fileName);
+		out.println("time,type,channel,value1,value2,value3");
+		for (int offset = 0; offset < records.length; offset += FlightRecorder.RECORD_INTS) {
+			int type = records[offset] >> 8;
+			int channel = records[offset] & 0xFF;
+			int time = records[offset + 1];
+			int a = records[offset + 2];
+			int b = records[offset + 3];
+			int c = records[offset + 4];
+			switch (type) {
+			case FlightRecorder.COLOR_SAMPLE:
+				out.println(time + ",color," + channelName(channel) + "," + a + ",,");
+				break;
+			case FlightRecorder.ULTRASONIC_SAMPLE:
+				out.println(time + ",ultrasonic,," + a + ",,");
+				break;
+			case FlightRecorder.TACHO_COUNT:
+				out.println(time + ",tacho,," + a + "," + b + ",");
+				break;
+			case FlightRecorder.POSE:
+				out.println(time + ",pose,," + Float.intBitsToFloat(a) + "," + Float.intBitsToFloat(b) + ","
+						+ Float.intBitsToFloat(c));
+				break;
+			default:
+				out.println(time + ",unknown " + type + "," + channel + "," + a + "," + b + "," + c);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Reads the records of a flight record file in the layout of the FlightRecorder buffer,
+	 * FlightRecorder.RECORD_INTS values per record from the oldest to the newest.
+	 * @param fileName  Name of the record file
+	 * @return  The records
+	 * @throws IOException  If the file cannot be read or is not a flight record
+	 */
+	public static int[] readRecords(String fileName) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)));
+		try {
+			if (in.readInt() != FlightRecorder.MAGIC) {
+				throw new IOException(fileName + " is not a flight record");
+			}
+			int version = in.readInt();
+			if (version != FlightRecorder.VERSION) {
+				throw new IOException("Unsupported flight record version " + version);
+			}
+			int size = in.readInt();
+			long overwritten = in.readLong();
+			if (overwritten > 0) {
+				System.err.println(overwritten + " older records were overwritten");
+			}
+			int[] records = new int[size * FlightRecorder.RECORD_INTS];
+			for (int i = 0; i < records.length; i++) {
+				records[i] = in.readInt();
+			}
+			return records;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Returns the name of a color sensor channel.
+	 */
+	private static String channelName(int channel) {
+		switch (channel) {
+		case FlightRecorder.BACK_SENSOR:
+			return "back";
+		case FlightRecorder.FRONT_SENSOR:
+			return "front";
+		case FlightRecorder.SIDE_SENSOR:
+			return "side";
+		default:
+			return Integer.toString(channel);
+		}
+	}
+}
@@ -0,0 +1,154 @@
+/**
+ * FlightRecorder.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * The FlightRecorder class keeps the last sensor samples, tacho counts and poses of the robot in a ring buffer
+ * allocated once, such that recording never allocates memory. When the buffer is full the oldest records are overwritten.
+ * At the end of a run the records are written to a binary file which is turned into CSV by the FlightRecordDecoder.
+ *
+ * Every record has the same size: a type, a channel, a timestamp in milliseconds since the recorder was created and
+ * three 32 bit values. The file starts with a header made of the magic number, the version, the number of records
+ * and the number of records that were overwritten, followed by the records from the oldest to the newest, big-endian.
+ *
+ * @author Michael Vaquier
+ *
+ */
+public class FlightRecorder {
+
+	public static final int MAGIC = 0x43544652; // "CTFR"
+	public static final int VERSION = 1;
+
+	//Record types
+	public static final int COLOR_SAMPLE = 1;
+	public static final int ULTRASONIC_SAMPLE = 2;
+	public static final int TACHO_COUNT = 3;
+	public static final int POSE = 4;
+
+	//Color sensor channels
+	public static final int BACK_SENSOR = 0;
+	public static final int FRONT_SENSOR = 1;
+	public static final int SIDE_SENSOR = 2;
+
+	//Layout of a record in the buffer: type and channel, time, three values
+	public static final int RECORD_INTS = 5;
+	public static final int DEFAULT_CAPACITY = 131072;
+
+	private final int[] buffer;
+	private final int capacity;
+	private int next = 0;
+	private long written = 0;
+	private final long startTime;
+	private final Clock clock;
+
+	/**
+	 * Creates a FlightRecorder object with the default capacity, about 2.6 MB, which holds a full round.
+	 * @param clock  The clock of the system
+	 */
+	public FlightRecorder(Clock clock) {
+		this(DEFAULT_CAPACITY, clock);
+	}
+
+	/**
+	 * Creates a FlightRecorder object.
+	 * @param capacity  Number of records kept
+	 * @param clock  The clock of the system
+	 */
+	public FlightRecorder(int capacity, Clock clock) {
+		this.capacity = capacity;
+		this.buffer = new int[capacity * RECORD_INTS];
+		this.clock = clock;
+		this.startTime = clock.currentTimeMillis();
+	}
+
+	/**
+	 * Records a sample of a color sensor.
+	 * @param sensor  BACK_SENSOR, FRONT_SENSOR or SIDE_SENSOR
+	 * @param value  Value sent to the data processing class
+	 */
+	public void recordColor(int sensor, int value) {
+		record(COLOR_SAMPLE, sensor, value, 0, 0);
+	}
+
+	/**
+	 * Records a sample of the ultrasonic sensor.
+	 * @param distance  Distance in centimeters
+	 */
+	public void recordUltrasonic(int distance) {
+		record(ULTRASONIC_SAMPLE, 0, distance, 0, 0);
+	}
+
+	/**
+	 * Records the tacho counts of the wheels.
+	 * @param left  Tacho count of the left motor
+	 * @param right  Tacho count of the right motor
+	 */
+	public void recordTachoCount(int left, int right) {
+		record(TACHO_COUNT, 0, left, right, 0);
+	}
+
+	/**
+	 * Records the position of the robot given by the odometer.
+	 * @param x  X value of the robot
+	 * @param y  Y value of the robot
+	 * @param thetaDegrees  Heading of the robot in degrees
+	 */
+	public void recordPose(double x, double y, double thetaDegrees) {
+		record(POSE, 0, Float.floatToRawIntBits((float) x), Float.floatToRawIntBits((float) y),
+				Float.floatToRawIntBits((float) thetaDegrees));
+	}
+
+	/**
+	 * Writes a record in the next slot of the ring buffer.
+	 */
+	private synchronized void record(int type, int channel, int a, int b, int c) {
+		int offset = next * RECORD_INTS;
+		buffer[offset] = (type << 8) | (channel & 0xFF);
+		buffer[offset + 1] = (int) (clock.currentTimeMillis() - startTime);
+		buffer[offset + 2] = a;
+		buffer[offset + 3] = b;
+		buffer[offset + 4] = c;
+		next = (next + 1) % capacity;
+		written++;
+	}
+
+	/**
+	 * Returns the number of records currently kept in the buffer.
+	 * @return  Number of records
+	 */
+	public synchronized int size() {
+		return (int) Math.min(written, capacity);
+	}
+
+	/**
+	 * Writes every record kept in the buffer to a file, from the oldest to the newest.
+	 * @param fileName  Name of the file to write
+	 * @throws IOException  If the file cannot be written
+	 */
+	public synchronized void flush(String fileName) throws IOException {
+		int size = size();
+		int first = written > capacity ? next : 0;
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(size);
+			out.writeLong(written - size);
+			for (int i = 0; i < size; i++) {
+				int offset = ((first + i) % capacity) * RECORD_INTS;
+				for (int j = 0; j < RECORD_INTS; j++) {
+					out.writeInt(buffer[offset + j]);
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+}
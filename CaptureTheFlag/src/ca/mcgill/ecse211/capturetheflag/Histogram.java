@@ -0,0 +1,137 @@
+/**
+ * Histogram.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+/**
+ * The Histogram class records durations in microseconds without allocating memory.
+ * The buckets grow by powers of two: bucket 0 holds the value 0 and bucket i holds the values from 2^(i-1) to 2^i - 1,
+ * such that the resolution is always better than half the value while 32 buckets cover more than half an hour.
+ * A single thread records values, other threads can read the histogram at any time and may see the last value
+ * partially recorded.
+ *
+ * @author Michael Vaquier
+ *
+ */
+public class Histogram {
+
+	private static final int BUCKETS = 32;
+
+	private final int[] counts = new int[BUCKETS];
+	private volatile int count = 0;
+	private volatile long sum = 0;
+	private volatile long min = Long.MAX_VALUE;
+	private volatile long max = 0;
+
+	/**
+	 * Records a value. Negative values are recorded as 0.
+	 * @param micros  Value in microseconds
+	 */
+	public void record(long micros) {
+		if (micros < 0) {
+			micros = 0;
+		}
+		counts[bucketOf(micros)]++;
+		sum += micros;
+		if (micros < min) {
+			min = micros;
+		}
+		if (micros > max) {
+			max = micros;
+		}
+		count++;
+	}
+
+	/**
+	 * Returns the bucket holding a value.
+	 * @param micros  Positive value in microseconds
+	 * @return  Index of the bucket
+	 */
+	private static int bucketOf(long micros) {
+		return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+	}
+
+	/**
+	 * Returns the number of values recorded.
+	 * @return  Number of values
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the smallest value recorded.
+	 * @return  Smallest value in microseconds, 0 if nothing was recorded
+	 */
+	public long getMin() {
+		return count == 0 ? 0 : min;
+	}
+
+	/**
+	 * Returns the largest value recorded.
+	 * @return  Largest value in microseconds
+	 */
+	public long getMax() {
+		return max;
+	}
+
+	/**
+	 * Returns the mean of the values recorded.
+	 * @return  Mean value in microseconds, 0 if nothing was recorded
+	 */
+	public double getMean() {
+		int n = count;
+		return n == 0 ? 0 : (double) sum / n;
+	}
+
+	/**
+	 * Returns an upper bound of a percentile, which is the upper end of the bucket holding the percentile.
+	 * @param percentile  Percentile between 0 and 100
+	 * @return  Upper bound of the percentile in microseconds, never more than the largest value recorded
+	 */
+	public long getPercentile(double percentile) {
+		int n = count;
+		if (n == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(percentile / 100 * n);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank && counts[i] > 0) {
+				long upper = i == 0 ? 0 : (1L << i) - 1;
+				return Math.min(upper, max);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Returns the number of values recorded in a bucket.
+	 * @param bucket  Index of the bucket, from 0 to 31
+	 * @return  Number of values in the bucket
+	 */
+	public int getBucketCount(int bucket) {
+		return counts[bucket];
+	}
+
+	/**
+	 * Clears every value recorded. Must be called by the thread recording the values.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = 0;
+		}
+		count = 0;
+		sum = 0;
+		min = Long.MAX_VALUE;
+		max = 0;
+	}
+
+	@Override
+	public String toString() {
+		return "n=" + count + " mean=" + Math.round(getMean()) + "us p50<=" + getPercentile(50) + "us p99<="
+				+ getPercentile(99) + "us max=" + max + "us";
+	}
+}
@@ -4,9 +4,10 @@
 
 package ca.mcgill.ecse211.capturetheflag;
 
+import java.util.Arrays;
+
 import ca.mcgill.ecse211.capturetheflag.ColorPoller.ColorPollingState;
 import ca.mcgill.ecse211.capturetheflag.UltrasonicPoller.UltrasonicPollingState;
-import lejos.hardware.motor.EV3LargeRegulatedMotor;
 
 /**
  * Localisation outlines the procedure for both the US angle correction and color position and angle correction
@@ -19,18 +20,58 @@ import lejos.hardware.motor.EV3LargeRegulatedMotor;
 public class Localisation {
 	
 	private static final int ROTATION_SPEED = 90;
+	private static final int COLOR_ROTATION_SPEED = 180;
 	private static final int FAST_ACCEL = 3000;
-	private static final double COLOR_ANGLE_BIAS = 12;
 	private static final double COLOR_SENSOR_OFFSET = 13.6;
 	
+	//Uncertainty of the measurements, in centimeters and degrees
+	private static final double US_HEADING_DEVIATION = 3;
+	private static final double US_RANGE_DEVIATION = 2;
+	private static final double US_SENSOR_OFFSET = 10;
+	private static final double US_BEAM_HALF_WIDTH = 10;
+	private static final int US_MIN_RANGE = 3;
+	//Samples of the sweep kept to measure the distance to the walls, and how far from a wall normal they can be
+	private static final int SWEEP_SAMPLES = 512;
+	private static final double SWEEP_WINDOW = 5;
+	//Range scan of the fast ultrasonic localisation, one bin per degree of the heading of the odometer, and the longest scan, in milliseconds
+	private static final int SCAN_BINS = 360;
+	private static final double SCAN_TURN = 370;
+	private static final long SCAN_TIMEOUT = 15000;
+	//Largest angle from the normal of a wall of the samples fitted to it, and largest distance of a sample to its wall after the first fit, in degrees and centimeters
+	private static final double SCAN_WINDOW = 30;
+	private static final double SCAN_OUTLIER = 4;
+	private static final int MIN_WALL_SAMPLES = 5;
+	private static final double MIN_SCAN_HEADING_INFORMATION = 100;
+	private static final double US_SCAN_HEADING_DEVIATION = 1;
+	private static final double US_SCAN_POSITION_DEVIATION = 1;
+	private static final double COLOR_POSITION_DEVIATION = 0.5;
+	//Lines crossed by the back sensor during the sweep of the color localisation, and the longest sweep, in milliseconds
+	private static final int SWEEP_LINES = 4;
+	private static final long SWEEP_TIMEOUT = 10000;
+	private static final long LINE_WAIT = 50;
+	private static final int FIT_ITERATIONS = 4;
+	//Most lines used by a drive through localisation, and the information on the heading error the crossings must give, in square centimeters
+	private static final int MAX_CROSSINGS = 8;
+	private static final double MIN_HEADING_INFORMATION = 100;
+	private static final double COLOR_HEADING_DEVIATION = 1;
+	
 	private boolean fallingEdge = false;
 	private double edgeDifference = -1;
 	
-	private volatile boolean paused = false;
-	private Object pauseLock = new Object();
+	//Thread variables
+	private final Clock clock;
+	private final Signal pauseSignal;
 	
 	private double[] edges = {-1, -1};
-	private double[] lines = {-1, -1, -1, -1};
+	private final double[] sweepHeadings = new double[SWEEP_SAMPLES];
+	private final int[] sweepRanges = new int[SWEEP_SAMPLES];
+	private int sweepCount = 0;
+	private final Object sweepLock = new Object();
+	private final int[] scanRanges = new int[SCAN_BINS];
+	private final Pose[] crossings = new Pose[MAX_CROSSINGS];
+	private final boolean[] verticalLines = new boolean[MAX_CROSSINGS];
+	private final double[] lineCoordinates = new double[MAX_CROSSINGS];
+	private final double[] fit = new double[3];
 	
 	private Coordinate lastColorLocalisationLocation = new Coordinate(-1, -1);
 	
@@ -47,8 +88,8 @@ public class Localisation {
 	private ColorPoller colorPoller;
 	
 	//Motors
-	private EV3LargeRegulatedMotor leftMotor;
-	private EV3LargeRegulatedMotor rightMotor;
+	private DriveMotor leftMotor;
+	private DriveMotor rightMotor;
 	
 	/**
 	 * Creates a Localisation object.
@@ -60,8 +101,11 @@ public class Localisation {
 	 * @param leftMotor  Reference to the left motor
 	 * @param tile  Length of the side of a tile
 	 * @param startingCorner  Corner in which the robot started
+	 * @param clock  The clock of the system
 	 */
-	public Localisation(Odometer odometer, Navigation navigation, UltrasonicPoller ultrasonicPoller, ColorPoller colorPoller, EV3LargeRegulatedMotor rightMotor, EV3LargeRegulatedMotor leftMotor, double tile, int startingCorner) {
+	public Localisation(Odometer odometer, Navigation navigation, UltrasonicPoller ultrasonicPoller, ColorPoller colorPoller, DriveMotor rightMotor, DriveMotor leftMotor, double tile, int startingCorner, Clock clock) {
+		this.clock = clock;
+		this.pauseSignal = clock.newSignal();
 		this.rightMotor = rightMotor;
 		this.leftMotor = leftMotor;
 		this.odometer = odometer;
@@ -71,6 +115,7 @@ public class Localisation {
 		this.tile = tile;
 		this.startingCorner = startingCorner;
 		colorPoller.getColorLocalisationData().setLocalisation(this);
+		colorPoller.getColorLocalisationData().setOdometer(odometer);
 		ultrasonicPoller.getUltrasonicLocalisationData().setLocalisation(this);
 	}
 	
@@ -79,6 +124,9 @@ public class Localisation {
 	 * Game board.
 	 */
 	public void usLocalisation() {
+		synchronized (sweepLock) {
+			sweepCount = 0;
+		}
 		ultrasonicPoller.startPolling(UltrasonicPollingState.LOCALISATION);		//Start taking in US values
 		leftMotor.setSpeed(ROTATION_SPEED);		
 		rightMotor.setSpeed(ROTATION_SPEED);
@@ -92,178 +140,380 @@ public class Localisation {
 		pauseThread();
 		
 		edges[1] = odometer.getThetaDegrees();	//once an edge value is found, add to edges array
-		odometer.setTheta(Math.toRadians(computeAngleUltrasonic())); //Uses compute angle to set odometer's theta orientation
+		double rawHeading = odometer.getThetaDegrees();
+		odometer.fuseHeading(Math.toRadians(computeAngleUltrasonic()), US_HEADING_DEVIATION); //Uses compute angle to correct odometer's theta orientation
+		double correction = odometer.getThetaDegrees() - rawHeading;
 		leftMotor.stop(true);		//Two values have been found, stop spinning
 		rightMotor.stop();
 		ultrasonicPoller.stopPolling();	//No longer need US sensor
 		
+		//The sweep faced both walls of the corner, use the distances seen facing them to correct the position
+		boolean leftWall = startingCorner == 0 || startingCorner == 3;
+		boolean bottomWall = startingCorner == 0 || startingCorner == 1;
+		double boardLength = MainController.BOARD_SIZE * tile;
+		fuseWallRange(leftWall ? 270 : 90, true, leftWall ? 0 : boardLength, correction);
+		fuseWallRange(bottomWall ? 180 : 0, false, bottomWall ? 0 : boardLength, correction);
+		
 	}
 	
 	/**
-	 * Performs the color localisation routine assuming the robot is positioned relatively close to an intersection of two lines
-	 * @param override  Localises no matter what if true.
+	 * Performs a faster ultrasonic localisation from the same position as the usLocalisation. The robot spins one turn
+	 * without stopping while the distances are recorded by heading, and the two walls of the corner are fitted to the
+	 * scan to get the heading and the position at once. Falls back to the usLocalisation if the scan does not show both walls.
 	 */
-	public void colorLocalisation(boolean override) {
+	public void usScanLocalisation() {
+		synchronized (sweepLock) {
+			sweepCount = 0;
+			Arrays.fill(scanRanges, -1);
+		}
+		ultrasonicPoller.startPolling(UltrasonicPollingState.SCAN);
+		leftMotor.setSpeed(ROTATION_SPEED);
+		rightMotor.setSpeed(ROTATION_SPEED);
+		leftMotor.backward();			//Start spinning in place
+		rightMotor.forward();
+		double lastHeading = odometer.getThetaDegrees();
+		double turned = 0;
+		long timeout = clock.currentTimeMillis() + SCAN_TIMEOUT;
+		while (turned < SCAN_TURN && clock.currentTimeMillis() < timeout) {
+			pauseSignal.await(LINE_WAIT);
+			double heading = odometer.getThetaDegrees();
+			turned += ((lastHeading - heading + 540) % 360) - 180;
+			lastHeading = heading;
+		}
+		leftMotor.stop(true);
+		rightMotor.stop();
+		ultrasonicPoller.stopPolling();
 		
-		double currentX = odometer.getX();
-		double currentY = odometer.getY();
-		int currentTheta = (int) odometer.getThetaDegrees();
-		int referenceHeadingCode = 0;
-		currentX = getClosestMultiple(currentX);
-		currentY = getClosestMultiple(currentY);
-		if (!override && odometer.getDistanceSinceLastLocalisation() < tile && (lastColorLocalisationLocation.x == currentX && lastColorLocalisationLocation.y == currentY)) {
+		boolean fitted;
+		synchronized (sweepLock) {
+			fitted = fitCornerWalls();
+		}
+		if (!fitted) {
+			usLocalisation();
 			return;
 		}
-		lastColorLocalisationLocation = new Coordinate(currentX, currentY);
-		currentTheta = getClosestReference(currentTheta);
+		double newT = (odometer.getThetaDegrees() + fit[2] + 360) % 360;	//The scan gives the error of the odometer heading
+		odometer.fuseHeading(Math.toRadians(newT), US_SCAN_HEADING_DEVIATION);
+		odometer.fusePosition(fit[0], fit[1], US_SCAN_POSITION_DEVIATION);
+	}
+	
+	/**
+	 * Fits the position of the center of rotation and the heading error of the odometer to the walls of the starting corner
+	 * seen in the range scan, by Gauss-Newton iterations. The corner is first found as the half turn with the shortest distances,
+	 * which gives the heading error to a few degrees. Each distance is then the one along the ray of the beam closest to
+	 * the normal of the wall, the same model as the one of the odometer.
+	 * The result is written to the fit array: X, Y, and the error of the headings in degrees.
+	 * @return  True if the scan determines the position and the heading
+	 */
+	boolean fitCornerWalls() {
+		boolean leftWall = startingCorner == 0 || startingCorner == 3;
+		boolean bottomWall = startingCorner == 0 || startingCorner == 1;
+		double boardLength = MainController.BOARD_SIZE * tile;
+		double wallX = leftWall ? 0 : boardLength;
+		double wallY = bottomWall ? 0 : boardLength;
+		double verticalNormal = leftWall ? 270 : 90;
+		double horizontalNormal = bottomWall ? 180 : 0;
+		double corner = (verticalNormal + horizontalNormal + (Math.abs(verticalNormal - horizontalNormal) > 180 ? 360 : 0)) / 2;
 		
-		navigation.turnTo(currentTheta);
+		//Direction of the corner in the scan, the middle of the half turn with the shortest distances
+		int cornerBin = -1;
+		double shortest = Double.POSITIVE_INFINITY;
+		for (int bin = 0; bin < SCAN_BINS; bin++) {
+			double total = 0;
+			int count = 0;
+			for (int i = bin - (SCAN_BINS / 4); i <= bin + (SCAN_BINS / 4); i++) {
+				int range = scanRanges[(i + SCAN_BINS) % SCAN_BINS];
+				if (range >= US_MIN_RANGE) {
+					total += range;
+					count++;
+				}
+			}
+			if (count > 0 && total / count < shortest) {
+				shortest = total / count;
+				cornerBin = bin;
+			}
+		}
+		if (cornerBin < 0) {
+			return false;
+		}
 		
-		switch(currentTheta) {
-		case 45:
-			referenceHeadingCode = 3;
-			break;
-		case 135:
-			referenceHeadingCode = 2;
-			break;
-		case 225:
-			referenceHeadingCode = 1;
-			break;
-		case 315:
-			referenceHeadingCode = 0;
+		double beam = Math.toRadians(US_BEAM_HALF_WIDTH);
+		Pose pose = odometer.getPose();
+		double x = pose.x;
+		double y = pose.y;
+		double error = Math.toRadians(corner - (cornerBin + 0.5));
+		for (int iteration = 0; iteration < FIT_ITERATIONS; iteration++) {
+			//Normal equations (J'J) step = -J'r, the same as for the line crossings
+			double a00 = 0, a11 = 0, a02 = 0, a12 = 0, a22 = 0;
+			double b0 = 0, b1 = 0, b2 = 0;
+			for (int bin = 0; bin < SCAN_BINS; bin++) {
+				int range = scanRanges[bin];
+				if (range < US_MIN_RANGE) {
+					continue;
+				}
+				double heading = Math.toRadians(bin + 0.5) + error;
+				double distance = range + US_SENSOR_OFFSET;
+				for (int wall = 0; wall < 2; wall++) {
+					boolean verticalWall = wall == 0;
+					double incidence = heading - Math.toRadians(verticalWall ? verticalNormal : horizontalNormal);
+					incidence = Math.atan2(Math.sin(incidence), Math.cos(incidence));
+					if (Math.abs(incidence) > Math.toRadians(SCAN_WINDOW)) {
+						continue;
+					}
+					double ray = heading - (Math.signum(incidence) * Math.min(Math.abs(incidence), beam));
+					double turning = Math.abs(incidence) > beam ? 1 : 0; //the ray closest to the normal stays on it inside the beam
+					double residual = verticalWall ? x + (distance * Math.sin(ray)) - wallX : y + (distance * Math.cos(ray)) - wallY;
+					if (iteration > 0 && Math.abs(residual) > SCAN_OUTLIER) {
+						continue;
+					}
+					if (verticalWall) {
+						double derivative = turning * distance * Math.cos(ray);
+						a00 += 1;
+						a02 += derivative;
+						a22 += derivative * derivative;
+						b0 -= residual;
+						b2 -= derivative * residual;
+					} else {
+						double derivative = -turning * distance * Math.sin(ray);
+						a11 += 1;
+						a12 += derivative;
+						a22 += derivative * derivative;
+						b1 -= residual;
+						b2 -= derivative * residual;
+					}
+				}
+			}
+			if (a00 < MIN_WALL_SAMPLES || a11 < MIN_WALL_SAMPLES) {
+				return false; //both walls are needed
+			}
+			double reduced = a22 - (a02 * a02 / a00) - (a12 * a12 / a11);
+			if (reduced < MIN_SCAN_HEADING_INFORMATION) {
+				return false;
+			}
+			double step = (b2 - (a02 * b0 / a00) - (a12 * b1 / a11)) / reduced;
+			x += (b0 - (a02 * step)) / a00;
+			y += (b1 - (a12 * step)) / a11;
+			error += step;
 		}
+		fit[0] = x;
+		fit[1] = y;
+		fit[2] = Math.toDegrees(error);
+		return true;
+	}
+	
+	/**
+	 * Performs the color localisation routine assuming the robot is positioned relatively close to an intersection of two lines.
+	 * The robot spins from its current heading until the back sensor crossed four lines, and returns as soon as the fourth is seen.
+	 * The position and the heading error are fitted to all the crossings by least squares.
+	 * The intersection and the distance since the last localisation are only updated when the odometer was corrected, such
+	 * that a sweep that timed out or a fit that failed does not stop the next call from localising again.
+	 * @param override  Localises no matter what if true.
+	 */
+	public void colorLocalisation(boolean override) {
 		
+		Pose pose = odometer.getPose();
+		double currentX = getClosestMultiple(pose.x);
+		double currentY = getClosestMultiple(pose.y);
+		if (!override && odometer.getDistanceSinceLastLocalisation() < tile && (lastColorLocalisationLocation.x == currentX && lastColorLocalisationLocation.y == currentY)) {
+			return;
+		}
 		
-		referenceHeadingCode = (referenceHeadingCode + 1) % lines.length;
-		odometer.startOdometer(); // change the odometer to polling mode
+		ColorLocalisationData lineDetector = colorPoller.getColorLocalisationData();
 		colorPoller.startPollingTimer(ColorPollingState.LOCALISATION); 	//Need to detect lines, turn on color sensor
-		leftMotor.setSpeed(ROTATION_SPEED);	//Start spinning in place
-		rightMotor.setSpeed(ROTATION_SPEED);
+		leftMotor.setSpeed(COLOR_ROTATION_SPEED);	//Start spinning in place
+		rightMotor.setSpeed(COLOR_ROTATION_SPEED);
 		leftMotor.backward();
 		rightMotor.forward();
-		pauseThread();
-		
-		lines[referenceHeadingCode] = odometer.getThetaDegrees(); 	//Once a line has been found add to lines array
-		referenceHeadingCode = (referenceHeadingCode + 1) % lines.length;
-		pauseThread();
-		
-		lines[referenceHeadingCode] = odometer.getThetaDegrees();	//Once a line has been found add to lines array
-		referenceHeadingCode = (referenceHeadingCode + 1) % lines.length;
-		pauseThread();
-		
-		lines[referenceHeadingCode] = odometer.getThetaDegrees();	//Once a line has been found add to lines array
-		referenceHeadingCode = (referenceHeadingCode + 1) % lines.length;
-		pauseThread();
+		long deadline = clock.currentTimeMillis() + SWEEP_TIMEOUT;
+		while (lineDetector.getLineCount() < SWEEP_LINES && clock.currentTimeMillis() < deadline) {
+			pauseSignal.await(LINE_WAIT);
+		}
 		
-		lines[referenceHeadingCode] = odometer.getThetaDegrees();	//Once a line has been found add to lines array
 		rightMotor.setAcceleration(FAST_ACCEL);
 		leftMotor.setAcceleration(FAST_ACCEL);
 		colorPoller.stopTimer();	//No longer need color sensor. Turn off.
-		odometer.startOdometerTimer(); //change odometer back to timer mode
-		double newT = computeThetaColor(referenceHeadingCode);
-		newT -= COLOR_ANGLE_BIAS;
-		if (newT < 0) {
-			newT += 360;
-		}
-		odometer.setTheta(Math.toRadians(newT));
-		odometer.setX(computeX(currentX));	//Use ComputeX() and ComputeY() to correct odometer's position
-		odometer.setY(computeY(currentY));
+		boolean localised = lineDetector.getLineCount() >= SWEEP_LINES && fuseLineCrossings(SWEEP_LINES);
 		leftMotor.stop(true);	//Four lines have now been detected. Stop spinning
 		rightMotor.stop();
+		if (localised) {
+			lastColorLocalisationLocation = new Coordinate(currentX, currentY);
+			odometer.restetDistanceSinceLastLocalisation();
+		}
+	}
+	
+	/**
+	 * Localises without stopping to spin, while the robot drives straight to a point through an intersection.
+	 * The lines the back sensor crosses on the way are fitted the same way as during the color localisation,
+	 * which needs crossings of both lines and some of them far apart across the direction of travel: a leg along
+	 * a grid line, or a leg that crosses too few lines, does not tell the heading and leaves the odometer as it is.
+	 * @param x  X value of the point to drive to
+	 * @param y  Y value of the point to drive to
+	 * @return  True if the odometer was corrected
+	 */
+	public boolean driveThroughLocalisation(double x, double y) {
+		ColorLocalisationData lineDetector = colorPoller.getColorLocalisationData();
+		colorPoller.startPollingTimer(ColorPollingState.LOCALISATION);
+		navigation.travelTo(x, y, false);
+		colorPoller.stopTimer();
+		int count = Math.min(lineDetector.getLineCount(), crossings.length);
+		if (count < 3 || !fuseLineCrossings(count)) {
+			return false;
+		}
+		lastColorLocalisationLocation = new Coordinate(getClosestMultiple(x), getClosestMultiple(y));
 		odometer.restetDistanceSinceLastLocalisation();
+		return true;
+	}
+	
+	/**
+	 * Corrects the odometer with the lines detected by the back color sensor, if they determine the pose of the robot.
+	 * @param count  Number of lines detected to use
+	 * @return  True if the odometer was corrected
+	 */
+	private boolean fuseLineCrossings(int count) {
+		ColorLocalisationData lineDetector = colorPoller.getColorLocalisationData();
+		for (int i = 0; i < count; i++) {
+			crossings[i] = lineDetector.getLinePose(i);
+		}
+		Pose reference = odometer.getPose();
+		if (!fitLineCrossings(crossings, count, reference)) {
+			return false;
+		}
+		double newT = (odometer.getThetaDegrees() + fit[2] + 360) % 360;	//The robot kept turning since the crossings, only the error is used
+		odometer.fuseHeading(Math.toRadians(newT), COLOR_HEADING_DEVIATION);
+		odometer.fusePosition(fit[0], fit[1], COLOR_POSITION_DEVIATION);
+		return true;
 	}
-
 
 	/**
-	 * Computes the real X value of the robot's center of rotation based on the relative headings at which
-	 * the back color sensor crossed the lines
-	 * @param targetX  The X value of the line at which the robot is localizing
-	 * @return  The correct X value of the robot
+	 * Fits the error of the odometer to the poses at which the back color sensor crossed the lines, by Gauss-Newton iterations.
+	 * The odometer is assumed to be off by a position error at the reference pose and by a heading error, which also rotates
+	 * the path traveled between the crossings and the reference. Each crossing is matched to the grid line closest to
+	 * the sensor according to the odometer: the X value of the sensor is the one of a line along Y, and the other way around.
+	 * The result is written to the fit array: X and Y of the reference pose, and the heading error in degrees.
+	 * @param poses  Poses of the odometer at the crossings
+	 * @param count  Number of crossings
+	 * @param reference  Pose of the odometer the position is fitted at
+	 * @return  True if the crossings determine the position and the heading
 	 */
-	private double computeX(double targetX) {
-		double thetaD = (lines[0] - lines[2]);
-		int magnitude = -1;
-		if(thetaD < 0) {	//Corrects for negative difference
-			thetaD += 360;
+	boolean fitLineCrossings(Pose[] poses, int count, Pose reference) {
+		for (int i = 0; i < count; i++) {
+			double sensorX = poses[i].x - (COLOR_SENSOR_OFFSET * Math.sin(poses[i].theta));
+			double sensorY = poses[i].y - (COLOR_SENSOR_OFFSET * Math.cos(poses[i].theta));
+			double lineX = getClosestMultiple(sensorX);
+			double lineY = getClosestMultiple(sensorY);
+			verticalLines[i] = Math.abs(sensorX - lineX) < Math.abs(sensorY - lineY);
+			lineCoordinates[i] = verticalLines[i] ? lineX : lineY;
 		}
-		if(thetaD > 180) {
-			thetaD = 360 - thetaD;
-			magnitude = 1;
+		double errorX = 0;
+		double errorY = 0;
+		double error = 0;
+		double reduced = 0;
+		for (int iteration = 0; iteration < FIT_ITERATIONS; iteration++) {
+			//Normal equations (J'J) step = -J'r, J'J is symmetric and X and Y are never in the same row
+			double a00 = 0, a11 = 0, a02 = 0, a12 = 0, a22 = 0;
+			double b0 = 0, b1 = 0, b2 = 0;
+			double sinError = Math.sin(error);
+			double cosError = Math.cos(error);
+			for (int i = 0; i < count; i++) {
+				double dx = poses[i].x - reference.x;
+				double dy = poses[i].y - reference.y;
+				double heading = poses[i].theta + error;
+				double sin = Math.sin(heading);
+				double cos = Math.cos(heading);
+				if (verticalLines[i]) {
+					double residual = reference.x + errorX + (dx * cosError) + (dy * sinError) - (COLOR_SENSOR_OFFSET * sin) - lineCoordinates[i];
+					double derivative = -(dx * sinError) + (dy * cosError) - (COLOR_SENSOR_OFFSET * cos);
+					a00 += 1;
+					a02 += derivative;
+					a22 += derivative * derivative;
+					b0 -= residual;
+					b2 -= derivative * residual;
+				} else {
+					double residual = reference.y + errorY - (dx * sinError) + (dy * cosError) - (COLOR_SENSOR_OFFSET * cos) - lineCoordinates[i];
+					double derivative = -(dx * cosError) - (dy * sinError) + (COLOR_SENSOR_OFFSET * sin);
+					a11 += 1;
+					a12 += derivative;
+					a22 += derivative * derivative;
+					b1 -= residual;
+					b2 -= derivative * residual;
+				}
+			}
+			if (a00 == 0 || a11 == 0) {
+				return false; //both lines are needed
+			}
+			//Eliminates X and Y, the heading error is left
+			reduced = a22 - (a02 * a02 / a00) - (a12 * a12 / a11);
+			if (reduced < MIN_HEADING_INFORMATION) {
+				return false;
+			}
+			double step = (b2 - (a02 * b0 / a00) - (a12 * b1 / a11)) / reduced;
+			errorX += (b0 - (a02 * step)) / a00;
+			errorY += (b1 - (a12 * step)) / a11;
+			error += step;
 		}
-		thetaD/=2;
-		double offset = Math.abs(COLOR_SENSOR_OFFSET * Math.cos(Math.toRadians(thetaD)));	//Formula for X coordinate, given in fourth quadrant
-		
-		return targetX + (magnitude * offset);
+		fit[0] = reference.x + errorX;
+		fit[1] = reference.y + errorY;
+		fit[2] = Math.toDegrees(error);
+		return true;
 	}
 	
 	/**
-	 * Computes the real Y value of the robot's center of rotation based on the relative headings at which
-	 * the back color sensor crossed the lines
-	 * @param targetY  The X value of the line at which the robot is localizing
-	 * @return  The correct Y value of the robot
+	 * Returns the result of the last fit that succeeded.
+	 * @param result  Array receiving X, Y and the heading error in degrees
 	 */
-	private double computeY(double targetY) {
-		double thetaD = (lines[1] - lines[3]);
-		int magnitude = -1;
-		if(thetaD < 0) {	//Corrects for negative difference
-			thetaD += 360;
-		}
-		if(thetaD > 180) {
-			thetaD = 360 - thetaD;
-			magnitude = 1;
+	void getFit(double[] result) {
+		System.arraycopy(fit, 0, result, 0, fit.length);
+	}
+	
+	/**
+	 * Returns the intersection of the last color localisation that corrected the odometer.
+	 * @return  The intersection, (-1, -1) before the first one
+	 */
+	Coordinate getLastColorLocalisationLocation() {
+		return lastColorLocalisationLocation;
+	}
+	
+	/**
+	 * Records a distance seen by the ultrasonic sensor during the ultrasonic localisation with the heading of the odometer,
+	 * in the sweep and in the bin of the scan at that heading.
+	 * @param distance  Distance fetched from the ultrasonic sensor
+	 */
+	public void recordSweepSample(int distance) {
+		synchronized (sweepLock) {
+			double heading = odometer.getThetaDegrees();
+			if (sweepCount < SWEEP_SAMPLES) {
+				sweepHeadings[sweepCount] = heading;
+				sweepRanges[sweepCount] = distance;
+				sweepCount++;
+			}
+			scanRanges[Math.min((int) heading, SCAN_BINS - 1)] = distance;
 		}
-		thetaD/=2;
-		double offset = Math.abs(COLOR_SENSOR_OFFSET * Math.cos(Math.toRadians(thetaD)));	//Formula for X coordinate, given in fourth quadrant
-		
-		return targetY + (magnitude * offset);	
 	}
 	
 	/**
-	 * Computes the real heading of the robot based on the relative
-	 * headings at witch the back color sensor crossed the lines.
-	 * The input is based on the initial heading at which the robot started the localisation routine.
-	 * @param reference  The code corresponding to the initial heading at the start of the localisation {"0" : "225", "1" : "315", "2" : "135", "3" : "45"}
-	 * @return  The correct theta value of the robot in degrees based on the lined detected by the color sensor
+	 * Corrects the odometer position with the median distance seen while the sensor was facing a wall.
+	 * @param normal  Heading facing the wall in degrees
+	 * @param verticalWall  True if the wall is parallel to the Y axis
+	 * @param wallCoordinate  X value of a vertical wall or Y value of an horizontal wall
+	 * @param correction  Correction of the heading made by the ultrasonic localisation, in degrees
 	 */
-	private double computeThetaColor(int reference) {
-		double delta;
-		double out = 0;
-		switch(reference) {
-			case 3:
-				delta = lines[1] - lines[3];
-				if(delta < 0)
-					delta += 360;
-				delta /= 2;
-				out = 180 - delta;
-				break;
-			case 1:
-				delta = lines[1] - lines[3];
-				if(delta < 0)
-					delta += 360;
-				delta /= 2;
-				out = 180 + delta;
-				break;
-			case 0:
-				delta = lines[0] - lines[2];
-				if(delta < 0)
-					delta += 360;
-				delta /= 2;
-				out = 270 + delta;
-				break;
-			case 2:
-				delta = lines[0] - lines[2];
-				if(delta < 0)
-					delta += 360;
-				delta /= 2;
-				out = 270 - delta;
-				break;
+	private void fuseWallRange(double normal, boolean verticalWall, double wallCoordinate, double correction) {
+		int[] ranges = new int[SWEEP_SAMPLES];
+		int count = 0;
+		synchronized (sweepLock) {
+			for (int i = 0; i < sweepCount; i++) {
+				double difference = Math.abs((sweepHeadings[i] + correction - normal) % 360);
+				if (Math.min(difference, 360 - difference) < SWEEP_WINDOW && sweepRanges[i] >= US_MIN_RANGE) {
+					ranges[count++] = sweepRanges[i];
+				}
+			}
 		}
-		if (out >= 360)
-			out -= 360;
-		else if (out < 0) {
-			out += 360;
+		if (count == 0) {
+			return;
 		}
-		return out;
+		Arrays.sort(ranges, 0, count);
+		odometer.fuseWallRange(Math.toRadians(normal), verticalWall, wallCoordinate, ranges[count / 2], US_SENSOR_OFFSET,
+				US_BEAM_HALF_WIDTH, US_RANGE_DEVIATION);
 	}
 	
 	/**
@@ -317,22 +567,6 @@ public class Localisation {
 		return heading;
 	}
 	
-	/**
-	 * This method takes as input a heading in degrees and returns the closest heading at a 45 degree angle
-	 * @param current  The current heading of the robot in degrees
-	 * @return  The closest heading that is a multiple of 45 in degrees
-	 */
-	private int getClosestReference(int current) {
-		if (current < 90)
-			return 45;
-		else if (current < 180)
-			return 135;
-		else if (current < 270)
-			return 225;
-		else
-			return 315;
-	}
-	
 	/**
 	 * This method returns the closest multiple of tile length
 	 * @param val  Any value
@@ -361,27 +595,14 @@ public class Localisation {
 	 * This method allows the thread to pause itself
 	 */
 	private void pauseThread() {
-		paused = true;
-		synchronized (pauseLock) {
-            if (paused) {
-                try {
-                    pauseLock.wait();
-                } catch (InterruptedException ex) {
-                }
-            }
-        }
+		pauseSignal.await();
 	}
 	
 	/**
 	 * This method wakes up all threads that were paused within this instance of Localisation instance
 	 */
     public void resumeThread() {
-        synchronized (pauseLock) {
-        	if (paused) {
-        		paused = false;
-        		pauseLock.notifyAll(); // Unblocks thread
-        	}
-        }
+        pauseSignal.signal();
     }
 
 }
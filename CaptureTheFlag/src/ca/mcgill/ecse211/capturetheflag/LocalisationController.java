@@ -25,6 +25,9 @@ public class LocalisationController {
 	private final int startingCorner;
 	private final int boardSize;
 	
+	//Uses the single scan ultrasonic localisation instead of the two edges
+	private boolean scanLocalisation = true;
+	
 	/**
 	 * Creates a LocalisationController object.
 	 * @param localisation  Association to Localisation instance
@@ -46,7 +49,11 @@ public class LocalisationController {
 	 * an ultrasonic localisation, navigation to the closest intersection, then color localisation.
 	 */
 	public void initialLocalisationRoutine() {
-		localisation.usLocalisation();
+		if (scanLocalisation) {
+			localisation.usScanLocalisation();
+		} else {
+			localisation.usLocalisation();
+		}
 		navigateToInitialIntersection();
 		localisation.colorLocalisation(true);
 	}
@@ -82,5 +89,13 @@ public class LocalisationController {
 		localisation.colorLocalisation(override);
 	}
 	
+	/**
+	 * Chooses the ultrasonic localisation of the initial routine.
+	 * @param scanLocalisation  Fits the walls to a single scan if true, looks for the two edges if false
+	 */
+	public void setScanLocalisation(boolean scanLocalisation) {
+		this.scanLocalisation = scanLocalisation;
+	}
+	
 }
 
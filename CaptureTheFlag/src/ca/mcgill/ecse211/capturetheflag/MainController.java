@@ -4,10 +4,9 @@
 
 package ca.mcgill.ecse211.capturetheflag;
 
-import java.io.File;
+import java.io.IOException;
 
 import lejos.hardware.Button;
-import lejos.hardware.Sound;
 import lejos.hardware.ev3.LocalEV3;
 import lejos.hardware.lcd.TextLCD;
 import lejos.hardware.motor.EV3LargeRegulatedMotor;
@@ -24,6 +23,9 @@ import lejos.robotics.filter.MeanFilter;
  * Main Controller contains the main flow of the game and calls sub tasks in a
  * sequential manner to complete the game. Sensor and motors are set up in this
  * class to be used in the subtasks.
+ * The flow of the game only depends on the DriveMotor, ColorSensor and RangeSensor interfaces
+ * such that it can be run with the EV3 hardware or with a simulated robot.
+ * Every instance holds its own robot stack, so several simulated games can be played in the same JVM.
  * 
  * @author Michael Vaquier
  * 
@@ -31,134 +33,159 @@ import lejos.robotics.filter.MeanFilter;
 public class MainController {
 	
 	private static final int TEAM_NUMBER = 20;
-	private static boolean greenTeam;
+	private boolean greenTeam;
 
-	private static final EV3LargeRegulatedMotor leftMotor = new EV3LargeRegulatedMotor(LocalEV3.get().getPort("A"));
-	private static final EV3LargeRegulatedMotor rightMotor = new EV3LargeRegulatedMotor(LocalEV3.get().getPort("D"));
-	private static final EV3LargeRegulatedMotor armMotor = new EV3LargeRegulatedMotor(LocalEV3.get().getPort("C"));
-	private static final EV3MediumRegulatedMotor frontMotor = new EV3MediumRegulatedMotor(LocalEV3.get().getPort("B"));
+	private GameParameters gameParameters;
 
-	private static final Port colorHorizontalPort = LocalEV3.get().getPort("S2");
-	private static final Port colorVerticalPort = LocalEV3.get().getPort("S1");
-	private static final Port colorSidePort = LocalEV3.get().getPort("S3");
-	private static final Port usPort = LocalEV3.get().getPort("S4");
-	
-	private static GameParameters gameParameters;
-
-	private static Odometer odometer;
-	private static Localisation localisation;
-	private static Navigation navigation; 
+	private SensorScheduler scheduler;
+	private volatile FlightRecorder flightRecorder;
+	private String flightRecordFile = FLIGHT_RECORD_FILE;
+	private boolean flightRecordSaved = false;
+	private Odometer odometer;
+	private Localisation localisation;
+	private Navigation navigation; 
+	private TrajectoryFollower trajectoryFollower;
 
 	//Subtask controllers
-	private static NavigationController navigationController;
-	private static LocalisationController localisationController;
-	private static ZiplineController ziplineController;
-	private static BlockSearchingController blockSearchingController;
+	private NavigationController navigationController;
+	private LocalisationController localisationController;
+	private ZiplineController ziplineController;
+	private BlockSearchingController blockSearchingController;
 	
 	//Pollers
-	private static UltrasonicPoller ultrasonicPoller;
-	private static ColorPoller colorPoller;
+	private UltrasonicPoller ultrasonicPoller;
+	private ColorPoller colorPoller;
 	
 	//Data Processing
-	private static ColorLocalisationData colorLocalisationData;
-	private static ZiplineLightData ziplineLightData;
-	private static UltrasonicLocalisationData ultrasonicLocalisationData;
-	private static UltrasonicNavigationData ultrasonicNavigationData;
-	private static BlockSearchingData blockSearchingData;
+	private ColorLocalisationData colorLocalisationData;
+	private ZiplineLightData ziplineLightData;
+	private UltrasonicLocalisationData ultrasonicLocalisationData;
+	private UltrasonicNavigationData ultrasonicNavigationData;
+	private BlockSearchingData blockSearchingData;
+	private OdometryCorrectionData odometryCorrectionData;
 
 	//Environmental and robot constants
-	private static int startingCorner;
-	private static final double TILE = 30.48;
-	private static final int BOARD_SIZE = 12;
-	private static final double WHEEL_RADIUS = 2.13;
-	private static final double TRACK = 9.7;
-	
-	
-	//This code can be used to find the timing of threads.
-	/*
-	private static Object lock = new Object();
+	private int startingCorner;
+	public static final double TILE = 30.48;
+	public static final int BOARD_SIZE = 12;
+	public static final double WHEEL_RADIUS = 2.13;
+	public static final double TRACK = 9.7;
+	public static final String FLIGHT_RECORD_FILE = "flight.bin";
+	//Delay between the back color sensor passing over the floor and the reading, in milliseconds. It is measured on the
+	//robot from the line centers only, so it excludes the width of the line and how late the waiting thread wakes up:
+	//the same line is crossed driving straight at two speeds, and the latency is the difference in the positions of the
+	//line found with a latency of 0 divided by the difference in speed. Both the localisation and the correction use it.
+	public static final int FLOOR_SENSOR_LATENCY = 300;
+	//Uncertainty of the estimate of the initial position, in centimeters and degrees
+	private static final double INITIAL_POSITION_DEVIATION = 6;
+	private static final double INITIAL_HEADING_DEVIATION = 180;
 	
-	private static int T1 = 0;
-	private static int T2 = 0;
-	
-	public static void toggleT1() {
-		synchronized(lock) {
-			long time = System.currentTimeMillis();
-			System.out.println(time + ", " + T1 +", "+ T2 );
-			T1 = (T1 == 0) ? 1 : 0;
-			System.out.println(time+1 + ", " + T1 +", "+T2 );
-		}
-	}
 	
-	public static void toggleT2() {
-		synchronized(lock) {
-			long time = System.currentTimeMillis();
-			System.out.println(time + ", " + T1 +", "+ T2 );
-			T2 = (T2 == 0) ? 1 : 0;
-			System.out.println(time+1 + ", " + T1 +", "+ T2 );
-		}
-	}*/
-
+	/**
+	 * Sets up the EV3 motors and sensors, waits for the game parameters and plays the game.
+	 * @param args  Not used
+	 */
 	public static void main(String[] args) {		
 
+		//Instantiate motors
+		EV3LargeRegulatedMotor leftMotor = new EV3LargeRegulatedMotor(LocalEV3.get().getPort("A"));
+		EV3LargeRegulatedMotor rightMotor = new EV3LargeRegulatedMotor(LocalEV3.get().getPort("D"));
+		EV3LargeRegulatedMotor armMotor = new EV3LargeRegulatedMotor(LocalEV3.get().getPort("C"));
+		EV3MediumRegulatedMotor frontMotor = new EV3MediumRegulatedMotor(LocalEV3.get().getPort("B"));
+
+		Port colorHorizontalPort = LocalEV3.get().getPort("S2");
+		Port colorVerticalPort = LocalEV3.get().getPort("S1");
+		Port colorSidePort = LocalEV3.get().getPort("S3");
+		Port usPort = LocalEV3.get().getPort("S4");
+
 		//Instantiate sensors
 		@SuppressWarnings("resource") 
 		SensorModes colorSensorHorizontal = new EV3ColorSensor(colorHorizontalPort);
 		SampleProvider colorHorizontalRed = colorSensorHorizontal.getMode("ColorID");
 		SampleProvider colorHorizontalRedMean = new MeanFilter(colorHorizontalRed, 7);
-		float[] colorHorizontalRedData = new float[colorHorizontalRedMean.sampleSize()];
 		
 		@SuppressWarnings("resource") 
 		SensorModes colorSensorVertical = new EV3ColorSensor(colorVerticalPort);
 		SampleProvider colorVerticalRed = colorSensorVertical.getMode("Red");
 		SampleProvider colorVerticalRedMean = new MeanFilter(colorVerticalRed, 7);
-		float[] colorVerticalRedData = new float[colorVerticalRedMean.sampleSize()];
 		
 		@SuppressWarnings("resource") 
 		SensorModes colorSensorSide = new EV3ColorSensor(colorSidePort);
 		SampleProvider colorSideRed = colorSensorSide.getMode("ColorID");
 		SampleProvider colorSideRedMean = new MeanFilter(colorSideRed, 7);
-		float[] colorSideRedData = new float[colorSideRedMean.sampleSize()];
 
 		@SuppressWarnings("resource") 
 		SensorModes usSensor = new EV3UltrasonicSensor(usPort);
 		SampleProvider usDistance = usSensor.getMode("Distance");
 		SampleProvider meanFilterUs = new MeanFilter(usDistance, 7);
-		float[] usData = new float[meanFilterUs.sampleSize()];
 		
 		final TextLCD t = LocalEV3.get().getTextLCD();
 		t.drawString("  READY  ", 0, 0);
 		//Get the game parameters
-		
-
-		gameParameters = WiFiGameParameters.getGameParameters(TILE);
-
+		GameParameters parameters = WiFiGameParameters.getGameParameters(TILE);
 
+		//Escape ends the program at any time, during the game or once it is over, and saves the flight record first
+		final MainController game = new MainController();
+		new Thread(new Runnable() {
+			public void run() {
+				while (Button.waitForAnyPress() != Button.ID_ESCAPE);
+				game.saveFlightRecord();
+				System.exit(0);
+			}
+		}).start();
 		
+		game.playGame(new EV3MotorAdapter(leftMotor), new EV3MotorAdapter(rightMotor), new EV3MotorAdapter(armMotor), new EV3MotorAdapter(frontMotor),
+				new EV3ColorSensorAdapter(colorVerticalRedMean), new EV3ColorSensorAdapter(colorHorizontalRedMean), new EV3ColorSensorAdapter(colorSideRedMean),
+				new EV3RangeSensorAdapter(/*meanFilterUs*/ usDistance), parameters, new SystemClock());
+	}
+	
+	/**
+	 * Sets up all the subtasks with the given motors and sensors and runs the flow of the game.
+	 * @param leftMotor  Reference to the left motor
+	 * @param rightMotor  Reference to the right motor
+	 * @param armMotor  Reference to the motor of the zipline pulley
+	 * @param frontMotor  Reference to the motor turning the front sensors
+	 * @param colorBack  Back color sensor facing the floor in red mode
+	 * @param colorFront  Front color sensor in color ID mode
+	 * @param colorSide  Side color sensor in color ID mode
+	 * @param usSensor  Ultrasonic sensor
+	 * @param parameters  Game parameters for this round
+	 * @param clock  The clock all the threads of the game run on
+	 */
+	public void playGame(DriveMotor leftMotor, DriveMotor rightMotor, DriveMotor armMotor, DriveMotor frontMotor,
+			ColorSensor colorBack, ColorSensor colorFront, ColorSensor colorSide, RangeSensor usSensor, GameParameters parameters, Clock clock) {
+		gameParameters = parameters;
 		determineStartingCorner();
 		
-		odometer = new Odometer(leftMotor, rightMotor, WHEEL_RADIUS, TRACK);
+		scheduler = new SensorScheduler(clock);
+		flightRecorder = new FlightRecorder(clock);
+		odometer = new Odometer(leftMotor, rightMotor, WHEEL_RADIUS, TRACK, scheduler);
 		setEstimateInitialPosition();
-		Display odometryDisplay = new Display(odometer, t);
-		//odometryDisplay.start();
-		odometer.startOdometerTimer();
+		odometer.startOdometer();
 		
 		colorLocalisationData = new ColorLocalisationData();
-		ziplineLightData = new ZiplineLightData();
-		ultrasonicLocalisationData = new UltrasonicLocalisationData();
+		ziplineLightData = new ZiplineLightData(clock);
+		ultrasonicLocalisationData = new UltrasonicLocalisationData(clock);
 		ultrasonicNavigationData = new UltrasonicNavigationData(rightMotor, leftMotor, TILE, BOARD_SIZE);
 		blockSearchingData = new BlockSearchingData(gameParameters, TEAM_NUMBER);
+		odometryCorrectionData = new OdometryCorrectionData(TILE);
 		
-		colorPoller = new ColorPoller(colorVerticalRedMean, colorVerticalRedData, colorHorizontalRedMean, colorHorizontalRedData, colorSideRedMean, colorSideRedData, colorLocalisationData, ziplineLightData, blockSearchingData);
-		ultrasonicPoller = new UltrasonicPoller(/*meanFilterUs*/ usDistance, usData, ultrasonicLocalisationData, ultrasonicNavigationData);
+		colorPoller = new ColorPoller(colorBack, colorFront, colorSide, colorLocalisationData, ziplineLightData, blockSearchingData, odometryCorrectionData, scheduler);
+		ultrasonicPoller = new UltrasonicPoller(usSensor, ultrasonicLocalisationData, ultrasonicNavigationData, scheduler);
+		colorPoller.setFloorSensorLatency(FLOOR_SENSOR_LATENCY);
+		odometer.setFlightRecorder(flightRecorder);
+		colorPoller.setFlightRecorder(flightRecorder);
+		ultrasonicPoller.setFlightRecorder(flightRecorder);
+		scheduler.start();
 		
-		navigation = new Navigation(odometer, rightMotor, leftMotor, WHEEL_RADIUS, TRACK, gameParameters);
-		localisation = new Localisation(odometer, navigation, ultrasonicPoller, colorPoller, rightMotor, leftMotor, TILE, startingCorner);
+		trajectoryFollower = new TrajectoryFollower(odometer, leftMotor, rightMotor, WHEEL_RADIUS, scheduler, clock);
+		navigation = new Navigation(odometer, rightMotor, leftMotor, WHEEL_RADIUS, TRACK, gameParameters, trajectoryFollower, clock);
+		localisation = new Localisation(odometer, navigation, ultrasonicPoller, colorPoller, rightMotor, leftMotor, TILE, startingCorner, clock);
 		
-		navigationController = new NavigationController(rightMotor, leftMotor, frontMotor, odometer, navigation, localisation, ultrasonicPoller, gameParameters, TILE);
+		navigationController = new NavigationController(rightMotor, leftMotor, frontMotor, odometer, navigation, localisation, ultrasonicPoller, colorPoller, gameParameters, TILE, BOARD_SIZE, clock);
 		localisationController = new LocalisationController(localisation, navigation, TILE, startingCorner, BOARD_SIZE);
-		ziplineController = new ZiplineController(odometer, colorPoller, rightMotor, leftMotor, armMotor, gameParameters);
-		blockSearchingController = new BlockSearchingController(odometer, navigationController, navigation, localisation, rightMotor, leftMotor, colorPoller, gameParameters, TILE, TEAM_NUMBER);
+		ziplineController = new ZiplineController(odometer, colorPoller, rightMotor, leftMotor, armMotor, gameParameters, clock);
+		blockSearchingController = new BlockSearchingController(odometer, navigationController, navigation, localisation, rightMotor, leftMotor, colorPoller, gameParameters, TILE, TEAM_NUMBER, clock);
 		
 		
 		//wheelbaseTestRoutine();
@@ -168,10 +195,21 @@ public class MainController {
 		rightMotor.forward();
 		while(Button.waitForAnyEvent() == Button.ID_ENTER);*/
 		/*
-		 * Here is the flow of tasks to run.
+		 * Here is the flow of tasks to run. The flight record is saved however the game ends.
 		 */
+		try {
+			playRound();
+		} finally {
+			saveFlightRecord();
+		}
+	}
+	
+	/**
+	 * Runs the flow of the game once every subtask is set up.
+	 */
+	private void playRound() {
 		localisationController.initialLocalisationRoutine();
-		Sound.beepSequenceUp();
+		Feedback.beepSequenceUp();
 		if(greenTeam) {
 			//Travel to zipline
 			navigationController.addWayPoint(gameParameters.ZO_G.x, gameParameters.ZO_G.y);
@@ -210,15 +248,61 @@ public class MainController {
 			returnToStartingCorner();
 		}
 		
-		Sound.playSample(new File("MarioCourseClearSound2.wav"), 100);
-		while (Button.waitForAnyPress() != Button.ID_ESCAPE);
-		System.exit(0);
+		Feedback.playSample("MarioCourseClearSound2.wav");
+		scheduler.printStatistics();
+	}
+	
+	/**
+	 * Saves the flight record to its file, once. Does nothing if the game has not started recording or if no file is set.
+	 */
+	public synchronized void saveFlightRecord() {
+		if (flightRecordSaved || flightRecorder == null || flightRecordFile == null) {
+			return;
+		}
+		flightRecordSaved = true;
+		try {
+			flightRecorder.flush(flightRecordFile);
+		} catch (IOException e) {
+			System.out.println("Flight record not saved : " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Returns the odometer of the game being played.
+	 * @return  The Odometer instance
+	 */
+	public Odometer getOdometer() {
+		return odometer;
+	}
+	
+	/**
+	 * Returns the scheduler running the periodic tasks of the game being played.
+	 * @return  The SensorScheduler instance
+	 */
+	public SensorScheduler getScheduler() {
+		return scheduler;
+	}
+	
+	/**
+	 * Returns the navigation controller of the game being played.
+	 * @return  The NavigationController instance
+	 */
+	public NavigationController getNavigationController() {
+		return navigationController;
+	}
+	
+	/**
+	 * Sets the file the flight record is saved to at the end of the game.
+	 * @param flightRecordFile  Name of the file, null to not save the flight record
+	 */
+	public void setFlightRecordFile(String flightRecordFile) {
+		this.flightRecordFile = flightRecordFile;
 	}
 	
 	/**
 	 * Makes the robot navigate back to its starting corner
 	 */
-	private static void returnToStartingCorner() {
+	private void returnToStartingCorner() {
 		switch (startingCorner) {
 		case 0:
 			navigationController.addWayPoint(TILE, TILE);
@@ -242,7 +326,7 @@ public class MainController {
 	 * Gets the game parameters to determine which is the starting corner of the system based
 	 * on the team number
 	 */
-	private static void determineStartingCorner() {
+	private void determineStartingCorner() {
 		if (gameParameters.GreenTeam == TEAM_NUMBER) {
 			startingCorner = gameParameters.GreenCorner;
 			greenTeam = true;
@@ -257,35 +341,32 @@ public class MainController {
 	
 	/**
 	 * Sets the estimate initial position of the robot in the odometer depending on the
-	 * game parameters.
+	 * game parameters. The heading is unknown until the ultrasonic localisation.
 	 */
-	private static void setEstimateInitialPosition() {
+	private void setEstimateInitialPosition() {
+		double x = 20;
+		double y = 20;
 		switch (startingCorner) {
-		case 0:
-			odometer.setX(20);
-			odometer.setY(20);
-			break;
 		case 1:
-			odometer.setX((BOARD_SIZE * TILE) - 20);
-			odometer.setY(20);
+			x = (BOARD_SIZE * TILE) - 20;
 			break;
 		case 2:
-			odometer.setX((BOARD_SIZE * TILE) - 20);
-			odometer.setY((BOARD_SIZE * TILE) - 20);
+			x = (BOARD_SIZE * TILE) - 20;
+			y = (BOARD_SIZE * TILE) - 20;
 			break;
 		case 3:
-			odometer.setX(20);
-			odometer.setY((BOARD_SIZE * TILE) - 20);
+			y = (BOARD_SIZE * TILE) - 20;
 			break;
 		default:
 			break;
 		}
+		odometer.resetPose(x, y, 0, INITIAL_POSITION_DEVIATION, INITIAL_HEADING_DEVIATION);
 	}
 	
 	/**
 	 * This method is used as a test to determine if the wheelbase of the robot is set to the right value
 	 */
-	private static void wheelbaseTestRoutine() {
+	private void wheelbaseTestRoutine() {
 		navigation.forward(TILE, false);
 		while (Button.waitForAnyPress() != Button.ID_ENTER);
 		navigation.turnTo(90);
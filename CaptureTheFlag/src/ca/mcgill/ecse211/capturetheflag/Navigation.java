@@ -4,7 +4,8 @@
 
 package ca.mcgill.ecse211.capturetheflag;
 
-import lejos.hardware.motor.EV3LargeRegulatedMotor;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * 
@@ -22,20 +23,27 @@ public class Navigation {
 	private static final int SLOW_ACCEL = 200;
 	private static final int FAST_ACCEL = 300;
 	
+	//Radius of the arcs cutting the corners of a path, and largest heading error left to the follower when starting one
+	private static final double BLEND_RADIUS = 10;
+	private static final double ALIGN_TOLERANCE = 5;
+	private static final long TRAVEL_TIMEOUT = 200;
+	
 	private final GameParameters gameParameters;
 	
 	private double interruptedTheta = -1;
 	
 	//Motors
-	private EV3LargeRegulatedMotor rightMotor;
-	private EV3LargeRegulatedMotor leftMotor;
+	private DriveMotor rightMotor;
+	private DriveMotor leftMotor;
 	
 	//Associations
 	private Odometer odometer;
+	private TrajectoryFollower trajectoryFollower;
 	
 	//Robot constants
 	private final double WHEEL_RADIUS;
 	private final double TRACK;
+	private final Clock clock;
 	
 	/**
 	 * Creates a Navigation object.
@@ -45,11 +53,16 @@ public class Navigation {
 	 * @param wheelRadius  Radius of the wheels of the robot (cm)
 	 * @param track  Radius of the wheelbase of the robot (cm)
 	 * @param gameParameters  The game parameters for this round
+	 * @param trajectoryFollower  Association to the TrajectoryFollower driving the motors along paths
+	 * @param clock  The clock of the system
 	 */
-	public Navigation(Odometer odometer, EV3LargeRegulatedMotor rightMotor, EV3LargeRegulatedMotor leftMotor, double wheelRadius, double track, GameParameters gameParameters) {
+	public Navigation(Odometer odometer, DriveMotor rightMotor, DriveMotor leftMotor, double wheelRadius, double track, GameParameters gameParameters,
+			TrajectoryFollower trajectoryFollower, Clock clock) {
+		this.clock = clock;
 		this.rightMotor = rightMotor;
 		this.leftMotor = leftMotor;
 		this.odometer = odometer;
+		this.trajectoryFollower = trajectoryFollower;
 		
 		this.WHEEL_RADIUS = wheelRadius;
 		this.TRACK = track;
@@ -59,31 +72,40 @@ public class Navigation {
 	/**
 	 * This method causes the robot to travel to the absolute field location (x,
 	 * y), specified in tilepoints by first adjusting its heading then moving forward.
+	 * The TrajectoryFollower keeps the robot on the straight line to the point with the odometer.
 	 * The returnThread boolean is used to determine if the thread should wait until the robot is done traveling to return
 	 * @param x  The target X position to travel to
 	 * @param y  The target Y position to travel to
 	 * @param returnThread  If true the thread does not wait for the travel to complete
 	 */
 	public void travelTo(double x, double y, boolean returnThread) {		
-		
-		double currentX = odometer.getX();
-		double currentY = odometer.getY();
-		
-		double nextHeading = Math.toDegrees(Math.atan2(x - currentX, y - currentY));
-
-		turnTo(nextHeading);
-		
-		try {
-			Thread.sleep(200);
-		} catch (InterruptedException e) {
-			
+		followPath(Collections.singletonList(new Coordinate(x, y)));
+		if (!returnThread) {
+			while (trajectoryFollower.isFollowing()) {
+				trajectoryFollower.awaitProgress(TRAVEL_TIMEOUT);
+			}
+			leftMotor.stop(true);
+			rightMotor.stop();
 		}
-	    
-	    double distance = Math.sqrt(Math.pow((y - currentY),2) + Math.pow((x - currentX),2));
-	    
-	    forward(distance, returnThread);
-	    
-	   
+	}
+	
+	/**
+	 * Makes the robot drive through a list of way points without stopping at each of them, the corners are cut by arcs.
+	 * The robot first turns in place to face the first way point if it is not already facing it, then the
+	 * TrajectoryFollower drives it and the method returns right away.
+	 * The progress along the path is given by the TrajectoryFollower.
+	 * @param wayPoints  Way points to go through, the robot stops on the last one
+	 */
+	public void followPath(List<Coordinate> wayPoints) {
+		Pose pose = odometer.getPose();
+		Trajectory trajectory = new Trajectory(pose.x, pose.y, wayPoints, BLEND_RADIUS, TRACK,
+				FORWARD_SPEED * Math.PI * WHEEL_RADIUS / 180, FAST_ACCEL * Math.PI * WHEEL_RADIUS / 180);
+		double heading = Math.toDegrees(trajectory.getStartHeading());
+		double headingError = Math.abs(heading - pose.thetaDegrees) % 360;
+		if (trajectory.getLength() > 0 && Math.min(headingError, 360 - headingError) > ALIGN_TOLERANCE) {
+			turnTo(heading);
+		}
+		trajectoryFollower.start(trajectory, FAST_ACCEL);
 	}
 	
 	/**
@@ -91,6 +113,9 @@ public class Navigation {
 	 * @param theta  Target heading to turn to
 	 */
 	public void turnTo(double theta) {
+		//both wheels must be at rest for the rotations to turn the robot in place, they are stopped together such that the robot does not yaw
+		leftMotor.stop(true);
+		rightMotor.stop();
 		leftMotor.setSpeed(ROTATE_SPEED);
 	    rightMotor.setSpeed(ROTATE_SPEED);
 		double currentTheta = odometer.getThetaDegrees();
@@ -141,19 +166,22 @@ public class Navigation {
 	/**
 	 * This method interrupts the current navigation of the robot. This interruption
 	 * is likely due it the ultrasonic sensor detecting an object in the robots trajectory.
+	 * The method returns as soon as the turn is started such that it can be called from a periodic task,
+	 * the caller can know when the turn is done by looking if the motors are moving.
 	 * @param turnRight  If true the robot turns right 90 upon interruption, if false it turn left by 90
 	 */
 	public void interruptNav(boolean turnRight) {
+		trajectoryFollower.stop();
 		rightMotor.stop(true);
-		leftMotor.stop();
+		leftMotor.stop(true);
 		int polarity = 1;
 		if (!turnRight) {
 			polarity = -1;
 		}
 		leftMotor.rotate(polarity * convertAngle(WHEEL_RADIUS, TRACK, 90), true); //when an object is detected, we turn to starting to follow it as a wall.
-	    rightMotor.rotate(- polarity * convertAngle(WHEEL_RADIUS, TRACK, 90), false);
+	    rightMotor.rotate(- polarity * convertAngle(WHEEL_RADIUS, TRACK, 90), true);
 	    
-	    setInterruptedTheta((int) odometer.getThetaDegrees());
+	    setInterruptedTheta((int) ((odometer.getThetaDegrees() + polarity * 90 + 360) % 360)); //heading once the turn is done
 	}
 
 	/**
@@ -178,6 +206,14 @@ public class Navigation {
 		return convertDistance(radius, Math.PI * width * angle / 360.0);
 	}
 	
+	/**
+	 * Returns the TrajectoryFollower driving the robot along the paths given to followPath.
+	 * @return  The TrajectoryFollower
+	 */
+	public TrajectoryFollower getTrajectoryFollower() {
+		return trajectoryFollower;
+	}
+	
 	/**
 	 * Saves the heading at which the navigation got interrupted.
 	 * @param theta  New theta to be set
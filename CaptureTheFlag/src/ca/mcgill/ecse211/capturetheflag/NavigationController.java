@@ -4,14 +4,12 @@
 
 package ca.mcgill.ecse211.capturetheflag;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
 import ca.mcgill.ecse211.capturetheflag.GameParameters.Zone;
 import ca.mcgill.ecse211.capturetheflag.UltrasonicPoller.UltrasonicPollingState;
-import lejos.hardware.Sound;
-import lejos.hardware.motor.EV3LargeRegulatedMotor;
-import lejos.hardware.motor.EV3MediumRegulatedMotor;
 
 /**
  * 
@@ -19,6 +17,9 @@ import lejos.hardware.motor.EV3MediumRegulatedMotor;
  * point using Navigation and wall following around an obstacle to avoid it
  * using PController logic.
  * A state machine is used to determine the current state of the navigation and adjusts its behavior accordingly to its state.
+ * The state machine is driven by events instead of polling: the TrajectoryFollower posts the way points passed, the end
+ * of the path and the need to relocalise, and the UltrasonicNavigationData posts the obstacles detected and the end of
+ * the avoidance. The events are queued and the controller thread wakes up as soon as one is posted.
  * 
  * @author Michael Vaquier
  * @author Oliver Clark
@@ -27,28 +28,62 @@ import lejos.hardware.motor.EV3MediumRegulatedMotor;
 public class NavigationController {
 
 	// Locks used for threading
-	private static Object stateLock = new Object();
+	private final Object stateLock = new Object();
 
 	private List<Coordinate> coordinateList = new LinkedList<Coordinate>();
 	private volatile boolean objectDetection = false;
-	private static NavigationState state = NavigationState.READY;
+	private NavigationState state = NavigationState.READY;
+	private final List<NavigationStateListener> stateListeners = new ArrayList<NavigationStateListener>();
 	
-	private static int RELOCALISATION_CONSTANT = 5;
+	//Uncertainty of the position in centimeters allowed along the path, and above which the robot localises right away
+	private static final double RELOCALISATION_BOUND = 4;
+	private static final double MAX_UNCERTAINTY = 6;
+	private Coordinate relocalisationPoint = null;
+	
+	//End of the leg driven through an intersection to localise without spinning, in tiles across and along the direction of travel
+	private static final double DRIVE_THROUGH_ACROSS = 1;
+	private static final double DRIVE_THROUGH_ALONG = 1.5;
+	
+	//Path driven by the follower without stopping, up to a sharp corner, the relocalisation point or the last way point
+	private static final double MAX_BLEND_TURN = 100;
+	private List<Coordinate> pathWayPoints;
+	private int wayPointsRemoved = 0;
+	
+	//Number of times no path was found by the planner
+	private volatile int planningFailures = 0;
+	
+	//Obstacles detected and not yet added to the planner, and way points given before the path was planned
+	private static final double OBSTACLE_CLEARANCE = 20;
+	private final List<Coordinate> detectedObstacles = new ArrayList<Coordinate>();
+	private boolean obstaclesPlanned = false;
+	private List<Coordinate> destinations = new ArrayList<Coordinate>();
+	private int destinationsReached = 0;
+	
+	//Events posted by the other threads, the signal is latched: one sent while the controller is not waiting is kept for the next wait
+	private final LinkedList<NavigationEvent> events = new LinkedList<NavigationEvent>();
+	private final Object eventLock = new Object();
+	private final Signal eventSignal;
 	private final GameParameters gameParameters;
 	private final double TILE;
+	private final Clock clock;
 
 	// Associations
 	private Odometer odometer;
 	private Navigation navigation;
 	private Localisation localisation;
+	private ZoneMap zoneMap;
+	private PathPlanner pathPlanner;
+	private RelocalisationPlanner relocalisationPlanner;
+	private TrajectoryFollower trajectoryFollower;
 	
 	//Poller
 	private UltrasonicPoller ultrasonicPoller;
+	private ColorPoller colorPoller;
 
 	// Motors
-	private EV3LargeRegulatedMotor rightMotor;
-	private EV3LargeRegulatedMotor leftMotor;
-	private EV3MediumRegulatedMotor frontMotor;
+	private DriveMotor rightMotor;
+	private DriveMotor leftMotor;
+	private DriveMotor frontMotor;
 
 	/**
 	 * This enumeration defines the states in which the navigation controller can be in.
@@ -58,6 +93,24 @@ public class NavigationController {
 	public enum NavigationState {
 		NAVIGATING, AVOIDING, READY
 	}
+	
+	/**
+	 * This enumeration defines the events the navigation controller reacts to.
+	 * @author Michael Vaquier
+	 *
+	 */
+	public enum NavigationEvent {
+		/** The robot passed a way point of the path */
+		WAYPOINT_PASSED,
+		/** The robot reached the end of the path */
+		MOTION_COMPLETE,
+		/** The uncertainty of the odometer went over the largest uncertainty allowed */
+		RELOCALISATION_NEEDED,
+		/** An obstacle was detected in front of the robot, which started to go around it */
+		OBSTACLE_DETECTED,
+		/** The robot went around the obstacle and faces the opposite of its heading when it was detected */
+		AVOIDANCE_FINISHED
+	}
 
 	/**
 	 * Creates a NavigationController object.
@@ -68,11 +121,16 @@ public class NavigationController {
 	 * @param navigation  Association to a Navigation instance
 	 * @param localisation  Association to a Localisation instance
 	 * @param ultrasonicPoller  Association to an UltrasonicPoller
+	 * @param colorPoller  Association to a ColorPoller, used to correct the odometer while navigating
 	 * @param gameParameters  Game parameters for this round
 	 * @param TILE  The  tile length of the game board
+	 * @param boardSize  Size of the board (number of tiles on one side)
+	 * @param clock  The clock of the system
 	 */
-	public NavigationController(EV3LargeRegulatedMotor rightMotor, EV3LargeRegulatedMotor leftMotor, EV3MediumRegulatedMotor frontMotor,
-			Odometer odometer, Navigation navigation, Localisation localisation, UltrasonicPoller ultrasonicPoller, GameParameters gameParameters, double TILE) {
+	public NavigationController(DriveMotor rightMotor, DriveMotor leftMotor, DriveMotor frontMotor,
+			Odometer odometer, Navigation navigation, Localisation localisation, UltrasonicPoller ultrasonicPoller, ColorPoller colorPoller, GameParameters gameParameters, double TILE, int boardSize, Clock clock) {
+		this.clock = clock;
+		this.eventSignal = clock.newLatchedSignal();
 		this.rightMotor = rightMotor;
 		this.leftMotor = leftMotor;
 		this.frontMotor = frontMotor;
@@ -82,15 +140,24 @@ public class NavigationController {
 		this.odometer = odometer;
 		this.navigation = navigation;
 		this.localisation = localisation;
+		this.trajectoryFollower = navigation.getTrajectoryFollower();
 		
 		this.ultrasonicPoller = ultrasonicPoller;
+		this.colorPoller = colorPoller;
 		
 		this.gameParameters = gameParameters;
 		this.TILE = TILE;
+		this.zoneMap = new ZoneMap(gameParameters, TILE, boardSize);
+		this.pathPlanner = new PathPlanner(zoneMap, gameParameters, TILE);
+		this.relocalisationPlanner = new RelocalisationPlanner(zoneMap, gameParameters, TILE, MainController.TRACK, RELOCALISATION_BOUND);
 		
 		ultrasonicPoller.getUltrasonicNavigationData().setNavigation(navigation);
 		ultrasonicPoller.getUltrasonicNavigationData().setNavigationController(this);
 		ultrasonicPoller.getUltrasonicNavigationData().setOdometer(odometer);
+		addNavigationStateListener(ultrasonicPoller.getUltrasonicNavigationData());
+		colorPoller.getOdometryCorrectionData().setOdometer(odometer);
+		trajectoryFollower.setNavigationController(this);
+		trajectoryFollower.setMaxUncertainty(MAX_UNCERTAINTY);
 	}
 
 	/**
@@ -100,445 +167,360 @@ public class NavigationController {
 	 */
 	public void runNavigationTask(boolean rectangularPath) {
 
+		destinations = new ArrayList<Coordinate>(coordinateList);
+		destinationsReached = 0;
 		if (rectangularPath) {
-			try {
-				System.out.println("Dest : " + coordinateList.get(0).x + " " + coordinateList.get(0).y);
-				recursivePath(0);
-			} catch (StackOverflowError e) {
-				Sound.buzz();
-				Coordinate bridgeMid = new Coordinate((gameParameters.SV_UR.x + gameParameters.SV_LL.x) / 2, (gameParameters.SH_UR.y + gameParameters.SH_LL.y) / 2);
-				Coordinate destination= new Coordinate(coordinateList.get(coordinateList.size()-1).x,coordinateList.get(coordinateList.size()-1).y);
-				Coordinate SVmid1=new Coordinate((gameParameters.SV_UR.x+gameParameters.SV_LL.x)/2,gameParameters.SV_UR.y);
-				Coordinate SVmid2=new Coordinate(gameParameters.SV_UR.x,(gameParameters.SV_UR.y+gameParameters.SV_LL.y)/2);
-				Coordinate SVmid3=new Coordinate((gameParameters.SV_UR.x+gameParameters.SV_LL.x)/2,gameParameters.SV_LL.y);
-				Coordinate SVmid4=new Coordinate(gameParameters.SV_LL.x,(gameParameters.SV_UR.y+gameParameters.SV_LL.y)/2);
-				
-				Coordinate SHmid1=new Coordinate((gameParameters.SH_UR.x+gameParameters.SH_LL.x)/2,gameParameters.SH_UR.y);
-				Coordinate SHmid2=new Coordinate(gameParameters.SH_UR.x,(gameParameters.SH_UR.y+gameParameters.SH_LL.y)/2);
-				Coordinate SHmid3=new Coordinate((gameParameters.SH_UR.x+gameParameters.SH_LL.x)/2,gameParameters.SH_LL.y);
-				Coordinate SHmid4=new Coordinate(gameParameters.SH_LL.x,(gameParameters.SH_UR.y+gameParameters.SH_LL.y)/2);
-				
-				Coordinate Greenside=bridgeMid;
-				Coordinate Redside=bridgeMid;
-				if(edgecheck(SVmid1)==10)
-				{
-					Greenside=SVmid1;
-				}
-				else if(edgecheck(SVmid2)==10)
-				{
-					Greenside=SVmid2;
-				}
-				else if(edgecheck(SVmid3)==10)
-				{
-					Greenside=SVmid3;
-				}
-				else if(edgecheck(SVmid4)==10)
-				{
-					Greenside=SVmid4;
-				}
-				else if(edgecheck(SHmid1)==10)
-				{
-					Greenside=SHmid1;
-				}
-				else if(edgecheck(SHmid2)==10)
-				{
-					Greenside=SHmid2;
-				}
-				else if(edgecheck(SHmid3)==10)
-				{
-					Greenside=SHmid3;
-				}
-				else if(edgecheck(SHmid4)==10)
-				{
-					Greenside=SHmid4;
-				}
-				
-				
-				if(edgecheck(SVmid1)==20)
-				{
-					Redside=SVmid1;
-				}
-				else if(edgecheck(SVmid2)==20)
-				{
-					Redside=SVmid2;
-				}
-				else if(edgecheck(SVmid3)==20)
-				{
-					Redside=SVmid3;
-				}
-				else if(edgecheck(SVmid4)==20)
-				{
-					Redside=SVmid4;
-				}
-				else if(edgecheck(SHmid1)==20)
-				{
-					Redside=SHmid1;
-				}
-				else if(edgecheck(SHmid2)==20)
-				{
-					Redside=SHmid2;
-				}
-				else if(edgecheck(SHmid3)==20)
-				{
-					Redside=SHmid3;
-				}
-				else if(edgecheck(SHmid4)==20)
-				{
-					Redside=SHmid4;
-				}
-				
-				while(coordinateList.isEmpty()!=true)
-				{
-					coordinateList.remove(coordinateList.size()-1);
-				}
-				
-				coordinateList.add(0, closestIntersection());//TODO hardcoding option				
-				if(mapPoint(closestIntersection())==Zone.GREEN && mapPoint(destination)!=Zone.GREEN)
-				{
-					
-					coordinateList.add(gameParameters.ZO_G);
-					coordinateList.add(Greenside);
-					coordinateList.add(bridgeMid);
-					coordinateList.add(Redside);
-					coordinateList.add(gameParameters.ZO_R);
-					
-				}
-				else if(mapPoint(closestIntersection())==Zone.RED && mapPoint(destination)!=Zone.RED)
-				{
-					coordinateList.add(gameParameters.ZO_R);
-					coordinateList.add(Redside);
-					coordinateList.add(bridgeMid);
-					coordinateList.add(Greenside);
-					coordinateList.add(gameParameters.ZO_G);
-				}
-				else if(mapPoint(closestIntersection())==Zone.GREEN && mapPoint(destination)==Zone.GREEN)
-				{
-					coordinateList.add(gameParameters.ZO_G);
-				}
-				else if(mapPoint(closestIntersection())==Zone.RED && mapPoint(destination)==Zone.RED)
-				{
-					coordinateList.add(gameParameters.ZO_R);
-				}
-				coordinateList.add(destination);
+			if (!planAroundObstacles()) {
+				Feedback.buzz();
 			}
 		}
 		if (objectDetection) {
 			ultrasonicPoller.startPolling(UltrasonicPollingState.NAVIGATION);
 		}
+		colorPoller.startCorrection();
 
+		setNavigationState(NavigationState.READY);
 		while (!coordinateList.isEmpty()) {
-			Coordinate point = coordinateList.get(0);
-			switch (getNavigationState()) {
-			case READY:
-				navigation.travelTo(point.x, point.y, true);
-				setNavigationState(NavigationState.NAVIGATING);
+			if (getNavigationState() == NavigationState.READY) {
+				startPath();
+			}
+			NavigationEvent event = nextEvent();
+			switch (event) {
+			case WAYPOINT_PASSED:
+				removePassedWayPoints();
 				break;
-			case NAVIGATING:
-				if (!rightMotor.isMoving() && !leftMotor.isMoving()) {
-					if (!coordinateList.isEmpty())
-						coordinateList.remove(0);
-					setNavigationState(NavigationState.READY);
-				} else {
-					if (odometer.getDistanceSinceLastLocalisation() > TILE * RELOCALISATION_CONSTANT) {
-						Coordinate closestIntersection = closestIntersection();
-						Zone zoneOfIntersection = mapPoint(closestIntersection);
-						if (zoneOfIntersection != Zone.RIVER && !closestIntersection.equals(gameParameters.ZC_G) && !closestIntersection.equals(gameParameters.ZC_R)) {
-							double currentTheta = odometer.getThetaDegrees();
-							double nextHeading = Math.toDegrees(Math.atan2(closestIntersection.x - odometer.getX(), closestIntersection.y - odometer.getY()));
-							double rightRotation = nextHeading - currentTheta;
-							if (rightRotation < 0) {
-								rightRotation = rightRotation + 360;
-							}
-							double leftRotation = currentTheta - nextHeading;
-							if (leftRotation < 0) {
-								leftRotation = leftRotation + 360;
-							}
-							if (rightRotation < 60 || leftRotation < 60) {
-								rightMotor.stop(true);
-								leftMotor.stop();
-								navigation.travelTo(closestIntersection.x, closestIntersection.y, false);
-								localisation.colorLocalisation(false);
-								if(rectangularPath) {
-									recursivePath(0);
-								}
-								setNavigationState(NavigationState.READY);
-							}
-						}
-					}
+			case MOTION_COMPLETE:
+				removePassedWayPoints();
+				if (pathWayPoints.get(pathWayPoints.size() - 1).equals(relocalisationPoint)) {
+					colorPoller.stopCorrection();
+					localisation.colorLocalisation(false);
+					colorPoller.startCorrection();
+				}
+				setNavigationState(NavigationState.READY);
+				break;
+			case RELOCALISATION_NEEDED:
+				if (getNavigationState() == NavigationState.NAVIGATING && trajectoryFollower.isFollowing()) {
+					relocaliseNow(rectangularPath);
 				}
-
 				break;
-			case AVOIDING:
-				int interrupted = (int) navigation.getInterruptedTheta();
-				int current = (int) odometer.getThetaDegrees();
-				int difference = Math.abs(interrupted - current);
-				if (difference < 195 && difference > 165) { // when the robot is pointing to the opposite direction after it was interrupted, we can start navigating again.
-					setNavigationState(NavigationState.READY);
+			case OBSTACLE_DETECTED:
+				removePassedWayPoints(); //the UltrasonicNavigationData stopped the path and follows the obstacle
+				addDetectedObstacles();
+				break;
+			case AVOIDANCE_FINISHED:
+				if (getNavigationState() == NavigationState.AVOIDING) {
 					frontMotor.rotateTo(0, true);
+					if (rectangularPath) {
+						replanAfterAvoidance();
+					}
+					setNavigationState(NavigationState.READY);
 				}
 				break;
 			default:
 				break;
 			}
-			try {
-				Thread.sleep(200);
-			} catch (InterruptedException e) {
-
-			}
 		}
 		ultrasonicPoller.stopPolling();
+		colorPoller.stopCorrection();
 	}
 	
 	/**
-	 * Returns the coordinate of the closest intersection from the robot from its odometer values.
-	 * @return  The closest intersection Coordinate from the robot
+	 * Starts driving the next path, from the robot to the next sharp corner, the relocalisation point or the last way point.
+	 * The events left from before are dropped, they do not concern the new path.
 	 */
-	public Coordinate closestIntersection() {
-		return new Coordinate(localisation.getClosestMultiple(odometer.getX()), localisation.getClosestMultiple(odometer.getY()));
+	private void startPath() {
+		planRelocalisation();
+		pathWayPoints = new ArrayList<Coordinate>(coordinateList.subList(0, pathEnd() + 1));
+		wayPointsRemoved = 0;
+		clearEvents();
+		navigation.followPath(pathWayPoints);
+		setNavigationState(NavigationState.NAVIGATING);
 	}
 	
 	/**
-	 * Returns an integer depending on the zone a point is in
-	 * @param node  The point to check
-	 * @return  10 for green zone, 20 for red zone and -10 for the rest
+	 * Removes the way points the TrajectoryFollower passed from the list of way points, and counts the destinations reached.
 	 */
-	public int edgecheck(Coordinate node)
-	{
-		if(node.x >= gameParameters.Green_LL.x && node.x <= gameParameters.Green_UR.x && node.y >= gameParameters.Green_LL.y && node.y <= gameParameters.Green_UR.y)
-		{
-			return 10;
-		}
-		else if(node.x >= gameParameters.Red_LL.x && node.x<= gameParameters.Red_UR.x && node.y >= gameParameters.Red_LL.y && node.y <= gameParameters.Red_UR.y)
-		{
-			return 20;
+	private void removePassedWayPoints() {
+		int passed = trajectoryFollower.getWayPointsPassed();
+		while (wayPointsRemoved < passed && !coordinateList.isEmpty()) {
+			Coordinate wayPoint = coordinateList.remove(0);
+			if (destinationsReached < destinations.size() && wayPoint.equals(destinations.get(destinationsReached))) {
+				destinationsReached++;
+			}
+			wayPointsRemoved++;
 		}
-		return -10;
-
 	}
-
 	
 	/**
-	 * This method takes as input a list of Coordinates and modifies the object such
-	 * that the new path is rectangular and avoids physical features on the board
-	 * @param i  The index at which the path modification should start
-	 * 
-	 * @author Michael Vaquier
-	 * @author Yujing Duan
-	 * 
-	 * @return  Returns true if a path was found, false otherwise
+	 * Localises at the closest intersection when the robot drifted more than planned. Nothing is done if the
+	 * closest intersection cannot be used or is not ahead of the robot, the follower posts the event again further along the path.
+	 * @param rectangularPath  True if the path is planned again from the intersection
 	 */
-	public boolean recursivePath(int i) throws StackOverflowError {
-		if(i == 0) {
-			System.out.println("start : " + closestIntersection().x + " " + closestIntersection().y);
-			coordinateList.add(0, closestIntersection());
-			for(Coordinate coord : coordinateList) {
-				if (mapPoint(coord) == Zone.RIVER || coord.equals(gameParameters.ZC_R) || coord.equals(gameParameters.ZC_G)) {
-					return false;
-				}
+	private void relocaliseNow(boolean rectangularPath) {
+		Coordinate closestIntersection = closestIntersection();
+		if (!relocalisationPlanner.canLocalise(closestIntersection)) {
+			return;
+		}
+		Pose pose = odometer.getPose();
+		double currentTheta = pose.thetaDegrees;
+		double nextHeading = Math.toDegrees(Math.atan2(closestIntersection.x - pose.x, closestIntersection.y - pose.y));
+		double rightRotation = nextHeading - currentTheta;
+		if (rightRotation < 0) {
+			rightRotation = rightRotation + 360;
+		}
+		double leftRotation = currentTheta - nextHeading;
+		if (leftRotation < 0) {
+			leftRotation = leftRotation + 360;
+		}
+		if (rightRotation < 60 || leftRotation < 60) {
+			trajectoryFollower.stop();
+			removePassedWayPoints();
+			colorPoller.stopCorrection();
+			Coordinate legEnd = driveThroughLegEnd(closestIntersection, pose);
+			if (legEnd == null || !localisation.driveThroughLocalisation(legEnd.x, legEnd.y)) {
+				navigation.travelTo(closestIntersection.x, closestIntersection.y, false);
+				localisation.colorLocalisation(false);
+			}
+			colorPoller.startCorrection();
+			if(rectangularPath) {
+				planPath();
 			}
+			setNavigationState(NavigationState.READY);
 		}
-		if (i >= 5) {
-			boolean repeat = false;
-			for (int k = 3; (k <= (i + 1) / 2); k++) {
-				if (repeat == true) {
-					break;
-				}
-				int counter = 0;
-				for (int j = 0; j < k; j++) {
-					if (coordinateList.get(i - j).equals(coordinateList.get(i - j - k))) {
-						counter++;
-						if (counter == k) {
-							repeat = true;
-							break;
-						}
-					}
-				}
+	}
+	
+	/**
+	 * Finds where to drive to localise through an intersection without spinning. The leg goes through the intersection
+	 * at an angle with the direction of travel, such that the back sensor crosses both lines through the intersection
+	 * and the next line ahead, far enough apart across the direction of travel to tell the heading.
+	 * The leg goes to the side of the intersection away from the robot, otherwise the sensor does not cross the line
+	 * along the direction of travel. Either side works when the robot travels on that line.
+	 * @param intersection  The intersection to drive through
+	 * @param pose  Current pose of the robot
+	 * @return  The end of the leg, null if no leg ends on a point the robot can reach
+	 */
+	private Coordinate driveThroughLegEnd(Coordinate intersection, Pose pose) {
+		boolean alongY = Math.abs(Math.cos(pose.theta)) > Math.abs(Math.sin(pose.theta));
+		double forward = Math.signum(alongY ? Math.cos(pose.theta) : Math.sin(pose.theta));
+		double offset = alongY ? intersection.x - pose.x : intersection.y - pose.y;
+		for (int side = 1; side >= -1; side -= 2) {
+			if (Math.abs(offset) > TILE / 4 && side != Math.signum(offset)) {
+				continue;
 			}
-			if (repeat) {
-				return false;
+			double across = side * DRIVE_THROUGH_ACROSS * TILE;
+			double along = forward * DRIVE_THROUGH_ALONG * TILE;
+			Coordinate end = alongY ? new Coordinate(intersection.x + across, intersection.y + along)
+					: new Coordinate(intersection.x + along, intersection.y + across);
+			Coordinate middle = new Coordinate(0.5 * (intersection.x + end.x), 0.5 * (intersection.y + end.y));
+			if (pathPlanner.canUse(end) && pathPlanner.canUse(middle) && mapPoint(middle) == mapPoint(intersection)
+					&& mapPoint(end) == mapPoint(intersection)) {
+				return end;
 			}
 		}
-		if(i == coordinateList.size() - 1) {
-			removeRedundantPoints();
+		return null;
+	}
+	
+	/**
+	 * Plans the path to the destinations not reached yet again once the robot went around an obstacle, from the closest
+	 * intersection and around every obstacle detected. If no path is found the robot drives straight to the next destination.
+	 */
+	private void replanAfterAvoidance() {
+		if (destinationsReached >= destinations.size()) {
+			return;
+		}
+		coordinateList = new LinkedList<Coordinate>(destinations.subList(destinationsReached, destinations.size()));
+		planAroundObstacles();
+	}
+	
+	/**
+	 * Plans the path around the obstacles detected so far. If the obstacles close every path, for example when the other robot
+	 * stands on the bridge, they are forgotten and the path is planned again without them.
+	 * @return  True if a path was found
+	 */
+	private boolean planAroundObstacles() {
+		if (planPath()) {
 			return true;
 		}
-		Coordinate ithCoordinate = coordinateList.get(i);
-		Coordinate nextCoordinate = coordinateList.get(i + 1);
-		Coordinate bridgeMid = new Coordinate((gameParameters.SV_UR.x + gameParameters.SV_LL.x) / 2, (gameParameters.SH_UR.y + gameParameters.SH_LL.y) / 2);
-		if (ithCoordinate.y == nextCoordinate.y) {
-			if (mapPoint(ithCoordinate) == mapPoint(nextCoordinate) || mapPoint(nextCoordinate) == Zone.BRIDGE || mapPoint(ithCoordinate) == Zone.BRIDGE) {
-				if (obstacleCheck(ithCoordinate, nextCoordinate) && recursivePath(i + 1)) {
-					return true;
-				} else {
-					Coordinate option;
-					Coordinate previous = null;
-					Coordinate goal;
-					int[] currentStatus = {0};
-					if(i > 0) {
-						previous = coordinateList.get(i - 1);
-					}
-					if(mapPoint(ithCoordinate) == Zone.BRIDGE) {
-						goal = nextCoordinate;
-					}
-					else if(mapPoint(ithCoordinate) == Zone.GREEN) {
-						goal = gameParameters.ZO_G;
-					}
-					else if(mapPoint(ithCoordinate) == Zone.RED) {
-						goal = gameParameters.ZO_R;
-					}
-					else {
-						goal = nextCoordinate;
-					}
-					for(int j = 0; j < 8; j++) {
-						if (mapPoint(ithCoordinate) == Zone.BRIDGE) {
-							option = closeShift(ithCoordinate, goal, currentStatus, true, true);
-						} else {
-							option = closeShift(ithCoordinate, goal, currentStatus, true, false);
-						}
-						if (mapPoint(option) != Zone.RIVER && !option.equals(previous)) {
-							coordinateList.add(i + 1, option);
-							if (recursivePath(i + 1)) {
-								return true;
-							}
-							coordinateList.remove(i + 1);
-						}
-					}
-					return false;
-				}
+		if (!obstaclesPlanned) {
+			return false;
+		}
+		pathPlanner.clearObstacles();
+		obstaclesPlanned = false;
+		return planPath();
+	}
+	
+	/**
+	 * Writes the obstacles detected since the last call into the lattice of the path planner.
+	 */
+	private void addDetectedObstacles() {
+		synchronized (eventLock) {
+			for (Coordinate obstacle : detectedObstacles) {
+				pathPlanner.addObstacle(obstacle, OBSTACLE_CLEARANCE);
+				obstaclesPlanned = true;
 			}
-			else {
-				coordinateList.add(i + 1, bridgeMid);
-				if (recursivePath(i)) {
-					return true;
+			detectedObstacles.clear();
+		}
+	}
+	
+	/**
+	 * Reports an obstacle in front of the robot and posts the OBSTACLE_DETECTED event. Can be called from any thread.
+	 * @param x  X value of the point of the obstacle seen
+	 * @param y  Y value of the point of the obstacle seen
+	 */
+	public void postObstacle(double x, double y) {
+		synchronized (eventLock) {
+			detectedObstacles.add(new Coordinate(x, y));
+		}
+		postEvent(NavigationEvent.OBSTACLE_DETECTED);
+	}
+	
+	/**
+	 * Queues an event for the controller thread and wakes it up. Can be called from any thread.
+	 * @param event  The event to handle
+	 */
+	public void postEvent(NavigationEvent event) {
+		synchronized (eventLock) {
+			events.add(event);
+		}
+		eventSignal.signal();
+	}
+	
+	/**
+	 * Returns the next event, waiting for one if the queue is empty. The signal is latched, so an event posted
+	 * between the check of the queue and the wait is not missed.
+	 * @return  The next event
+	 */
+	private NavigationEvent nextEvent() {
+		while (true) {
+			synchronized (eventLock) {
+				if (!events.isEmpty()) {
+					return events.removeFirst();
 				}
-				coordinateList.remove(i + 1);
-				return false;
 			}
+			eventSignal.await();
 		}
-		
-		else if (ithCoordinate.x == nextCoordinate.x) {
-			if (mapPoint(ithCoordinate) == mapPoint(nextCoordinate) || mapPoint(nextCoordinate) == Zone.BRIDGE || mapPoint(ithCoordinate) == Zone.BRIDGE) {
-				if (obstacleCheck(ithCoordinate, nextCoordinate) && recursivePath(i + 1)) {
-					return true;
-				} else {
-					Coordinate option;
-					Coordinate previous = null;
-					Coordinate goal;
-					int[] currentStatus = {0};
-					if(i > 0) {
-						previous = coordinateList.get(i - 1);
-					}
-					if(mapPoint(ithCoordinate) == Zone.BRIDGE) {
-						goal = nextCoordinate;
-					}
-					else if(mapPoint(ithCoordinate) == Zone.GREEN) {
-						goal = gameParameters.ZO_G;
-					}
-					else if(mapPoint(ithCoordinate) == Zone.RED) {
-						goal = gameParameters.ZO_R;
-					}
-					else {
-						goal = nextCoordinate;
-					}
-					for (int j = 0; j < 8; j++) {
-						if (mapPoint(ithCoordinate) == Zone.BRIDGE) {
-							option = closeShift(ithCoordinate, goal, currentStatus, true, true);
-						} else {
-							option = closeShift(ithCoordinate, goal, currentStatus, false, true);
-						}
-						if (mapPoint(option) != Zone.RIVER && !option.equals(previous)) {
-							coordinateList.add(i + 1, option);
-							if (recursivePath(i + 1)) {
-								return true;
-							}
-							coordinateList.remove(i + 1);
-						}
-					}
-					return false;
-				}
+	}
+	
+	/**
+	 * Drops the events in the queue.
+	 */
+	private void clearEvents() {
+		synchronized (eventLock) {
+			events.clear();
+		}
+	}
+	
+	/**
+	 * Finds the last way point the robot can drive to without stopping: the robot stops at the relocalisation point
+	 * and at the corners too sharp to be cut by an arc.
+	 * @return  Index of the last way point of the next path
+	 */
+	private int pathEnd() {
+		Pose pose = odometer.getPose();
+		double fromX = pose.x;
+		double fromY = pose.y;
+		for (int i = 0; i < coordinateList.size() - 1; i++) {
+			Coordinate point = coordinateList.get(i);
+			if (point.equals(relocalisationPoint)) {
+				return i;
 			}
-			else {
-				coordinateList.add(i + 1, bridgeMid);
-				if (recursivePath(i)) {
-					return true;
+			if (Math.hypot(point.x - fromX, point.y - fromY) >= 1) {
+				if (!Trajectory.canBlend(fromX, fromY, point, coordinateList.get(i + 1), MAX_BLEND_TURN)) {
+					return i;
 				}
-				coordinateList.remove(i + 1);
-				return false;
+				fromX = point.x;
+				fromY = point.y;
 			}
 		}
-		
-		else {
-			if (mapPoint(ithCoordinate) == mapPoint(nextCoordinate) || mapPoint(nextCoordinate) == Zone.BRIDGE || mapPoint(ithCoordinate) == Zone.BRIDGE) {
-				Coordinate midVH = new Coordinate(ithCoordinate.x, nextCoordinate.y);
-				Coordinate midHV = new Coordinate(nextCoordinate.x, ithCoordinate.y);
-				Coordinate previous = null;
-				if(i > 0) {
-					previous = coordinateList.get(i - 1);
-				}
-				if (!midVH.equals(previous) && mapPoint(midVH) != Zone.RIVER && mapPoint(midVH) != Zone.BRIDGE && (mapPoint(midVH) == mapPoint(ithCoordinate) || mapPoint(midVH) == mapPoint(nextCoordinate)) && obstacleCheck(ithCoordinate, midVH) && obstacleCheck(midVH, nextCoordinate)
-						&& !(mapPoint(midHV) != Zone.RIVER && mapPoint(midHV) != Zone.BRIDGE && (mapPoint(ithCoordinate) == mapPoint(midHV) || mapPoint(midHV) == mapPoint(nextCoordinate)) && obstacleCheck(ithCoordinate, midHV) && obstacleCheck(midHV, nextCoordinate))) {
-					coordinateList.add(i + 1, midVH);
-					if (recursivePath(i + 1)) {
-						return true;
-					}
-					coordinateList.remove(i + 1);
-				}
-				if (!midHV.equals(previous) && mapPoint(midHV) != Zone.RIVER && mapPoint(midHV) != Zone.BRIDGE && (mapPoint(midHV) == mapPoint(ithCoordinate) || mapPoint(midHV) == mapPoint(nextCoordinate)) && obstacleCheck(ithCoordinate, midHV) && obstacleCheck(midHV, nextCoordinate)) {
-					coordinateList.add(i + 1, midHV);
-					if (recursivePath(i + 1)) {
-						return true;
-					}
-					coordinateList.remove(i + 1);
-				}
-				int[] currentStatus = {0};
-				Coordinate option;
-				Coordinate goal;
-				if(mapPoint(ithCoordinate) == Zone.BRIDGE) {
-					goal = nextCoordinate;
-				}
-				else if(mapPoint(ithCoordinate) == Zone.GREEN) {
-					goal = gameParameters.ZO_G;
-				}
-				else if(mapPoint(ithCoordinate) == Zone.RED) {
-					goal = gameParameters.ZO_R;
-				}
-				else {
-					goal = nextCoordinate;
-				}
-				for (int j = 0; j < 8; j++) {
-					option = closeShift(ithCoordinate, goal, currentStatus, true, true);
-					if (mapPoint(option) != Zone.RIVER && !option.equals(previous) && obstacleCheck(ithCoordinate, option) && obstacleCheck(option, nextCoordinate)) {
-						coordinateList.add(i + 1, option);
-						if (recursivePath(i + 1)) {
-							return true;
-						}
-						coordinateList.remove(i + 1);
-					}
-				}
+		return coordinateList.size() - 1;
+	}
+	
+	/**
+	 * Chooses the way point at which the robot will localise next, from the uncertainty of the odometer.
+	 */
+	private void planRelocalisation() {
+		double[] covariance = new double[9];
+		odometer.getCovariance(covariance);
+		int index = relocalisationPlanner.plan(odometer.getPose(), covariance, coordinateList);
+		relocalisationPoint = index < 0 ? null : coordinateList.get(index);
+	}
+	
+	/**
+	 * Returns the coordinate of the closest intersection from the robot from its odometer values.
+	 * @return  The closest intersection Coordinate from the robot
+	 */
+	public Coordinate closestIntersection() {
+		Pose pose = odometer.getPose();
+		return new Coordinate(localisation.getClosestMultiple(pose.x), localisation.getClosestMultiple(pose.y));
+	}
+	
+	/**
+	 * This method replaces the current list of wayPoints by a rectangular path going through all of them
+	 * that avoids physical features on the board. The path starts at the closest intersection from the robot,
+	 * or at the closest of the intersections around it that is not blocked by an obstacle.
+	 * 
+	 * @author Michael Vaquier
+	 * @author Yujing Duan
+	 * 
+	 * @return  Returns true if a path was found, false otherwise
+	 */
+	public boolean planPath() {
+		Coordinate start = closestUsableIntersection();
+		List<Coordinate> path = new LinkedList<Coordinate>();
+		path.add(start);
+		Coordinate from = start;
+		for (Coordinate wayPoint : coordinateList) {
+			List<Coordinate> leg = pathPlanner.plan(from, wayPoint);
+			if (leg == null) {
+				planningFailures++;
 				return false;
 			}
-			else {
-				coordinateList.add(i + 1, bridgeMid);
-				if (recursivePath(i)) {
-					return true;
-				}
-				coordinateList.remove(i + 1);
-				return false;
+			path.addAll(leg.subList(1, leg.size()));
+			from = wayPoint;
+		}
+		coordinateList = path;
+		removeRedundantPoints();
+		return true;
+	}
+	
+	/**
+	 * Returns the closest intersection from the robot the path planner can start from. After going around an obstacle
+	 * the closest intersection can be too close to it, the other intersections around the robot are then tried.
+	 * @return  The closest usable intersection, the closest intersection if none of them is usable
+	 */
+	private Coordinate closestUsableIntersection() {
+		Pose pose = odometer.getPose();
+		double lowX = Math.floor(pose.x / TILE) * TILE;
+		double lowY = Math.floor(pose.y / TILE) * TILE;
+		Coordinate closest = closestIntersection();
+		double closestDistance = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < 4; i++) {
+			Coordinate corner = new Coordinate(lowX + ((i % 2) * TILE), lowY + ((i / 2) * TILE));
+			double distance = Math.hypot(corner.x - pose.x, corner.y - pose.y);
+			if (distance < closestDistance && pathPlanner.canUse(corner)) {
+				closest = corner;
+				closestDistance = distance;
 			}
 		}
+		return closest;
 	}
 	
 	/**
-	 * Removes redundant points at the end of generating a path.
+	 * Removes redundant points at the end of generating a path. The destinations not reached yet are kept, even on a
+	 * straight line, such that the destinations reached can be counted as the way points are passed.
 	 */
 	private void removeRedundantPoints() {
 		Coordinate ithCoordinate;
 		Coordinate midCoordinate;
 		Coordinate nextCoordinate;
+		List<Coordinate> destinationsLeft = destinations.subList(Math.min(destinationsReached, destinations.size()), destinations.size());
 		for (int i = 0; i < coordinateList.size() - 2; i++) {
 			ithCoordinate = coordinateList.get(i);
 			midCoordinate = coordinateList.get(i + 1);
 			nextCoordinate = coordinateList.get(i + 2);
+			if (destinationsLeft.contains(midCoordinate)) {
+				continue;
+			}
 			if ((ithCoordinate.x == midCoordinate.x && ithCoordinate.x == nextCoordinate.x) || (ithCoordinate.y == midCoordinate.y && ithCoordinate.y == nextCoordinate.y)) {
 				coordinateList.remove(i + 1);
 				i--;
@@ -546,77 +528,6 @@ public class NavigationController {
 		}
 	}
 	
-	/**
-	 * This method returns the closest shift to get to the destination
-	 * @param ithCoordinate  Current position
-	 * @param nextCoordinate  Destination
-	 * @param currentStatus  Status of which direction were visited
-	 * @param vertical  Allow vertical shifting
-	 * @param horizontal  Allow horizontal shifting
-	 * @return  The coordinate of the shift
-	 */
-	private Coordinate closeShift(Coordinate ithCoordinate, Coordinate nextCoordinate, int[] currentStatus, boolean vertical, boolean horizontal) {
-		double distance = Integer.MAX_VALUE;
-		double x = -1;
-		double y = -1;
-		int add = -1;
-		if (horizontal && (currentStatus[0] & 1) == 0) {
-			distance = Math.sqrt(Math.abs(ithCoordinate.x + TILE - nextCoordinate.x) + Math.abs(ithCoordinate.y - nextCoordinate.y));
-			x = ithCoordinate.x + TILE;
-			y = ithCoordinate.y;
-			add = 1;
-		}
-		if (horizontal && (currentStatus[0] & 2) == 0 && Math.sqrt(Math.abs(ithCoordinate.x - TILE - nextCoordinate.x) + Math.abs(ithCoordinate.y - nextCoordinate.y)) < distance) {
-			distance = Math.sqrt(Math.abs(ithCoordinate.x - TILE - nextCoordinate.x) + Math.abs(ithCoordinate.y - nextCoordinate.y));
-			x = ithCoordinate.x - TILE;
-			y = ithCoordinate.y;
-			add = 2;
-		}
-		if (vertical && (currentStatus[0] & 4) == 0 && Math.sqrt(Math.abs(ithCoordinate.x - nextCoordinate.x) + Math.abs(ithCoordinate.y + TILE - nextCoordinate.y)) < distance) {
-			distance = Math.sqrt(Math.abs(ithCoordinate.x - nextCoordinate.x) + Math.abs(ithCoordinate.y + TILE - nextCoordinate.y));
-			x = ithCoordinate.x;
-			y = ithCoordinate.y + TILE;
-			add = 4;
-		}
-		if (vertical && (currentStatus[0] & 8) == 0 && Math.sqrt(Math.abs(ithCoordinate.x - nextCoordinate.x) + Math.abs(ithCoordinate.y - TILE - nextCoordinate.y)) < distance) {
-			distance = Math.sqrt(Math.abs(ithCoordinate.x - nextCoordinate.x) + Math.abs(ithCoordinate.y - TILE - nextCoordinate.y));
-			x = ithCoordinate.x;
-			y = ithCoordinate.y - TILE;
-			add = 8;
-		}
-		if (horizontal && (currentStatus[0] & 16) == 0 && (currentStatus[0] & 1) > 0 && Math.sqrt(Math.abs(ithCoordinate.x + (TILE/2) - nextCoordinate.x) + Math.abs(ithCoordinate.y - nextCoordinate.y)) < distance) {
-			distance = Math.sqrt(Math.abs(ithCoordinate.x + (TILE/2) - nextCoordinate.x) + Math.abs(ithCoordinate.y - nextCoordinate.y));
-			x = ithCoordinate.x + (TILE/2);
-			y = ithCoordinate.y;
-			add = 16;
-		}
-		if (horizontal && (currentStatus[0] & 32) == 0 && (currentStatus[0] & 2) > 0 && Math.sqrt(Math.abs(ithCoordinate.x - (TILE/2) - nextCoordinate.x) + Math.abs(ithCoordinate.y - nextCoordinate.y)) < distance) {
-			distance = Math.sqrt(Math.abs(ithCoordinate.x - (TILE/2) - nextCoordinate.x) + Math.abs(ithCoordinate.y - nextCoordinate.y));
-			x = ithCoordinate.x - (TILE/2);
-			y = ithCoordinate.y;
-			add = 32;
-		}
-		if (vertical && (currentStatus[0] & 64) == 0 && (currentStatus[0] & 4) > 0 && Math.sqrt(Math.abs(ithCoordinate.x - nextCoordinate.x) + Math.abs(ithCoordinate.y + (TILE/2) - nextCoordinate.y)) < distance) {
-			distance = Math.sqrt(Math.abs(ithCoordinate.x - nextCoordinate.x) + Math.abs(ithCoordinate.y + (TILE/2) - nextCoordinate.y));
-			x = ithCoordinate.x;
-			y = ithCoordinate.y + (TILE/2);
-			add = 64;
-		}
-		if (vertical && (currentStatus[0] & 128) == 0 && (currentStatus[0] & 8) > 0 && Math.sqrt(Math.abs(ithCoordinate.x - nextCoordinate.x) + Math.abs(ithCoordinate.y - (TILE/2) - nextCoordinate.y)) < distance) {
-			distance = Math.sqrt(Math.abs(ithCoordinate.x - nextCoordinate.x) + Math.abs(ithCoordinate.y - (TILE/2) - nextCoordinate.y));
-			x = ithCoordinate.x;
-			y = ithCoordinate.y - (TILE/2);
-			add = 128;
-		}
-		if(add > 0)
-			currentStatus[0] += add;
-		return new Coordinate(x, y);
-	}
-	
-	
-	
-	
-	
 	/**
 	 * This method takes as an input a coordinate and returns the region in which this point fits in, by looking at the gameParapeters
 	 * association that the instance has.
@@ -625,30 +536,7 @@ public class NavigationController {
 	 */
 	public Zone mapPoint(Coordinate node)
 	{
-		if(node.x > gameParameters.Green_LL.x && node.x < gameParameters.Green_UR.x && node.y > gameParameters.Green_LL.y && node.y < gameParameters.Green_UR.y)
-		{
-			return Zone.GREEN;
-		}
-		else if(node.x > gameParameters.Red_LL.x && node.x < gameParameters.Red_UR.x && node.y > gameParameters.Red_LL.y && node.y < gameParameters.Red_UR.y)
-		{
-			return Zone.RED;
-		}
-		else if((node.x > gameParameters.SV_LL.x && node.x < gameParameters.SV_UR.x && node.y > gameParameters.SV_LL.y && node.y < gameParameters.SV_UR.y)
-				||(node.x > gameParameters.SH_LL.x && node.x < gameParameters.SH_UR.x && node.y > gameParameters.SH_LL.y && node.y < gameParameters.SH_UR.y))
-		{
-			return Zone.BRIDGE;
-		}
-		else if (((node.x >= gameParameters.Green_LL.x && node.x <= gameParameters.Green_UR.x && node.y >= gameParameters.Green_LL.y && node.y <= gameParameters.Green_UR.y)
-				|| (node.x >= gameParameters.Red_LL.x && node.x <= gameParameters.Red_UR.x && node.y >= gameParameters.Red_LL.y && node.y <= gameParameters.Red_UR.y))
-				&& ((node.x >= gameParameters.SV_LL.x && node.x <= gameParameters.SV_UR.x && node.y >= gameParameters.SV_LL.y && node.y <= gameParameters.SV_UR.y)
-				||(node.x >= gameParameters.SH_LL.x && node.x <= gameParameters.SH_UR.x && node.y >= gameParameters.SH_LL.y && node.y <= gameParameters.SH_UR.y))
-				&& (!(node.x == gameParameters.SH_LL.x && node.y == gameParameters.SH_LL.y) && !(node.x == gameParameters.SH_UR.x && node.y == gameParameters.SH_UR.y) && !(node.x == gameParameters.SV_LL.x && node.y == gameParameters.SV_LL.y) && !(node.x == gameParameters.SV_UR.x && node.y == gameParameters.SV_UR.y))
-				&& (!(node.x == gameParameters.SH_LL.x && node.y == gameParameters.SH_UR.y) && !(node.x == gameParameters.SH_UR.x && node.y == gameParameters.SH_LL.y) && !(node.x == gameParameters.SV_LL.x && node.y == gameParameters.SV_UR.y) && !(node.x == gameParameters.SV_UR.x && node.y == gameParameters.SV_LL.y))) {
-			return Zone.BRIDGE;
-		}
-		else {
-			return Zone.RIVER;
-		}
+		return zoneMap.mapPoint(node);
 	}
 	
 	
@@ -661,95 +549,7 @@ public class NavigationController {
 	 */
 	public Zone mapPoint(double x, double y)
 	{
-		if(x > gameParameters.Green_LL.x + 1 && x < gameParameters.Green_UR.x - 1 && y > gameParameters.Green_LL.y + 1 && y < gameParameters.Green_UR.y - 1)
-		{
-			return Zone.GREEN;
-		}
-		else if(x > gameParameters.Red_LL.x + 1 && x < gameParameters.Red_UR.x - 1 && y > gameParameters.Red_LL.y + 1 && y < gameParameters.Red_UR.y - 1)
-		{
-			return Zone.RED;
-		}
-		else if((x > gameParameters.SV_LL.x + 1 && x < gameParameters.SV_UR.x - 1 && y > gameParameters.SV_LL.y + 1 && y < gameParameters.SV_UR.y - 1)
-				||(x > gameParameters.SH_LL.x + 1 && x < gameParameters.SH_UR.x - 1 && y > gameParameters.SH_LL.y + 1 && y < gameParameters.SH_UR.y - 1))
-		{
-			return Zone.BRIDGE;
-		}
-		else {
-			return Zone.RIVER;
-		}
-	}
-	
-	/**
-	 * Checks if there is any obstacles in the way of two coordinate on the same line
-	 * @param a  First Coordinate
-	 * @param b  Second Coordinate
-	 * @return  True if no obstacles are present
-	 */
-	private boolean obstacleCheck(Coordinate a, Coordinate b) {
-		if (a.y == b.y) {
-			if (a.y == gameParameters.ZC_R.y) {
-				if ((a.x <= gameParameters.ZC_R.x && b.x >= gameParameters.ZC_R.x) || (a.x >= gameParameters.ZC_R.x && b.x <= gameParameters.ZC_R.x)) {
-					return false;
-				}
-			}
-			if (a.y == gameParameters.ZC_G.y) {
-				if (((a.x <= gameParameters.ZC_G.x && b.x >= gameParameters.ZC_G.x) || (a.x >= gameParameters.ZC_G.x && b.x <= gameParameters.ZC_G.x))) {
-					return false;
-				}
-			}
-			if (gameParameters.ZC_G.x == gameParameters.ZC_R.x) {
-				if ((a.y < gameParameters.ZC_R.y && a.y > gameParameters.ZC_G.y) || (a.y > gameParameters.ZC_R.y && a.y < gameParameters.ZC_G.y)) {
-					if (((a.x <= gameParameters.ZC_G.x && b.x >= gameParameters.ZC_G.x) || (a.x >= gameParameters.ZC_G.x && b.x <= gameParameters.ZC_G.x))) {
-						return false;
-					}
-				}
-			}
-		}
-		if (a.x == b.x) {
-			if (a.x == gameParameters.ZC_R.x) {
-				if ((a.y <= gameParameters.ZC_R.y && b.y >= gameParameters.ZC_R.y) || (a.y >= gameParameters.ZC_R.y && b.y <= gameParameters.ZC_R.y)) {
-					return false;
-				}
-			}
-			if (a.x == gameParameters.ZC_G.x) {
-				if (((a.y <= gameParameters.ZC_G.y && b.y >= gameParameters.ZC_G.y) || (a.y >= gameParameters.ZC_G.y && b.y <= gameParameters.ZC_G.y))) {
-					return false;
-				}
-			}
-			if (gameParameters.ZC_G.y == gameParameters.ZC_R.y) {
-				if ((a.x < gameParameters.ZC_R.x && a.x > gameParameters.ZC_G.x) && (a.x > gameParameters.ZC_R.x && a.x < gameParameters.ZC_G.x)) {
-					if (((a.y <= gameParameters.ZC_G.y && b.y >= gameParameters.ZC_G.y) || (a.y >= gameParameters.ZC_G.y && b.y <= gameParameters.ZC_G.y))) {
-						return false;
-					}
-				}
-			}
-		}
-		if (gameParameters.ZC_G.x != gameParameters.ZC_R.x && gameParameters.ZC_G.y != gameParameters.ZC_R.y) {
-			double slope;
-			double yIntercept;
-			double lineXIntercept;
-			double lineYIntercept;
-			if (gameParameters.ZC_R.x > gameParameters.ZC_G.x) {
-				slope = (gameParameters.ZC_R.y - gameParameters.ZC_G.y) / (gameParameters.ZC_R.x - gameParameters.ZC_G.x);				
-			} else {
-				slope = (gameParameters.ZC_G.y - gameParameters.ZC_R.y) / (gameParameters.ZC_G.x - gameParameters.ZC_R.x);
-			}
-			yIntercept = (slope * gameParameters.ZC_G.x) - gameParameters.ZC_G.y;
-			if (a.x == b.x && ((a.x <= gameParameters.ZC_G.x && a.x >= gameParameters.ZC_R.x) || (a.x >= gameParameters.ZC_G.x && a.x <= gameParameters.ZC_R.x))) {
-				lineYIntercept = (slope * a.x) + yIntercept;
-				lineXIntercept = (lineYIntercept - yIntercept) / slope;
-				if ((lineYIntercept <= a.y && lineYIntercept >= b.y) || (lineYIntercept >= a.y && lineYIntercept <= b.y)) {
-					return false;
-				}
-			} else if (a.y == b.y && ((a.y <= gameParameters.ZC_G.y && a.y >= gameParameters.ZC_R.y) || (a.y >= gameParameters.ZC_G.y && a.y <= gameParameters.ZC_R.y))) {
-				lineXIntercept = (a.y - yIntercept) / slope;
-				lineYIntercept = (slope * lineXIntercept) + yIntercept;
-				if ((lineXIntercept <= a.x && lineXIntercept >= b.x) || (lineXIntercept >= a.x && lineXIntercept <= b.x)) {
-					return false;
-				}
-			}
-		}
-		return true;
+		return zoneMap.mapPoint(x, y);
 	}
 	
 	/**
@@ -794,23 +594,59 @@ public class NavigationController {
 		objectDetection = b;
 	}
 
+	/**
+	 * Returns the number of times the path planner found no path to a way point.
+	 * @return  Number of planning failures
+	 */
+	public int getPlanningFailures() {
+		return planningFailures;
+	}
+
 	/**
 	 * Returns the current navigation state of the robot.
 	 * @return  The current navigation state
 	 */
-	public static NavigationState getNavigationState() {
+	public NavigationState getNavigationState() {
 		synchronized (stateLock) {
 			return state;
 		}
 	}
 	
 	/**
-	 * Sets the navigationState of the robot.
+	 * Sets the navigationState of the robot and notifies the listeners if it changed.
+	 * The listeners are notified while the state lock is held, so the changes made by two threads are seen in the order
+	 * they were made and the last notification is always the current state.
 	 * @param navState  The new navigation state to be set
 	 */
-	public static void setNavigationState(NavigationState navState) {
+	public void setNavigationState(NavigationState navState) {
 		synchronized (stateLock) {
+			NavigationState previousState = state;
 			state = navState;
+			if (previousState != navState) {
+				for (NavigationStateListener listener : stateListeners) {
+					listener.navigationStateChanged(previousState, navState);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Adds a listener notified every time the navigation state changes.
+	 * @param listener  The listener to add
+	 */
+	public void addNavigationStateListener(NavigationStateListener listener) {
+		synchronized (stateLock) {
+			stateListeners.add(listener);
+		}
+	}
+	
+	/**
+	 * Removes a listener of the navigation state.
+	 * @param listener  The listener to remove
+	 */
+	public void removeNavigationStateListener(NavigationStateListener listener) {
+		synchronized (stateLock) {
+			stateListeners.remove(listener);
 		}
 	}
 
@@ -0,0 +1,25 @@
+/**
+ * NavigationStateListener.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+import ca.mcgill.ecse211.capturetheflag.NavigationController.NavigationState;
+
+/**
+ * The NavigationStateListener interface is notified every time the state of a NavigationController changes.
+ * It is called from the thread changing the state while the NavigationController holds its state lock, so it must
+ * return quickly and must not call back into the NavigationController.
+ * 
+ * @author Michael Vaquier
+ *
+ */
+public interface NavigationStateListener {
+
+	/**
+	 * Called when the navigation state changes.
+	 * @param previousState  The state before the change
+	 * @param state  The new state
+	 */
+	public void navigationStateChanged(NavigationState previousState, NavigationState state);
+}
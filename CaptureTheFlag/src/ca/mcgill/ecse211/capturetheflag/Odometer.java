@@ -4,47 +4,56 @@
 
 package ca.mcgill.ecse211.capturetheflag;
 
-import lejos.hardware.motor.EV3LargeRegulatedMotor;
-import lejos.utility.Timer;
+import ca.mcgill.ecse211.capturetheflag.SensorScheduler.PeriodicTask;
 import lejos.utility.TimerListener;
 
 /**
  * 
- * Odometer can spawn a thread to keep track of wheel rotation to have
+ * Odometer is a periodic task of the SensorScheduler keeping track of wheel rotation to have
  * a good estimate of the position of the center of rotation of the robot.
+ * The position is published through a sequence lock: writers are serialized by a lock and
+ * bump a sequence number before and after every update, while readers never block and retry
+ * their read if an update happened in the meantime. Every value read under the sequence number is volatile,
+ * including the covariance and the tacho counts, such that no read can be moved past the check of the sequence number.
+ * The position is the mean of a PoseEstimator which also keeps its covariance, such that the measurements
+ * of the sensors are weighted against the uncertainty accumulated since the last ones.
  * 
  * @author Michael Vaquier
  * @author Oliver Clark
  */
-public class Odometer implements Runnable, TimerListener {
+public class Odometer implements TimerListener {
 	// robot position
-	private double x;
-	private double y;
-	private double theta;
-	private double thetaDegree;
-	private int leftMotorTachoCount;
-	private int rightMotorTachoCount;
+	private volatile double x;
+	private volatile double y;
+	private volatile double theta;
+	private volatile double thetaDegree;
+	private volatile int sequence = 0;
+	//Covariance of the pose, which is symmetric: X, Y and heading variances and the covariances between them
+	private volatile double varianceX, covarianceXY, covarianceXT, varianceY, covarianceYT, varianceT;
+	private final double[] covariance = new double[9]; /* written by the estimator while holding the lock only */
+	private volatile int leftMotorTachoCount;
+	private volatile int rightMotorTachoCount;
 	
 	//Motors
-	private EV3LargeRegulatedMotor leftMotor;
-	private EV3LargeRegulatedMotor rightMotor;
+	private DriveMotor leftMotor;
+	private DriveMotor rightMotor;
 	
 	//Robot constants
 	private final double WHEEL_RADIUS;
 	private final double TRACK;
 	
-	//timer and synchronization
-	private Timer timer = null;
-	private boolean timerMode;
-	private boolean running = false;
-	private volatile boolean polling = false;
-	private static final long ODOMETER_PERIOD = 15; 
+	//scheduling
+	private final PeriodicTask task;
+	public static final int ODOMETER_PERIOD = 15;
 	
 	//variables used for rapid computation
-	private double distL, distR, deltaD, deltaT, dX, dY, distanceSinceLastLocalisation;
+	private double distL, distR;
+	private volatile double distanceSinceLastLocalisation;
 	private int nowTachoR, nowTachoL;
 
-	private Object lock; /* lock object for mutual exclusion */
+	private Object lock; /* lock object for mutual exclusion of the writers */
+	private final PoseEstimator estimator;
+	private FlightRecorder flightRecorder = null;
 
 	/**
 	 * Constructs an Odometer object.
@@ -52,8 +61,9 @@ public class Odometer implements Runnable, TimerListener {
 	 * @param rightMotor  Reference to the right motor
 	 * @param wheelRadius  Radius of the wheels
 	 * @param track  Width of the wheelbase
+	 * @param scheduler  The scheduler running the odometer
 	 */
-	public Odometer(EV3LargeRegulatedMotor leftMotor, EV3LargeRegulatedMotor rightMotor, double wheelRadius, double track) {
+	public Odometer(DriveMotor leftMotor, DriveMotor rightMotor, double wheelRadius, double track, SensorScheduler scheduler) {
 		this.leftMotor = leftMotor;
 		this.rightMotor = rightMotor;
 		this.WHEEL_RADIUS = wheelRadius;
@@ -66,31 +76,10 @@ public class Odometer implements Runnable, TimerListener {
 		this.rightMotorTachoCount = 0;
 		this.distanceSinceLastLocalisation = 0;
 		lock = new Object();
+		this.estimator = new PoseEstimator(track);
+		this.task = scheduler.addTask("Odometer", this, ODOMETER_PERIOD);
 	}
 	
-	/**
-	 * Runs the odometer, to periodically poll the tachocount of the wheels
-	 * to update the current position of the robot.
-	 */
-	public void run() {
-		long updateStart, updateEnd;
-		polling = true;
-		while (polling) {
-			updateStart = System.currentTimeMillis();
-			odometerProcess();
-			// this ensures that the odometer only runs once every period
-			updateEnd = System.currentTimeMillis();
-			if (updateEnd - updateStart < ODOMETER_PERIOD) {
-				try {
-					Thread.sleep(ODOMETER_PERIOD - (updateEnd - updateStart));
-				} catch (InterruptedException e) {
-					
-				}
-			}
-		}
-	}
-	
-	
 	/**
 	 * This method is the interrupt service routine which is processed every period that the
 	 * odometer is refreshed.
@@ -107,21 +96,92 @@ public class Odometer implements Runnable, TimerListener {
 		nowTachoR = rightMotor.getTachoCount();
 		distL = Math.PI * WHEEL_RADIUS * (nowTachoL - leftMotorTachoCount) / 180;
 		distR = Math.PI * WHEEL_RADIUS * (nowTachoR - rightMotorTachoCount) / 180;
-		leftMotorTachoCount = nowTachoL;
-		rightMotorTachoCount = nowTachoR;
-		deltaD = 0.5 * (distL + distR);
-		deltaT = (distL - distR) / TRACK;
 
 		synchronized (lock) {
-			setTheta(theta + deltaT);
-			dX = deltaD * Math.sin(theta);
-			dY = deltaD * Math.cos(theta);
-			x = x + dX;
-			y = y + dY;
-			distanceSinceLastLocalisation += deltaD;
+			sequence++;
+			leftMotorTachoCount = nowTachoL;
+			rightMotorTachoCount = nowTachoR;
+			estimator.predict(distL, distR);
+			publish();
+			distanceSinceLastLocalisation += 0.5 * (distL + distR);
+			sequence++;
+		}
+		if (flightRecorder != null) {
+			flightRecorder.recordTachoCount(nowTachoL, nowTachoR);
+			flightRecorder.recordPose(x, y, thetaDegree);
 		}
 	}
+	
+	/**
+	 * Returns a consistent snapshot of the position and heading of the robot.
+	 * The call never blocks, it only reads again if the odometer was updated during the read.
+	 * @return  The current pose of the robot
+	 */
+	public Pose getPose() {
+		int start;
+		double currentX, currentY, currentTheta, currentThetaDegree;
+		do {
+			start = sequence;
+			currentX = x;
+			currentY = y;
+			currentTheta = theta;
+			currentThetaDegree = thetaDegree;
+		} while ((start & 1) != 0 || start != sequence);
+		return new Pose(currentX, currentY, currentTheta, currentThetaDegree);
+	}
 
+	/**
+	 * Copies a consistent snapshot of the covariance of the pose.
+	 * @param covariance  Array of 9 values written in row major order, X and Y in cm^2, the heading in radiant^2
+	 */
+	public void getCovariance(double[] covariance) {
+		int start;
+		double xx, xy, xt, yy, yt, tt;
+		do {
+			start = sequence;
+			xx = varianceX;
+			xy = covarianceXY;
+			xt = covarianceXT;
+			yy = varianceY;
+			yt = covarianceYT;
+			tt = varianceT;
+		} while ((start & 1) != 0 || start != sequence);
+		covariance[0] = xx;
+		covariance[1] = xy;
+		covariance[2] = xt;
+		covariance[3] = xy;
+		covariance[4] = yy;
+		covariance[5] = yt;
+		covariance[6] = xt;
+		covariance[7] = yt;
+		covariance[8] = tt;
+	}
+	
+	/**
+	 * Returns the standard deviation of the position along its most uncertain direction.
+	 * The call does not allocate, such that it can be made by a periodic task.
+	 * @return  Uncertainty of the position in centimeters
+	 */
+	public double getPositionUncertainty() {
+		int start;
+		double xx, xy, yy;
+		do {
+			start = sequence;
+			xx = varianceX;
+			xy = covarianceXY;
+			yy = varianceY;
+		} while ((start & 1) != 0 || start != sequence);
+		return PoseEstimator.positionUncertainty(xx, xy, yy);
+	}
+	
+	/**
+	 * Returns the standard deviation of the heading.
+	 * @return  Uncertainty of the heading in degrees
+	 */
+	public double getHeadingUncertainty() {
+		return Math.toDegrees(Math.sqrt(varianceT));
+	}
+	
 	/**
 	 * Writes the current position of the robot in the input array only at the positions
 	 * where an update is requested.
@@ -134,15 +194,14 @@ public class Odometer implements Runnable, TimerListener {
 	 */
 	public void getPosition(double[] position, boolean[] update) {
 		// ensure that the values don't change while the odometer is running
-		synchronized (lock) {
-			if (position.length == 3 && update.length == 3) {
-				if (update[0])
-					position[0] = x;
-				if (update[1])
-					position[1] = y;
-				if (update[2])
-					position[2] = thetaDegree;
-			}
+		Pose pose = getPose();
+		if (position.length == 3 && update.length == 3) {
+			if (update[0])
+				position[0] = pose.x;
+			if (update[1])
+				position[1] = pose.y;
+			if (update[2])
+				position[2] = pose.thetaDegrees;
 		}
 	}
 
@@ -151,13 +210,7 @@ public class Odometer implements Runnable, TimerListener {
 	 * @return  The current X value of the odometer
 	 */
 	public double getX() {
-		double result;
-
-		synchronized (lock) {
-			result = x;
-		}
-
-		return result;
+		return x;
 	}
 
 	/**
@@ -165,13 +218,7 @@ public class Odometer implements Runnable, TimerListener {
 	 * @return  The current Y value of the odomeer
 	 */
 	public double getY() {
-		double result;
-
-		synchronized (lock) {
-			result = y;
-		}
-
-		return result;
+		return y;
 	}
 
 	/**
@@ -179,13 +226,62 @@ public class Odometer implements Runnable, TimerListener {
 	 * @return  The current heading of the odometer in radiant
 	 */
 	public double getTheta() {
-		double result;
-
-		synchronized (lock) {
-			result = theta;
+		return theta;
+	}
+	
+	/**
+	 * Returns the pose of the robot when the wheels are at some tacho counts, from the current pose and the motion of the
+	 * wheels since the last update of the odometer, such that the pose is not up to a period late.
+	 * @param leftTachoCount  Tacho count of the left wheel
+	 * @param rightTachoCount  Tacho count of the right wheel
+	 * @return  The pose of the robot at these tacho counts
+	 */
+	public Pose getPoseAt(int leftTachoCount, int rightTachoCount) {
+		double[] pose = new double[3];
+		poseAt(leftTachoCount, rightTachoCount, pose);
+		return new Pose(pose[0], pose[1], pose[2], Math.toDegrees(pose[2]));
+	}
+	
+	/**
+	 * Reads the tacho counts of the wheels, which can be more recent than the last update of the odometer,
+	 * and writes the pose of the robot at these counts without creating any object.
+	 * @param pose  Array receiving X, Y and the heading in radiant
+	 */
+	public void readCurrentPose(double[] pose) {
+		poseAt(leftMotor.getTachoCount(), rightMotor.getTachoCount(), pose);
+	}
+	
+	/**
+	 * Writes the pose of the robot when the wheels are at some tacho counts.
+	 * @param leftTachoCount  Tacho count of the left wheel
+	 * @param rightTachoCount  Tacho count of the right wheel
+	 * @param pose  Array receiving X, Y and the heading in radiant
+	 */
+	private void poseAt(int leftTachoCount, int rightTachoCount, double[] pose) {
+		int start;
+		double currentX, currentY, currentTheta;
+		int left, right;
+		do {
+			start = sequence;
+			currentX = x;
+			currentY = y;
+			currentTheta = theta;
+			left = leftMotorTachoCount;
+			right = rightMotorTachoCount;
+		} while ((start & 1) != 0 || start != sequence);
+		double distanceL = Math.PI * WHEEL_RADIUS * (leftTachoCount - left) / 180;
+		double distanceR = Math.PI * WHEEL_RADIUS * (rightTachoCount - right) / 180;
+		double rotation = (distanceL - distanceR) / TRACK;
+		double distance = 0.5 * (distanceL + distanceR);
+		currentX += distance * Math.sin(currentTheta + (rotation / 2));
+		currentY += distance * Math.cos(currentTheta + (rotation / 2));
+		currentTheta = (currentTheta + rotation) % (2 * Math.PI);
+		if (currentTheta < 0) {
+			currentTheta += 2 * Math.PI;
 		}
-
-		return result;
+		pose[0] = currentX;
+		pose[1] = currentY;
+		pose[2] = currentTheta;
 	}
 	
 	/**
@@ -193,13 +289,7 @@ public class Odometer implements Runnable, TimerListener {
 	 * @return  The current heading of the odometer in degrees
 	 */
 	public double getThetaDegrees() {
-		double result;
-
-		synchronized (lock) {
-			result = thetaDegree;
-		}
-
-		return result;
+		return thetaDegree;
 	}
 	
 	/**
@@ -207,13 +297,7 @@ public class Odometer implements Runnable, TimerListener {
 	 * @return  Distance traveled since the last localisation routine was performed.
 	 */
 	public double getDistanceSinceLastLocalisation() {
-		double result;
-
-		synchronized (lock) {
-			result = distanceSinceLastLocalisation;
-		}
-
-		return result;
+		return distanceSinceLastLocalisation;
 	}
 	
 	
@@ -241,12 +325,15 @@ public class Odometer implements Runnable, TimerListener {
 		// ensure that the values don't change while the odometer is running
 		synchronized (lock) {
 			if(update.length == 3 && position.length == 3) {
+				sequence++;
 				if (update[0])
-					x = position[0];
+					estimator.setX(position[0]);
 				if (update[1])
-					y = position[1];
+					estimator.setY(position[1]);
 				if (update[2])
-					theta = position[2];
+					estimator.setTheta(position[2]);
+				publish();
+				sequence++;
 			}
 		}
 	}
@@ -257,7 +344,10 @@ public class Odometer implements Runnable, TimerListener {
 	 */
 	public void setX(double x) {
 		synchronized (lock) {
-			this.x = x;
+			sequence++;
+			estimator.setX(x);
+			publish();
+			sequence++;
 		}
 	}
 
@@ -267,10 +357,126 @@ public class Odometer implements Runnable, TimerListener {
 	 */
 	public void setY(double y) {
 		synchronized (lock) {
-			this.y = y;
+			sequence++;
+			estimator.setY(y);
+			publish();
+			sequence++;
+		}
+	}
+
+	/**
+	 * Replaces the pose of the odometer and its uncertainty, for when the previous pose cannot be trusted.
+	 * @param x  New X value
+	 * @param y  New Y value
+	 * @param theta  New heading in radiant
+	 * @param positionDeviation  Standard deviation of each coordinate in centimeters
+	 * @param headingDeviation  Standard deviation of the heading in degrees
+	 */
+	public void resetPose(double x, double y, double theta, double positionDeviation, double headingDeviation) {
+		synchronized (lock) {
+			sequence++;
+			estimator.reset(x, y, theta, positionDeviation * positionDeviation, square(Math.toRadians(headingDeviation)));
+			publish();
+			sequence++;
 		}
 	}
 	
+	/**
+	 * Corrects the odometer with a measurement of the position.
+	 * @param x  X value measured
+	 * @param y  Y value measured
+	 * @param deviation  Standard deviation of each coordinate measured in centimeters
+	 */
+	public void fusePosition(double x, double y, double deviation) {
+		synchronized (lock) {
+			sequence++;
+			estimator.updatePosition(x, y, deviation * deviation);
+			publish();
+			sequence++;
+		}
+	}
+	
+	/**
+	 * Corrects the odometer with a measurement of the heading.
+	 * @param theta  Heading measured in radiant
+	 * @param deviation  Standard deviation of the heading measured in degrees
+	 */
+	public void fuseHeading(double theta, double deviation) {
+		synchronized (lock) {
+			sequence++;
+			estimator.updateHeading(theta, square(Math.toRadians(deviation)));
+			publish();
+			sequence++;
+		}
+	}
+	
+	/**
+	 * Corrects the odometer with a grid line crossed by a floor sensor behind the center of rotation.
+	 * @param crossing  Pose of the robot when the line was crossed, which can be older than the current pose
+	 * @param horizontalLine  True if the line is parallel to the X axis, false if it is parallel to the Y axis
+	 * @param lineCoordinate  Y value of an horizontal line or X value of a vertical line
+	 * @param sensorOffset  Distance of the sensor behind the center of rotation
+	 * @param deviation  Standard deviation of the position of the sensor across the line in centimeters
+	 * @return  True if the measurement was used, false if it was too far from the current estimate
+	 */
+	public boolean fuseLineCrossing(Pose crossing, boolean horizontalLine, double lineCoordinate, double sensorOffset, double deviation) {
+		synchronized (lock) {
+			sequence++;
+			boolean used = estimator.updateLine(crossing.x, crossing.y, crossing.theta, horizontalLine, lineCoordinate,
+					sensorOffset, deviation * deviation);
+			publish();
+			sequence++;
+			return used;
+		}
+	}
+	
+	/**
+	 * Corrects the odometer with the distance to a wall of the board measured by the ultrasonic sensor.
+	 * @param heading  Direction of the sensor in radiant
+	 * @param verticalWall  True if the wall is parallel to the Y axis, false if it is parallel to the X axis
+	 * @param wallCoordinate  X value of a vertical wall or Y value of an horizontal wall
+	 * @param range  Distance measured
+	 * @param sensorOffset  Distance of the sensor in front of the center of rotation
+	 * @param beamHalfWidth  Half of the opening of the beam in degrees
+	 * @param deviation  Standard deviation of the distance measured in centimeters
+	 * @return  True if the measurement was used, false if it was rejected
+	 */
+	public boolean fuseWallRange(double heading, boolean verticalWall, double wallCoordinate, double range, double sensorOffset,
+			double beamHalfWidth, double deviation) {
+		synchronized (lock) {
+			sequence++;
+			boolean used = estimator.updateWallRange(heading, verticalWall, wallCoordinate, range, sensorOffset,
+					Math.toRadians(beamHalfWidth), deviation * deviation);
+			publish();
+			sequence++;
+			return used;
+		}
+	}
+	
+	/**
+	 * Copies the pose estimate to the published values.
+	 * Must be called while holding the lock, between two increments of the sequence number.
+	 */
+	private void publish() {
+		x = estimator.getX();
+		y = estimator.getY();
+		writeTheta(estimator.getTheta());
+		estimator.getCovariance(covariance);
+		varianceX = covariance[0];
+		covarianceXY = covariance[1];
+		covarianceXT = covariance[2];
+		varianceY = covariance[4];
+		covarianceYT = covariance[5];
+		varianceT = covariance[8];
+	}
+	
+	/**
+	 * Returns the square of a value.
+	 */
+	private static double square(double value) {
+		return value * value;
+	}
+	
 	/**
 	 * Converts an angle in radiant to degrees.
 	 * @param rad  Angle in radiant to convert
@@ -285,14 +491,26 @@ public class Odometer implements Runnable, TimerListener {
 	 * @param theta  New theta in radiant to be set in the odometer
 	 */
 	public void setTheta(double theta) {
+		synchronized (lock) {
+			sequence++;
+			estimator.setTheta(theta);
+			publish();
+			sequence++;
+		}
+	}
+	
+	/**
+	 * Wraps a heading between 0 and 2 pi and writes it to the odometer.
+	 * Must be called while holding the lock, between two increments of the sequence number.
+	 * @param theta  New theta in radiant
+	 */
+	private void writeTheta(double theta) {
 		while (theta < 0) {
 			theta += 2 * Math.PI;
 		}
 		theta %= (2 * Math.PI);
-		synchronized (lock) {
-			this.thetaDegree = theta * 180 / Math.PI;
-			this.theta = theta;
-		}
+		this.thetaDegree = theta * 180 / Math.PI;
+		this.theta = theta;
 	}
 
 	/**
@@ -308,7 +526,9 @@ public class Odometer implements Runnable, TimerListener {
 	 */
 	public void setLeftMotorTachoCount(int leftMotorTachoCount) {
 		synchronized (lock) {
+			sequence++;
 			this.leftMotorTachoCount = leftMotorTachoCount;
+			sequence++;
 		}
 	}
 
@@ -325,53 +545,32 @@ public class Odometer implements Runnable, TimerListener {
 	 */
 	public void setRightMotorTachoCount(int rightMotorTachoCount) {
 		synchronized (lock) {
+			sequence++;
 			this.rightMotorTachoCount = rightMotorTachoCount;
+			sequence++;
 		}
 	}
 	
 	/**
-	 * Starts the creates a new thread and runs the odometer task.
+	 * Sets the FlightRecorder association of the instance, nothing is recorded if it is not set.
+	 * @param flightRecorder  Association to the FlightRecorder instance
 	 */
-	public void startOdometer() {
-		if (!running) {
-			new Thread(this).start();
-			timerMode = false;
-			running = true;
-		} else if (running && timerMode) {
-			stopOdometer();
-			startOdometer();
-		}
+	public void setFlightRecorder(FlightRecorder flightRecorder) {
+		this.flightRecorder = flightRecorder;
 	}
 	
 	/**
-	 * This method creates a timer and starts the odometer.
+	 * Starts updating the odometer periodically.
 	 */
-	public void startOdometerTimer() {
-		if(!running) {
-			if (timer == null) {
-				timer = new Timer((int) ODOMETER_PERIOD, this);
-			}
-			timer.start();
-			timerMode = true;
-			running = true;
-		} else if (running && !timerMode) {
-			stopOdometer();
-			startOdometerTimer();
-		}
+	public void startOdometer() {
+		task.start();
 	}
 	
 	/**
-	 * Stops the odometer no matter its mode
+	 * Stops updating the odometer.
 	 */
 	public void stopOdometer() {
-		if(running) {
-			if(timerMode) {
-				timer.stop();
-			} else {
-				polling = false;
-			}
-			running = false;
-		}
+		task.stop();
 	}
 	
 }
@@ -0,0 +1,122 @@
+/**
+ * OdometryCorrectionData.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+/**
+ * The OdometryCorrectionData class processes the data of the back color sensor while the robot is navigating
+ * and corrects the odometer every time a grid line is crossed, without stopping the robot.
+ * Lines are detected the same way as during the color localisation, and the pose of the robot at the line is found the
+ * same way: at the center of the dark pulse, moved back by the latency of the sensor. The crossing is given to the
+ * odometer as a measurement weighted against the uncertainty of its current pose.
+ * When the robot travels along Y only horizontal lines can be crossed and only Y is corrected, and the other way around.
+ * Lines crossed while turning or while the heading is not close to an axis are ignored.
+ *
+ * @author Michael Vaquier
+ *
+ */
+public class OdometryCorrectionData implements SensorEventListener {
+
+	//Associations
+	private Odometer odometer;
+	private final ColorLocalisationData lineDetector = new ColorLocalisationData();
+
+
+	public static final double COLOR_SENSOR_OFFSET = 13.6;
+	public static final double HEADING_TOLERANCE = 10;
+	private static final double DISTANCE_TOLERANCE = 8;
+	private static final double MIN_TRAVEL = 1;
+	public static final double LINE_DEVIATION = 1;
+
+	private final double tile;
+
+	private volatile int corrections = 0;
+
+	/**
+	 * Creates an OdometryCorrectionData object.
+	 * @param tile  Length of the side of a tile
+	 */
+	public OdometryCorrectionData(double tile) {
+		this.tile = tile;
+		lineDetector.setSensorEventListener(this);
+	}
+
+	/**
+	 * Processes a new value of the back color sensor.
+	 * @param newVal  New value read by the sensor
+	 */
+	public void processData(int newVal) {
+		lineDetector.processData(newVal);
+	}
+
+	/**
+	 * Called by the line detector when a line is crossed.
+	 * @param event  The event detected
+	 */
+	public void sensorEvent(SensorEvent event) {
+		if (event == SensorEvent.LINE_CROSSED && lineDetector.getLastLinePose() != null) {
+			correct(lineDetector.getLastLinePose());
+		}
+	}
+
+	/**
+	 * Corrects the odometer with the line that was just detected.
+	 * @param crossing  Pose of the robot when the sensor was over the center of the line
+	 */
+	private void correct(Pose crossing) {
+		Pose pose = odometer.getPose();
+		double theta = crossing.thetaDegrees;
+		double headingChange = Math.abs(pose.thetaDegrees - theta);
+		headingChange = Math.min(headingChange, 360 - headingChange);
+		double travel = Math.hypot(pose.x - crossing.x, pose.y - crossing.y);
+		if (headingChange > HEADING_TOLERANCE || travel < MIN_TRAVEL) {
+			return; //the robot is turning
+		}
+
+		int axis = (int) Math.round(theta / 90) % 4;
+		if (Math.abs(theta - (axis * 90)) > HEADING_TOLERANCE && Math.abs(theta - 360) > HEADING_TOLERANCE) {
+			return; //the robot is not traveling along X or Y
+		}
+		boolean horizontalLine = axis == 0 || axis == 2;
+		double sensor = horizontalLine ? crossing.y - (COLOR_SENSOR_OFFSET * Math.cos(crossing.theta))
+				: crossing.x - (COLOR_SENSOR_OFFSET * Math.sin(crossing.theta));
+		double line = Math.round(sensor / tile) * tile;
+		if (Math.abs(line - sensor) <= DISTANCE_TOLERANCE
+				&& odometer.fuseLineCrossing(crossing, horizontalLine, line, COLOR_SENSOR_OFFSET, LINE_DEVIATION)) {
+			corrections++;
+		}
+	}
+
+	/**
+	 * Clears the last samples, must be called before the data starts coming in.
+	 */
+	public void reset() {
+		lineDetector.resetLastData();
+	}
+
+	/**
+	 * Sets the delay between the sensor passing over the floor and the reading.
+	 * @param samples  Latency of the sensor in samples of the color poller
+	 */
+	public void setSensorLatency(int samples) {
+		lineDetector.setSensorLatency(samples);
+	}
+
+	/**
+	 * Returns the number of corrections made to the odometer.
+	 * @return  Number of corrections
+	 */
+	public int getCorrections() {
+		return corrections;
+	}
+
+	/**
+	 * Sets the Odometer association of the instance.
+	 * @param odometer  Association to the odometer instance
+	 */
+	public void setOdometer(Odometer odometer) {
+		this.odometer = odometer;
+		lineDetector.setOdometer(odometer);
+	}
+}
@@ -0,0 +1,624 @@
+/**
+ * PathPlanner.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import ca.mcgill.ecse211.capturetheflag.GameParameters.Zone;
+
+/**
+ * The PathPlanner class finds rectangular paths on the game board using a D* Lite search.
+ * The board is represented as a lattice of nodes spaced by half a tile which is built once from the game parameters.
+ * Each search state is a node and the direction in which the robot entered it, such that turns can be penalised
+ * and the resulting path has as few corners as possible.
+ * The search goes from the goal to the start and is kept between the plans to the same goal. When an obstacle is added
+ * to the lattice, only the states whose cost changed are searched again, and when the robot plans again from somewhere
+ * else, as it does after going around an obstacle, the costs already known are reused. The first plan to a goal costs as much as an A* search.
+ * All the buffers used by the search are allocated once, so a search runs in bounded time and memory.
+ * The corners found between two nodes are kept, such that planning again from the same intersection to the same goal,
+ * as the robot does after every relocalisation, returns right away. The lattice only depends on the game parameters
+ * the planner is built with and the obstacles added to it, so the nodes are enough to identify a path.
+ *
+ * @author Michael Vaquier
+ *
+ */
+
+public class PathPlanner {
+
+	//Cost of moving by half a tile and of turning by 90 degrees
+	private static final int STEP_COST = 1;
+	private static final int TURN_COST = 2;
+	private static final int INFINITY = 1 << 28;
+
+	//Directions in which the robot can move on the lattice {north, east, south, west}
+	private static final int DIRECTIONS = 4;
+	private static final int[] DX = {0, 1, 0, -1};
+	private static final int[] DY = {1, 0, -1, 0};
+
+	private final GameParameters gameParameters;
+	private final double tile;
+	private final ZoneMap zoneMap;
+	private final int size;
+
+	//Lattice built from the game parameters
+	private final boolean[] usable;
+	private final Zone[] zones;
+	private final boolean[] blockedEdges;
+
+	//Search buffers, the last state is the start from which the robot can leave in any direction
+	private final int startState;
+	private final int[] cost;
+	private final int[] lookahead;
+	private final boolean[] open;
+	private final long[] openKeys;
+	private final int[] heapStates;
+	private final long[] heapKeys;
+	private int heapSize;
+	private final int[] predecessorBuffer = new int[DIRECTIONS + 1];
+
+	//Goal and start of the last search, and sum of the heuristic distances the start moved by since the search started
+	private int searchGoal = -1;
+	private int searchStart = -1;
+	private int keyModifier = 0;
+
+	//Corners of the paths found, by start and goal node, null if there is no path
+	private final Map<Integer, List<Coordinate>> cache = new HashMap<Integer, List<Coordinate>>();
+
+	/**
+	 * Creates a PathPlanner object and builds the lattice of the game board.
+	 * @param zoneMap  The ZoneMap holding the zone of every node of the lattice
+	 * @param gameParameters  Game parameters for this round
+	 * @param tile  The tile length of the game board
+	 */
+	public PathPlanner(ZoneMap zoneMap, GameParameters gameParameters, double tile) {
+		this.gameParameters = gameParameters;
+		this.tile = tile;
+		this.zoneMap = zoneMap;
+		this.size = zoneMap.getSize();
+
+		int nodes = size * size;
+		usable = new boolean[nodes];
+		zones = new Zone[nodes];
+		blockedEdges = new boolean[nodes * DIRECTIONS];
+
+		int states = (nodes * DIRECTIONS) + 1;
+		startState = states - 1;
+		cost = new int[states];
+		lookahead = new int[states];
+		open = new boolean[states];
+		openKeys = new long[states];
+		heapStates = new int[states * DIRECTIONS];
+		heapKeys = new long[states * DIRECTIONS];
+
+		buildLattice();
+	}
+
+	/**
+	 * Finds a rectangular path between two points of the lattice.
+	 * The path avoids the river and the obstacles added, only changes zone through the bridge and never crosses the zipline.
+	 * The points are snapped to the closest nodes, and a path already found between the same nodes is reused.
+	 * @param start  Starting Coordinate
+	 * @param goal  Destination Coordinate
+	 * @return  The list of corners of the path including the start and the goal, null if no path exists
+	 */
+	public List<Coordinate> plan(Coordinate start, Coordinate goal) {
+		int startNode = nodeOf(start);
+		int goalNode = nodeOf(goal);
+		if (startNode < 0 || goalNode < 0 || !usable[startNode] || !usable[goalNode]) {
+			return null;
+		}
+
+		Integer key = Integer.valueOf((startNode * usable.length) + goalNode);
+		List<Coordinate> corners;
+		if (cache.containsKey(key)) {
+			corners = cache.get(key);
+		} else {
+			corners = search(startNode, goalNode);
+			cache.put(key, corners);
+		}
+		if (corners == null) {
+			return null;
+		}
+
+		LinkedList<Coordinate> path = new LinkedList<Coordinate>(corners);
+		path.addLast(goal);
+		if (startNode != goalNode) {
+			path.addFirst(start);
+		}
+		return path;
+	}
+
+	/**
+	 * Indicates if a path can start or end at a point, that is if the closest node is in the lattice and not blocked.
+	 * @param point  Coordinate checked
+	 * @return  True if the closest node can be used
+	 */
+	public boolean canUse(Coordinate point) {
+		int node = nodeOf(point);
+		return node >= 0 && usable[node];
+	}
+
+	/**
+	 * Blocks the edges of the lattice that pass closer than a distance from an obstacle, and the nodes within that distance.
+	 * The paths kept are forgotten, but the search to the last goal is repaired from the edges that changed.
+	 * @param obstacle  Position of the obstacle
+	 * @param clearance  Closest distance from the obstacle the center of the robot can pass at
+	 */
+	public void addObstacle(Coordinate obstacle, double clearance) {
+		//Only the edges starting within half a tile of the blocked disk can come close to the obstacle
+		double reach = (clearance + (tile / 2)) / (tile / 2);
+		int lowX = Math.max(0, (int) Math.floor((obstacle.x / (tile / 2)) - reach));
+		int lowY = Math.max(0, (int) Math.floor((obstacle.y / (tile / 2)) - reach));
+		int highX = Math.min(size - 1, (int) Math.ceil((obstacle.x / (tile / 2)) + reach));
+		int highY = Math.min(size - 1, (int) Math.ceil((obstacle.y / (tile / 2)) + reach));
+		for (int y = lowY; y <= highY; y++) {
+			for (int x = lowX; x <= highX; x++) {
+				int node = (y * size) + x;
+				double nodeX = zoneMap.getPosition(x);
+				double nodeY = zoneMap.getPosition(y);
+				if (Math.hypot(nodeX - obstacle.x, nodeY - obstacle.y) < clearance) {
+					usable[node] = false;
+				}
+				boolean changed = false;
+				for (int d = 0; d < DIRECTIONS; d++) {
+					int edge = (node * DIRECTIONS) + d;
+					if (!blockedEdges[edge] && segmentDistance(nodeX, nodeY, zoneMap.getPosition(x + DX[d]), zoneMap.getPosition(y + DY[d]),
+							obstacle.x, obstacle.y) < clearance) {
+						blockedEdges[edge] = true;
+						changed = true;
+					}
+				}
+				if (changed && searchGoal >= 0) {
+					for (int h = 0; h < DIRECTIONS; h++) {
+						updateState((node * DIRECTIONS) + h);
+					}
+				}
+			}
+		}
+		cache.clear();
+	}
+
+	/**
+	 * Removes every obstacle added to the lattice, and forgets the paths found so far and the last search.
+	 */
+	public void clearObstacles() {
+		buildLattice();
+		clearCache();
+	}
+
+	/**
+	 * Forgets the paths found so far and the last search, such that the next plans are searched from scratch.
+	 */
+	public void clearCache() {
+		cache.clear();
+		searchGoal = -1;
+	}
+
+	/**
+	 * Searches the lattice between two usable nodes, starting a new search if the goal changed,
+	 * or repairing the last one otherwise.
+	 * @param startNode  Index of the start node
+	 * @param goalNode  Index of the goal node
+	 * @return  The corners of the path between the start and the goal, excluded, null if no path exists
+	 */
+	private List<Coordinate> search(int startNode, int goalNode) {
+		if (goalNode != searchGoal) {
+			startSearch(startNode, goalNode);
+		} else if (startNode != searchStart) {
+			keyModifier += distance(searchStart, startNode);
+			searchStart = startNode;
+			updateState(startState);
+		}
+		computeCosts();
+		if (cost[startState] >= INFINITY) {
+			return null;
+		}
+
+		//Follow the cheapest successors from the start and only keep the corners of the path
+		List<Coordinate> corners = new ArrayList<Coordinate>();
+		int state = cheapestSuccessor(startState);
+		int steps = 0;
+		while (state / DIRECTIONS != goalNode) {
+			int next = cheapestSuccessor(state);
+			if (next < 0 || ++steps > startState) {
+				return null;
+			}
+			if (next % DIRECTIONS != state % DIRECTIONS && state / DIRECTIONS != startNode) {
+				corners.add(coordinateOf(state / DIRECTIONS));
+			}
+			state = next;
+		}
+		return corners;
+	}
+
+	/**
+	 * Starts a new search from a goal, where the robot can arrive in any direction.
+	 */
+	private void startSearch(int startNode, int goalNode) {
+		for (int s = 0; s < cost.length; s++) {
+			cost[s] = INFINITY;
+			lookahead[s] = INFINITY;
+			open[s] = false;
+		}
+		heapSize = 0;
+		keyModifier = 0;
+		searchGoal = goalNode;
+		searchStart = startNode;
+		for (int d = 0; d < DIRECTIONS; d++) {
+			int state = (goalNode * DIRECTIONS) + d;
+			lookahead[state] = 0;
+			push(state, key(state));
+		}
+	}
+
+	/**
+	 * Expands the states until the cost of the start is known, the D* Lite ComputeShortestPath procedure.
+	 * The cost of a state is the cost of the path from it to the goal, and its lookahead the lowest cost through its successors.
+	 */
+	private void computeCosts() {
+		while (true) {
+			int state = peek();
+			//The states of the start node have the same key as the start, they are expanded as well such that the path can leave from them
+			if (state < 0 || (heapKeys[0] > key(startState) && lookahead[startState] == cost[startState])) {
+				return;
+			}
+			long oldKey = heapKeys[0];
+			pop();
+			open[state] = false;
+			long newKey = key(state);
+			int count = predecessors(state);
+			if (oldKey < newKey) {
+				push(state, newKey);
+			} else if (cost[state] > lookahead[state]) {
+				//The cost went down, the predecessors can only get cheaper through the state
+				cost[state] = lookahead[state];
+				for (int i = 0; i < count; i++) {
+					int previous = predecessorBuffer[i];
+					if (previous / DIRECTIONS != searchGoal) {
+						lookahead[previous] = Math.min(lookahead[previous], transitionCost(previous, state) + cost[state]);
+					}
+					updateQueue(previous);
+				}
+			} else {
+				//The cost went up, the predecessors whose lookahead came through the state are computed again
+				int oldCost = cost[state];
+				cost[state] = INFINITY;
+				updateQueue(state);
+				for (int i = 0; i < count; i++) {
+					int previous = predecessorBuffer[i];
+					if (lookahead[previous] == transitionCost(previous, state) + oldCost) {
+						updateState(previous);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Computes the lookahead of a state again and updates its place in the queue.
+	 */
+	private void updateState(int state) {
+		if (state == startState) {
+			int lowest = INFINITY;
+			for (int d = 0; d < DIRECTIONS; d++) {
+				lowest = Math.min(lowest, cost[(searchStart * DIRECTIONS) + d]);
+			}
+			lookahead[state] = lowest;
+		} else if (state / DIRECTIONS != searchGoal) {
+			int successor = cheapestSuccessor(state);
+			lookahead[state] = successor < 0 ? INFINITY : Math.min(INFINITY, edgeCost(state, successor) + cost[successor]);
+		}
+		updateQueue(state);
+	}
+
+	/**
+	 * Puts a state in the queue if its cost does not match its lookahead, and takes it out otherwise.
+	 */
+	private void updateQueue(int state) {
+		if (cost[state] == lookahead[state]) {
+			open[state] = false;
+			return;
+		}
+		long key = key(state);
+		if (!open[state] || openKeys[state] != key) {
+			push(state, key);
+		}
+	}
+
+	/**
+	 * Finds the states that lead to a state, the robot entering the node in the direction of the state from any heading,
+	 * and the start if the state is on the start node.
+	 * @return  The number of predecessors written to the buffer
+	 */
+	private int predecessors(int state) {
+		int count = 0;
+		int node = state / DIRECTIONS;
+		int d = state % DIRECTIONS;
+		int x = (node % size) - DX[d];
+		int y = (node / size) - DY[d];
+		if (x >= 0 && y >= 0 && x < size && y < size) {
+			int previous = (y * size) + x;
+			if (!blockedEdges[(previous * DIRECTIONS) + d]) {
+				for (int h = 0; h < DIRECTIONS; h++) {
+					predecessorBuffer[count++] = (previous * DIRECTIONS) + h;
+				}
+			}
+		}
+		if (node == searchStart) {
+			predecessorBuffer[count++] = startState;
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the successor of a state with the lowest cost to the goal through it.
+	 * @return  The successor state, -1 if no successor can reach the goal
+	 */
+	private int cheapestSuccessor(int state) {
+		int best = -1;
+		int lowest = INFINITY;
+		if (state == startState) {
+			//The robot can leave the start in any direction without paying for a turn
+			for (int d = 0; d < DIRECTIONS; d++) {
+				int successor = (searchStart * DIRECTIONS) + d;
+				if (cost[successor] < lowest) {
+					lowest = cost[successor];
+					best = successor;
+				}
+			}
+			return best;
+		}
+		int node = state / DIRECTIONS;
+		int x = node % size;
+		int y = node / size;
+		for (int d = 0; d < DIRECTIONS; d++) {
+			if (blockedEdges[(node * DIRECTIONS) + d]) {
+				continue;
+			}
+			int successor = ((((y + DY[d]) * size) + x + DX[d]) * DIRECTIONS) + d;
+			if (cost[successor] >= INFINITY) {
+				continue;
+			}
+			int total = edgeCost(state, successor) + cost[successor];
+			if (total < lowest) {
+				lowest = total;
+				best = successor;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Cost of moving from a state to its successor, nothing from the start to the states of the start node.
+	 */
+	private int transitionCost(int state, int successor) {
+		return state == startState ? 0 : edgeCost(state, successor);
+	}
+
+	/**
+	 * Cost of moving from a state to its successor, moving by half a tile and turning towards the new direction.
+	 */
+	private static int edgeCost(int state, int successor) {
+		int turns = Math.abs((state % DIRECTIONS) - (successor % DIRECTIONS));
+		if (turns == 3) {
+			turns = 1;
+		}
+		return STEP_COST + (turns * TURN_COST);
+	}
+
+	/**
+	 * Priority of a state in the queue, the lowest of its cost and lookahead plus the heuristic to the start in the high bits,
+	 * and the lowest of its cost and lookahead in the low bits to break ties.
+	 */
+	private long key(int state) {
+		long lowest = Math.min(cost[state], lookahead[state]);
+		long heuristic = state == startState ? 0 : distance(state / DIRECTIONS, searchStart);
+		return ((lowest + heuristic + keyModifier) << 32) | lowest;
+	}
+
+	/**
+	 * Computes which nodes of the lattice can be used and which edges between them are blocked.
+	 */
+	private void buildLattice() {
+		for (int y = 0; y < size; y++) {
+			for (int x = 0; x < size; x++) {
+				int node = (y * size) + x;
+				zones[node] = zoneMap.mapNode(x, y);
+			}
+		}
+		for (int y = 1; y < size - 1; y++) {
+			for (int x = 1; x < size - 1; x++) {
+				int node = (y * size) + x;
+				//Points where the two shallow water zones meet lie between two bridge points and can be driven on
+				if (zones[node] == Zone.RIVER && ((zones[node - 1] == Zone.BRIDGE && zones[node + 1] == Zone.BRIDGE)
+						|| (zones[node - size] == Zone.BRIDGE && zones[node + size] == Zone.BRIDGE))) {
+					zones[node] = Zone.BRIDGE;
+				}
+			}
+		}
+		for (int y = 0; y < size; y++) {
+			for (int x = 0; x < size; x++) {
+				int node = (y * size) + x;
+				//The walls of the board can not be driven on
+				usable[node] = zones[node] != Zone.RIVER && x > 0 && y > 0 && x < size - 1 && y < size - 1;
+			}
+		}
+		for (int y = 0; y < size; y++) {
+			for (int x = 0; x < size; x++) {
+				int node = (y * size) + x;
+				for (int d = 0; d < DIRECTIONS; d++) {
+					int nextX = x + DX[d];
+					int nextY = y + DY[d];
+					boolean blocked = true;
+					if (usable[node] && nextX >= 0 && nextY >= 0 && nextX < size && nextY < size) {
+						int next = (nextY * size) + nextX;
+						blocked = !usable[next]
+								|| !(zones[node] == zones[next] || zones[node] == Zone.BRIDGE || zones[next] == Zone.BRIDGE)
+								|| crossesZipline(zoneMap.getPosition(x), zoneMap.getPosition(y), zoneMap.getPosition(nextX), zoneMap.getPosition(nextY));
+					}
+					blockedEdges[(node * DIRECTIONS) + d] = blocked;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks if the segment between two points touches the zipline going from ZC_G to ZC_R.
+	 * @param ax  X value of the first point
+	 * @param ay  Y value of the first point
+	 * @param bx  X value of the second point
+	 * @param by  Y value of the second point
+	 * @return  True if the segment touches the zipline
+	 */
+	private boolean crossesZipline(double ax, double ay, double bx, double by) {
+		double cx = gameParameters.ZC_G.x;
+		double cy = gameParameters.ZC_G.y;
+		double dx = gameParameters.ZC_R.x;
+		double dy = gameParameters.ZC_R.y;
+		double o1 = orientation(ax, ay, bx, by, cx, cy);
+		double o2 = orientation(ax, ay, bx, by, dx, dy);
+		double o3 = orientation(cx, cy, dx, dy, ax, ay);
+		double o4 = orientation(cx, cy, dx, dy, bx, by);
+		if (((o1 > 0 && o2 < 0) || (o1 < 0 && o2 > 0)) && ((o3 > 0 && o4 < 0) || (o3 < 0 && o4 > 0))) {
+			return true;
+		}
+		return (o1 == 0 && onSegment(ax, ay, bx, by, cx, cy)) || (o2 == 0 && onSegment(ax, ay, bx, by, dx, dy))
+				|| (o3 == 0 && onSegment(cx, cy, dx, dy, ax, ay)) || (o4 == 0 && onSegment(cx, cy, dx, dy, bx, by));
+	}
+
+	/**
+	 * Returns the sign of the cross product of (b - a) and (c - a).
+	 */
+	private static double orientation(double ax, double ay, double bx, double by, double cx, double cy) {
+		return Math.signum(((bx - ax) * (cy - ay)) - ((by - ay) * (cx - ax)));
+	}
+
+	/**
+	 * Checks if a point that is collinear with a segment lies within it.
+	 */
+	private static boolean onSegment(double ax, double ay, double bx, double by, double px, double py) {
+		return px >= Math.min(ax, bx) && px <= Math.max(ax, bx) && py >= Math.min(ay, by) && py <= Math.max(ay, by);
+	}
+
+	/**
+	 * Manhattan distance between two nodes, which never overestimates the cost of a path.
+	 */
+	private int distance(int node, int otherNode) {
+		return STEP_COST * (Math.abs((node % size) - (otherNode % size)) + Math.abs((node / size) - (otherNode / size)));
+	}
+
+	/**
+	 * Distance from a point to a segment.
+	 */
+	private static double segmentDistance(double ax, double ay, double bx, double by, double px, double py) {
+		double dx = bx - ax;
+		double dy = by - ay;
+		double t = ((px - ax) * dx) + ((py - ay) * dy);
+		double length = (dx * dx) + (dy * dy);
+		t = length > 0 ? Math.max(0, Math.min(1, t / length)) : 0;
+		return Math.hypot(ax + (t * dx) - px, ay + (t * dy) - py);
+	}
+
+	/**
+	 * Returns the index of the lattice node closest to a coordinate.
+	 * @param coordinate  The coordinate
+	 * @return  The index of the node, -1 if the coordinate is off the board
+	 */
+	private int nodeOf(Coordinate coordinate) {
+		int x = (int) Math.round(coordinate.x / (tile / 2));
+		int y = (int) Math.round(coordinate.y / (tile / 2));
+		if (x < 0 || y < 0 || x >= size || y >= size) {
+			return -1;
+		}
+		return (y * size) + x;
+	}
+
+	/**
+	 * Returns the coordinate of a lattice node.
+	 * @param node  Index of the node
+	 * @return  The coordinate of the node
+	 */
+	private Coordinate coordinateOf(int node) {
+		return new Coordinate(zoneMap.getPosition(node % size), zoneMap.getPosition(node / size));
+	}
+
+	/**
+	 * Adds a state to the priority queue. The entries of a state pushed before become stale and are skipped,
+	 * and the queue is rebuilt from the open states when it is full.
+	 */
+	private void push(int state, long key) {
+		open[state] = true;
+		openKeys[state] = key;
+		if (heapSize == heapStates.length) {
+			heapSize = 0;
+			for (int s = 0; s < open.length; s++) {
+				if (open[s] && s != state) {
+					siftUp(s, openKeys[s]);
+				}
+			}
+		}
+		siftUp(state, key);
+	}
+
+	/**
+	 * Returns the open state with the lowest key, which stays first in the queue, -1 if there is none.
+	 */
+	private int peek() {
+		while (heapSize > 0) {
+			int state = heapStates[0];
+			if (open[state] && openKeys[state] == heapKeys[0]) {
+				return state;
+			}
+			pop();
+		}
+		return -1;
+	}
+
+	private void siftUp(int state, long key) {
+		int i = heapSize++;
+		while (i > 0) {
+			int p = (i - 1) / 2;
+			if (heapKeys[p] <= key) {
+				break;
+			}
+			heapStates[i] = heapStates[p];
+			heapKeys[i] = heapKeys[p];
+			i = p;
+		}
+		heapStates[i] = state;
+		heapKeys[i] = key;
+	}
+
+	/**
+	 * Removes the first entry of the priority queue.
+	 */
+	private void pop() {
+		heapSize--;
+		int state = heapStates[heapSize];
+		long key = heapKeys[heapSize];
+		int i = 0;
+		while (true) {
+			int child = (2 * i) + 1;
+			if (child >= heapSize) {
+				break;
+			}
+			if (child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child]) {
+				child++;
+			}
+			if (heapKeys[child] >= key) {
+				break;
+			}
+			heapStates[i] = heapStates[child];
+			heapKeys[i] = heapKeys[child];
+			i = child;
+		}
+		heapStates[i] = state;
+		heapKeys[i] = key;
+	}
+}
@@ -0,0 +1,49 @@
+/**
+ * Pose.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+/**
+ * Immutable snapshot of the position and heading of the robot
+ * taken from the odometer in a single consistent read.
+ *
+ * @author Michael Vaquier
+ */
+public class Pose {
+
+	/**
+	 * X value of the robot's center of rotation
+	 */
+	public final double x;
+
+	/**
+	 * Y value of the robot's center of rotation
+	 */
+	public final double y;
+
+	/**
+	 * Heading of the robot in radiant
+	 */
+	public final double theta;
+
+	/**
+	 * Heading of the robot in degrees
+	 */
+	public final double thetaDegrees;
+
+	/**
+	 * Creates a Pose object.
+	 * @param x  The X value of the robot
+	 * @param y  The Y value of the robot
+	 * @param theta  The heading of the robot in radiant
+	 * @param thetaDegrees  The heading of the robot in degrees
+	 */
+	public Pose(double x, double y, double theta, double thetaDegrees) {
+		this.x = x;
+		this.y = y;
+		this.theta = theta;
+		this.thetaDegrees = thetaDegrees;
+	}
+
+}
@@ -0,0 +1,345 @@
+/**
+ * PoseEstimator.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+/**
+ * The PoseEstimator class is an extended Kalman filter keeping the mean and the covariance of the pose of the robot,
+ * X and Y in centimeters and the heading in radiant.
+ * The pose is predicted from the distance traveled by each wheel, the variance of the distance traveled by a wheel
+ * growing with that distance, and updated with measurements of the pose made by the sensors.
+ * A measurement that is too far from the prediction for the current covariance is rejected.
+ * The class is not thread safe, the Odometer owning it serializes every call.
+ *
+ * @author Michael Vaquier
+ *
+ */
+public class PoseEstimator {
+
+	//Variance of the distance traveled by a wheel for each centimeter traveled, in cm^2/cm, such that the heading
+	//drifts by about 2 degrees every 5 tiles, the distance after which the robot used to localise
+	private static final double WHEEL_VARIANCE_RATE = 0.0005;
+	//Measurements further than 3 standard deviations from the prediction are rejected
+	private static final double GATE = 9;
+
+	private final double track;
+
+	//Mean
+	private double x;
+	private double y;
+	private double theta;
+
+	//Covariance, row major
+	private final double[] p = new double[9];
+
+	//variables used for rapid computation
+	private final double[] ph = new double[3];
+	private final double[] gain = new double[3];
+	private final double[] product = new double[9];
+
+	/**
+	 * Creates a PoseEstimator object at the origin with no uncertainty.
+	 * @param track  Width of the wheelbase
+	 */
+	public PoseEstimator(double track) {
+		this.track = track;
+	}
+
+	/**
+	 * Predicts the pose after the wheels traveled the given distances, in the same way as the odometer:
+	 * the heading is updated first, then the position along the new heading.
+	 * @param distL  Distance traveled by the left wheel
+	 * @param distR  Distance traveled by the right wheel
+	 */
+	public void predict(double distL, double distR) {
+		double deltaD = 0.5 * (distL + distR);
+		theta = wrap(theta + ((distL - distR) / track));
+		double sin = Math.sin(theta);
+		double cos = Math.cos(theta);
+		x += deltaD * sin;
+		y += deltaD * cos;
+
+		//P = F P F' with F = [1 0 a; 0 1 b; 0 0 1]
+		double a = deltaD * cos;
+		double b = -deltaD * sin;
+		double p02 = p[2] + (a * p[8]);
+		double p12 = p[5] + (b * p[8]);
+		double p00 = p[0] + (2 * a * p[2]) + (a * a * p[8]);
+		double p11 = p[4] + (2 * b * p[5]) + (b * b * p[8]);
+		double p01 = p[1] + (a * p[5]) + (b * p[2]) + (a * b * p[8]);
+
+		//P += W Q W' with Q the variance of the distances traveled by the wheels
+		double varL = WHEEL_VARIANCE_RATE * Math.abs(distL);
+		double varR = WHEEL_VARIANCE_RATE * Math.abs(distR);
+		double wxL = (0.5 * sin) + (a / track);
+		double wxR = (0.5 * sin) - (a / track);
+		double wyL = (0.5 * cos) + (b / track);
+		double wyR = (0.5 * cos) - (b / track);
+		double wt = 1 / track;
+		p00 += (wxL * wxL * varL) + (wxR * wxR * varR);
+		p11 += (wyL * wyL * varL) + (wyR * wyR * varR);
+		p01 += (wxL * wyL * varL) + (wxR * wyR * varR);
+		p02 += (wxL * wt * varL) - (wxR * wt * varR);
+		p12 += (wyL * wt * varL) - (wyR * wt * varR);
+		p[8] += wt * wt * (varL + varR);
+		p[0] = p00;
+		p[4] = p11;
+		p[1] = p01;
+		p[3] = p01;
+		p[2] = p02;
+		p[6] = p02;
+		p[5] = p12;
+		p[7] = p12;
+	}
+
+	/**
+	 * Updates the pose with a crossing of a grid line by a floor sensor placed on the axis of the robot.
+	 * The pose at the time of the crossing can be older than the current pose, the correction is applied to the current pose.
+	 * @param crossingX  X value of the robot when the line was crossed
+	 * @param crossingY  Y value of the robot when the line was crossed
+	 * @param crossingTheta  Heading of the robot in radiant when the line was crossed
+	 * @param horizontalLine  True if the line is parallel to the X axis, false if it is parallel to the Y axis
+	 * @param lineCoordinate  Y value of an horizontal line or X value of a vertical line
+	 * @param sensorOffset  Distance of the sensor behind the center of rotation
+	 * @param variance  Variance of the position of the sensor along the normal of the line
+	 * @return  True if the measurement was used, false if it was rejected
+	 */
+	public boolean updateLine(double crossingX, double crossingY, double crossingTheta, boolean horizontalLine,
+			double lineCoordinate, double sensorOffset, double variance) {
+		double sin = Math.sin(crossingTheta);
+		double cos = Math.cos(crossingTheta);
+		if (horizontalLine) {
+			return update(0, 1, sensorOffset * sin, lineCoordinate - (crossingY - (sensorOffset * cos)), variance);
+		} else {
+			return update(1, 0, -sensorOffset * cos, lineCoordinate - (crossingX - (sensorOffset * sin)), variance);
+		}
+	}
+
+	/**
+	 * Updates the pose with the distance to a wall of the board measured by a range sensor placed on the axis of the robot.
+	 * The beam of the sensor is modeled as its closest ray to the normal of the wall.
+	 * Walls seen with an incidence of more than 60 degrees are rejected.
+	 * @param heading  Direction of the sensor in radiant
+	 * @param verticalWall  True if the wall is parallel to the Y axis, false if it is parallel to the X axis
+	 * @param wallCoordinate  X value of a vertical wall or Y value of an horizontal wall
+	 * @param range  Distance measured
+	 * @param sensorOffset  Distance of the sensor in front of the center of rotation
+	 * @param beamHalfWidth  Half of the opening of the beam in radiant
+	 * @param variance  Variance of the distance measured
+	 * @return  True if the measurement was used, false if it was rejected
+	 */
+	public boolean updateWallRange(double heading, boolean verticalWall, double wallCoordinate, double range,
+			double sensorOffset, double beamHalfWidth, double variance) {
+		//Angle between the ray and the wall, turned towards the normal by the beam
+		double normal = verticalWall ? (wallCoordinate > x ? Math.PI / 2 : -Math.PI / 2) : (wallCoordinate > y ? 0 : Math.PI);
+		double incidence = wrap(heading - normal);
+		if (incidence > Math.PI) {
+			incidence -= 2 * Math.PI;
+		}
+		double ray = heading - (Math.signum(incidence) * Math.min(Math.abs(incidence), beamHalfWidth));
+		double cosIncidence = Math.cos(Math.abs(incidence) - Math.min(Math.abs(incidence), beamHalfWidth));
+		if (cosIncidence < 0.5) {
+			return false;
+		}
+		//range + offset = (wall - position) / component of the ray along the normal
+		double component = verticalWall ? Math.sin(ray) : Math.cos(ray);
+		double distance = verticalWall ? wallCoordinate - x : wallCoordinate - y;
+		double predicted = (distance / component) - sensorOffset;
+		double derivative = -distance * (verticalWall ? Math.cos(ray) : -Math.sin(ray)) / (component * component);
+		if (verticalWall) {
+			return update(-1 / component, 0, derivative, range - predicted, variance);
+		} else {
+			return update(0, -1 / component, derivative, range - predicted, variance);
+		}
+	}
+
+	/**
+	 * Updates the position with a direct measurement of X and Y.
+	 * @param measuredX  X value measured
+	 * @param measuredY  Y value measured
+	 * @param variance  Variance of each coordinate measured
+	 */
+	public void updatePosition(double measuredX, double measuredY, double variance) {
+		update(1, 0, 0, measuredX - x, variance, false);
+		update(0, 1, 0, measuredY - y, variance, false);
+	}
+
+	/**
+	 * Updates the heading with a direct measurement.
+	 * @param measuredTheta  Heading measured in radiant
+	 * @param variance  Variance of the heading measured in radiant^2
+	 */
+	public void updateHeading(double measuredTheta, double variance) {
+		double innovation = wrap(measuredTheta - theta);
+		if (innovation > Math.PI) {
+			innovation -= 2 * Math.PI;
+		}
+		update(0, 0, 1, innovation, variance, false);
+	}
+
+	/**
+	 * Scalar Kalman update with the measurement Jacobian h, rejecting measurements outside of the gate.
+	 */
+	private boolean update(double h0, double h1, double h2, double innovation, double variance) {
+		return update(h0, h1, h2, innovation, variance, true);
+	}
+
+	/**
+	 * Scalar Kalman update with the measurement Jacobian h.
+	 * @return  True if the measurement was used
+	 */
+	private boolean update(double h0, double h1, double h2, double innovation, double variance, boolean gated) {
+		for (int i = 0; i < 3; i++) {
+			ph[i] = (p[3 * i] * h0) + (p[(3 * i) + 1] * h1) + (p[(3 * i) + 2] * h2);
+		}
+		double s = (h0 * ph[0]) + (h1 * ph[1]) + (h2 * ph[2]) + variance;
+		if (s <= 0 || (gated && innovation * innovation > GATE * s)) {
+			return false;
+		}
+		for (int i = 0; i < 3; i++) {
+			gain[i] = ph[i] / s;
+		}
+		x += gain[0] * innovation;
+		y += gain[1] * innovation;
+		theta = wrap(theta + (gain[2] * innovation));
+
+		//P = P - K (H P), kept symmetric
+		for (int i = 0; i < 3; i++) {
+			for (int j = 0; j < 3; j++) {
+				product[(3 * i) + j] = gain[i] * ph[j];
+			}
+		}
+		for (int i = 0; i < 3; i++) {
+			for (int j = i; j < 3; j++) {
+				double value = p[(3 * i) + j] - (0.5 * (product[(3 * i) + j] + product[(3 * j) + i]));
+				p[(3 * i) + j] = value;
+				p[(3 * j) + i] = value;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Replaces the pose and its covariance, for when the previous estimate cannot be trusted.
+	 * @param x  New X value
+	 * @param y  New Y value
+	 * @param theta  New heading in radiant
+	 * @param positionVariance  Variance of each coordinate
+	 * @param headingVariance  Variance of the heading in radiant^2
+	 */
+	public void reset(double x, double y, double theta, double positionVariance, double headingVariance) {
+		this.x = x;
+		this.y = y;
+		this.theta = wrap(theta);
+		for (int i = 0; i < 9; i++) {
+			p[i] = 0;
+		}
+		p[0] = positionVariance;
+		p[4] = positionVariance;
+		p[8] = headingVariance;
+	}
+
+	/**
+	 * Replaces the pose and its covariance.
+	 * @param x  New X value
+	 * @param y  New Y value
+	 * @param theta  New heading in radiant
+	 * @param covariance  Array of 9 values in row major order, X, Y and heading
+	 */
+	public void reset(double x, double y, double theta, double[] covariance) {
+		this.x = x;
+		this.y = y;
+		this.theta = wrap(theta);
+		System.arraycopy(covariance, 0, p, 0, 9);
+	}
+
+	/**
+	 * Returns the standard deviation of a position along its most uncertain direction.
+	 * @param covariance  Covariance of a pose, 9 values in row major order, X, Y and heading
+	 * @return  Largest standard deviation of the position
+	 */
+	public static double positionUncertainty(double[] covariance) {
+		return positionUncertainty(covariance[0], covariance[1], covariance[4]);
+	}
+
+	/**
+	 * Returns the standard deviation of a position along its most uncertain direction.
+	 * @param varianceX  Variance of X
+	 * @param covarianceXY  Covariance of X and Y
+	 * @param varianceY  Variance of Y
+	 * @return  Largest standard deviation of the position
+	 */
+	public static double positionUncertainty(double varianceX, double covarianceXY, double varianceY) {
+		double mean = 0.5 * (varianceX + varianceY);
+		double difference = 0.5 * (varianceX - varianceY);
+		return Math.sqrt(mean + Math.sqrt((difference * difference) + (covarianceXY * covarianceXY)));
+	}
+
+	/**
+	 * Wraps an angle between 0 and 2 pi.
+	 */
+	private static double wrap(double angle) {
+		angle %= 2 * Math.PI;
+		if (angle < 0) {
+			angle += 2 * Math.PI;
+		}
+		return angle;
+	}
+
+	/**
+	 * Returns the X value of the mean.
+	 * @return  X value
+	 */
+	public double getX() {
+		return x;
+	}
+
+	/**
+	 * Returns the Y value of the mean.
+	 * @return  Y value
+	 */
+	public double getY() {
+		return y;
+	}
+
+	/**
+	 * Returns the heading of the mean.
+	 * @return  Heading in radiant between 0 and 2 pi
+	 */
+	public double getTheta() {
+		return theta;
+	}
+
+	/**
+	 * Sets the X value of the mean, the covariance is left unchanged.
+	 * @param x  New X value
+	 */
+	public void setX(double x) {
+		this.x = x;
+	}
+
+	/**
+	 * Sets the Y value of the mean, the covariance is left unchanged.
+	 * @param y  New Y value
+	 */
+	public void setY(double y) {
+		this.y = y;
+	}
+
+	/**
+	 * Sets the heading of the mean, the covariance is left unchanged.
+	 * @param theta  New heading in radiant
+	 */
+	public void setTheta(double theta) {
+		this.theta = wrap(theta);
+	}
+
+	/**
+	 * Copies the covariance of the pose.
+	 * @param covariance  Array of 9 values written in row major order, X, Y and heading
+	 */
+	public void getCovariance(double[] covariance) {
+		System.arraycopy(p, 0, covariance, 0, 9);
+	}
+}
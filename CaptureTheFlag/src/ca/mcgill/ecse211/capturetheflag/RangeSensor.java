@@ -0,0 +1,21 @@
+/**
+ * RangeSensor.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+/**
+ * The RangeSensor interface is used by the ultrasonic poller to read distances
+ * without depending on the sensor behind it.
+ * 
+ * @author Michael Vaquier
+ *
+ */
+public interface RangeSensor {
+
+	/**
+	 * Fetches a new distance reading.
+	 * @return  The distance in meters, Float.POSITIVE_INFINITY if nothing is in range
+	 */
+	public float fetchDistance();
+}
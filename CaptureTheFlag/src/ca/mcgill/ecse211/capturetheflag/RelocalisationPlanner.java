@@ -0,0 +1,130 @@
+/**
+ * RelocalisationPlanner.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+import java.util.List;
+
+import ca.mcgill.ecse211.capturetheflag.GameParameters.Zone;
+
+/**
+ * The RelocalisationPlanner class decides where along a path the robot should stop to perform a light localisation.
+ * The uncertainty of the pose is predicted along the path, from the current covariance of the odometer, with the same
+ * model the odometer uses: every turn in place and every straight leg adds the uncertainty of the distance traveled by each wheel,
+ * and the last line crossed on a leg along X or Y is expected to correct the odometer as the OdometryCorrectionData does.
+ * The robot localises at the last way point where a localisation is possible before the predicted uncertainty
+ * goes over the bound, such that it localises as few times as possible and always at a point where it stops anyway.
+ *
+ * @author Michael Vaquier
+ *
+ */
+public class RelocalisationPlanner {
+
+	private final ZoneMap zoneMap;
+	private final GameParameters gameParameters;
+	private final double tile;
+	private final double track;
+	private final double bound;
+
+	//Pose predicted along the path
+	private final PoseEstimator prediction;
+	private final double[] covariance = new double[9];
+
+	/**
+	 * Creates a RelocalisationPlanner object.
+	 * @param zoneMap  The ZoneMap of the game board
+	 * @param gameParameters  Game parameters for this round
+	 * @param tile  The tile length of the game board
+	 * @param track  Width of the wheelbase
+	 * @param bound  Largest uncertainty of the position allowed along the path in centimeters
+	 */
+	public RelocalisationPlanner(ZoneMap zoneMap, GameParameters gameParameters, double tile, double track, double bound) {
+		this.zoneMap = zoneMap;
+		this.gameParameters = gameParameters;
+		this.tile = tile;
+		this.track = track;
+		this.bound = bound;
+		this.prediction = new PoseEstimator(track);
+	}
+
+	/**
+	 * Finds the way point at which the robot should localise next.
+	 * @param pose  Current pose of the robot
+	 * @param poseCovariance  Current covariance of the pose, 9 values in row major order
+	 * @param path  Way points the robot will travel to, in order
+	 * @return  Index of the way point at which to localise, -1 if the end of the path can be reached within the bound
+	 *          or if no way point allows it
+	 */
+	public int plan(Pose pose, double[] poseCovariance, List<Coordinate> path) {
+		prediction.reset(pose.x, pose.y, pose.theta, poseCovariance);
+		int candidate = -1;
+		int index = 0;
+		for (Coordinate point : path) {
+			travel(point);
+			prediction.getCovariance(covariance);
+			if (PoseEstimator.positionUncertainty(covariance) > bound) {
+				return candidate;
+			}
+			//The robot does not localise again where it already is
+			if (canLocalise(point) && Math.hypot(point.x - pose.x, point.y - pose.y) > 1) {
+				candidate = index;
+			}
+			index++;
+		}
+		return -1;
+	}
+
+	/**
+	 * Predicts the pose after turning in place towards a point and traveling to it, as Navigation.travelTo does.
+	 */
+	private void travel(Coordinate point) {
+		double dx = point.x - prediction.getX();
+		double dy = point.y - prediction.getY();
+		double rotation = Math.atan2(dx, dy) - prediction.getTheta();
+		while (rotation > Math.PI) {
+			rotation -= 2 * Math.PI;
+		}
+		while (rotation < -Math.PI) {
+			rotation += 2 * Math.PI;
+		}
+		double wheelDistance = rotation * track / 2;
+		prediction.predict(wheelDistance, -wheelDistance);
+		double distance = Math.hypot(dx, dy);
+
+		//Position of the floor sensor along the axis of travel, lines are only used along X or Y
+		double heading = prediction.getTheta();
+		int axis = (int) Math.round(heading / (Math.PI / 2)) % 4;
+		if (Math.abs(Math.sin(heading - (axis * Math.PI / 2))) > Math.sin(Math.toRadians(OdometryCorrectionData.HEADING_TOLERANCE))) {
+			prediction.predict(distance, distance);
+			return;
+		}
+		boolean horizontalLine = axis == 0 || axis == 2;
+		double direction = (axis == 0 || axis == 1) ? 1 : -1;
+		double start = (horizontalLine ? prediction.getY() : prediction.getX()) - (OdometryCorrectionData.COLOR_SENSOR_OFFSET * direction);
+		double end = start + (distance * direction);
+		double lastLine = (direction > 0 ? Math.floor(end / tile) : Math.ceil(end / tile)) * tile;
+		double toLine = (lastLine - start) * direction;
+		if (toLine <= 0) {
+			prediction.predict(distance, distance);
+			return;
+		}
+		prediction.predict(toLine, toLine);
+		prediction.updateLine(prediction.getX(), prediction.getY(), prediction.getTheta(), horizontalLine, lastLine,
+				OdometryCorrectionData.COLOR_SENSOR_OFFSET, OdometryCorrectionData.LINE_DEVIATION * OdometryCorrectionData.LINE_DEVIATION);
+		prediction.predict(distance - toLine, distance - toLine);
+	}
+
+	/**
+	 * Returns true if the robot can perform a light localisation at a point: an intersection of grid lines
+	 * outside of the river and away from the ends of the zipline.
+	 * @param point  Point to check
+	 * @return  True if the robot can localise at the point
+	 */
+	public boolean canLocalise(Coordinate point) {
+		boolean intersection = Math.abs(point.x - (Math.round(point.x / tile) * tile)) < 1
+				&& Math.abs(point.y - (Math.round(point.y / tile) * tile)) < 1;
+		return intersection && zoneMap.mapPoint(point) != Zone.RIVER && !point.equals(gameParameters.ZC_G)
+				&& !point.equals(gameParameters.ZC_R);
+	}
+}
@@ -0,0 +1,28 @@
+/**
+ * SensorEvent.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+/**
+ * This enumeration defines the events detected by the data processing classes from the sensor samples.
+ * 
+ * @author Michael Vaquier
+ *
+ */
+public enum SensorEvent {
+	/** The back color sensor crossed a grid line (ColorLocalisationData) */
+	LINE_CROSSED,
+	/** The robot left the ground on the zipline (ZiplineLightData) */
+	TAKE_OFF,
+	/** The robot landed at the end of the zipline (ZiplineLightData) */
+	LANDING,
+	/** The ultrasonic sensor started seeing a wall (UltrasonicLocalisationData) */
+	FALLING_EDGE,
+	/** The ultrasonic sensor stopped seeing a wall (UltrasonicLocalisationData) */
+	RISING_EDGE,
+	/** The color of the flag was seen by a side or front sensor (BlockSearchingData) */
+	BLOCK_FOUND,
+	/** An obstacle is in front of the robot while navigating (UltrasonicNavigationData) */
+	OBSTACLE_DETECTED
+}
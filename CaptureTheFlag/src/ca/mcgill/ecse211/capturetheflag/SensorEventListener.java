@@ -0,0 +1,22 @@
+/**
+ * SensorEventListener.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+/**
+ * The SensorEventListener interface is notified of every event detected by a data processing class,
+ * in addition to the controller the data processing class is associated to.
+ * It is called from the thread processing the samples and must return quickly.
+ * 
+ * @author Michael Vaquier
+ *
+ */
+public interface SensorEventListener {
+
+	/**
+	 * Called when an event is detected.
+	 * @param event  The event detected
+	 */
+	public void sensorEvent(SensorEvent event);
+}
@@ -0,0 +1,318 @@
+/**
+ * SensorScheduler.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lejos.utility.TimerListener;
+
+/**
+ * The SensorScheduler class runs every periodic task of the robot (odometer and sensor pollers) from a single thread.
+ * Priorities are rate-monotonic: when several tasks are due, the task with the shortest period runs first, and the
+ * highest priority task due is picked again after every task that ran. The tasks are not preempted, so a task must
+ * never sleep or wait and should return well within the shortest period.
+ * Each task has a deadline relative to its release time. A task finishing after its deadline counts an overrun, and the
+ * releases it missed while running late are skipped instead of being run back to back.
+ * Every task also records histograms of its period jitter and of its execution time, which can be read while the
+ * game is running and are printed by printStatistics.
+ *
+ * @author Michael Vaquier
+ *
+ */
+public class SensorScheduler implements Runnable {
+
+	//Tasks sorted by priority
+	private final List<PeriodicTask> tasks = new ArrayList<PeriodicTask>();
+	private final Object tasksLock = new Object();
+	private PeriodicTask[] priorityOrder = new PeriodicTask[0];
+	private int shortestPeriod = Integer.MAX_VALUE;
+
+	//Thread
+	private volatile boolean running = false;
+	private final Signal wakeUp;
+	private final Clock clock;
+
+	/**
+	 * Creates a SensorScheduler object.
+	 * @param clock  The clock of the system
+	 */
+	public SensorScheduler(Clock clock) {
+		this.clock = clock;
+		this.wakeUp = clock.newSignal();
+	}
+
+	/**
+	 * Registers a task with a deadline equal to its period. The task is stopped until it is started.
+	 * @param name  Name of the task used when reporting overruns
+	 * @param listener  Listener called every period
+	 * @param period  Period of the task in milliseconds
+	 * @return  The handle used to start and stop the task
+	 */
+	public PeriodicTask addTask(String name, TimerListener listener, int period) {
+		return addTask(name, listener, period, period);
+	}
+
+	/**
+	 * Registers a task. The task is stopped until it is started.
+	 * @param name  Name of the task used when reporting overruns
+	 * @param listener  Listener called every period
+	 * @param period  Period of the task in milliseconds
+	 * @param deadline  Time after each release by which the task must be done, in milliseconds
+	 * @return  The handle used to start and stop the task
+	 */
+	public PeriodicTask addTask(String name, TimerListener listener, int period, int deadline) {
+		if (period <= 0 || deadline <= 0) {
+			throw new IllegalArgumentException("The period and the deadline of a task must be positive");
+		}
+		PeriodicTask task = new PeriodicTask(name, listener, period, deadline);
+		synchronized (tasksLock) {
+			int index = 0;
+			while (index < tasks.size() && tasks.get(index).period <= period) {
+				index++;
+			}
+			tasks.add(index, task);
+			priorityOrder = tasks.toArray(new PeriodicTask[tasks.size()]);
+			shortestPeriod = Math.min(shortestPeriod, period);
+		}
+		return task;
+	}
+
+	/**
+	 * Spawns the thread running the tasks.
+	 */
+	public void start() {
+		if (!running) {
+			running = true;
+			clock.startThread(this);
+		}
+	}
+
+	/**
+	 * Stops the scheduler by letting its thread terminate itself.
+	 */
+	public void stop() {
+		running = false;
+	}
+
+	/**
+	 * Returns the registered tasks from the highest to the lowest priority.
+	 * @return  A copy of the task list
+	 */
+	public List<PeriodicTask> getTasks() {
+		synchronized (tasksLock) {
+			return new ArrayList<PeriodicTask>(tasks);
+		}
+	}
+
+	/**
+	 * Prints the statistics of every task, from the highest to the lowest priority.
+	 */
+	public void printStatistics() {
+		for (PeriodicTask task : getTasks()) {
+			System.out.println(task);
+			System.out.println("  jitter " + task.getJitter());
+			System.out.println("  exec " + task.getExecutionTime());
+		}
+	}
+
+	/**
+	 * Runs the highest priority task due until none is due, then waits until the next release or until a task is started.
+	 * The wait is never longer than the shortest period in case a task is started right before it.
+	 */
+	public void run() {
+		while (running) {
+			PeriodicTask[] order;
+			int idle;
+			synchronized (tasksLock) {
+				order = priorityOrder;
+				idle = shortestPeriod == Integer.MAX_VALUE ? 10 : shortestPeriod;
+			}
+			long now = clock.currentTimeMillis();
+			PeriodicTask due = null;
+			long nextRelease = now + idle;
+			for (PeriodicTask task : order) {
+				if (task.enabled) {
+					if (task.release <= now) {
+						due = task;
+						break;
+					}
+					nextRelease = Math.min(nextRelease, task.release);
+				}
+			}
+			if (due != null) {
+				due.execute();
+			} else {
+				wakeUp.await(nextRelease - now);
+			}
+		}
+	}
+
+	/**
+	 * A periodic task of the scheduler. Starting and stopping a task can be done from any thread.
+	 * @author Michael Vaquier
+	 *
+	 */
+	public class PeriodicTask {
+
+		private final String name;
+		private final TimerListener listener;
+		private final int period;
+		private final int deadline;
+
+		//Only written by the scheduler thread once the task is enabled
+		private volatile boolean enabled = false;
+		private volatile long release;
+		private volatile int runs = 0;
+		private volatile int overruns = 0;
+		private volatile int skippedReleases = 0;
+		private volatile long worstResponseTime = 0;
+		private volatile long lastStart = -1;
+		private final Histogram jitter = new Histogram();
+		private final Histogram executionTime = new Histogram();
+
+		private PeriodicTask(String name, TimerListener listener, int period, int deadline) {
+			this.name = name;
+			this.listener = listener;
+			this.period = period;
+			this.deadline = deadline;
+		}
+
+		/**
+		 * Releases the task now and then every period. Has no effect if the task is already running.
+		 */
+		public synchronized void start() {
+			if (!enabled) {
+				release = clock.currentTimeMillis();
+				lastStart = -1;
+				enabled = true;
+				wakeUp.signal();
+			}
+		}
+
+		/**
+		 * Stops the task. A call already in progress is completed.
+		 */
+		public synchronized void stop() {
+			enabled = false;
+		}
+
+		/**
+		 * Indicates if the task is released periodically.
+		 * @return  True if the task is started
+		 */
+		public boolean isRunning() {
+			return enabled;
+		}
+
+		/**
+		 * Runs one release of the task and computes its next release.
+		 */
+		private void execute() {
+			long released = release;
+			long start = clock.nanoTime();
+			if (lastStart >= 0) {
+				jitter.record(Math.abs(start - lastStart - period * 1000000L) / 1000);
+			}
+			lastStart = start;
+			listener.timedOut();
+			executionTime.record((clock.nanoTime() - start) / 1000);
+			long end = clock.currentTimeMillis();
+			runs++;
+			long responseTime = end - released;
+			if (responseTime > worstResponseTime) {
+				worstResponseTime = responseTime;
+			}
+			if (responseTime > deadline) {
+				overruns++;
+			}
+			long next = released + period;
+			if (next <= end) {
+				long missed = (end - next) / period + 1;
+				skippedReleases += missed;
+				next += missed * period;
+			}
+			release = next;
+		}
+
+		/**
+		 * Returns the name of the task.
+		 * @return  Name of the task
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Returns the period of the task.
+		 * @return  Period in milliseconds
+		 */
+		public int getPeriod() {
+			return period;
+		}
+
+		/**
+		 * Returns the deadline of the task.
+		 * @return  Deadline in milliseconds after each release
+		 */
+		public int getDeadline() {
+			return deadline;
+		}
+
+		/**
+		 * Returns how many times the task was run.
+		 * @return  Number of runs
+		 */
+		public int getRuns() {
+			return runs;
+		}
+
+		/**
+		 * Returns how many times the task finished after its deadline.
+		 * @return  Number of overruns
+		 */
+		public int getOverruns() {
+			return overruns;
+		}
+
+		/**
+		 * Returns how many releases were skipped because the task was running late.
+		 * @return  Number of skipped releases
+		 */
+		public int getSkippedReleases() {
+			return skippedReleases;
+		}
+
+		/**
+		 * Returns the longest time between a release and the end of the run of the task.
+		 * @return  Worst response time in milliseconds
+		 */
+		public long getWorstResponseTime() {
+			return worstResponseTime;
+		}
+
+		/**
+		 * Returns the histogram of the difference between the time between two consecutive runs and the period.
+		 * @return  Period jitter in microseconds
+		 */
+		public Histogram getJitter() {
+			return jitter;
+		}
+
+		/**
+		 * Returns the histogram of the time spent running the task.
+		 * @return  Execution time in microseconds
+		 */
+		public Histogram getExecutionTime() {
+			return executionTime;
+		}
+
+		@Override
+		public String toString() {
+			return name + " (" + period + " ms) : " + runs + " runs, " + overruns + " overruns, "
+					+ skippedReleases + " skipped, worst " + worstResponseTime + " ms";
+		}
+	}
+}
@@ -0,0 +1,33 @@
+/**
+ * Signal.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+/**
+ * The Signal interface is used by a thread to pause itself until another thread wakes it up.
+ * A signal sent while no thread is waiting is lost, unless the signal is latched: a latched signal is then kept and
+ * the next call to await returns at once.
+ * 
+ * @author Michael Vaquier
+ *
+ */
+public interface Signal {
+
+	/**
+	 * Makes the calling thread wait until the signal is sent.
+	 */
+	public void await();
+
+	/**
+	 * Makes the calling thread wait until the signal is sent or the timeout is reached.
+	 * @param timeout  Maximum time to wait in milliseconds, 0 to wait without a timeout
+	 * @return  True if the signal was sent, false if the timeout was reached
+	 */
+	public boolean await(long timeout);
+
+	/**
+	 * Wakes up all the threads waiting on the signal.
+	 */
+	public void signal();
+}
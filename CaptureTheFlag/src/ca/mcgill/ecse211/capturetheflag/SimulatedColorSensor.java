@@ -0,0 +1,49 @@
+/**
+ * SimulatedColorSensor.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+/**
+ * The SimulatedColorSensor class reads the floor or the blocks seen by a color sensor mounted on a SimulatedRobot.
+ * 
+ * @author Michael Vaquier
+ *
+ */
+public class SimulatedColorSensor implements ColorSensor {
+
+	/**
+	 * This enumeration defines the modes in which the sensor can be used.
+	 * @author Michael Vaquier
+	 *
+	 */
+	public enum ColorSensorMode {
+		RED, COLOR_ID
+	}
+
+	private final SimulatedRobot robot;
+	private final double forwardOffset;
+	private final double lateralOffset;
+	private final ColorSensorMode mode;
+
+	/**
+	 * Creates a SimulatedColorSensor object.
+	 * @param robot  The simulated robot on which the sensor is mounted
+	 * @param forwardOffset  Distance of the sensor in front of the center of rotation (negative if behind)
+	 * @param lateralOffset  Distance of the sensor to the right of the center of rotation (negative if on the left)
+	 * @param mode  Mode in which the sensor is used
+	 */
+	public SimulatedColorSensor(SimulatedRobot robot, double forwardOffset, double lateralOffset, ColorSensorMode mode) {
+		this.robot = robot;
+		this.forwardOffset = forwardOffset;
+		this.lateralOffset = lateralOffset;
+		this.mode = mode;
+	}
+
+	public float fetchSample() {
+		if (mode == ColorSensorMode.RED) {
+			return robot.sampleReflection(forwardOffset, lateralOffset);
+		}
+		return robot.sampleColorID(forwardOffset, lateralOffset);
+	}
+}
@@ -0,0 +1,94 @@
+/**
+ * SimulatedMatch.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+import ca.mcgill.ecse211.capturetheflag.SimulatedColorSensor.ColorSensorMode;
+
+/**
+ * SimulatedMatch runs the flow of the game of the MainController on a SimulatedRobot such that it can be run off of the brick.
+ * A fixed board layout is used in place of the game parameters sent over WiFi. The robot starts in corner 0 with the
+ * heading given as the first argument, and the true pose of the robot is printed against the odometer at the end of the round.
+ * The round is run on a VirtualClock such that it takes a fraction of the time of a real round and is the same every time.
+ * 
+ * @author Michael Vaquier
+ *
+ */
+public class SimulatedMatch {
+
+	static final int TEAM_NUMBER = 20;
+	static final int OPPONENT_TEAM_NUMBER = 1;
+	static final int FLAG_COLOR = 1;
+	static final int FLAG_COLOR_ID = 0;
+
+	//Position of the sensors relative to the center of rotation of the robot
+	static final double BACK_SENSOR_OFFSET = 13.6;
+	static final double FRONT_SENSOR_OFFSET = 12;
+	static final double SIDE_SENSOR_OFFSET = 8;
+	static final double US_SENSOR_OFFSET = 10;
+
+	/**
+	 * Runs a simulated round.
+	 * @param args  Optional starting heading of the robot in degrees
+	 */
+	public static void main(String[] args) {
+		double heading = args.length > 0 ? Double.parseDouble(args[0]) : 135;
+		double tile = MainController.TILE;
+		Feedback.setEnabled(false);
+		VirtualClock clock = new VirtualClock();
+
+		GameParameters gameParameters = sampleGameParameters(tile);
+		SimulatedRobot robot = new SimulatedRobot(MainController.WHEEL_RADIUS, MainController.TRACK, tile, MainController.BOARD_SIZE, gameParameters, clock);
+		robot.setPose(tile / 2, tile / 2, heading);
+		robot.addBlock(new Coordinate(9.5 * tile, 9.5 * tile), FLAG_COLOR_ID);
+		robot.start();
+
+		long startTime = clock.currentTimeMillis();
+		long wallStartTime = System.currentTimeMillis();
+		MainController game = new MainController();
+		playGame(game, robot, gameParameters, clock);
+		long endTime = clock.currentTimeMillis();
+		long wallEndTime = System.currentTimeMillis();
+
+		Pose pose = robot.getPose();
+		System.out.println("Round time : " + ((endTime - startTime) / 1000.0) + "s (simulated in " + ((wallEndTime - wallStartTime) / 1000.0) + "s)");
+		System.out.println("Robot : " + pose.x + " " + pose.y + " " + pose.thetaDegrees);
+		System.out.println("Odometer : " + game.getOdometer().getX() + " " + game.getOdometer().getY() + " " + game.getOdometer().getThetaDegrees());
+		System.exit(0);
+	}
+
+	/**
+	 * Plays a game on a simulated robot, with the sensors mounted as on the real robot.
+	 * @param game  The MainController playing the game
+	 * @param robot  The SimulatedRobot, already started
+	 * @param gameParameters  Game parameters for this round
+	 * @param clock  The clock the robot runs on
+	 */
+	static void playGame(MainController game, SimulatedRobot robot, GameParameters gameParameters, Clock clock) {
+		game.playGame(robot.getLeftMotor(), robot.getRightMotor(), robot.getPulleyMotor(), robot.getSensorMotor(),
+				new SimulatedColorSensor(robot, -BACK_SENSOR_OFFSET, 0, ColorSensorMode.RED),
+				new SimulatedColorSensor(robot, FRONT_SENSOR_OFFSET, 0, ColorSensorMode.COLOR_ID),
+				new SimulatedColorSensor(robot, 0, SIDE_SENSOR_OFFSET, ColorSensorMode.COLOR_ID),
+				new SimulatedRangeSensor(robot, US_SENSOR_OFFSET), gameParameters, clock);
+	}
+
+	/**
+	 * Creates the game parameters of the board used by the simulation.
+	 * The green zone is in the lower left corner and the red zone in the upper right corner, separated by the river
+	 * which can be crossed using the bridge or the zipline.
+	 * @param tile  Tile length of the game board
+	 * @return  The game parameters of the simulated round
+	 */
+	public static GameParameters sampleGameParameters(double tile) {
+		return new GameParameters(OPPONENT_TEAM_NUMBER, TEAM_NUMBER, 2, 0, FLAG_COLOR, FLAG_COLOR,
+				point(6, 7, tile), point(12, 12, tile), point(0, 0, tile), point(5, 5, tile),
+				point(7, 8, tile), point(8, 9, tile), point(4, 5, tile), point(3, 4, tile),
+				point(5, 2, tile), point(9, 3, tile), point(8, 3, tile), point(9, 7, tile),
+				point(9, 9, tile), point(11, 11, tile), point(1, 1, tile), point(3, 3, tile));
+	}
+
+	private static Coordinate point(int x, int y, double tile) {
+		return new Coordinate(x * tile, y * tile);
+	}
+}
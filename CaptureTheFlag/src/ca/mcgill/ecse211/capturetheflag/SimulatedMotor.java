@@ -0,0 +1,162 @@
+/**
+ * SimulatedMotor.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+/**
+ * The SimulatedMotor class is a kinematic model of a regulated motor used by the SimulatedRobot.
+ * The motor accelerates towards its target speed at the set acceleration and decelerates
+ * to stop exactly on the target angle of a rotation, the same way the EV3 regulator does.
+ * The model is advanced by the simulated robot by calling step, and calls waiting for the end of a rotation
+ * sleep on the clock of the simulation until the motor is stopped.
+ * 
+ * @author Michael Vaquier
+ *
+ */
+public class SimulatedMotor implements DriveMotor {
+
+	private static final double ANGLE_TOLERANCE = 0.5;
+	private static final int DEFAULT_SPEED = 360;
+	private static final int DEFAULT_ACCELERATION = 6000;
+
+	/**
+	 * This enumeration defines what the motor is currently doing.
+	 * @author Michael Vaquier
+	 *
+	 */
+	private enum MotorMode {
+		STOPPED, FORWARD, BACKWARD, ROTATING
+	}
+
+	private MotorMode mode = MotorMode.STOPPED;
+	private int speed = DEFAULT_SPEED;
+	private int acceleration = DEFAULT_ACCELERATION;
+
+	//Angles in degrees, the angle is never reset and the tacho count is measured from tachoZero
+	private double angle = 0;
+	private double velocity = 0;
+	private double target = 0;
+	private double tachoZero = 0;
+
+	private final Clock clock;
+
+	/**
+	 * Creates a SimulatedMotor object.
+	 * @param clock  The clock of the simulation
+	 */
+	public SimulatedMotor(Clock clock) {
+		this.clock = clock;
+	}
+
+	/**
+	 * Advances the motor by a time step.
+	 * @param dt  Length of the time step in seconds
+	 */
+	public synchronized void step(double dt) {
+		double desired;
+		switch (mode) {
+		case FORWARD:
+			desired = speed;
+			break;
+		case BACKWARD:
+			desired = -speed;
+			break;
+		case ROTATING:
+			double remaining = target - angle;
+			desired = Math.signum(remaining) * Math.min(speed, Math.sqrt(2 * acceleration * Math.abs(remaining)));
+			break;
+		default:
+			desired = 0;
+			break;
+		}
+		double maxChange = acceleration * dt;
+		velocity += Math.max(-maxChange, Math.min(maxChange, desired - velocity));
+		angle += velocity * dt;
+		if (mode == MotorMode.ROTATING && Math.abs(target - angle) < ANGLE_TOLERANCE) {
+			angle = target;
+			velocity = 0;
+			mode = MotorMode.STOPPED;
+		}
+	}
+
+	/**
+	 * Returns the total angle turned by the motor, which is not affected by resetting the tacho count.
+	 * @return  The angle of the motor in degrees
+	 */
+	public synchronized double getAngle() {
+		return angle;
+	}
+
+	/**
+	 * Returns the angular velocity of the motor.
+	 * @return  The velocity in degrees per second
+	 */
+	public synchronized double getVelocity() {
+		return velocity;
+	}
+
+	public synchronized void forward() {
+		mode = MotorMode.FORWARD;
+	}
+
+	public synchronized void backward() {
+		mode = MotorMode.BACKWARD;
+	}
+
+	public void stop() {
+		stop(false);
+	}
+
+	public void stop(boolean immediateReturn) {
+		synchronized (this) {
+			mode = MotorMode.STOPPED;
+		}
+		if (!immediateReturn) {
+			waitComplete();
+		}
+	}
+
+	public void rotate(int angle, boolean immediateReturn) {
+		rotateTo(getTachoCount() + angle, immediateReturn);
+	}
+
+	public void rotateTo(int limitAngle, boolean immediateReturn) {
+		synchronized (this) {
+			target = tachoZero + limitAngle;
+			mode = MotorMode.ROTATING;
+		}
+		if (!immediateReturn) {
+			waitComplete();
+		}
+	}
+
+	public synchronized void setSpeed(int speed) {
+		this.speed = Math.abs(speed);
+	}
+
+	public synchronized void setAcceleration(int acceleration) {
+		this.acceleration = Math.abs(acceleration);
+	}
+
+	public synchronized int getTachoCount() {
+		return (int) Math.round(angle - tachoZero);
+	}
+
+	public synchronized void resetTachoCount() {
+		tachoZero = angle;
+	}
+
+	public synchronized boolean isMoving() {
+		return mode != MotorMode.STOPPED || velocity != 0;
+	}
+
+	/**
+	 * Waits until the motor is stopped. Must not be called while holding the lock of the motor.
+	 */
+	private void waitComplete() {
+		while (isMoving()) {
+			clock.sleep(1);
+		}
+	}
+}
@@ -0,0 +1,32 @@
+/**
+ * SimulatedRangeSensor.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+/**
+ * The SimulatedRangeSensor class reads the distance seen by the ultrasonic sensor mounted on the
+ * sensor motor at the front of a SimulatedRobot.
+ * 
+ * @author Michael Vaquier
+ *
+ */
+public class SimulatedRangeSensor implements RangeSensor {
+
+	private final SimulatedRobot robot;
+	private final double forwardOffset;
+
+	/**
+	 * Creates a SimulatedRangeSensor object.
+	 * @param robot  The simulated robot on which the sensor is mounted
+	 * @param forwardOffset  Distance of the sensor in front of the center of rotation
+	 */
+	public SimulatedRangeSensor(SimulatedRobot robot, double forwardOffset) {
+		this.robot = robot;
+		this.forwardOffset = forwardOffset;
+	}
+
+	public float fetchDistance() {
+		return robot.sampleDistance(forwardOffset);
+	}
+}
@@ -0,0 +1,388 @@
+/**
+ * SimulatedRobot.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The SimulatedRobot class is a kinematic model of the robot on the game board used to run the game off of the brick.
+ * The two wheels are modeled as a differential drive, the zipline is traversed by the pulley motor once the robot
+ * reaches the zipline start, and the sensors are computed from the true position of the robot:
+ * the floor sensors see the grid lines and the blocks and the ultrasonic sensor is ray cast against the walls,
+ * the obstacles and the blocks.
+ * Collisions are not modeled.
+ * 
+ * @author Michael Vaquier
+ *
+ */
+public class SimulatedRobot implements Runnable {
+
+	//Integration step in seconds
+	private static final double STEP = 0.001;
+
+	//Floor model
+	private static final double LINE_WIDTH = 0.5;
+	private static final float FLOOR_REFLECTION = 0.45f;
+	private static final float LINE_REFLECTION = 0.15f;
+	private static final float AIR_REFLECTION = 0.02f;
+	private static final int NO_COLOR = -1;
+	private static final double BLOCK_SIZE = 6;
+	private static final double COLOR_RANGE = 3;
+
+	//Delay of the floor sensor readings in integration steps, the heading bias of about 12 degrees seen by the color localisation
+	//while spinning at 40 degrees per second. It models the robot, it is not a measurement of the latency set in the MainController
+	private static final int FLOOR_SENSOR_LATENCY = 300;
+	private static final int HISTORY_SIZE = 512;
+
+	//Ultrasonic model
+	private static final double MAX_RANGE = 255;
+	private static final double BEAM_WIDTH = Math.toRadians(20);
+	private static final int BEAM_RAYS = 5;
+
+	//Zipline model, distances in centimeters
+	private static final double PULLEY_RADIUS = 2.5;
+	private static final double MOUNT_DISTANCE = 5;
+	private static final double LANDING_DISTANCE = 14;
+
+	//Motors
+	private final SimulatedMotor leftMotor;
+	private final SimulatedMotor rightMotor;
+	private final SimulatedMotor pulleyMotor;
+	private final SimulatedMotor sensorMotor;
+
+	//Robot and board constants
+	private final double wheelRadius;
+	private final double track;
+	private final double tile;
+	private final double boardLength;
+	private final GameParameters gameParameters;
+
+	//Objects on the board {lower left x, lower left y, upper right x, upper right y} and blocks {x, y, color ID}
+	private final List<double[]> obstacles = new ArrayList<double[]>();
+	private final List<double[]> blocks = new ArrayList<double[]>();
+
+	//True state of the robot
+	private double x;
+	private double y;
+	private double theta;
+	private boolean airborne = false;
+	private double mountAngle;
+	private double lastLeftAngle = 0;
+	private double lastRightAngle = 0;
+
+	//Past states of the robot used for the delayed sensor readings
+	private final double[] historyX = new double[HISTORY_SIZE];
+	private final double[] historyY = new double[HISTORY_SIZE];
+	private final double[] historyTheta = new double[HISTORY_SIZE];
+	private final boolean[] historyAirborne = new boolean[HISTORY_SIZE];
+	private int historyIndex = 0;
+	private boolean historyFull = false;
+
+	//Thread
+	private volatile boolean running = false;
+	private final Clock clock;
+
+	/**
+	 * Creates a SimulatedRobot object.
+	 * @param wheelRadius  Radius of the wheels
+	 * @param track  Width of the wheelbase
+	 * @param tile  Tile length of the game board
+	 * @param boardSize  Size of the board (number of tiles on one side)
+	 * @param gameParameters  Game parameters for this round
+	 * @param clock  The clock of the simulation
+	 */
+	public SimulatedRobot(double wheelRadius, double track, double tile, int boardSize, GameParameters gameParameters, Clock clock) {
+		this.clock = clock;
+		this.leftMotor = new SimulatedMotor(clock);
+		this.rightMotor = new SimulatedMotor(clock);
+		this.pulleyMotor = new SimulatedMotor(clock);
+		this.sensorMotor = new SimulatedMotor(clock);
+		this.wheelRadius = wheelRadius;
+		this.track = track;
+		this.tile = tile;
+		this.boardLength = boardSize * tile;
+		this.gameParameters = gameParameters;
+	}
+
+	/**
+	 * Starts a thread advancing the simulation with the clock.
+	 */
+	public void start() {
+		running = true;
+		clock.startThread(this);
+	}
+
+	/**
+	 * Stops the simulation thread.
+	 */
+	public void stop() {
+		running = false;
+	}
+
+	/**
+	 * Advances the simulation with the time elapsed on the clock since the last iteration.
+	 */
+	public void run() {
+		long last = clock.currentTimeMillis();
+		while (running) {
+			clock.sleep(1);
+			long now = clock.currentTimeMillis();
+			for (long i = last; i < now; i++) {
+				step(STEP);
+			}
+			last = now;
+		}
+	}
+
+	/**
+	 * Advances the motors and the position of the robot by a time step.
+	 * @param dt  Length of the time step in seconds
+	 */
+	public void step(double dt) {
+		leftMotor.step(dt);
+		rightMotor.step(dt);
+		pulleyMotor.step(dt);
+		sensorMotor.step(dt);
+		double leftAngle = leftMotor.getAngle();
+		double rightAngle = rightMotor.getAngle();
+		double pulleyAngle = pulleyMotor.getAngle();
+		boolean pulling = pulleyMotor.getVelocity() > 0;
+		synchronized (this) {
+			double distL = Math.PI * wheelRadius * (leftAngle - lastLeftAngle) / 180;
+			double distR = Math.PI * wheelRadius * (rightAngle - lastRightAngle) / 180;
+			lastLeftAngle = leftAngle;
+			lastRightAngle = rightAngle;
+			if (airborne) {
+				ride(pulleyAngle);
+			} else {
+				double distance = 0.5 * (distL + distR);
+				theta += (distL - distR) / track;
+				x += distance * Math.sin(theta);
+				y += distance * Math.cos(theta);
+				if (pulling && gameParameters != null
+						&& Math.hypot(gameParameters.ZC_G.x - x, gameParameters.ZC_G.y - y) < MOUNT_DISTANCE) {
+					airborne = true;
+					mountAngle = pulleyAngle;
+				}
+			}
+			historyIndex = (historyIndex + 1) % HISTORY_SIZE;
+			historyFull = historyFull || historyIndex == 0;
+			historyX[historyIndex] = x;
+			historyY[historyIndex] = y;
+			historyTheta[historyIndex] = theta;
+			historyAirborne[historyIndex] = airborne;
+		}
+	}
+
+	/**
+	 * Moves the robot along the zipline according to the angle turned by the pulley and lands it before the zipline end.
+	 * @param pulleyAngle  Current angle of the pulley motor
+	 */
+	private void ride(double pulleyAngle) {
+		double dx = gameParameters.ZC_R.x - gameParameters.ZC_G.x;
+		double dy = gameParameters.ZC_R.y - gameParameters.ZC_G.y;
+		double length = Math.hypot(dx, dy);
+		double travelled = Math.min(Math.PI * PULLEY_RADIUS * (pulleyAngle - mountAngle) / 180, length - LANDING_DISTANCE);
+		x = gameParameters.ZC_G.x + (dx * travelled / length);
+		y = gameParameters.ZC_G.y + (dy * travelled / length);
+		theta = Math.atan2(dx, dy);
+		if (travelled >= length - LANDING_DISTANCE) {
+			airborne = false;
+		}
+	}
+
+	/**
+	 * Places the robot on the board.
+	 * @param x  X value of the center of rotation
+	 * @param y  Y value of the center of rotation
+	 * @param thetaDegrees  Heading of the robot in degrees
+	 */
+	public synchronized void setPose(double x, double y, double thetaDegrees) {
+		this.x = x;
+		this.y = y;
+		this.theta = Math.toRadians(thetaDegrees);
+		historyIndex = 0;
+		historyFull = false;
+		historyX[historyIndex] = this.x;
+		historyY[historyIndex] = this.y;
+		historyTheta[historyIndex] = this.theta;
+		historyAirborne[historyIndex] = airborne;
+	}
+
+	/**
+	 * Returns the true position and heading of the robot.
+	 * @return  The pose of the robot
+	 */
+	public synchronized Pose getPose() {
+		double wrapped = theta % (2 * Math.PI);
+		if (wrapped < 0) {
+			wrapped += 2 * Math.PI;
+		}
+		return new Pose(x, y, wrapped, Math.toDegrees(wrapped));
+	}
+
+	/**
+	 * Adds a rectangular obstacle on the board.
+	 * @param lowerLeft  Lower left corner of the obstacle
+	 * @param upperRight  Upper right corner of the obstacle
+	 */
+	public synchronized void addObstacle(Coordinate lowerLeft, Coordinate upperRight) {
+		obstacles.add(new double[] {lowerLeft.x, lowerLeft.y, upperRight.x, upperRight.y});
+	}
+
+	/**
+	 * Adds a block on the board, which is seen by the color sensors and by the ultrasonic sensor.
+	 * @param position  Center of the block
+	 * @param colorID  Color ID returned by a color sensor looking at the block
+	 */
+	public synchronized void addBlock(Coordinate position, int colorID) {
+		blocks.add(new double[] {position.x, position.y, colorID});
+		addObstacle(new Coordinate(position.x - (BLOCK_SIZE / 2), position.y - (BLOCK_SIZE / 2)),
+				new Coordinate(position.x + (BLOCK_SIZE / 2), position.y + (BLOCK_SIZE / 2)));
+	}
+
+	/**
+	 * Returns the reflected red intensity seen by a sensor facing the floor.
+	 * The reading corresponds to the position of the robot a fixed latency ago.
+	 * @param forwardOffset  Distance of the sensor in front of the center of rotation
+	 * @param lateralOffset  Distance of the sensor to the right of the center of rotation
+	 * @return  The reflected intensity between 0 and 1
+	 */
+	public synchronized float sampleReflection(double forwardOffset, double lateralOffset) {
+		int delay = FLOOR_SENSOR_LATENCY;
+		if (!historyFull) {
+			delay = Math.min(delay, historyIndex);
+		}
+		int index = (historyIndex - delay + HISTORY_SIZE) % HISTORY_SIZE;
+		if (historyAirborne[index]) {
+			return AIR_REFLECTION;
+		}
+		double pastTheta = historyTheta[index];
+		double sensorX = historyX[index] + (forwardOffset * Math.sin(pastTheta)) + (lateralOffset * Math.cos(pastTheta));
+		double sensorY = historyY[index] + (forwardOffset * Math.cos(pastTheta)) - (lateralOffset * Math.sin(pastTheta));
+		if (Math.abs(sensorX - (Math.round(sensorX / tile) * tile)) < LINE_WIDTH / 2
+				|| Math.abs(sensorY - (Math.round(sensorY / tile) * tile)) < LINE_WIDTH / 2) {
+			return LINE_REFLECTION;
+		}
+		return FLOOR_REFLECTION;
+	}
+
+	/**
+	 * Returns the color ID seen by a sensor facing the blocks.
+	 * @param forwardOffset  Distance of the sensor in front of the center of rotation
+	 * @param lateralOffset  Distance of the sensor to the right of the center of rotation
+	 * @return  The color ID of the block in front of the sensor, -1 if there is none
+	 */
+	public synchronized float sampleColorID(double forwardOffset, double lateralOffset) {
+		double sensorX = sensorX(forwardOffset, lateralOffset);
+		double sensorY = sensorY(forwardOffset, lateralOffset);
+		for (double[] block : blocks) {
+			if (Math.hypot(block[0] - sensorX, block[1] - sensorY) < (BLOCK_SIZE / 2) + COLOR_RANGE) {
+				return (float) block[2];
+			}
+		}
+		return NO_COLOR;
+	}
+
+	/**
+	 * Returns the distance seen by the ultrasonic sensor turned by the sensor motor.
+	 * The beam of the sensor is approximated by a fan of rays and the closest hit is returned.
+	 * @param forwardOffset  Distance of the sensor in front of the center of rotation
+	 * @return  The distance in meters, Float.POSITIVE_INFINITY if nothing is in range
+	 */
+	public synchronized float sampleDistance(double forwardOffset) {
+		double originX = sensorX(forwardOffset, 0);
+		double originY = sensorY(forwardOffset, 0);
+		double heading = theta + Math.toRadians(sensorMotor.getAngle());
+		double closest = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < BEAM_RAYS; i++) {
+			double angle = heading - (BEAM_WIDTH / 2) + ((BEAM_WIDTH * i) / (BEAM_RAYS - 1));
+			double dx = Math.sin(angle);
+			double dy = Math.cos(angle);
+			closest = Math.min(closest, castRay(originX, originY, dx, dy, 0, 0, boardLength, boardLength, true));
+			for (double[] obstacle : obstacles) {
+				closest = Math.min(closest, castRay(originX, originY, dx, dy, obstacle[0], obstacle[1], obstacle[2], obstacle[3], false));
+			}
+		}
+		if (closest > MAX_RANGE) {
+			return Float.POSITIVE_INFINITY;
+		}
+		return (float) (closest / 100);
+	}
+
+	/**
+	 * Computes the distance from a point along a ray to the sides of a rectangle.
+	 * @param inside  True if the ray starts inside the rectangle and hits it from the inside
+	 * @return  The distance to the hit, Double.POSITIVE_INFINITY if the ray misses the rectangle
+	 */
+	private static double castRay(double ox, double oy, double dx, double dy, double llx, double lly, double urx, double ury, boolean inside) {
+		double near = Double.NEGATIVE_INFINITY;
+		double far = Double.POSITIVE_INFINITY;
+		if (dx != 0) {
+			double t1 = (llx - ox) / dx;
+			double t2 = (urx - ox) / dx;
+			near = Math.max(near, Math.min(t1, t2));
+			far = Math.min(far, Math.max(t1, t2));
+		} else if (ox < llx || ox > urx) {
+			return Double.POSITIVE_INFINITY;
+		}
+		if (dy != 0) {
+			double t1 = (lly - oy) / dy;
+			double t2 = (ury - oy) / dy;
+			near = Math.max(near, Math.min(t1, t2));
+			far = Math.min(far, Math.max(t1, t2));
+		} else if (oy < lly || oy > ury) {
+			return Double.POSITIVE_INFINITY;
+		}
+		if (near > far || far < 0) {
+			return Double.POSITIVE_INFINITY;
+		}
+		if (inside) {
+			return far;
+		}
+		return near >= 0 ? near : 0;
+	}
+
+	private double sensorX(double forwardOffset, double lateralOffset) {
+		return x + (forwardOffset * Math.sin(theta)) + (lateralOffset * Math.cos(theta));
+	}
+
+	private double sensorY(double forwardOffset, double lateralOffset) {
+		return y + (forwardOffset * Math.cos(theta)) - (lateralOffset * Math.sin(theta));
+	}
+
+	/**
+	 * Returns the left wheel motor.
+	 * @return  The left motor
+	 */
+	public SimulatedMotor getLeftMotor() {
+		return leftMotor;
+	}
+
+	/**
+	 * Returns the right wheel motor.
+	 * @return  The right motor
+	 */
+	public SimulatedMotor getRightMotor() {
+		return rightMotor;
+	}
+
+	/**
+	 * Returns the motor turning the zipline pulley.
+	 * @return  The pulley motor
+	 */
+	public SimulatedMotor getPulleyMotor() {
+		return pulleyMotor;
+	}
+
+	/**
+	 * Returns the motor turning the front sensors.
+	 * @return  The sensor motor
+	 */
+	public SimulatedMotor getSensorMotor() {
+		return sensorMotor;
+	}
+}
@@ -0,0 +1,103 @@
+/**
+ * SystemClock.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+/**
+ * The SystemClock class is the Clock backed by the system time and by java threads.
+ * 
+ * @author Michael Vaquier
+ *
+ */
+public class SystemClock implements Clock {
+
+	public long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+
+	public long nanoTime() {
+		return System.nanoTime();
+	}
+
+	public void sleep(long millis) {
+		if (millis <= 0) {
+			return;
+		}
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+		}
+	}
+
+	public void startThread(Runnable task) {
+		new Thread(task).start();
+	}
+
+	public Signal newSignal() {
+		return new MonitorSignal(false);
+	}
+
+	public Signal newLatchedSignal() {
+		return new MonitorSignal(true);
+	}
+
+	/**
+	 * Signal waiting on the monitor of a lock object.
+	 * @author Michael Vaquier
+	 *
+	 */
+	private static class MonitorSignal implements Signal {
+
+		private final Object pauseLock = new Object();
+		private final boolean latched;
+		private boolean paused = false;
+		private boolean pending = false;
+
+		/**
+		 * Creates a MonitorSignal object.
+		 * @param latched  True if a signal sent while no thread is waiting is kept until the next wait
+		 */
+		MonitorSignal(boolean latched) {
+			this.latched = latched;
+		}
+
+		public void await() {
+			await(0);
+		}
+
+		public boolean await(long timeout) {
+			synchronized (pauseLock) {
+				if (pending) {
+					pending = false;
+					return true;
+				}
+				paused = true;
+				long deadline = System.currentTimeMillis() + timeout;
+				while (paused) {
+					long remaining = deadline - System.currentTimeMillis();
+					if (timeout > 0 && remaining <= 0) {
+						paused = false;
+						return false;
+					}
+					try {
+						pauseLock.wait(timeout > 0 ? remaining : 0);
+					} catch (InterruptedException ex) {
+					}
+				}
+				return true;
+			}
+		}
+
+		public void signal() {
+			synchronized (pauseLock) {
+				if (paused) {
+					paused = false;
+					pauseLock.notifyAll(); // Unblocks thread
+				} else if (latched) {
+					pending = true;
+				}
+			}
+		}
+	}
+}
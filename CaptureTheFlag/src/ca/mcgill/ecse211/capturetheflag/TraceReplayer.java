@@ -0,0 +1,266 @@
+/**
+ * TraceReplayer.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.mcgill.ecse211.capturetheflag.NavigationController.NavigationState;
+
+/**
+ * The TraceReplayer class feeds the sensor samples of a flight record through one of the data processing classes
+ * as fast as possible and collects the events it detects, such that thresholds can be tuned and regressions caught
+ * off of the robot. The data processing class is not associated to any controller, it only notifies the replayer.
+ * The time seen by the data processing class is the time at which each sample was recorded, so a replay is the same every time.
+ *
+ * It can be run on a computer with:
+ * java ca.mcgill.ecse211.capturetheflag.TraceReplayer stage flight.bin [start ms] [end ms] [expected event count]
+ * The events are printed and the exit code is 1 if the expected event count is given and not met.
+ *
+ * @author Michael Vaquier
+ *
+ */
+public class TraceReplayer implements SensorEventListener {
+
+	private static final int TEAM_NUMBER = 20;
+
+	/**
+	 * This enumeration defines which data processing class the samples are replayed through.
+	 * @author Michael Vaquier
+	 *
+	 */
+	public enum Stage {
+		/** Back color sensor through ColorLocalisationData */
+		COLOR_LOCALISATION,
+		/** Back color sensor through ZiplineLightData */
+		ZIPLINE,
+		/** Ultrasonic sensor through UltrasonicLocalisationData */
+		ULTRASONIC_LOCALISATION,
+		/** Front and side color sensors through BlockSearchingData */
+		BLOCK_SEARCHING,
+		/** Ultrasonic sensor through UltrasonicNavigationData while navigating */
+		OBSTACLE_DETECTION
+	}
+
+	private final Stage stage;
+	private final GameParameters gameParameters;
+	private final int teamNumber;
+
+	//Events detected during the last replay
+	private final List<SensorEvent> events = new ArrayList<SensorEvent>();
+	private final List<Long> eventTimes = new ArrayList<Long>();
+	private final TraceClock clock = new TraceClock();
+
+	/**
+	 * Creates a TraceReplayer object.
+	 * @param stage  The data processing class to replay the samples through
+	 * @param gameParameters  Game parameters giving the color of the flag to BlockSearchingData
+	 * @param teamNumber  The team number
+	 */
+	public TraceReplayer(Stage stage, GameParameters gameParameters, int teamNumber) {
+		this.stage = stage;
+		this.gameParameters = gameParameters;
+		this.teamNumber = teamNumber;
+	}
+
+	/**
+	 * Replays the records of a flight record through a new instance of the data processing class of the stage.
+	 * Only the samples read by that class and recorded between the start and end times are replayed.
+	 * The events detected replace the events of the previous replay.
+	 * @param records  Records in the layout of the FlightRecorder buffer
+	 * @param startTime  Time of the first sample to replay in milliseconds
+	 * @param endTime  Time of the last sample to replay in milliseconds
+	 */
+	public void replay(int[] records, long startTime, long endTime) {
+		events.clear();
+		eventTimes.clear();
+		Feedback.setEnabled(false);
+
+		ColorLocalisationData colorLocalisationData = null;
+		ZiplineLightData ziplineLightData = null;
+		UltrasonicLocalisationData ultrasonicLocalisationData = null;
+		BlockSearchingData blockSearchingData = null;
+		UltrasonicNavigationData ultrasonicNavigationData = null;
+		switch (stage) {
+		case COLOR_LOCALISATION:
+			colorLocalisationData = new ColorLocalisationData();
+			colorLocalisationData.setSensorEventListener(this);
+			break;
+		case ZIPLINE:
+			ziplineLightData = new ZiplineLightData(clock);
+			ziplineLightData.setSensorEventListener(this);
+			break;
+		case ULTRASONIC_LOCALISATION:
+			ultrasonicLocalisationData = new UltrasonicLocalisationData(clock);
+			ultrasonicLocalisationData.setSensorEventListener(this);
+			break;
+		case BLOCK_SEARCHING:
+			blockSearchingData = new BlockSearchingData(gameParameters, teamNumber);
+			blockSearchingData.setSensorEventListener(this);
+			break;
+		case OBSTACLE_DETECTION:
+			ultrasonicNavigationData = new UltrasonicNavigationData(null, null, MainController.TILE, MainController.BOARD_SIZE);
+			ultrasonicNavigationData.setSensorEventListener(this);
+			ultrasonicNavigationData.navigationStateChanged(NavigationState.READY, NavigationState.NAVIGATING);
+			break;
+		}
+
+		int front = -1;
+		for (int offset = 0; offset < records.length; offset += FlightRecorder.RECORD_INTS) {
+			int type = records[offset] >> 8;
+			int channel = records[offset] & 0xFF;
+			long time = records[offset + 1];
+			int value = records[offset + 2];
+			if (time < startTime || time > endTime) {
+				continue;
+			}
+			clock.time = time;
+			switch (stage) {
+			case COLOR_LOCALISATION:
+				if (type == FlightRecorder.COLOR_SAMPLE && channel == FlightRecorder.BACK_SENSOR) {
+					colorLocalisationData.processData(value);
+				}
+				break;
+			case ZIPLINE:
+				if (type == FlightRecorder.COLOR_SAMPLE && channel == FlightRecorder.BACK_SENSOR) {
+					ziplineLightData.processData(value);
+				}
+				break;
+			case ULTRASONIC_LOCALISATION:
+				if (type == FlightRecorder.ULTRASONIC_SAMPLE && value > 0) {
+					ultrasonicLocalisationData.processData(Math.min(value, 255));
+				}
+				break;
+			case BLOCK_SEARCHING:
+				//The poller records the front sample right before the side sample
+				if (type == FlightRecorder.COLOR_SAMPLE && channel == FlightRecorder.FRONT_SENSOR) {
+					front = value;
+				} else if (type == FlightRecorder.COLOR_SAMPLE && channel == FlightRecorder.SIDE_SENSOR && front != -1) {
+					blockSearchingData.processData(front, value);
+					front = -1;
+				}
+				break;
+			case OBSTACLE_DETECTION:
+				if (type == FlightRecorder.ULTRASONIC_SAMPLE && value > 0) {
+					ultrasonicNavigationData.processData(value);
+				}
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Collects an event detected by the data processing class.
+	 * @param event  The event detected
+	 */
+	public void sensorEvent(SensorEvent event) {
+		events.add(event);
+		eventTimes.add(clock.time);
+	}
+
+	/**
+	 * Returns the number of events detected during the last replay.
+	 * @return  Number of events
+	 */
+	public int getEventCount() {
+		return events.size();
+	}
+
+	/**
+	 * Returns the number of events of one kind detected during the last replay.
+	 * @param event  The kind of event to count
+	 * @return  Number of events of that kind
+	 */
+	public int getEventCount(SensorEvent event) {
+		int count = 0;
+		for (SensorEvent e : events) {
+			if (e == event) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns an event detected during the last replay.
+	 * @param index  Index of the event, in the order they were detected
+	 * @return  The event
+	 */
+	public SensorEvent getEvent(int index) {
+		return events.get(index);
+	}
+
+	/**
+	 * Returns the time of the sample that triggered an event during the last replay.
+	 * @param index  Index of the event, in the order they were detected
+	 * @return  Time of the event in milliseconds
+	 */
+	public long getEventTime(int index) {
+		return eventTimes.get(index);
+	}
+
+	/**
+	 * Replays a flight record file and prints the events detected.
+	 * @param args  Stage, record file, optional start and end times in milliseconds and optional expected event count
+	 * @throws IOException  If the record file cannot be read
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage : TraceReplayer <stage> <record file> [start ms] [end ms] [expected event count]");
+			System.exit(1);
+		}
+		Stage stage = Stage.valueOf(args[0]);
+		long startTime = args.length > 2 ? Long.parseLong(args[2]) : 0;
+		long endTime = args.length > 3 ? Long.parseLong(args[3]) : Long.MAX_VALUE;
+
+		TraceReplayer replayer = new TraceReplayer(stage, SimulatedMatch.sampleGameParameters(MainController.TILE), TEAM_NUMBER);
+		replayer.replay(FlightRecordDecoder.readRecords(args[1]), startTime, endTime);
+		for (int i = 0; i < replayer.getEventCount(); i++) {
+			System.out.println(replayer.getEventTime(i) + "," + replayer.getEvent(i));
+		}
+		if (args.length > 4) {
+			int expected = Integer.parseInt(args[4]);
+			if (replayer.getEventCount() != expected) {
+				System.out.println("Expected " + expected + " events, found " + replayer.getEventCount());
+				System.exit(1);
+			}
+		}
+	}
+
+	/**
+	 * Clock following the time of the samples replayed. The data processing classes only read the time.
+	 * @author Michael Vaquier
+	 *
+	 */
+	private static class TraceClock implements Clock {
+
+		private long time = 0;
+
+		public long currentTimeMillis() {
+			return time;
+		}
+
+		public long nanoTime() {
+			return time * 1000000;
+		}
+
+		public void sleep(long millis) {
+			time += Math.max(0, millis);
+		}
+
+		public void startThread(Runnable task) {
+			throw new UnsupportedOperationException("Threads cannot be started during a replay");
+		}
+
+		public Signal newSignal() {
+			throw new UnsupportedOperationException("Signals cannot be used during a replay");
+		}
+
+		public Signal newLatchedSignal() {
+			return newSignal();
+		}
+	}
+}
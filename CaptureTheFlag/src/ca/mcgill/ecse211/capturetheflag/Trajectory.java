@@ -0,0 +1,360 @@
+/**
+ * Trajectory.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+import java.util.List;
+
+/**
+ * The Trajectory class turns a list of way points into a continuous path the robot can drive without stopping.
+ * The path is made of straight segments between the way points, and every corner is cut by a circular arc tangent
+ * to both segments. The radius of an arc is the blend radius, made smaller when the segments are too short for it.
+ * A trapezoidal velocity profile is computed along the whole path: the robot speeds up from rest, slows down before
+ * every arc such that the outer wheel stays under the maximum speed in the arc, and comes to rest on the last way point.
+ * The acceleration in the arcs is reduced in the same way such that neither wheel accelerates faster than the maximum.
+ * Headings follow the convention of the odometer, in radians clockwise from the Y axis, and so does the curvature:
+ * it is positive when the robot turns right.
+ *
+ * @author Michael Vaquier
+ *
+ */
+public class Trajectory {
+
+	//Way points closer than this from the previous one are merged with it, in centimeters
+	private static final double MIN_SEGMENT = 1;
+
+	private final double track;
+	private final double maxSpeed;
+
+	//Segments, lines have a curvature of 0
+	private final int segmentCount;
+	private final double[] start;
+	private final double[] length;
+	private final double[] startX;
+	private final double[] startY;
+	private final double[] startHeading;
+	private final double[] curvature;
+
+	//Velocity profile
+	private final double[] speedLimit;
+	private final double[] acceleration;
+	private final double[] boundarySpeed;
+
+	//Distance along the path at which each way point is passed
+	private final double[] wayPointDistance;
+	private final double totalLength;
+
+	/**
+	 * Creates a Trajectory from the position of the robot through a list of way points.
+	 * @param x  X position of the robot
+	 * @param y  Y position of the robot
+	 * @param wayPoints  Way points to go through, in order, the robot stops on the last one
+	 * @param blendRadius  Largest radius of the arcs at the corners in centimeters
+	 * @param track  Width of the wheelbase
+	 * @param maxSpeed  Largest speed of a wheel in centimeters per second
+	 * @param maxAcceleration  Largest acceleration of a wheel in centimeters per second squared
+	 */
+	public Trajectory(double x, double y, List<Coordinate> wayPoints, double blendRadius, double track, double maxSpeed,
+			double maxAcceleration) {
+		this.track = track;
+		this.maxSpeed = maxSpeed;
+
+		//Corners of the path, way points too close to the previous corner are passed at that corner
+		int wayPointCount = wayPoints.size();
+		double[] cornerX = new double[wayPointCount + 1];
+		double[] cornerY = new double[wayPointCount + 1];
+		int[] wayPointCorner = new int[wayPointCount];
+		cornerX[0] = x;
+		cornerY[0] = y;
+		int corners = 1;
+		for (int i = 0; i < wayPointCount; i++) {
+			Coordinate point = wayPoints.get(i);
+			if (Math.hypot(point.x - cornerX[corners - 1], point.y - cornerY[corners - 1]) >= MIN_SEGMENT) {
+				cornerX[corners] = point.x;
+				cornerY[corners] = point.y;
+				corners++;
+			}
+			wayPointCorner[i] = corners - 1;
+		}
+
+		//Heading and length of the legs between corners, and distance cut from both legs at each corner
+		int legs = corners - 1;
+		double[] legHeading = new double[legs];
+		double[] legLength = new double[legs];
+		for (int j = 0; j < legs; j++) {
+			legHeading[j] = Math.atan2(cornerX[j + 1] - cornerX[j], cornerY[j + 1] - cornerY[j]);
+			legLength[j] = Math.hypot(cornerX[j + 1] - cornerX[j], cornerY[j + 1] - cornerY[j]);
+		}
+		double[] turn = new double[corners];
+		double[] cut = new double[corners];
+		for (int k = 1; k < corners - 1; k++) {
+			turn[k] = normalize(legHeading[k] - legHeading[k - 1]);
+			double halfTurn = Math.tan(Math.abs(turn[k]) / 2);
+			if (halfTurn > 1e-6) {
+				cut[k] = Math.min(blendRadius * halfTurn, 0.5 * Math.min(legLength[k - 1], legLength[k]));
+			}
+		}
+
+		//Every leg gives a line followed by the arc of its end corner, if there is one
+		int maxSegments = Math.max(1, 2 * legs);
+		start = new double[maxSegments];
+		length = new double[maxSegments];
+		startX = new double[maxSegments];
+		startY = new double[maxSegments];
+		startHeading = new double[maxSegments];
+		curvature = new double[maxSegments];
+		double[] cornerDistance = new double[corners];
+		int count = 0;
+		double distance = 0;
+		for (int j = 0; j < legs; j++) {
+			double sin = Math.sin(legHeading[j]);
+			double cos = Math.cos(legHeading[j]);
+			start[count] = distance;
+			startX[count] = cornerX[j] + (cut[j] * sin);
+			startY[count] = cornerY[j] + (cut[j] * cos);
+			startHeading[count] = legHeading[j];
+			length[count] = Math.max(0, legLength[j] - cut[j] - cut[j + 1]);
+			distance += length[count];
+			count++;
+			if (cut[j + 1] > 0) {
+				double radius = cut[j + 1] / Math.tan(Math.abs(turn[j + 1]) / 2);
+				start[count] = distance;
+				startX[count] = cornerX[j + 1] - (cut[j + 1] * sin);
+				startY[count] = cornerY[j + 1] - (cut[j + 1] * cos);
+				startHeading[count] = legHeading[j];
+				length[count] = radius * Math.abs(turn[j + 1]);
+				curvature[count] = Math.signum(turn[j + 1]) / radius;
+				cornerDistance[j + 1] = distance + (length[count] / 2);
+				distance += length[count];
+				count++;
+			} else {
+				cornerDistance[j + 1] = distance;
+			}
+		}
+		if (count == 0) {
+			//Nothing to travel, a single empty segment where the robot is
+			startX[0] = x;
+			startY[0] = y;
+			count = 1;
+		}
+		segmentCount = count;
+		totalLength = distance;
+		cornerDistance[corners - 1] = distance;
+		wayPointDistance = new double[wayPointCount];
+		for (int i = 0; i < wayPointCount; i++) {
+			wayPointDistance[i] = cornerDistance[wayPointCorner[i]];
+		}
+
+		//Speed limits of the segments, then the speed at each boundary from a forward and a backward pass
+		speedLimit = new double[segmentCount];
+		acceleration = new double[segmentCount];
+		boundarySpeed = new double[segmentCount + 1];
+		for (int i = 0; i < segmentCount; i++) {
+			double outerWheel = 1 + (track * Math.abs(curvature[i]) / 2);
+			speedLimit[i] = maxSpeed / outerWheel;
+			acceleration[i] = maxAcceleration / outerWheel;
+		}
+		for (int i = 1; i < segmentCount; i++) {
+			boundarySpeed[i] = Math.min(speedLimit[i - 1], speedLimit[i]);
+		}
+		for (int i = 0; i < segmentCount; i++) {
+			boundarySpeed[i + 1] = Math.min(boundarySpeed[i + 1],
+					Math.sqrt((boundarySpeed[i] * boundarySpeed[i]) + (2 * acceleration[i] * length[i])));
+		}
+		for (int i = segmentCount - 1; i >= 0; i--) {
+			boundarySpeed[i] = Math.min(boundarySpeed[i],
+					Math.sqrt((boundarySpeed[i + 1] * boundarySpeed[i + 1]) + (2 * acceleration[i] * length[i])));
+		}
+	}
+
+	/**
+	 * Indicates if the corner at a way point is shallow enough to be driven through with an arc.
+	 * Sharper corners are better done by stopping and turning in place.
+	 * @param fromX  X position before the corner
+	 * @param fromY  Y position before the corner
+	 * @param corner  The way point at the corner
+	 * @param next  The way point after the corner
+	 * @param maxTurn  Largest change of heading in degrees
+	 * @return  True if the change of heading at the corner is at most maxTurn
+	 */
+	public static boolean canBlend(double fromX, double fromY, Coordinate corner, Coordinate next, double maxTurn) {
+		double before = Math.atan2(corner.x - fromX, corner.y - fromY);
+		double after = Math.atan2(next.x - corner.x, next.y - corner.y);
+		return Math.abs(normalize(after - before)) <= Math.toRadians(maxTurn);
+	}
+
+	/**
+	 * Returns the number of segments, lines and arcs, of the path.
+	 * @return  Number of segments
+	 */
+	public int getSegmentCount() {
+		return segmentCount;
+	}
+
+	/**
+	 * Returns the length of the path.
+	 * @return  Length in centimeters
+	 */
+	public double getLength() {
+		return totalLength;
+	}
+
+	/**
+	 * Returns the distance along the path at which a segment starts.
+	 * @param segment  Index of the segment
+	 * @return  Distance in centimeters
+	 */
+	public double getSegmentStart(int segment) {
+		return start[segment];
+	}
+
+	/**
+	 * Returns the length of a segment.
+	 * @param segment  Index of the segment
+	 * @return  Length in centimeters
+	 */
+	public double getSegmentLength(int segment) {
+		return length[segment];
+	}
+
+	/**
+	 * Returns the curvature of a segment, positive when turning right.
+	 * @param segment  Index of the segment
+	 * @return  Curvature in radians per centimeter
+	 */
+	public double getCurvature(int segment) {
+		return curvature[segment];
+	}
+
+	/**
+	 * Returns the heading at the start of the path, which the robot should face before following it.
+	 * @return  Heading in radians
+	 */
+	public double getStartHeading() {
+		return startHeading[0];
+	}
+
+	/**
+	 * Returns the largest speed of a wheel the path was computed for.
+	 * @return  Speed in centimeters per second
+	 */
+	public double getMaxSpeed() {
+		return maxSpeed;
+	}
+
+	/**
+	 * Returns the width of the wheelbase the path was computed for.
+	 * @return  Width of the wheelbase
+	 */
+	public double getTrack() {
+		return track;
+	}
+
+	/**
+	 * Returns the number of way points the path was built from.
+	 * @return  Number of way points
+	 */
+	public int getWayPointCount() {
+		return wayPointDistance.length;
+	}
+
+	/**
+	 * Returns the distance along the path at which a way point is passed: the middle of the arc cutting its corner.
+	 * @param wayPoint  Index of the way point
+	 * @return  Distance in centimeters
+	 */
+	public double getWayPointDistance(int wayPoint) {
+		return wayPointDistance[wayPoint];
+	}
+
+	/**
+	 * Computes the pose on the path at a distance from the start of a segment.
+	 * @param segment  Index of the segment
+	 * @param distance  Distance from the start of the segment
+	 * @param pose  Array receiving X, Y and the heading in radians
+	 */
+	public void getPose(int segment, double distance, double[] pose) {
+		double heading = startHeading[segment];
+		double kappa = curvature[segment];
+		if (kappa == 0) {
+			pose[0] = startX[segment] + (distance * Math.sin(heading));
+			pose[1] = startY[segment] + (distance * Math.cos(heading));
+			pose[2] = heading;
+		} else {
+			double end = heading + (kappa * distance);
+			pose[0] = startX[segment] + ((Math.cos(heading) - Math.cos(end)) / kappa);
+			pose[1] = startY[segment] + ((Math.sin(end) - Math.sin(heading)) / kappa);
+			pose[2] = end;
+		}
+	}
+
+	/**
+	 * Computes the pose on the path at a distance from its start. Past the end, the pose keeps going straight
+	 * along the last heading such that a point ahead of the robot always exists.
+	 * @param distance  Distance from the start of the path
+	 * @param pose  Array receiving X, Y and the heading in radians
+	 */
+	public void getPose(double distance, double[] pose) {
+		int segment = 0;
+		while (segment < segmentCount - 1 && distance >= start[segment + 1]) {
+			segment++;
+		}
+		double along = distance - start[segment];
+		if (along <= length[segment]) {
+			getPose(segment, Math.max(0, along), pose);
+		} else {
+			getPose(segment, length[segment], pose);
+			pose[0] += (along - length[segment]) * Math.sin(pose[2]);
+			pose[1] += (along - length[segment]) * Math.cos(pose[2]);
+		}
+	}
+
+	/**
+	 * Projects a position on a segment.
+	 * @param segment  Index of the segment
+	 * @param x  X position
+	 * @param y  Y position
+	 * @return  Distance from the start of the segment to the closest point of the segment, between 0 and its length
+	 */
+	public double project(int segment, double x, double y) {
+		double heading = startHeading[segment];
+		double kappa = curvature[segment];
+		double distance;
+		if (kappa == 0) {
+			distance = ((x - startX[segment]) * Math.sin(heading)) + ((y - startY[segment]) * Math.cos(heading));
+		} else {
+			double centerX = startX[segment] + (Math.cos(heading) / kappa);
+			double centerY = startY[segment] - (Math.sin(heading) / kappa);
+			double angle = Math.atan2(kappa * (y - centerY), -kappa * (x - centerX));
+			distance = normalize(angle - heading) / kappa;
+		}
+		return Math.max(0, Math.min(length[segment], distance));
+	}
+
+	/**
+	 * Returns the speed of the velocity profile at a distance from the start of a segment.
+	 * @param segment  Index of the segment
+	 * @param distance  Distance from the start of the segment
+	 * @return  Speed of the center of the robot in centimeters per second
+	 */
+	public double getSpeed(int segment, double distance) {
+		double speedUp = (boundarySpeed[segment] * boundarySpeed[segment]) + (2 * acceleration[segment] * distance);
+		double slowDown = (boundarySpeed[segment + 1] * boundarySpeed[segment + 1])
+				+ (2 * acceleration[segment] * Math.max(0, length[segment] - distance));
+		return Math.min(speedLimit[segment], Math.sqrt(Math.max(0, Math.min(speedUp, slowDown))));
+	}
+
+	/**
+	 * Brings an angle between -pi and pi.
+	 */
+	private static double normalize(double angle) {
+		angle %= 2 * Math.PI;
+		if (angle > Math.PI) {
+			angle -= 2 * Math.PI;
+		} else if (angle <= -Math.PI) {
+			angle += 2 * Math.PI;
+		}
+		return angle;
+	}
+}
@@ -0,0 +1,264 @@
+/**
+ * TrajectoryFollower.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+import ca.mcgill.ecse211.capturetheflag.NavigationController.NavigationEvent;
+import ca.mcgill.ecse211.capturetheflag.SensorScheduler.PeriodicTask;
+import lejos.utility.TimerListener;
+
+/**
+ * The TrajectoryFollower class drives the robot along a Trajectory from a periodic task of the SensorScheduler,
+ * at the same rate as the odometer. Every period the pose of the odometer is projected on the path to know how far the
+ * robot went, and the speed of the velocity profile at that point is commanded to the wheels.
+ * The robot is steered by pure pursuit: it drives on the arc that goes through a lookahead point further along the path,
+ * so the heading and lateral errors picked up on the way are corrected continuously instead of at the next localisation.
+ * The lookahead distance grows with the speed, such that the robot does not weave at full speed.
+ * The follower signals every way point passed, the end of the path and an interruption, such that a thread
+ * can wait for the progress instead of polling the motors. The same progress is posted as events to the NavigationController,
+ * along with the need to relocalise when the uncertainty of the odometer goes over the largest uncertainty allowed.
+ *
+ * @author Michael Vaquier
+ *
+ */
+public class TrajectoryFollower implements TimerListener {
+
+	private static final int PERIOD = Odometer.ODOMETER_PERIOD;
+
+	//Lookahead distance is the distance traveled in LOOKAHEAD_TIME seconds, and at least MIN_LOOKAHEAD centimeters
+	private static final double LOOKAHEAD_TIME = 0.5;
+	private static final double MIN_LOOKAHEAD = 6;
+
+	//Slowest speed commanded such that the robot reaches the end of the path, and distance from the end at which it stops, in cm/s and cm
+	private static final double MIN_SPEED = 2;
+	private static final double STOP_DISTANCE = 0.3;
+
+	//Distance traveled before the need to relocalise is posted again, in centimeters
+	private static final double RELOCALISATION_REPEAT = 3;
+
+	//Motors
+	private final DriveMotor leftMotor;
+	private final DriveMotor rightMotor;
+
+	//Associations
+	private final Odometer odometer;
+	private NavigationController navigationController;
+	private double maxUncertainty = Double.POSITIVE_INFINITY;
+
+	//Robot constants
+	private final double WHEEL_RADIUS;
+
+	//scheduling
+	private final PeriodicTask task;
+	private final Signal progressSignal;
+	private final Object lock = new Object();
+
+	//State of the path being followed
+	private Trajectory trajectory;
+	private int segment;
+	private double progress;
+	private double relocalisationProgress;
+	private final double[] reference = new double[3];
+	private volatile int wayPointsPassed;
+	private volatile boolean following = false;
+	private volatile boolean finished = false;
+
+	/**
+	 * Creates a TrajectoryFollower object and registers its task in the scheduler.
+	 * @param odometer  Association to the Odometer instance
+	 * @param leftMotor  Reference to the left motor
+	 * @param rightMotor  Reference to the right motor
+	 * @param wheelRadius  Radius of the wheels of the robot (cm)
+	 * @param scheduler  The SensorScheduler running the follower
+	 * @param clock  The clock of the system
+	 */
+	public TrajectoryFollower(Odometer odometer, DriveMotor leftMotor, DriveMotor rightMotor, double wheelRadius,
+			SensorScheduler scheduler, Clock clock) {
+		this.odometer = odometer;
+		this.leftMotor = leftMotor;
+		this.rightMotor = rightMotor;
+		this.WHEEL_RADIUS = wheelRadius;
+		this.progressSignal = clock.newSignal();
+		this.task = scheduler.addTask("TrajectoryFollower", this, PERIOD);
+	}
+
+	/**
+	 * Starts following a path and sends the first command to the motors. The robot should already face the start heading of the path.
+	 * @param trajectory  The path to follow
+	 * @param acceleration  Acceleration of the motors in degrees per second squared
+	 */
+	public void start(Trajectory trajectory, int acceleration) {
+		synchronized (lock) {
+			this.trajectory = trajectory;
+			segment = 0;
+			progress = 0;
+			relocalisationProgress = -RELOCALISATION_REPEAT;
+			wayPointsPassed = 0;
+			finished = false;
+			following = true;
+			leftMotor.setAcceleration(acceleration);
+			rightMotor.setAcceleration(acceleration);
+		}
+		timedOut(); //the motors are moving when the method returns
+		task.start();
+	}
+
+	/**
+	 * Stops following the path and stops the motors right away, the path is not finished.
+	 * Has no effect if no path is being followed.
+	 */
+	public void stop() {
+		synchronized (lock) {
+			if (!following) {
+				return;
+			}
+			following = false;
+			task.stop();
+			leftMotor.stop(true);
+			rightMotor.stop(true);
+		}
+		progressSignal.signal();
+	}
+
+	/**
+	 * Moves the robot along the path, called every period by the scheduler.
+	 */
+	public void timedOut() {
+		boolean passed = false;
+		boolean relocalise = false;
+		boolean complete = false;
+		synchronized (lock) {
+			if (!following) {
+				return;
+			}
+			Pose pose = odometer.getPose();
+
+			//Progress along the path, the robot moves to the next segment once the end of the current one is reached
+			double distance = trajectory.project(segment, pose.x, pose.y);
+			while (segment < trajectory.getSegmentCount() - 1 && distance >= trajectory.getSegmentLength(segment)) {
+				segment++;
+				distance = trajectory.project(segment, pose.x, pose.y);
+			}
+			progress = Math.max(progress, trajectory.getSegmentStart(segment) + distance);
+			while (wayPointsPassed < trajectory.getWayPointCount() && trajectory.getWayPointDistance(wayPointsPassed) <= progress) {
+				wayPointsPassed++;
+				passed = true;
+			}
+
+			if (progress >= trajectory.getLength() - STOP_DISTANCE) {
+				wayPointsPassed = trajectory.getWayPointCount();
+				following = false;
+				finished = true;
+				complete = true;
+				task.stop();
+				leftMotor.stop(true);
+				rightMotor.stop(true);
+				passed = true;
+			} else {
+				if (progress - relocalisationProgress >= RELOCALISATION_REPEAT && odometer.getPositionUncertainty() > maxUncertainty) {
+					relocalisationProgress = progress;
+					relocalise = true;
+				}
+				double speed = Math.max(MIN_SPEED, trajectory.getSpeed(segment, distance));
+				double lookahead = Math.max(MIN_LOOKAHEAD, speed * LOOKAHEAD_TIME);
+				trajectory.getPose(progress + lookahead, reference);
+
+				//Curvature of the arc tangent to the heading of the robot going through the lookahead point
+				double dx = reference[0] - pose.x;
+				double dy = reference[1] - pose.y;
+				double bearing = Math.atan2(dx, dy) - pose.theta;
+				double turnRate = speed * 2 * Math.sin(bearing) / Math.hypot(dx, dy);
+
+				double left = speed + (turnRate * trajectory.getTrack() / 2);
+				double right = speed - (turnRate * trajectory.getTrack() / 2);
+				double fastest = Math.max(Math.abs(left), Math.abs(right));
+				if (fastest > trajectory.getMaxSpeed()) {
+					left *= trajectory.getMaxSpeed() / fastest;
+					right *= trajectory.getMaxSpeed() / fastest;
+				}
+				drive(leftMotor, left);
+				drive(rightMotor, right);
+			}
+		}
+		if (passed) {
+			progressSignal.signal();
+			postEvent(complete ? NavigationEvent.MOTION_COMPLETE : NavigationEvent.WAYPOINT_PASSED);
+		}
+		if (relocalise) {
+			postEvent(NavigationEvent.RELOCALISATION_NEEDED);
+		}
+	}
+
+	/**
+	 * Posts an event to the NavigationController if there is one.
+	 */
+	private void postEvent(NavigationEvent event) {
+		if (navigationController != null) {
+			navigationController.postEvent(event);
+		}
+	}
+
+	/**
+	 * Commands a speed in centimeters per second to a motor.
+	 */
+	private void drive(DriveMotor motor, double speed) {
+		motor.setSpeed((int) Math.round(Math.abs(speed) * 180 / (Math.PI * WHEEL_RADIUS)));
+		if (speed >= 0) {
+			motor.forward();
+		} else {
+			motor.backward();
+		}
+	}
+
+	/**
+	 * Waits until a way point is passed, the path is finished or the follower is stopped.
+	 * A progress made while no thread was waiting is only seen when the timeout expires,
+	 * so the state should be checked after every return.
+	 * @param timeout  Longest time to wait in milliseconds
+	 * @return  True if the wait ended because of a progress
+	 */
+	public boolean awaitProgress(long timeout) {
+		return progressSignal.await(timeout);
+	}
+
+	/**
+	 * Returns the number of way points of the path passed so far.
+	 * @return  Number of way points passed
+	 */
+	public int getWayPointsPassed() {
+		return wayPointsPassed;
+	}
+
+	/**
+	 * Indicates if the robot is following a path.
+	 * @return  True if a path is being followed
+	 */
+	public boolean isFollowing() {
+		return following;
+	}
+
+	/**
+	 * Sets the NavigationController association of the instance, which receives the progress as events.
+	 * @param navigationController  Association to the NavigationController instance
+	 */
+	public void setNavigationController(NavigationController navigationController) {
+		this.navigationController = navigationController;
+	}
+
+	/**
+	 * Sets the uncertainty of the position above which the need to relocalise is posted.
+	 * @param maxUncertainty  Largest uncertainty allowed in centimeters
+	 */
+	public void setMaxUncertainty(double maxUncertainty) {
+		this.maxUncertainty = maxUncertainty;
+	}
+
+	/**
+	 * Indicates if the last path was followed to its end, false if it was stopped before.
+	 * @return  True if the last path is finished
+	 */
+	public boolean isFinished() {
+		return finished;
+	}
+}
@@ -6,8 +6,6 @@ package ca.mcgill.ecse211.capturetheflag;
 
 import java.util.Arrays;
 
-import lejos.hardware.Sound;
-
 /**
  * The UltrasonoicLocationData class is used to process date from the
  * ultrasonic poller to detect edges
@@ -19,6 +17,7 @@ import lejos.hardware.Sound;
 public class UltrasonicLocalisationData {
 	
 	private Localisation localisation;
+	private SensorEventListener sensorEventListener = null;
 	
 	private boolean fallingEdge = false;
 	private boolean foundFirstEdge = false;
@@ -28,11 +27,16 @@ public class UltrasonicLocalisationData {
 	private static final int SAMPLE_POINTS = 5;
 	private int counter = 0;
 	private static final int EDGE_THRESHOLD = 50;
+	private static final int EDGE_HOLDOFF = 1500;
+	private long holdoffEnd = -1;
+	private final Clock clock;
 	
 	/**
 	 * Constructs an UltrasonicLocalisationData object.
+	 * @param clock  The clock of the system
 	 */
-	public UltrasonicLocalisationData() {
+	public UltrasonicLocalisationData(Clock clock) {
+		this.clock = clock;
 		samplePoints = new int[SAMPLE_POINTS];
 		Arrays.fill(samplePoints, -1);
 	}
@@ -40,10 +44,15 @@ public class UltrasonicLocalisationData {
 	/**
 	 * Processes the data coming from the ultrasonic poller and sends an interrupt to the localisation class when
 	 * an edge is found. The process looks for falling and rising edges at the same time and sticks with one
-	 * once the first edge is found.
+	 * once the first edge is found. Every value is also recorded by the localisation to measure the distance to the walls.
 	 * @param newVal  New value read from the Ultrasonic sensor
 	 */
 	public void processData(int newVal) {
+		recordData(newVal);
+		if(clock.currentTimeMillis() < holdoffEnd) {
+			//Data is ignored while the robot turns away from the edge that was found
+			return;
+		}
 		if(samplePoints[counter] < 0) {
 			samplePoints[counter] = newVal;
 			lastAverage = newVal;
@@ -60,19 +69,26 @@ public class UltrasonicLocalisationData {
 				} else */if (lastAverage <= EDGE_THRESHOLD && newAverage >= EDGE_THRESHOLD) {
 					fallingEdge = false;
 					foundFirstEdge = true;
-					localisation.setFallingEdge(fallingEdge);
+					fireEvent(SensorEvent.RISING_EDGE);
+					if (localisation != null) {
+						localisation.setFallingEdge(fallingEdge);
+						localisation.resumeThread();
+					}
 					Arrays.fill(samplePoints, -1);
-					localisation.resumeThread();
 					threadWait();
 				}
 			} else {
 				if (fallingEdge && lastAverage >= EDGE_THRESHOLD && newAverage <= EDGE_THRESHOLD) {
-					localisation.resumeThread();
+					fireEvent(SensorEvent.FALLING_EDGE);
+					if (localisation != null)
+						localisation.resumeThread();
 					Arrays.fill(samplePoints, -1);
 					foundFirstEdge = false;
 					threadWait();
 				} else if (!fallingEdge && lastAverage <= EDGE_THRESHOLD && newAverage >= EDGE_THRESHOLD) {
-					localisation.resumeThread();
+					fireEvent(SensorEvent.RISING_EDGE);
+					if (localisation != null)
+						localisation.resumeThread();
 					Arrays.fill(samplePoints, -1);
 					foundFirstEdge = false;
 					threadWait();
@@ -85,6 +101,16 @@ public class UltrasonicLocalisationData {
 		counter = (counter + 1) % SAMPLE_POINTS;
 	}
 	
+	/**
+	 * Gives a value to the localisation to be recorded with the heading, without looking for edges.
+	 * @param newVal  New value read from the Ultrasonic sensor
+	 */
+	public void recordData(int newVal) {
+		if (localisation != null) {
+			localisation.recordSweepSample(newVal);
+		}
+	}
+	
 	/**
 	 * Sets the localisation association to the instance.
 	 * @param localisation  Association to the new Localisation
@@ -92,16 +118,31 @@ public class UltrasonicLocalisationData {
 	public void setLocalisation(Localisation localisation) {
 		this.localisation = localisation;
 	}
+
+	/**
+	 * Sets the listener notified of the events detected by this instance.
+	 * @param sensorEventListener  The listener, null if no listener should be notified
+	 */
+	public void setSensorEventListener(SensorEventListener sensorEventListener) {
+		this.sensorEventListener = sensorEventListener;
+	}
 	
 	/**
-	 * Puts the thread to sleep for one second.
+	 * Notifies the listener of an event if there is one.
+	 * @param event  The event detected
 	 */
-	private void threadWait() {
-		Sound.beep();
-		try {
-			Thread.sleep(1500);
-		} catch (InterruptedException e) {
+	private void fireEvent(SensorEvent event) {
+		if (sensorEventListener != null) {
+			sensorEventListener.sensorEvent(event);
 		}
 	}
+	
+	/**
+	 * Ignores the data for one and a half second after an edge is found.
+	 */
+	private void threadWait() {
+		Feedback.beep();
+		holdoffEnd = clock.currentTimeMillis() + EDGE_HOLDOFF;
+	}
 
 }
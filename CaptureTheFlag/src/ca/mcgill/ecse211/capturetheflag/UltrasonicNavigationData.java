@@ -4,8 +4,8 @@
 
 package ca.mcgill.ecse211.capturetheflag;
 
+import ca.mcgill.ecse211.capturetheflag.NavigationController.NavigationEvent;
 import ca.mcgill.ecse211.capturetheflag.NavigationController.NavigationState;
-import lejos.hardware.motor.EV3LargeRegulatedMotor;
 
 /**
  * The UltrasonicNavigationData class processes the data coming from an ultrasonic sensor while the robot is navigating
@@ -15,21 +15,28 @@ import lejos.hardware.motor.EV3LargeRegulatedMotor;
  *
  */
 
-public class UltrasonicNavigationData {
+public class UltrasonicNavigationData implements NavigationStateListener {
 	
 	private static final int OBSTACLE_THRESHOLD = 10;
 	
+	//Distance from the center of rotation of the robot to the ultrasonic sensor when it faces forward
+	private static final double SENSOR_OFFSET = 10;
+	
 	
 	//Motors
-	private EV3LargeRegulatedMotor rightMotor;
-	private EV3LargeRegulatedMotor leftMotor;
+	private DriveMotor rightMotor;
+	private DriveMotor leftMotor;
 	
 	//Associations
 	private Navigation navigation;
 	private NavigationController navigationController;
 	private Odometer odometer;
+	private SensorEventListener sensorEventListener = null;
 	
 	private boolean followingLeftWall = false;
+	private boolean turning = false;
+	private boolean avoidanceFinished = false;
+	private volatile NavigationState navigationState = NavigationState.READY;
 	
 	private static final int MOTOR_SPEED = 140;
 	private static final int FILTER_OUT = 16;
@@ -57,7 +64,7 @@ public class UltrasonicNavigationData {
 	 * @param tile  Length of the side of a tile
 	 * @param boardSize  Size of the board (how many tiles on one side)
 	 */
-	public UltrasonicNavigationData(EV3LargeRegulatedMotor rightMotor, EV3LargeRegulatedMotor leftMotor, double tile, double boardSize) {
+	public UltrasonicNavigationData(DriveMotor rightMotor, DriveMotor leftMotor, double tile, double boardSize) {
 		this.rightMotor = rightMotor;
 		this.leftMotor = leftMotor;
 		
@@ -71,12 +78,19 @@ public class UltrasonicNavigationData {
 	 * In NAVIGATING state, the distance to the closest object in front of the robot is found to avoid potential collisions.
 	 * In AVOIDING state, the data processor takes control of the wheels and follows the wall with the assumption that the
 	 * ultrasonic sensor is facing the side.
+	 * The NavigationController is notified when an obstacle is detected, with the point of the obstacle seen by the sensor,
+	 * and when the robot went around it.
 	 * @param distance  New distance fetched from the Ultrasonic sensor
 	 */
 	public void processData(int distance) {
-		switch (NavigationController.getNavigationState()) {
+		switch (navigationState) {
 	      case NAVIGATING:
 	    	  if(distance < OBSTACLE_THRESHOLD) { //an object was detected in front of  the robot, turn sensor towards the wall as the robot rotates
+	    		  fireEvent(SensorEvent.OBSTACLE_DETECTED);
+	    		  if (navigation == null) {
+	    			  break; //nothing to control, only the detection is reported
+	    		  }
+	    		  Pose pose = odometer.getPose();
 	        	  followingLeftWall = whichDirectionInterruption();
 	    		  if (followingLeftWall) {
 	    			  navigationController.turnFrontMotor(70);
@@ -84,11 +98,26 @@ public class UltrasonicNavigationData {
 	    			  navigationController.turnFrontMotor(-70);
 	    		  }
 	        	  navigation.interruptNav(followingLeftWall);
-	        	  NavigationController.setNavigationState(NavigationState.AVOIDING);
+	        	  turning = true;
+	        	  avoidanceFinished = false;
+	        	  navigationController.setNavigationState(NavigationState.AVOIDING);
+	        	  navigationController.postObstacle(pose.x + ((distance + SENSOR_OFFSET) * Math.sin(pose.theta)),
+	        			  pose.y + ((distance + SENSOR_OFFSET) * Math.cos(pose.theta)));
 	          }
 	    	  break;
 	      case AVOIDING:
+	    	  if (turning) {
+	    		  if (rightMotor.isMoving() || leftMotor.isMoving()) {
+	    			  break; //the robot is still turning towards the wall to follow
+	    		  }
+	    		  turning = false;
+	    	  }
 	    	  processWallFollowing(distance);
+	    	  int difference = Math.abs((int) navigation.getInterruptedTheta() - (int) odometer.getThetaDegrees());
+	    	  if (!avoidanceFinished && difference < 195 && difference > 165) { // when the robot is pointing to the opposite direction after it was interrupted, it can start navigating again.
+	    		  avoidanceFinished = true;
+	    		  navigationController.postEvent(NavigationEvent.AVOIDANCE_FINISHED);
+	    	  }
 	    	  break;
 	    	 default:
 	    		 break;
@@ -181,9 +210,10 @@ public class UltrasonicNavigationData {
 	 * @return  True if turn right, false if turn left
 	 */
 	private boolean whichDirectionInterruption() {
-		int currentX = (int) odometer.getX();
-		int currentY = (int) odometer.getY();
-		int currentTheta = (int) odometer.getThetaDegrees();
+		Pose pose = odometer.getPose();
+		int currentX = (int) pose.x;
+		int currentY = (int) pose.y;
+		int currentTheta = (int) pose.thetaDegrees;
 		
 		int nextHeading = (int) Math.toDegrees(Math.atan2(((boardSize / 2) * tile) - currentX, ((boardSize / 2) * tile) - currentY));
 		
@@ -198,6 +228,15 @@ public class UltrasonicNavigationData {
 		return (rightRotation < leftRotation);
 	}
 	
+	/**
+	 * Keeps the state of the NavigationController the instance processes the data for.
+	 * @param previousState  The state before the change
+	 * @param state  The new state
+	 */
+	public void navigationStateChanged(NavigationState previousState, NavigationState state) {
+		navigationState = state;
+	}
+	
 	/**
 	 * Sets the Odometer association of the instance.
 	 * @param odometer  Association to the odometer instance
@@ -221,5 +260,23 @@ public class UltrasonicNavigationData {
 	public void setNavigationController(NavigationController navigationController) {
 		this.navigationController = navigationController;
 	}
+
+	/**
+	 * Sets the listener notified of the events detected by this instance.
+	 * @param sensorEventListener  The listener, null if no listener should be notified
+	 */
+	public void setSensorEventListener(SensorEventListener sensorEventListener) {
+		this.sensorEventListener = sensorEventListener;
+	}
+	
+	/**
+	 * Notifies the listener of an event if there is one.
+	 * @param event  The event detected
+	 */
+	private void fireEvent(SensorEvent event) {
+		if (sensorEventListener != null) {
+			sensorEventListener.sensorEvent(event);
+		}
+	}
 	
 }
@@ -4,20 +4,21 @@
 
 package ca.mcgill.ecse211.capturetheflag;
 
-import lejos.robotics.SampleProvider;
+import ca.mcgill.ecse211.capturetheflag.SensorScheduler.PeriodicTask;
+import lejos.utility.TimerListener;
 
 /**
  * The UltrasonicPoller class has a reference of one ultrasonic poller and polls data
- * periodically once its thread is started and stops when it is indicated to by terminating itself.
+ * periodically from a task of the SensorScheduler once it is started, until it is stopped.
  * The data fetched from the sensor is then sent to the correct data processing class according to
  * the current polling state.
  * @author Michael Vaquier
  *
  */
 
-public class UltrasonicPoller implements Runnable {
+public class UltrasonicPoller implements TimerListener {
 	
-	private volatile boolean polling = false;
+	private final PeriodicTask task;
 	
 	private static final int POLLING_PERIOD = 40;
 	
@@ -28,53 +29,45 @@ public class UltrasonicPoller implements Runnable {
 	private UltrasonicPollingState state = UltrasonicPollingState.LOCALISATION;
 	private Object stateLock = new Object();
 	
-	SampleProvider usDistance;
-	float[] usData;
+	RangeSensor usDistance;
+	private FlightRecorder flightRecorder = null;
 	
 	/**
 	 * Creates an instance of the UltrasonicPoller class.
 	 * @param usDistance  Ultrasonic sensor
-	 * @param usData  Ultrasonic sensor fetching array
 	 * @param ultrasonicLocalisationData  Association to UltrasonicLocalisationData instance
 	 * @param ultrasonicNavigationData  Association to UltrasonicNavigationData instance
+	 * @param scheduler  The scheduler running the poller
 	 */
-	public UltrasonicPoller(SampleProvider usDistance, float[] usData, UltrasonicLocalisationData ultrasonicLocalisationData, UltrasonicNavigationData ultrasonicNavigationData) {
+	public UltrasonicPoller(RangeSensor usDistance, UltrasonicLocalisationData ultrasonicLocalisationData, UltrasonicNavigationData ultrasonicNavigationData, SensorScheduler scheduler) {
 		this.usDistance = usDistance;
-		this.usData = usData;
 		this.ultrasonicLocalisationData = ultrasonicLocalisationData;
 		this.ultrasonicNavigationData = ultrasonicNavigationData;
+		this.task = scheduler.addTask("UltrasonicPoller", this, POLLING_PERIOD);
 	}
 	
 	/**
-	 * Called when a new thread is spawned with this poller.
-	 * Starts polling the ultrasonic sensor periodically.
+	 * Called every period by the scheduler once the polling is started.
+	 * Polls the ultrasonic sensor and sends the sample to the processing class of the current polling state.
 	 */
-	public void run() {
-		long correctionStart, correctionEnd;
-		polling = true;
-		long startTime = System.currentTimeMillis();
-		while (polling) {
-			correctionStart = System.currentTimeMillis();
-			usDistance.fetchSample(usData, 0);
-			int sample = (int) (usData[0] * 100);
-			if(sample > 0) {
-				switch(getPollingState()) {
-				case LOCALISATION:
-					if(sample > 255)
-						sample = 255;
-					ultrasonicLocalisationData.processData(sample);
-					break;
-				case NAVIGATION:
-					ultrasonicNavigationData.processData(sample);
-					break;
-				}
-			}
-			correctionEnd = System.currentTimeMillis();
-			if (correctionEnd - correctionStart < POLLING_PERIOD) {
-				try {
-					Thread.sleep(POLLING_PERIOD - (correctionEnd - correctionStart));
-				} catch (InterruptedException e) {
-				}
+	public void timedOut() {
+		int sample = (int) (usDistance.fetchDistance() * 100);
+		if (flightRecorder != null) {
+			flightRecorder.recordUltrasonic(sample);
+		}
+		if(sample > 0) {
+			switch(getPollingState()) {
+			case LOCALISATION:
+				if(sample > 255)
+					sample = 255;
+				ultrasonicLocalisationData.processData(sample);
+				break;
+			case SCAN:
+				ultrasonicLocalisationData.recordData(Math.min(sample, 255));
+				break;
+			case NAVIGATION:
+				ultrasonicNavigationData.processData(sample);
+				break;
 			}
 		}
 	}
@@ -116,20 +109,28 @@ public class UltrasonicPoller implements Runnable {
 	}
 	
 	/**
-	 * Spawns a thread that starts polling and processes data accordingly to its polling state.
+	 * Starts the polling task which processes data accordingly to its polling state.
 	 * @param newPollingState  The state in which the poller will opperate.
 	 */
 	public void startPolling(UltrasonicPollingState newPollingState) {
 		setPollingState(newPollingState);
-		new Thread(this).start();
+		task.start();
 	}
 	
 	
 	/**
-	 * Stop the polling process by letting the thread terminate itself.
+	 * Sets the FlightRecorder association of the instance, nothing is recorded if it is not set.
+	 * @param flightRecorder  Association to the FlightRecorder instance
+	 */
+	public void setFlightRecorder(FlightRecorder flightRecorder) {
+		this.flightRecorder = flightRecorder;
+	}
+	
+	/**
+	 * Stop the polling task.
 	 */
 	public void stopPolling() {
-		polling = false;
+		task.stop();
 	}
 	
 	/**
@@ -137,6 +138,6 @@ public class UltrasonicPoller implements Runnable {
 	 * @author Michael Vaquier
 	 *
 	 */
-	public enum UltrasonicPollingState { LOCALISATION, NAVIGATION }
+	public enum UltrasonicPollingState { LOCALISATION, SCAN, NAVIGATION }
 
 }
@@ -0,0 +1,336 @@
+/**
+ * VirtualClock.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * The VirtualClock class is a deterministic Clock used to run the simulation faster than real time.
+ * The threads started through the clock pass a baton to each other such that only one of them runs at a time.
+ * A thread runs until it sleeps or waits on a signal, then the baton is passed to the next thread ready to run, in the order
+ * in which they became ready. When no thread is ready, the virtual time jumps to the next wake up time.
+ * A run is therefore the same every time and the time spent waiting is not spent at all.
+ * The thread creating the clock holds the baton first.
+ * A limit can be set on the virtual time, such that a run that never ends is stopped instead of running forever.
+ * Once the clock is stopped, by the limit, by a deadlock or by a call to stop, every thread waiting for the baton
+ * is released with a ClockStoppedException and the threads started through the clock end.
+ * 
+ * @author Michael Vaquier
+ *
+ */
+public class VirtualClock implements Clock {
+
+	private final Object lock = new Object();
+	private long now = 0;
+	private long order = 0;
+	private long timeLimit = Long.MAX_VALUE;
+	private String stopReason = null;
+
+	//Threads ready to run and threads waiting for a time
+	private final LinkedList<Participant> ready = new LinkedList<Participant>();
+	private final PriorityQueue<Participant> timed = new PriorityQueue<Participant>(16, new Comparator<Participant>() {
+		public int compare(Participant a, Participant b) {
+			if (a.wakeTime != b.wakeTime) {
+				return a.wakeTime < b.wakeTime ? -1 : 1;
+			}
+			return a.order < b.order ? -1 : (a.order == b.order ? 0 : 1);
+		}
+	});
+	private final ThreadLocal<Participant> current = new ThreadLocal<Participant>();
+	private final List<Participant> participants = new ArrayList<Participant>();
+
+	/**
+	 * Thrown in the threads of a VirtualClock once it is stopped.
+	 * @author Michael Vaquier
+	 *
+	 */
+	public static class ClockStoppedException extends IllegalStateException {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Creates a ClockStoppedException object.
+		 * @param reason  Why the clock was stopped
+		 */
+		public ClockStoppedException(String reason) {
+			super(reason);
+		}
+	}
+
+	/**
+	 * Thread taking part in the virtual time.
+	 * @author Michael Vaquier
+	 *
+	 */
+	private static class Participant {
+		private final Semaphore baton = new Semaphore(0);
+		private long wakeTime;
+		private long order;
+		private VirtualSignal waitingOn = null;
+		private boolean signalled = false;
+	}
+
+	/**
+	 * Creates a VirtualClock object starting at time 0. The calling thread holds the baton.
+	 */
+	public VirtualClock() {
+		Participant participant = new Participant();
+		participants.add(participant);
+		current.set(participant);
+	}
+
+	/**
+	 * Sets the latest virtual time the clock can reach. The clock is stopped when no thread is ready before that time.
+	 * @param millis  Time limit in milliseconds
+	 */
+	public void setTimeLimit(long millis) {
+		synchronized (lock) {
+			timeLimit = millis;
+		}
+	}
+
+	/**
+	 * Stops the clock and releases every thread waiting for the baton. Has no effect if the clock is already stopped.
+	 * Should be called once the thread that created the clock is done with it, such that the other threads end.
+	 */
+	public void stop() {
+		synchronized (lock) {
+			if (stopReason == null) {
+				stop("Virtual clock stopped");
+			}
+		}
+	}
+
+	/**
+	 * Indicates if the clock is stopped.
+	 * @return  True if the clock is stopped
+	 */
+	public boolean isStopped() {
+		synchronized (lock) {
+			return stopReason != null;
+		}
+	}
+
+	public long currentTimeMillis() {
+		synchronized (lock) {
+			return now;
+		}
+	}
+
+	public long nanoTime() {
+		synchronized (lock) {
+			return now * 1000000;
+		}
+	}
+
+	public void sleep(long millis) {
+		Participant self = self();
+		synchronized (lock) {
+			schedule(self, Math.max(0, millis));
+		}
+		passBaton(self);
+	}
+
+	public void startThread(final Runnable task) {
+		final Participant participant = new Participant();
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				current.set(participant);
+				participant.baton.acquireUninterruptibly();
+				try {
+					checkStopped();
+					task.run();
+				} catch (ClockStoppedException e) {
+					return; //the thread ends without the baton
+				}
+				leave();
+			}
+		});
+		thread.setDaemon(true);
+		synchronized (lock) {
+			participants.add(participant);
+			participant.order = order++;
+			ready.add(participant);
+		}
+		thread.start();
+	}
+
+	public Signal newSignal() {
+		return new VirtualSignal(false);
+	}
+
+	public Signal newLatchedSignal() {
+		return new VirtualSignal(true);
+	}
+
+	/**
+	 * Returns the participant of the calling thread.
+	 */
+	private Participant self() {
+		Participant self = current.get();
+		if (self == null) {
+			throw new IllegalStateException("Thread not started through the virtual clock");
+		}
+		return self;
+	}
+
+	/**
+	 * Throws a ClockStoppedException if the clock is stopped.
+	 */
+	private void checkStopped() {
+		synchronized (lock) {
+			if (stopReason != null) {
+				throw new ClockStoppedException(stopReason);
+			}
+		}
+	}
+
+	/**
+	 * Stops the clock and releases every participant. Must be called while holding the lock.
+	 * @param reason  Why the clock is stopped
+	 */
+	private void stop(String reason) {
+		stopReason = reason;
+		for (Participant participant : participants) {
+			participant.baton.release();
+		}
+	}
+
+	/**
+	 * Gives the baton to the next thread ready to run when a thread started through the clock ends.
+	 */
+	private void leave() {
+		Participant next;
+		synchronized (lock) {
+			if (stopReason != null) {
+				return;
+			}
+			try {
+				next = nextParticipant();
+			} catch (ClockStoppedException e) {
+				return; //the threads still waiting are released with the reason
+			}
+		}
+		next.baton.release();
+	}
+
+	/**
+	 * Adds a participant to the threads waiting for a time. Must be called while holding the lock.
+	 */
+	private void schedule(Participant participant, long delay) {
+		participant.wakeTime = now + delay;
+		participant.order = order++;
+		timed.add(participant);
+	}
+
+	/**
+	 * Gives the baton to the next thread ready to run and waits until the baton comes back.
+	 * @param self  The participant of the calling thread, which must already be waiting for a time or a signal
+	 */
+	private void passBaton(Participant self) {
+		Participant next;
+		synchronized (lock) {
+			checkStopped();
+			next = nextParticipant();
+		}
+		if (next != self) {
+			next.baton.release();
+			self.baton.acquireUninterruptibly();
+			checkStopped();
+		}
+	}
+
+	/**
+	 * Picks the next participant to run and advances the time if no participant is ready. Must be called while holding the lock.
+	 * The clock is stopped if no participant can run before the time limit.
+	 * @return  The participant that gets the baton
+	 */
+	private Participant nextParticipant() {
+		if (!ready.isEmpty()) {
+			return ready.removeFirst();
+		}
+		Participant next = timed.peek();
+		if (next == null) {
+			stop("Every thread of the virtual clock is waiting on a signal");
+			throw new ClockStoppedException(stopReason);
+		}
+		if (next.wakeTime > timeLimit) {
+			stop("Time limit of the virtual clock reached at " + now + "ms");
+			throw new ClockStoppedException(stopReason);
+		}
+		timed.poll();
+		now = Math.max(now, next.wakeTime);
+		if (next.waitingOn != null) {
+			next.waitingOn.waiters.remove(next);
+			next.waitingOn = null;
+		}
+		return next;
+	}
+
+	/**
+	 * Signal of the virtual clock, waiting threads give away the baton until the signal is sent.
+	 * @author Michael Vaquier
+	 *
+	 */
+	private class VirtualSignal implements Signal {
+
+		private final List<Participant> waiters = new ArrayList<Participant>();
+		private final boolean latched;
+		private boolean pending = false;
+
+		/**
+		 * Creates a VirtualSignal object.
+		 * @param latched  True if a signal sent while no thread is waiting is kept until the next wait
+		 */
+		VirtualSignal(boolean latched) {
+			this.latched = latched;
+		}
+
+		public void await() {
+			await(0);
+		}
+
+		public boolean await(long timeout) {
+			Participant self = self();
+			synchronized (lock) {
+				if (pending) {
+					pending = false;
+					return true;
+				}
+				self.signalled = false;
+				self.waitingOn = this;
+				waiters.add(self);
+				if (timeout > 0) {
+					schedule(self, timeout);
+				}
+			}
+			passBaton(self);
+			synchronized (lock) {
+				return self.signalled;
+			}
+		}
+
+		public void signal() {
+			synchronized (lock) {
+				if (waiters.isEmpty() && latched) {
+					pending = true;
+				}
+				for (Participant waiter : waiters) {
+					waiter.signalled = true;
+					waiter.waitingOn = null;
+					timed.remove(waiter);
+					waiter.order = order++;
+					ready.add(waiter);
+				}
+				waiters.clear();
+			}
+		}
+	}
+}
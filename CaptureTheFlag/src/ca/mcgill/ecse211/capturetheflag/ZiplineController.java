@@ -5,8 +5,6 @@
 package ca.mcgill.ecse211.capturetheflag;
 
 import ca.mcgill.ecse211.capturetheflag.ColorPoller.ColorPollingState;
-import lejos.hardware.Sound;
-import lejos.hardware.motor.EV3LargeRegulatedMotor;
 
 /**
  * The Zipline Controller class holds the login in the zipline traversal sub task.
@@ -18,27 +16,30 @@ import lejos.hardware.motor.EV3LargeRegulatedMotor;
 
 public class ZiplineController {
 	
-	//Lock objects for threading
-	private Object pauseLock = new Object();
-	private volatile boolean paused = false;
+	//Signal used for threading
+	private final Signal pauseSignal;
 	
 	private static final int DRIVE_SPEED = 200;
 	private static final int PULLEY_SPEED = 250;
 	private static final int PULLEY__FAST_SPEED = 370;
 	private static final int PULLEY_FAST_ACCEL = 3000;
 	private static final int PULLEY_SLOW_ACCEL = 200;
+	//Uncertainty of the position after landing, in centimeters and degrees
+	private static final double LANDING_POSITION_DEVIATION = 5;
+	private static final double LANDING_HEADING_DEVIATION = 3;
 	
 	
 	private GameParameters gameParameters;
+	private final Clock clock;
 	
 	//Associations
 	private Odometer odometer;
 	private ColorPoller colorPoller;
 	
 	//Motors
-	private EV3LargeRegulatedMotor rightMotor;
-	private EV3LargeRegulatedMotor leftMotor;
-	private EV3LargeRegulatedMotor topMotor;
+	private DriveMotor rightMotor;
+	private DriveMotor leftMotor;
+	private DriveMotor topMotor;
 	
 	/**
 	 * Constructs an instance of the ZiplineController class.
@@ -48,8 +49,11 @@ public class ZiplineController {
 	 * @param leftMotor  Reference to the left motor
 	 * @param topMotor  Reference to the top motor
 	 * @param gameParameters  Game parameters for this round
+	 * @param clock  The clock of the system
 	 */
-	public ZiplineController(Odometer odometer, ColorPoller colorPoller, EV3LargeRegulatedMotor rightMotor, EV3LargeRegulatedMotor leftMotor, EV3LargeRegulatedMotor topMotor, GameParameters gameParameters) {
+	public ZiplineController(Odometer odometer, ColorPoller colorPoller, DriveMotor rightMotor, DriveMotor leftMotor, DriveMotor topMotor, GameParameters gameParameters, Clock clock) {
+		this.clock = clock;
+		this.pauseSignal = clock.newSignal();
 		this.odometer = odometer;
 		this.colorPoller = colorPoller;
 		
@@ -92,29 +96,30 @@ public class ZiplineController {
 			newTheta += 360;
 		newTheta = Math.round(newTheta);
 			
+		double landingX = gameParameters.ZC_R.x;
+		double landingY = gameParameters.ZC_R.y;
 		switch ((int) newTheta) {
 		case 45:
-			odometer.setX(gameParameters.ZC_R.x - 10);
-			odometer.setY(gameParameters.ZC_R.y - 10);
+			landingX -= 10;
+			landingY -= 10;
 			break;
 		case 135:
-			odometer.setX(gameParameters.ZC_R.x - 10);
-			odometer.setY(gameParameters.ZC_R.y + 10);
+			landingX -= 10;
+			landingY += 10;
 			break;
 		case 225:
-			odometer.setX(gameParameters.ZC_R.x + 10);
-			odometer.setY(gameParameters.ZC_R.y + 10);
+			landingX += 10;
+			landingY += 10;
 			break;
 		case 315:
-			odometer.setX(gameParameters.ZC_R.x + 10);
-			odometer.setY(gameParameters.ZC_R.y - 10);
+			landingX += 10;
+			landingY -= 10;
 			break;
 		default:
-			odometer.setX(gameParameters.ZC_R.x);
-			odometer.setY(gameParameters.ZC_R.y);
 			break;
 		}
-		odometer.setTheta(Math.toRadians(newTheta));
+		//The wheels turned in the air during the ride, the odometer only knows where the zipline ends
+		odometer.resetPose(landingX, landingY, Math.toRadians(newTheta), LANDING_POSITION_DEVIATION, LANDING_HEADING_DEVIATION);
 	}
 
 	
@@ -122,27 +127,14 @@ public class ZiplineController {
 	 * Makes the thread calling the method pause itself.
 	 */
 	private void pauseThread() {
-		paused = true;
-		synchronized (pauseLock) {
-            if (paused) {
-                try {
-                    pauseLock.wait();
-                } catch (InterruptedException ex) {
-                }
-            }
-        }
+		pauseSignal.await();
 	}
 	
 	/**
 	 * Wakes up all threads waiting on this instance. 
 	 */
     public void resumeThread() {
-        synchronized (pauseLock) {
-        	if (paused) {
-        		paused = false;
-        		pauseLock.notifyAll(); // Unblocks thread
-        	}
-        }
+        pauseSignal.signal();
     }
     
 }
@@ -6,8 +6,6 @@ package ca.mcgill.ecse211.capturetheflag;
 
 import java.util.Arrays;
 
-import lejos.hardware.Sound;
-
 /**
  * The ZipllineController is used to traverse the zipline. When running it, it is assumed that the robot is perfectly aligned with the zipline
  * and that all it has to do is to roll forward to mount it.
@@ -22,6 +20,7 @@ public class ZiplineLightData {
 	
 	//associations
 	private ZiplineController ziplineController;
+	private SensorEventListener sensorEventListener = null;
 	
 	private static final int DIFFERENCE_THRESHOLD = 2;
 	private static final int DIFFERENCE_POINTS_COUNTER = 600;
@@ -33,11 +32,16 @@ public class ZiplineLightData {
 	private boolean tookOff = false;
 	
 	private long startTime = -1;
+	private static final int TAKE_OFF_HOLDOFF = 4000;
+	private long holdoffEnd = -1;
+	private final Clock clock;
 	
 	/**
 	 * Constructs an instance of the ZiplineLightData class.
+	 * @param clock  The clock of the system
 	 */
-	public ZiplineLightData() {
+	public ZiplineLightData(Clock clock) {
+		this.clock = clock;
 		samplePoints = new int[SAMPLE_POINTS];
 		Arrays.fill(samplePoints, -1);
 	}
@@ -48,6 +52,10 @@ public class ZiplineLightData {
 	 * @param newVal  New value fetched from the color sensor
 	 */
 	public void processData(int newVal) {
+		if(clock.currentTimeMillis() < holdoffEnd) {
+			//Data is ignored while the robot is swinging after the take off
+			return;
+		}
 		if(samplePoints[counter] < 0) {
 			samplePoints[counter] = newVal;
 			lastAverage = newVal;
@@ -57,10 +65,12 @@ public class ZiplineLightData {
 			samplePoints[counter] = newVal;
 			lastAverage = newAverage;
 			if(tookOff) {
-				if(difference > DIFFERENCE_THRESHOLD || System.currentTimeMillis() - startTime > 16000) {
+				if(difference > DIFFERENCE_THRESHOLD || clock.currentTimeMillis() - startTime > 16000) {
 					//The robot is landing
-					Sound.beep();
-					ziplineController.resumeThread();
+					Feedback.beep();
+					fireEvent(SensorEvent.LANDING);
+					if (ziplineController != null)
+						ziplineController.resumeThread();
 					tookOff = false;
 				}
 			} else {
@@ -72,15 +82,14 @@ public class ZiplineLightData {
 				
 				if(differenceCounter < 0) {
 					//The robot is now in the air.
-					Sound.beep();
+					Feedback.beep();
 					tookOff = true;
-					startTime = System.currentTimeMillis();
-					ziplineController.resumeThread();
+					startTime = clock.currentTimeMillis();
+					fireEvent(SensorEvent.TAKE_OFF);
+					if (ziplineController != null)
+						ziplineController.resumeThread();
 					Arrays.fill(samplePoints, -1);
-					try {
-						Thread.sleep(4000);
-					} catch (InterruptedException e) {
-					}
+					holdoffEnd = startTime + TAKE_OFF_HOLDOFF;
 				}
 			}
 		}
@@ -94,5 +103,23 @@ public class ZiplineLightData {
 	public void setZiplineController(ZiplineController ziplineController) {
 		this.ziplineController = ziplineController;
 	}
+
+	/**
+	 * Sets the listener notified of the events detected by this instance.
+	 * @param sensorEventListener  The listener, null if no listener should be notified
+	 */
+	public void setSensorEventListener(SensorEventListener sensorEventListener) {
+		this.sensorEventListener = sensorEventListener;
+	}
+	
+	/**
+	 * Notifies the listener of an event if there is one.
+	 * @param event  The event detected
+	 */
+	private void fireEvent(SensorEvent event) {
+		if (sensorEventListener != null) {
+			sensorEventListener.sensorEvent(event);
+		}
+	}
 	
 }
@@ -0,0 +1,239 @@
+/**
+ * ZoneMap.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+import ca.mcgill.ecse211.capturetheflag.GameParameters.Zone;
+
+/**
+ * The ZoneMap class holds the zone of every cell of the game board, computed once from the game parameters such
+ * that mapping any point to its zone only costs one array access.
+ * The zone boundaries are whole tiles, so on each axis the comparisons with the boundaries only depend on the cell
+ * the value falls in: on a grid line, or strictly between two lines. Two layers are kept: one for the exact
+ * boundaries used when mapping a Coordinate, and one for the boundaries shrunk by 1cm used when mapping raw X and Y
+ * values, where every value within 1cm of a grid line is compared to the boundaries the same way as the line.
+ *
+ * @author Michael Vaquier
+ *
+ */
+
+public class ZoneMap {
+
+	private static final Zone[] ZONES = Zone.values();
+
+	//Distance the boundaries are shrunk by when mapping raw X and Y values
+	private static final double SHRINK = 1;
+
+	private final GameParameters gameParameters;
+	private final double tile;
+	private final int boardSize;
+	private final int size;
+
+	//Zone ordinals of the cells {exact boundaries, shrunk boundaries}, and the number of cells on one axis
+	private final int cells;
+	private final byte[] exactRaster;
+	private final byte[] shrunkRaster;
+
+	/**
+	 * Creates a ZoneMap object and computes the zones of the cells of the game board.
+	 * @param gameParameters  Game parameters for this round
+	 * @param tile  The tile length of the game board
+	 * @param boardSize  Size of the board (number of tiles on one side)
+	 * @throws IllegalArgumentException  If a zone boundary is not on a grid line
+	 */
+	public ZoneMap(GameParameters gameParameters, double tile, int boardSize) {
+		this.gameParameters = gameParameters;
+		this.tile = tile;
+		this.boardSize = boardSize;
+		this.size = (2 * boardSize) + 1;
+		checkWholeTiles(gameParameters.Green_LL, gameParameters.Green_UR, gameParameters.Red_LL, gameParameters.Red_UR,
+				gameParameters.SH_LL, gameParameters.SH_UR, gameParameters.SV_LL, gameParameters.SV_UR);
+
+		cells = (2 * boardSize) + 3;
+		exactRaster = new byte[cells * cells];
+		shrunkRaster = new byte[cells * cells];
+		for (int y = 0; y < cells; y++) {
+			for (int x = 0; x < cells; x++) {
+				exactRaster[(y * cells) + x] = (byte) computeZone(new Coordinate(cellPosition(x), cellPosition(y))).ordinal();
+				shrunkRaster[(y * cells) + x] = (byte) computeShrunkZone(cellPosition(x), cellPosition(y)).ordinal();
+			}
+		}
+	}
+
+	/**
+	 * Returns the zone in which a coordinate falls in.
+	 * @param node  Coordinate checked for which zone it is in
+	 * @return  The zone in which the Coordinate falls in
+	 */
+	public Zone mapPoint(Coordinate node) {
+		return ZONES[exactRaster[(exactCell(node.y) * cells) + exactCell(node.x)]];
+	}
+
+	/**
+	 * Returns the zone in which a point falls in, the boundaries of every zone being shrunk by 1cm.
+	 * @param x  The X coordinate of the node
+	 * @param y  The Y coordinate of the node
+	 * @return  The zone in which the point falls in
+	 */
+	public Zone mapPoint(double x, double y) {
+		return ZONES[shrunkRaster[(shrunkCell(y) * cells) + shrunkCell(x)]];
+	}
+
+	/**
+	 * Returns the zone of a point of the raster.
+	 * @param x  Index of the point along the X axis
+	 * @param y  Index of the point along the Y axis
+	 * @return  The zone of the point when using the exact boundaries
+	 */
+	public Zone mapNode(int x, int y) {
+		return ZONES[exactRaster[((y + 1) * cells) + x + 1]];
+	}
+
+	/**
+	 * Returns the number of raster points on one side of the board.
+	 * @return  The number of points on one side
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Converts an index of the raster on one axis to a position. Whole tiles are computed the same way as the game parameters
+	 * such that both can be compared exactly.
+	 * @param index  Index on the raster
+	 * @return  Position on the board
+	 */
+	public double getPosition(int index) {
+		if (index % 2 == 0) {
+			return (index / 2) * tile;
+		}
+		return ((index / 2) * tile) + (tile / 2);
+	}
+
+	/**
+	 * Returns the cell of a value on one axis for the exact boundaries. Grid line k is cell 2k + 1, the values strictly
+	 * between lines k - 1 and k are cell 2k, and the values beyond the last line are the last cell.
+	 * The line is compared to the value exactly, such that a value close to a line is not snapped onto it.
+	 * @param value  The X or Y value
+	 * @return  The cell on the axis
+	 */
+	private int exactCell(double value) {
+		int line = closestLine(value);
+		double position = line * tile;
+		if (value == position) {
+			return (2 * line) + 1;
+		}
+		return value < position ? 2 * line : (2 * line) + 2;
+	}
+
+	/**
+	 * Returns the cell of a value on one axis for the boundaries shrunk by 1cm. The boundaries are compared strictly,
+	 * so the values up to 1cm on either side of grid line k, included, are compared the same way as the line itself
+	 * and are cell 2k + 1. The values between lines k - 1 and k further than 1cm from both are cell 2k.
+	 * @param value  The X or Y value
+	 * @return  The cell on the axis
+	 */
+	private int shrunkCell(double value) {
+		int line = closestLine(value);
+		double position = line * tile;
+		if (value < position - SHRINK) {
+			return 2 * line;
+		}
+		return value <= position + SHRINK ? (2 * line) + 1 : (2 * line) + 2;
+	}
+
+	/**
+	 * Returns the grid line closest to a value, limited to the lines of the board.
+	 * @param value  The X or Y value
+	 * @return  Number of the line
+	 */
+	private int closestLine(double value) {
+		long line = Math.round(value / tile);
+		return (int) Math.max(0, Math.min(boardSize, line));
+	}
+
+	/**
+	 * Returns a value on one axis falling in a cell: the grid line of an odd cell, the middle of the tile of an even one.
+	 * The lines are computed the same way as the game parameters such that both can be compared exactly.
+	 * @param cell  The cell on the axis
+	 * @return  A value in the cell
+	 */
+	private double cellPosition(int cell) {
+		if (cell % 2 == 1) {
+			return (cell / 2) * tile;
+		}
+		return ((cell / 2) * tile) - (tile / 2);
+	}
+
+	/**
+	 * Checks that the corners of the zones are on grid lines, as the cells of the map assume.
+	 * @param corners  The corners of the zones
+	 * @throws IllegalArgumentException  If a corner is not on a grid line
+	 */
+	private void checkWholeTiles(Coordinate... corners) {
+		for (Coordinate corner : corners) {
+			if (corner.x != ((int) Math.round(corner.x / tile)) * tile || corner.y != ((int) Math.round(corner.y / tile)) * tile) {
+				throw new IllegalArgumentException("Zone corner not on a grid line : " + corner.x + " " + corner.y);
+			}
+		}
+	}
+
+	/**
+	 * Computes the zone of a Coordinate by checking the boundaries of every zone in the game parameters.
+	 * @param node  Coordinate checked for which zone it is in
+	 * @return  The zone in which the Coordinate falls in
+	 */
+	private Zone computeZone(Coordinate node) {
+		if(node.x > gameParameters.Green_LL.x && node.x < gameParameters.Green_UR.x && node.y > gameParameters.Green_LL.y && node.y < gameParameters.Green_UR.y)
+		{
+			return Zone.GREEN;
+		}
+		else if(node.x > gameParameters.Red_LL.x && node.x < gameParameters.Red_UR.x && node.y > gameParameters.Red_LL.y && node.y < gameParameters.Red_UR.y)
+		{
+			return Zone.RED;
+		}
+		else if((node.x > gameParameters.SV_LL.x && node.x < gameParameters.SV_UR.x && node.y > gameParameters.SV_LL.y && node.y < gameParameters.SV_UR.y)
+				||(node.x > gameParameters.SH_LL.x && node.x < gameParameters.SH_UR.x && node.y > gameParameters.SH_LL.y && node.y < gameParameters.SH_UR.y))
+		{
+			return Zone.BRIDGE;
+		}
+		else if (((node.x >= gameParameters.Green_LL.x && node.x <= gameParameters.Green_UR.x && node.y >= gameParameters.Green_LL.y && node.y <= gameParameters.Green_UR.y)
+				|| (node.x >= gameParameters.Red_LL.x && node.x <= gameParameters.Red_UR.x && node.y >= gameParameters.Red_LL.y && node.y <= gameParameters.Red_UR.y))
+				&& ((node.x >= gameParameters.SV_LL.x && node.x <= gameParameters.SV_UR.x && node.y >= gameParameters.SV_LL.y && node.y <= gameParameters.SV_UR.y)
+				||(node.x >= gameParameters.SH_LL.x && node.x <= gameParameters.SH_UR.x && node.y >= gameParameters.SH_LL.y && node.y <= gameParameters.SH_UR.y))
+				&& (!(node.x == gameParameters.SH_LL.x && node.y == gameParameters.SH_LL.y) && !(node.x == gameParameters.SH_UR.x && node.y == gameParameters.SH_UR.y) && !(node.x == gameParameters.SV_LL.x && node.y == gameParameters.SV_LL.y) && !(node.x == gameParameters.SV_UR.x && node.y == gameParameters.SV_UR.y))
+				&& (!(node.x == gameParameters.SH_LL.x && node.y == gameParameters.SH_UR.y) && !(node.x == gameParameters.SH_UR.x && node.y == gameParameters.SH_LL.y) && !(node.x == gameParameters.SV_LL.x && node.y == gameParameters.SV_UR.y) && !(node.x == gameParameters.SV_UR.x && node.y == gameParameters.SV_LL.y))) {
+			return Zone.BRIDGE;
+		}
+		else {
+			return Zone.RIVER;
+		}
+	}
+
+	/**
+	 * Computes the zone of a point by checking the boundaries of every zone in the game parameters shrunk by 1cm.
+	 * @param x  The X coordinate of the node
+	 * @param y  The Y coordinate of the node
+	 * @return  The zone in which the point falls in
+	 */
+	private Zone computeShrunkZone(double x, double y) {
+		if(x > gameParameters.Green_LL.x + SHRINK && x < gameParameters.Green_UR.x - SHRINK && y > gameParameters.Green_LL.y + SHRINK && y < gameParameters.Green_UR.y - SHRINK)
+		{
+			return Zone.GREEN;
+		}
+		else if(x > gameParameters.Red_LL.x + SHRINK && x < gameParameters.Red_UR.x - SHRINK && y > gameParameters.Red_LL.y + SHRINK && y < gameParameters.Red_UR.y - SHRINK)
+		{
+			return Zone.RED;
+		}
+		else if((x > gameParameters.SV_LL.x + SHRINK && x < gameParameters.SV_UR.x - SHRINK && y > gameParameters.SV_LL.y + SHRINK && y < gameParameters.SV_UR.y - SHRINK)
+				||(x > gameParameters.SH_LL.x + SHRINK && x < gameParameters.SH_UR.x - SHRINK && y > gameParameters.SH_LL.y + SHRINK && y < gameParameters.SH_UR.y - SHRINK))
+		{
+			return Zone.BRIDGE;
+		}
+		else {
+			return Zone.RIVER;
+		}
+	}
+
+}
@@ -0,0 +1,104 @@
+/**
+ * ColorLocalisationDataTest.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.mcgill.ecse211.capturetheflag.OdometerTest.TachoMotor;
+
+/**
+ * Feeds a synthetic dark pulse through the ColorLocalisationData while the wheels of a stub odometer turn by a known
+ * angle on every sample, and checks the pose kept for the line.
+ *
+ * @author Michael Vaquier
+ *
+ */
+public class ColorLocalisationDataTest {
+
+	//Tacho counts the wheels turn by between two samples, the robot moves on an arc
+	private static final int LEFT_STEP = 3;
+	private static final int RIGHT_STEP = 1;
+	private static final int LATENCY = 2;
+
+	private final TachoMotor left = new TachoMotor();
+	private final TachoMotor right = new TachoMotor();
+	private final Odometer odometer = new Odometer(left, right, MainController.WHEEL_RADIUS, MainController.TRACK,
+			new SensorScheduler(new SystemClock()));
+	private final ColorLocalisationData data = new ColorLocalisationData();
+	private int sample = 0;
+
+	@Before
+	public void setUp() {
+		Feedback.setEnabled(false);
+		odometer.resetPose(30, 30, Math.toRadians(80), 1, 1);
+		data.setOdometer(odometer);
+		data.setSensorLatency(LATENCY);
+	}
+
+	/**
+	 * The reading falls from 40 to 10 and rises back to 30. The level halfway between the floor and the darkest sample,
+	 * 25, is crossed a quarter of the way from sample 10 to 11 and three quarters of the way from sample 12 to 13,
+	 * so the center of the line is at sample 11.5, and the sensor was over it at sample 9.5.
+	 */
+	@Test
+	public void linePoseIsAtTheCenterMovedBackByTheLatency() {
+		for (int i = 0; i < 10; i++) {
+			feed(40);
+		}
+		feed(30);
+		feed(10);
+		feed(10);
+		assertEquals(0, data.getLineCount());
+		feed(30);
+
+		assertEquals(1, data.getLineCount());
+		assertSame(data.getLinePose(0), data.getLastLinePose());
+		double center = 11.5 - LATENCY;
+		Pose before = poseAtSample((int) Math.floor(center));
+		Pose after = poseAtSample((int) Math.floor(center) + 1);
+		double fraction = center - Math.floor(center);
+		Pose pose = data.getLinePose(0);
+		assertEquals(before.x + (fraction * (after.x - before.x)), pose.x, 1e-9);
+		assertEquals(before.y + (fraction * (after.y - before.y)), pose.y, 1e-9);
+		assertEquals(before.theta + (fraction * (after.theta - before.theta)), pose.theta, 1e-9);
+		assertEquals(Math.toDegrees(pose.theta), pose.thetaDegrees, 1e-9);
+	}
+
+	/**
+	 * A line crossed before the last reset is forgotten, and the samples of the floor after it are not a line.
+	 */
+	@Test
+	public void resetForgetsTheLines() {
+		int[] pulse = {40, 40, 30, 10, 10, 30, 40};
+		for (int value : pulse) {
+			feed(value);
+		}
+		assertEquals(1, data.getLineCount());
+		data.resetLastData();
+		for (int i = 0; i < 20; i++) {
+			feed(40 + (i % 3));
+		}
+		assertEquals(0, data.getLineCount());
+		assertEquals(null, data.getLastLinePose());
+	}
+
+	/**
+	 * Turns the wheels to the counts of the next sample and processes the reading.
+	 */
+	private void feed(int value) {
+		left.tachoCount = sample * LEFT_STEP;
+		right.tachoCount = sample * RIGHT_STEP;
+		data.processData(value);
+		sample++;
+	}
+
+	private Pose poseAtSample(int number) {
+		return odometer.getPoseAt(number * LEFT_STEP, number * RIGHT_STEP);
+	}
+}
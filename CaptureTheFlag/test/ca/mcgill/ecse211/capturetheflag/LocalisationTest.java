@@ -0,0 +1,351 @@
+/**
+ * LocalisationTest.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.mcgill.ecse211.capturetheflag.SimulatedColorSensor.ColorSensorMode;
+
+/**
+ * Checks the fits of the Localisation on crossings made from a known pose, and runs the localisation routines
+ * on a SimulatedRobot of which the odometer starts off by a known position and heading.
+ * The odometer poses at the crossings are the true poses seen by an odometer with a position error at the reference
+ * pose and a heading error, which also rotates the path traveled between the crossings and the reference.
+ *
+ * @author Michael Vaquier
+ *
+ */
+public class LocalisationTest {
+
+	private static final double TILE = MainController.TILE;
+	private static final double SENSOR_OFFSET = SimulatedMatch.BACK_SENSOR_OFFSET;
+	private static final long TIME_LIMIT = 60000;
+
+	//Error of the odometer: true position minus odometer position at the reference, and true heading minus odometer heading
+	private static final double ERROR_X = -2;
+	private static final double ERROR_Y = 1.5;
+	private static final double ERROR_HEADING = 3;
+
+	private VirtualClock clock;
+	private SimulatedRobot robot;
+	private SensorScheduler scheduler;
+	private Odometer odometer;
+	private Navigation navigation;
+	private Localisation localisation;
+	private final double[] fit = new double[3];
+
+	@Before
+	public void setUp() {
+		Feedback.setEnabled(false);
+		clock = new VirtualClock();
+		clock.setTimeLimit(TIME_LIMIT);
+		GameParameters gameParameters = SimulatedMatch.sampleGameParameters(TILE);
+		robot = new SimulatedRobot(MainController.WHEEL_RADIUS, MainController.TRACK, TILE, MainController.BOARD_SIZE, gameParameters, clock);
+		DriveMotor leftMotor = robot.getLeftMotor();
+		DriveMotor rightMotor = robot.getRightMotor();
+		scheduler = new SensorScheduler(clock);
+		odometer = new Odometer(leftMotor, rightMotor, MainController.WHEEL_RADIUS, MainController.TRACK, scheduler);
+		ColorPoller colorPoller = new ColorPoller(new SimulatedColorSensor(robot, -SimulatedMatch.BACK_SENSOR_OFFSET, 0, ColorSensorMode.RED),
+				new SimulatedColorSensor(robot, SimulatedMatch.FRONT_SENSOR_OFFSET, 0, ColorSensorMode.COLOR_ID),
+				new SimulatedColorSensor(robot, 0, SimulatedMatch.SIDE_SENSOR_OFFSET, ColorSensorMode.COLOR_ID),
+				new ColorLocalisationData(), new ZiplineLightData(clock), new BlockSearchingData(gameParameters, SimulatedMatch.TEAM_NUMBER),
+				new OdometryCorrectionData(TILE), scheduler);
+		UltrasonicPoller ultrasonicPoller = new UltrasonicPoller(new SimulatedRangeSensor(robot, SimulatedMatch.US_SENSOR_OFFSET),
+				new UltrasonicLocalisationData(clock), new UltrasonicNavigationData(rightMotor, leftMotor, TILE, MainController.BOARD_SIZE), scheduler);
+		colorPoller.setFloorSensorLatency(MainController.FLOOR_SENSOR_LATENCY);
+		TrajectoryFollower trajectoryFollower = new TrajectoryFollower(odometer, leftMotor, rightMotor, MainController.WHEEL_RADIUS, scheduler, clock);
+		navigation = new Navigation(odometer, rightMotor, leftMotor, MainController.WHEEL_RADIUS, MainController.TRACK, gameParameters, trajectoryFollower, clock);
+		localisation = new Localisation(odometer, navigation, ultrasonicPoller, colorPoller, rightMotor, leftMotor, TILE, 0, clock);
+	}
+
+	@After
+	public void tearDown() {
+		clock.stop();
+	}
+
+	/**
+	 * Four crossings of a sweep around a point close to an intersection give back the position of the point
+	 * and the true heading of the reference, turned a bit further than the last crossing.
+	 */
+	@Test
+	public void sweepFitGivesTheKnownPose() {
+		double x = (2 * TILE) + 3;
+		double y = (3 * TILE) - 2;
+		double vertical = Math.asin((x - (2 * TILE)) / SENSOR_OFFSET);
+		double horizontal = Math.acos((y - (3 * TILE)) / SENSOR_OFFSET);
+		double[] headings = {horizontal, vertical, Math.PI - vertical, (2 * Math.PI) - horizontal};
+		Pose[] truePoses = new Pose[headings.length];
+		for (int i = 0; i < headings.length; i++) {
+			truePoses[i] = pose(x, y, headings[i]);
+		}
+		Pose trueReference = pose(x, y, headings[headings.length - 1] - Math.toRadians(10));
+		Pose reference = odometerPose(trueReference, trueReference);
+
+		assertTrue(localisation.fitLineCrossings(odometerPoses(truePoses, trueReference), truePoses.length, reference));
+		localisation.getFit(fit);
+		assertEquals(x, fit[0], 1e-3);
+		assertEquals(y, fit[1], 1e-3);
+		assertEquals(ERROR_HEADING, fit[2], 1e-3);
+		assertEquals(trueReference.thetaDegrees, reference.thetaDegrees + fit[2], 1e-3);
+	}
+
+	/**
+	 * Crossings of a single line do not tell the position along it, the fit fails and keeps the last result.
+	 */
+	@Test
+	public void sweepFitNeedsBothLines() {
+		sweepFitGivesTheKnownPose();
+		double x = (2 * TILE) + 10;
+		double y = 1.5 * TILE;
+		double vertical = Math.asin((x - (2 * TILE)) / SENSOR_OFFSET);
+		double[] headings = {vertical, Math.PI - vertical, vertical - (2 * Math.PI), -Math.PI - vertical};
+		Pose[] truePoses = new Pose[headings.length];
+		for (int i = 0; i < headings.length; i++) {
+			truePoses[i] = pose(x, y, headings[i]);
+		}
+		Pose trueReference = pose(x, y, headings[headings.length - 1]);
+
+		assertFalse(localisation.fitLineCrossings(odometerPoses(truePoses, trueReference), truePoses.length,
+				odometerPose(trueReference, trueReference)));
+		localisation.getFit(fit);
+		assertEquals((2 * TILE) + 3, fit[0], 1e-3);
+		assertEquals((3 * TILE) - 2, fit[1], 1e-3);
+	}
+
+	/**
+	 * The robot spins close to an intersection with the odometer off, the odometer is corrected and the intersection
+	 * and the distance since the last localisation are updated.
+	 */
+	@Test
+	public void colorLocalisationCorrectsTheOdometer() {
+		robot.setPose((2 * TILE) + 3, (3 * TILE) - 2, 40);
+		resetOdometerWithError();
+		start();
+		localisation.colorLocalisation(true);
+
+		assertEquals(new Coordinate(2 * TILE, 3 * TILE), localisation.getLastColorLocalisationLocation());
+		assertEquals(0, odometer.getDistanceSinceLastLocalisation(), 0.5);
+		assertOdometerAtTruePose(1, 1.5);
+	}
+
+	/**
+	 * The robot drives a tile and spins where the back sensor only crosses a line along Y. The fit fails,
+	 * and neither the intersection nor the distance since the last localisation are updated.
+	 */
+	@Test
+	public void failedSweepRecordsNothing() {
+		robot.setPose((2 * TILE) + 5, 0.5 * TILE, 0);
+		Pose pose = robot.getPose();
+		odometer.resetPose(pose.x, pose.y, pose.theta, 0.5, 1);
+		start();
+		navigation.travelTo((2 * TILE) + 5, 1.5 * TILE, false);
+		double distance = odometer.getDistanceSinceLastLocalisation();
+		assertTrue("Distance " + distance, distance > TILE / 2);
+		localisation.colorLocalisation(true);
+
+		assertEquals(new Coordinate(-1, -1), localisation.getLastColorLocalisationLocation());
+		assertTrue("Distance reset", odometer.getDistanceSinceLastLocalisation() > distance - 1);
+	}
+
+	/**
+	 * The crossings of a straight leg through an intersection give back the true pose at the end of the leg.
+	 * The crossings are far enough from the intersections that the odometer does not mistake the lines crossed.
+	 */
+	@Test
+	public void driveThroughFitGivesTheKnownPose() {
+		double heading = Math.toRadians(45);
+		Pose[] truePoses = legCrossings(0.6 * TILE, 0.3 * TILE, heading, 3 * TILE);
+		assertTrue("Crossings " + truePoses.length, truePoses.length >= 4);
+		Pose trueReference = pose((0.6 * TILE) + (3 * TILE * Math.sin(heading)), (0.3 * TILE) + (3 * TILE * Math.cos(heading)), heading);
+		Pose reference = odometerPose(trueReference, trueReference);
+
+		assertTrue(localisation.fitLineCrossings(odometerPoses(truePoses, trueReference), truePoses.length, reference));
+		localisation.getFit(fit);
+		assertEquals(trueReference.x, fit[0], 1e-3);
+		assertEquals(trueReference.y, fit[1], 1e-3);
+		assertEquals(ERROR_HEADING, fit[2], 1e-3);
+	}
+
+	/**
+	 * A leg along Y between two lines only crosses lines along X, which does not tell the X position nor the heading.
+	 */
+	@Test
+	public void driveThroughFitNeedsBothLines() {
+		Pose[] truePoses = legCrossings(1.5 * TILE, 0.7 * TILE, 0, 3 * TILE);
+		assertTrue("Crossings " + truePoses.length, truePoses.length >= 3);
+		Pose trueReference = pose(1.5 * TILE, 3.7 * TILE, 0);
+
+		assertFalse(localisation.fitLineCrossings(odometerPoses(truePoses, trueReference), truePoses.length,
+				odometerPose(trueReference, trueReference)));
+	}
+
+	/**
+	 * The robot drives diagonally through an intersection with the odometer off, and the odometer is corrected
+	 * from the lines crossed on the way.
+	 */
+	@Test
+	public void driveThroughLocalisationCorrectsTheOdometer() {
+		robot.setPose(0.6 * TILE, 0.3 * TILE, 45);
+		resetOdometerWithError();
+		start();
+		Pose pose = odometer.getPose();
+		double x = pose.x + (3 * TILE * Math.sin(pose.theta));
+		double y = pose.y + (3 * TILE * Math.cos(pose.theta));
+
+		assertTrue(localisation.driveThroughLocalisation(x, y));
+		assertEquals(new Coordinate(localisation.getClosestMultiple(x), localisation.getClosestMultiple(y)),
+				localisation.getLastColorLocalisationLocation());
+		assertOdometerAtTruePose(1, 1.5);
+	}
+
+	/**
+	 * A scan made in the starting corner with the odometer heading off gives back the distances to the walls and the
+	 * heading error, within half a centimetre and a degree. The odometer position is the center of the corner tile,
+	 * as at the start of a round.
+	 */
+	@Test
+	public void cornerFitGivesTheWallDistances() {
+		double x = (0.5 * TILE) + 2;
+		double y = (0.5 * TILE) - 3;
+		recordScan(x, y, 0, 359);
+
+		assertTrue(localisation.fitCornerWalls());
+		localisation.getFit(fit);
+		assertEquals(x, fit[0], 0.5);
+		assertEquals(y, fit[1], 0.5);
+		assertEquals(ERROR_HEADING, fit[2], 1);
+	}
+
+	/**
+	 * A scan cut short before the sensor faced the wall along Y does not tell the X position.
+	 */
+	@Test
+	public void cornerFitNeedsBothWalls() {
+		recordScan((0.5 * TILE) + 2, (0.5 * TILE) - 3, 0, 200);
+
+		assertFalse(localisation.fitCornerWalls());
+	}
+
+	/**
+	 * The robot spins in the starting corner with the odometer heading wrong by more than a quarter turn, as at the
+	 * start of a round, and the odometer is corrected from the scan.
+	 */
+	@Test
+	public void usScanLocalisationCorrectsTheOdometer() {
+		robot.setPose((0.5 * TILE) + 2, (0.5 * TILE) - 3, 130);
+		odometer.resetPose(0.5 * TILE, 0.5 * TILE, 0, 6, 180);
+		start();
+		localisation.usScanLocalisation();
+
+		assertOdometerAtTruePose(1, 1.5);
+	}
+
+	private void start() {
+		robot.start();
+		odometer.startOdometer();
+		scheduler.start();
+	}
+
+	/**
+	 * Records the distances seen by the ultrasonic sensor in bins of the scan, the robot turning at a position
+	 * with the odometer heading off by the heading error, and the odometer position at the center of the corner tile.
+	 */
+	private void recordScan(double x, double y, int firstBin, int lastBin) {
+		RangeSensor sensor = new SimulatedRangeSensor(robot, SimulatedMatch.US_SENSOR_OFFSET);
+		for (int bin = firstBin; bin <= lastBin; bin++) {
+			double heading = bin + 0.5;
+			robot.setPose(x, y, heading + ERROR_HEADING);
+			odometer.resetPose(0.5 * TILE, 0.5 * TILE, Math.toRadians(heading), 6, 180);
+			localisation.recordSweepSample(Math.min((int) (sensor.fetchDistance() * 100), 255));
+		}
+	}
+
+	/**
+	 * Resets the odometer at the true pose of the robot moved by the errors.
+	 */
+	private void resetOdometerWithError() {
+		Pose pose = robot.getPose();
+		odometer.resetPose(pose.x - ERROR_X, pose.y - ERROR_Y, Math.toRadians(pose.thetaDegrees - ERROR_HEADING), 3, 5);
+	}
+
+	private void assertOdometerAtTruePose(double positionTolerance, double headingTolerance) {
+		Pose truePose = robot.getPose();
+		Pose pose = odometer.getPose();
+		assertEquals(truePose.x, pose.x, positionTolerance);
+		assertEquals(truePose.y, pose.y, positionTolerance);
+		double headingError = ((pose.thetaDegrees - truePose.thetaDegrees + 540) % 360) - 180;
+		assertEquals(0, headingError, headingTolerance);
+	}
+
+	/**
+	 * Returns the poses of the odometer at true poses.
+	 */
+	private static Pose[] odometerPoses(Pose[] truePoses, Pose trueReference) {
+		Pose[] poses = new Pose[truePoses.length];
+		for (int i = 0; i < truePoses.length; i++) {
+			poses[i] = odometerPose(truePoses[i], trueReference);
+		}
+		return poses;
+	}
+
+	/**
+	 * Returns the pose of the odometer at a true pose: the path from the reference is rotated back by the heading error,
+	 * and the reference is moved back by the position error.
+	 */
+	private static Pose odometerPose(Pose truePose, Pose trueReference) {
+		double error = Math.toRadians(ERROR_HEADING);
+		double ux = truePose.x - trueReference.x;
+		double uy = truePose.y - trueReference.y;
+		double dx = (ux * Math.cos(error)) - (uy * Math.sin(error));
+		double dy = (ux * Math.sin(error)) + (uy * Math.cos(error));
+		return pose(trueReference.x - ERROR_X + dx, trueReference.y - ERROR_Y + dy, truePose.theta - error);
+	}
+
+	/**
+	 * Returns the true poses at which the back sensor crosses the lines while the robot drives straight.
+	 * @param x  X value of the start of the leg
+	 * @param y  Y value of the start of the leg
+	 * @param heading  Heading of the leg in radiant
+	 * @param length  Length of the leg
+	 * @return  The poses in the order of the crossings
+	 */
+	private static Pose[] legCrossings(double x, double y, double heading, double length) {
+		double sin = Math.sin(heading);
+		double cos = Math.cos(heading);
+		List<Double> distances = new ArrayList<Double>();
+		for (int line = 0; line <= MainController.BOARD_SIZE; line++) {
+			//The sensor is over the line once the center passed it by the offset of the sensor along the leg
+			if (Math.abs(sin) > 1e-9) {
+				distances.add(Double.valueOf((((line * TILE) - x) / sin) + SENSOR_OFFSET));
+			}
+			if (Math.abs(cos) > 1e-9) {
+				distances.add(Double.valueOf((((line * TILE) - y) / cos) + SENSOR_OFFSET));
+			}
+		}
+		Collections.sort(distances);
+		List<Pose> poses = new ArrayList<Pose>();
+		for (Double distance : distances) {
+			if (distance.doubleValue() >= 0 && distance.doubleValue() <= length) {
+				poses.add(pose(x + (distance.doubleValue() * sin), y + (distance.doubleValue() * cos), heading));
+			}
+		}
+		return poses.toArray(new Pose[poses.size()]);
+	}
+
+	private static Pose pose(double x, double y, double theta) {
+		theta = ((theta % (2 * Math.PI)) + (2 * Math.PI)) % (2 * Math.PI);
+		return new Pose(x, y, theta, Math.toDegrees(theta));
+	}
+}
@@ -0,0 +1,120 @@
+/**
+ * NavigationControllerTest.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ca.mcgill.ecse211.capturetheflag.NavigationController.NavigationState;
+import ca.mcgill.ecse211.capturetheflag.SimulatedColorSensor.ColorSensorMode;
+
+/**
+ * Runs the NavigationController on a SimulatedRobot with an obstacle on the path, such that the robot goes around it
+ * and the path is planned again to the destinations not reached yet.
+ *
+ * @author Michael Vaquier
+ *
+ */
+public class NavigationControllerTest {
+
+	private static final double TILE = MainController.TILE;
+	private static final long TIME_LIMIT = 120000;
+
+	/**
+	 * Keeps whether the robot went around an obstacle and how close it came to a destination when the state changed.
+	 * The robot stops at a destination where the path turns back, so the state changes there.
+	 */
+	private static class StateRecorder implements NavigationStateListener {
+		private final SimulatedRobot robot;
+		private final Coordinate destination;
+		private volatile boolean avoided = false;
+		private volatile double closestDistance = Double.POSITIVE_INFINITY;
+
+		StateRecorder(SimulatedRobot robot, Coordinate destination) {
+			this.robot = robot;
+			this.destination = destination;
+		}
+
+		public void navigationStateChanged(NavigationState previousState, NavigationState state) {
+			if (state == NavigationState.AVOIDING) {
+				avoided = true;
+			}
+			Pose pose = robot.getPose();
+			closestDistance = Math.min(closestDistance, Math.hypot(pose.x - destination.x, pose.y - destination.y));
+		}
+	}
+
+	/**
+	 * The robot drives up a line to a first destination and back down the same line to a second one, with an obstacle
+	 * on the way up. The first destination lies on the line of the path, and must not be dropped when the path is
+	 * planned or planned again after the avoidance.
+	 */
+	@Test
+	public void avoidanceKeepsTheDestinationsLeft() {
+		Feedback.setEnabled(false);
+		VirtualClock clock = new VirtualClock();
+		clock.setTimeLimit(TIME_LIMIT);
+		GameParameters gameParameters = SimulatedMatch.sampleGameParameters(TILE);
+		SimulatedRobot robot = new SimulatedRobot(MainController.WHEEL_RADIUS, MainController.TRACK, TILE, MainController.BOARD_SIZE, gameParameters, clock);
+		robot.setPose(TILE, TILE, 0);
+		robot.addObstacle(new Coordinate(0.8 * TILE, 2.4 * TILE), new Coordinate(1.2 * TILE, 2.6 * TILE));
+		robot.start();
+
+		Coordinate farDestination = new Coordinate(TILE, 4 * TILE);
+		Coordinate nearDestination = new Coordinate(TILE, 2 * TILE);
+		StateRecorder recorder = new StateRecorder(robot, farDestination);
+		try {
+			NavigationController navigationController = newNavigationController(robot, gameParameters, clock);
+			navigationController.addNavigationStateListener(recorder);
+			navigationController.setObjectAvoidance(true);
+			navigationController.addWayPoint(farDestination.x, farDestination.y);
+			navigationController.addWayPoint(nearDestination.x, nearDestination.y);
+			navigationController.runNavigationTask(true);
+		} finally {
+			clock.stop();
+		}
+
+		Pose pose = robot.getPose();
+		assertTrue("The robot did not meet the obstacle", recorder.avoided);
+		assertTrue("The robot did not reach the first destination, closest " + recorder.closestDistance,
+				recorder.closestDistance < TILE / 4);
+		assertTrue("The robot did not end at the last destination : " + pose.x + " " + pose.y,
+				Math.hypot(pose.x - nearDestination.x, pose.y - nearDestination.y) < TILE / 4);
+	}
+
+	/**
+	 * Builds a NavigationController on the robot as the MainController does, with the odometer starting at the true pose.
+	 * @param robot  The SimulatedRobot, already started
+	 * @param gameParameters  Game parameters of the board
+	 * @param clock  The clock the robot runs on
+	 * @return  The NavigationController
+	 */
+	private static NavigationController newNavigationController(SimulatedRobot robot, GameParameters gameParameters, Clock clock) {
+		DriveMotor leftMotor = robot.getLeftMotor();
+		DriveMotor rightMotor = robot.getRightMotor();
+		SensorScheduler scheduler = new SensorScheduler(clock);
+		Odometer odometer = new Odometer(leftMotor, rightMotor, MainController.WHEEL_RADIUS, MainController.TRACK, scheduler);
+		Pose pose = robot.getPose();
+		odometer.resetPose(pose.x, pose.y, pose.theta, 0.5, 1);
+		odometer.startOdometer();
+
+		ColorPoller colorPoller = new ColorPoller(new SimulatedColorSensor(robot, -SimulatedMatch.BACK_SENSOR_OFFSET, 0, ColorSensorMode.RED),
+				new SimulatedColorSensor(robot, SimulatedMatch.FRONT_SENSOR_OFFSET, 0, ColorSensorMode.COLOR_ID),
+				new SimulatedColorSensor(robot, 0, SimulatedMatch.SIDE_SENSOR_OFFSET, ColorSensorMode.COLOR_ID),
+				new ColorLocalisationData(), new ZiplineLightData(clock), new BlockSearchingData(gameParameters, SimulatedMatch.TEAM_NUMBER),
+				new OdometryCorrectionData(TILE), scheduler);
+		UltrasonicPoller ultrasonicPoller = new UltrasonicPoller(new SimulatedRangeSensor(robot, SimulatedMatch.US_SENSOR_OFFSET),
+				new UltrasonicLocalisationData(clock), new UltrasonicNavigationData(rightMotor, leftMotor, TILE, MainController.BOARD_SIZE), scheduler);
+		colorPoller.setFloorSensorLatency(MainController.FLOOR_SENSOR_LATENCY);
+		scheduler.start();
+
+		TrajectoryFollower trajectoryFollower = new TrajectoryFollower(odometer, leftMotor, rightMotor, MainController.WHEEL_RADIUS, scheduler, clock);
+		Navigation navigation = new Navigation(odometer, rightMotor, leftMotor, MainController.WHEEL_RADIUS, MainController.TRACK, gameParameters, trajectoryFollower, clock);
+		Localisation localisation = new Localisation(odometer, navigation, ultrasonicPoller, colorPoller, rightMotor, leftMotor, TILE, 0, clock);
+		return new NavigationController(rightMotor, leftMotor, robot.getSensorMotor(), odometer, navigation, localisation, ultrasonicPoller,
+				colorPoller, gameParameters, TILE, MainController.BOARD_SIZE, clock);
+	}
+}
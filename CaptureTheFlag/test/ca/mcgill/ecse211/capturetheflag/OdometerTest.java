@@ -0,0 +1,168 @@
+/**
+ * OdometerTest.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Stress tests of the sequence lock of the Odometer: reader threads check that every snapshot they get was written
+ * by a single update, while a writer thread updates the odometer as fast as it can.
+ * The writer only writes values that satisfy an invariant, so a torn read breaks it.
+ *
+ * @author Michael Vaquier
+ *
+ */
+public class OdometerTest {
+
+	private static final double WHEEL_RADIUS = MainController.WHEEL_RADIUS;
+	private static final double TRACK = MainController.TRACK;
+	private static final int READERS = 3;
+	private static final int UPDATES = 2000000;
+
+	/**
+	 * Motor of which the tests set the tacho count.
+	 */
+	static class TachoMotor implements DriveMotor {
+		volatile int tachoCount = 0;
+		public void forward() {}
+		public void backward() {}
+		public void stop() {}
+		public void stop(boolean immediateReturn) {}
+		public void rotate(int angle, boolean immediateReturn) {}
+		public void rotateTo(int limitAngle, boolean immediateReturn) {}
+		public void setSpeed(int speed) {}
+		public void setAcceleration(int acceleration) {}
+		public int getTachoCount() {
+			return tachoCount;
+		}
+		public void resetTachoCount() {
+			tachoCount = 0;
+		}
+		public boolean isMoving() {
+			return false;
+		}
+	}
+
+	/**
+	 * A check made by the readers on every snapshot, which throws an AssertionError if the snapshot is torn.
+	 */
+	private interface SnapshotCheck {
+		void check(Odometer odometer);
+	}
+
+	/**
+	 * The pose and the covariance are reset to values where X equals Y, the heading is the same in radiant and in degrees,
+	 * and the variances come from the same value.
+	 */
+	@Test
+	public void poseAndCovarianceAreNeverTorn() throws InterruptedException {
+		final TachoMotor left = new TachoMotor();
+		final TachoMotor right = new TachoMotor();
+		final Odometer odometer = newOdometer(left, right);
+		Runnable writer = new Runnable() {
+			public void run() {
+				for (int i = 0; i < UPDATES; i++) {
+					double value = 1 + (i % 1000);
+					odometer.resetPose(value, value, value / 200, value, value);
+				}
+			}
+		};
+		stress(odometer, writer, new SnapshotCheck() {
+			public void check(Odometer odometer) {
+				double[] covariance = new double[9];
+				Pose pose = odometer.getPose();
+				assertEquals("X and Y", pose.x, pose.y, 0);
+				assertEquals("heading", pose.theta * 180 / Math.PI, pose.thetaDegrees, 0);
+				odometer.getCovariance(covariance);
+				double deviation = Math.sqrt(covariance[0]);
+				assertEquals("position variances", covariance[0], covariance[4], 0);
+				assertEquals("heading variance", Math.toRadians(deviation) * Math.toRadians(deviation), covariance[8], 1e-12);
+				assertEquals("covariance", covariance[1], covariance[3], 0);
+			}
+		});
+	}
+
+	/**
+	 * Both wheels turn by the same angle from the origin facing Y, so the pose at some tacho counts only depends on the counts.
+	 * The pose and the tacho counts of the last update must come from the same update to give it.
+	 */
+	@Test
+	public void poseAtTachoCountsIsNeverTorn() throws InterruptedException {
+		final TachoMotor left = new TachoMotor();
+		final TachoMotor right = new TachoMotor();
+		final Odometer odometer = newOdometer(left, right);
+		odometer.resetPose(0, 0, 0, 1, 1);
+		Runnable writer = new Runnable() {
+			public void run() {
+				for (int i = 1; i <= UPDATES; i++) {
+					left.tachoCount = i;
+					right.tachoCount = i;
+					odometer.timedOut();
+				}
+			}
+		};
+		stress(odometer, writer, new SnapshotCheck() {
+			public void check(Odometer odometer) {
+				int counts = UPDATES / 2;
+				Pose pose = odometer.getPoseAt(counts, counts);
+				assertEquals(Math.PI * WHEEL_RADIUS * counts / 180, pose.y, 1e-3);
+				assertEquals(0, pose.x, 1e-9);
+			}
+		});
+	}
+
+	/**
+	 * Creates an odometer that is updated by the test instead of the scheduler.
+	 */
+	private static Odometer newOdometer(DriveMotor left, DriveMotor right) {
+		return new Odometer(left, right, WHEEL_RADIUS, TRACK, new SensorScheduler(new SystemClock()));
+	}
+
+	/**
+	 * Runs the writer and checks snapshots from the reader threads until the writer is done.
+	 */
+	private static void stress(final Odometer odometer, Runnable writer, final SnapshotCheck check) throws InterruptedException {
+		final AtomicBoolean writing = new AtomicBoolean(true);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		final int[] snapshots = new int[READERS];
+		List<Thread> readers = new ArrayList<Thread>();
+		for (int i = 0; i < READERS; i++) {
+			final int reader = i;
+			Thread thread = new Thread(new Runnable() {
+				public void run() {
+					try {
+						while (writing.get()) {
+							check.check(odometer);
+							snapshots[reader]++;
+						}
+					} catch (Throwable e) {
+						failure.compareAndSet(null, e);
+					}
+				}
+			});
+			readers.add(thread);
+			thread.start();
+		}
+		writer.run();
+		writing.set(false);
+		for (Thread thread : readers) {
+			thread.join();
+		}
+		if (failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+		for (int count : snapshots) {
+			assertTrue("a reader got no snapshot", count > 0);
+		}
+	}
+}
@@ -0,0 +1,86 @@
+/**
+ * PathPlannerTest.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Checks that the paths kept by the PathPlanner are reused between the same nodes, and forgotten when an obstacle is
+ * added or the cache is cleared. A path reused from the cache holds the same corner objects, a path searched again
+ * holds new ones.
+ *
+ * @author Michael Vaquier
+ *
+ */
+public class PathPlannerTest {
+
+	private static final double TILE = MainController.TILE;
+
+	private final GameParameters gameParameters = SimulatedMatch.sampleGameParameters(TILE);
+	private final PathPlanner pathPlanner = new PathPlanner(new ZoneMap(gameParameters, TILE, MainController.BOARD_SIZE), gameParameters, TILE);
+	private final Coordinate start = new Coordinate(TILE, TILE);
+	private final Coordinate goal = new Coordinate(4 * TILE, 2 * TILE);
+
+	/**
+	 * Planning again between points snapped to the same nodes reuses the corners found by the first search.
+	 */
+	@Test
+	public void cacheHitReturnsTheSamePath() {
+		List<Coordinate> first = plan(start, goal);
+		List<Coordinate> second = plan(new Coordinate(start.x + 1, start.y - 1), goal);
+
+		assertEquals(first.size(), second.size());
+		assertEquals(first.subList(1, first.size()), second.subList(1, second.size()));
+		assertSame(first.get(1), second.get(1));
+	}
+
+	/**
+	 * An obstacle on a corner of the path forgets the path, and the next plan goes around the obstacle.
+	 */
+	@Test
+	public void obstacleClearsTheCache() {
+		List<Coordinate> first = plan(start, goal);
+		Coordinate corner = first.get(1);
+		double clearance = TILE / 4;
+		pathPlanner.addObstacle(corner, clearance);
+
+		List<Coordinate> second = plan(start, goal);
+		for (Coordinate point : second) {
+			assertNotSame(corner, point);
+			assertTrue("Corner " + point.x + " " + point.y + " on the obstacle", Math.hypot(point.x - corner.x, point.y - corner.y) >= clearance);
+		}
+	}
+
+	/**
+	 * Clearing the cache searches the path again, and the same path is found on the same lattice.
+	 */
+	@Test
+	public void clearCacheSearchesAgain() {
+		List<Coordinate> first = plan(start, goal);
+		pathPlanner.clearCache();
+		List<Coordinate> second = plan(start, goal);
+
+		assertEquals(first, second);
+		assertNotSame(first.get(1), second.get(1));
+	}
+
+	/**
+	 * Plans a path that turns at least once, such that it holds a corner between the start and the goal.
+	 */
+	private List<Coordinate> plan(Coordinate from, Coordinate to) {
+		List<Coordinate> path = pathPlanner.plan(from, to);
+		assertNotNull("No path found", path);
+		assertTrue("The path does not turn", path.size() > 2);
+		return path;
+	}
+}
@@ -0,0 +1,183 @@
+/**
+ * TraceReplayerTest.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ca.mcgill.ecse211.capturetheflag.TraceReplayer.Stage;
+
+/**
+ * Replays synthetic traces through the data processing classes and checks the events they fire. The traces are recorded
+ * with a FlightRecorder, written to a file and read back, the same way as a flight record of the robot is replayed.
+ *
+ * @author Michael Vaquier
+ *
+ */
+public class TraceReplayerTest {
+
+	private static final int SAMPLE_PERIOD = 10;
+	private static final int FLOOR = 40;
+	private static final int AIR = 2;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Clock stepped by the test while the trace is recorded.
+	 */
+	private static class StepClock implements Clock {
+		private long time = 0;
+
+		public long currentTimeMillis() {
+			return time;
+		}
+
+		public long nanoTime() {
+			return time * 1000000;
+		}
+
+		public void sleep(long millis) {
+			time += millis;
+		}
+
+		public void startThread(Runnable task) {
+			throw new UnsupportedOperationException();
+		}
+
+		public Signal newSignal() {
+			throw new UnsupportedOperationException();
+		}
+
+		public Signal newLatchedSignal() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	private final StepClock clock = new StepClock();
+	private final FlightRecorder recorder = new FlightRecorder(4096, clock);
+
+	/**
+	 * Two dark pulses of the back sensor are two lines, the noise of the floor is not.
+	 */
+	@Test
+	public void lineCrossings() throws IOException {
+		Random random = new Random(3);
+		for (int i = 0; i < 50; i++) {
+			recordBack(FLOOR + random.nextInt(3));
+		}
+		long firstLine = recordPulse();
+		for (int i = 0; i < 30; i++) {
+			recordBack(FLOOR + random.nextInt(3));
+		}
+		long secondLine = recordPulse();
+		recordBack(FLOOR);
+
+		TraceReplayer replayer = replay(Stage.COLOR_LOCALISATION);
+		assertEquals(2, replayer.getEventCount());
+		assertEquals(2, replayer.getEventCount(SensorEvent.LINE_CROSSED));
+		assertEquals(firstLine, replayer.getEventTime(0));
+		assertEquals(secondLine, replayer.getEventTime(1));
+	}
+
+	/**
+	 * The reading of the back sensor changes all the time on the ground and stays constant in the air: the take off is
+	 * detected once it stayed constant long enough, and the landing as soon as the floor is seen again.
+	 */
+	@Test
+	public void ziplineTakeOffAndLanding() throws IOException {
+		Random random = new Random(4);
+		for (int i = 0; i < 300; i++) {
+			recordBack(10 + random.nextInt(50));
+		}
+		long airborne = clock.time;
+		for (int i = 0; i < 1200; i++) {
+			recordBack(AIR);
+		}
+		long landed = clock.time;
+		for (int i = 0; i < 50; i++) {
+			recordBack(FLOOR);
+		}
+
+		TraceReplayer replayer = replay(Stage.ZIPLINE);
+		assertEquals(2, replayer.getEventCount());
+		assertEquals(SensorEvent.TAKE_OFF, replayer.getEvent(0));
+		assertEquals(SensorEvent.LANDING, replayer.getEvent(1));
+		assertTrue("Take off at " + replayer.getEventTime(0), replayer.getEventTime(0) > airborne && replayer.getEventTime(0) < landed);
+		assertEquals(landed, replayer.getEventTime(1));
+	}
+
+	/**
+	 * The flag is found once the front or side sensor saw its color on more than four samples in a row,
+	 * and again on every sample after that until the color is lost.
+	 */
+	@Test
+	public void blockFound() throws IOException {
+		int flag = SimulatedMatch.FLAG_COLOR_ID;
+		int other = 2;
+		for (int i = 0; i < 10; i++) {
+			recordBlockSensors(-1, -1);
+		}
+		for (int i = 0; i < 4; i++) {
+			recordBlockSensors(flag, -1);
+		}
+		recordBlockSensors(other, other);
+		long found = clock.time + (4 * SAMPLE_PERIOD);
+		for (int i = 0; i < 7; i++) {
+			recordBlockSensors(i % 2 == 0 ? flag : other, i % 2 == 0 ? other : flag);
+		}
+		recordBlockSensors(-1, -1);
+
+		TraceReplayer replayer = replay(Stage.BLOCK_SEARCHING);
+		assertEquals(3, replayer.getEventCount());
+		assertEquals(3, replayer.getEventCount(SensorEvent.BLOCK_FOUND));
+		assertEquals(found, replayer.getEventTime(0));
+	}
+
+	/**
+	 * Records the back sensor crossing a line, and returns the time of the sample the line is detected on: the first
+	 * rise of more than the threshold after the reading fell.
+	 */
+	private long recordPulse() {
+		int[] pulse = {30, 15, 10};
+		for (int value : pulse) {
+			recordBack(value);
+		}
+		long detected = clock.time;
+		recordBack(15);
+		recordBack(30);
+		return detected;
+	}
+
+	private void recordBack(int value) {
+		recorder.recordColor(FlightRecorder.BACK_SENSOR, value);
+		clock.time += SAMPLE_PERIOD;
+	}
+
+	private void recordBlockSensors(int front, int side) {
+		recorder.recordColor(FlightRecorder.FRONT_SENSOR, front);
+		recorder.recordColor(FlightRecorder.SIDE_SENSOR, side);
+		clock.time += SAMPLE_PERIOD;
+	}
+
+	/**
+	 * Writes the trace to a file and replays it through the data processing class of a stage.
+	 */
+	private TraceReplayer replay(Stage stage) throws IOException {
+		File file = folder.newFile("flight.bin");
+		recorder.flush(file.getPath());
+		TraceReplayer replayer = new TraceReplayer(stage, SimulatedMatch.sampleGameParameters(MainController.TILE), SimulatedMatch.TEAM_NUMBER);
+		replayer.replay(FlightRecordDecoder.readRecords(file.getPath()), 0, Long.MAX_VALUE);
+		return replayer;
+	}
+}
@@ -0,0 +1,172 @@
+/**
+ * ZoneMapTest.java
+ */
+
+package ca.mcgill.ecse211.capturetheflag;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import ca.mcgill.ecse211.capturetheflag.GameParameters.Zone;
+
+/**
+ * Checks the cells of the ZoneMap against the boundary checks mapPoint used before the ZoneMap, on random layouts.
+ * The zones are random rectangles of whole tiles, such that points of the half tile raster fall on their boundaries and
+ * corners, and the points 1cm away from the raster fall on the shrunk boundaries.
+ *
+ * @author Michael Vaquier
+ *
+ */
+public class ZoneMapTest {
+
+	private static final double TILE = MainController.TILE;
+	private static final int BOARD_SIZE = MainController.BOARD_SIZE;
+	private static final int LAYOUTS = 300;
+
+	/**
+	 * Every point of the raster, the points on the shrunk boundaries, the points just off both and random points on and
+	 * around the board are mapped to the same zone as before.
+	 */
+	@Test
+	public void cellsMatchBoundaryChecks() {
+		Random random = new Random(1);
+		double[] offsets = {0, 1e-9, -1e-9, 0.5, -0.5, 1, -1, 1 + 1e-9, -1 - 1e-9, 1 - 1e-9, -1 + 1e-9};
+		for (int layout = 0; layout < LAYOUTS; layout++) {
+			GameParameters gameParameters = randomLayout(random);
+			ZoneMap zoneMap = new ZoneMap(gameParameters, TILE, BOARD_SIZE);
+			for (int i = 0; i < zoneMap.getSize(); i++) {
+				for (int j = 0; j < zoneMap.getSize(); j++) {
+					for (double offsetX : offsets) {
+						for (double offsetY : offsets) {
+							double x = zoneMap.getPosition(i) + offsetX;
+							double y = zoneMap.getPosition(j) + offsetY;
+							String point = "layout " + layout + " at " + x + " " + y;
+							assertEquals(point, referenceZone(gameParameters, new Coordinate(x, y)), zoneMap.mapPoint(new Coordinate(x, y)));
+							assertEquals(point, referenceShrunkZone(gameParameters, x, y), zoneMap.mapPoint(x, y));
+						}
+					}
+				}
+			}
+			for (int i = 0; i < 100; i++) {
+				double x = (random.nextDouble() * (BOARD_SIZE + 2) - 1) * TILE;
+				double y = (random.nextDouble() * (BOARD_SIZE + 2) - 1) * TILE;
+				assertEquals(referenceZone(gameParameters, new Coordinate(x, y)), zoneMap.mapPoint(new Coordinate(x, y)));
+				assertEquals(referenceShrunkZone(gameParameters, x, y), zoneMap.mapPoint(x, y));
+			}
+		}
+	}
+
+	/**
+	 * The points of the raster give the zone of the nodes.
+	 */
+	@Test
+	public void nodesMatchBoundaryChecks() {
+		Random random = new Random(2);
+		for (int layout = 0; layout < LAYOUTS; layout++) {
+			GameParameters gameParameters = randomLayout(random);
+			ZoneMap zoneMap = new ZoneMap(gameParameters, TILE, BOARD_SIZE);
+			for (int i = 0; i < zoneMap.getSize(); i++) {
+				for (int j = 0; j < zoneMap.getSize(); j++) {
+					assertEquals(referenceZone(gameParameters, new Coordinate(zoneMap.getPosition(i), zoneMap.getPosition(j))), zoneMap.mapNode(i, j));
+				}
+			}
+		}
+	}
+
+	/**
+	 * The cells assume the zones are whole tiles, a zone corner off the grid lines is refused.
+	 */
+	@Test
+	public void cornerOffTheGridIsRefused() {
+		Coordinate none = new Coordinate(0, 0);
+		Coordinate lower = new Coordinate(TILE, TILE);
+		Coordinate upper = new Coordinate(3 * TILE, 2.5 * TILE);
+		GameParameters gameParameters = new GameParameters(1, 2, 0, 2, 0, 0, lower, upper, none, lower, none, none, none, none,
+				none, lower, none, lower, none, none, none, none);
+		try {
+			new ZoneMap(gameParameters, TILE, BOARD_SIZE);
+			fail("A zone corner off the grid lines was accepted");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	/**
+	 * Creates game parameters with random zones, only the zones are used by the ZoneMap.
+	 */
+	private static GameParameters randomLayout(Random random) {
+		Coordinate[] red = randomRectangle(random);
+		Coordinate[] green = randomRectangle(random);
+		Coordinate[] horizontal = randomRectangle(random);
+		Coordinate[] vertical = randomRectangle(random);
+		Coordinate none = new Coordinate(0, 0);
+		return new GameParameters(1, 2, 0, 2, 0, 0, red[0], red[1], green[0], green[1], none, none, none, none,
+				horizontal[0], horizontal[1], vertical[0], vertical[1], none, none, none, none);
+	}
+
+	/**
+	 * Returns the lower left and upper right corners of a random rectangle of whole tiles, computed the same way as the game parameters.
+	 */
+	private static Coordinate[] randomRectangle(Random random) {
+		int lowerX = random.nextInt(BOARD_SIZE);
+		int lowerY = random.nextInt(BOARD_SIZE);
+		int upperX = lowerX + 1 + random.nextInt(BOARD_SIZE - lowerX);
+		int upperY = lowerY + 1 + random.nextInt(BOARD_SIZE - lowerY);
+		return new Coordinate[] {new Coordinate(lowerX * TILE, lowerY * TILE), new Coordinate(upperX * TILE, upperY * TILE)};
+	}
+
+	/**
+	 * The zone of a Coordinate as NavigationController.mapPoint(Coordinate) computed it before the ZoneMap.
+	 */
+	private static Zone referenceZone(GameParameters gameParameters, Coordinate node) {
+		if(node.x > gameParameters.Green_LL.x && node.x < gameParameters.Green_UR.x && node.y > gameParameters.Green_LL.y && node.y < gameParameters.Green_UR.y)
+		{
+			return Zone.GREEN;
+		}
+		else if(node.x > gameParameters.Red_LL.x && node.x < gameParameters.Red_UR.x && node.y > gameParameters.Red_LL.y && node.y < gameParameters.Red_UR.y)
+		{
+			return Zone.RED;
+		}
+		else if((node.x > gameParameters.SV_LL.x && node.x < gameParameters.SV_UR.x && node.y > gameParameters.SV_LL.y && node.y < gameParameters.SV_UR.y)
+				||(node.x > gameParameters.SH_LL.x && node.x < gameParameters.SH_UR.x && node.y > gameParameters.SH_LL.y && node.y < gameParameters.SH_UR.y))
+		{
+			return Zone.BRIDGE;
+		}
+		else if (((node.x >= gameParameters.Green_LL.x && node.x <= gameParameters.Green_UR.x && node.y >= gameParameters.Green_LL.y && node.y <= gameParameters.Green_UR.y)
+				|| (node.x >= gameParameters.Red_LL.x && node.x <= gameParameters.Red_UR.x && node.y >= gameParameters.Red_LL.y && node.y <= gameParameters.Red_UR.y))
+				&& ((node.x >= gameParameters.SV_LL.x && node.x <= gameParameters.SV_UR.x && node.y >= gameParameters.SV_LL.y && node.y <= gameParameters.SV_UR.y)
+				||(node.x >= gameParameters.SH_LL.x && node.x <= gameParameters.SH_UR.x && node.y >= gameParameters.SH_LL.y && node.y <= gameParameters.SH_UR.y))
+				&& (!(node.x == gameParameters.SH_LL.x && node.y == gameParameters.SH_LL.y) && !(node.x == gameParameters.SH_UR.x && node.y == gameParameters.SH_UR.y) && !(node.x == gameParameters.SV_LL.x && node.y == gameParameters.SV_LL.y) && !(node.x == gameParameters.SV_UR.x && node.y == gameParameters.SV_UR.y))
+				&& (!(node.x == gameParameters.SH_LL.x && node.y == gameParameters.SH_UR.y) && !(node.x == gameParameters.SH_UR.x && node.y == gameParameters.SH_LL.y) && !(node.x == gameParameters.SV_LL.x && node.y == gameParameters.SV_UR.y) && !(node.x == gameParameters.SV_UR.x && node.y == gameParameters.SV_LL.y))) {
+			return Zone.BRIDGE;
+		}
+		else {
+			return Zone.RIVER;
+		}
+	}
+
+	/**
+	 * The zone of a point as NavigationController.mapPoint(double, double) computed it before the ZoneMap.
+	 */
+	private static Zone referenceShrunkZone(GameParameters gameParameters, double x, double y) {
+		if(x > gameParameters.Green_LL.x + 1 && x < gameParameters.Green_UR.x - 1 && y > gameParameters.Green_LL.y + 1 && y < gameParameters.Green_UR.y - 1)
+		{
+			return Zone.GREEN;
+		}
+		else if(x > gameParameters.Red_LL.x + 1 && x < gameParameters.Red_UR.x - 1 && y > gameParameters.Red_LL.y + 1 && y < gameParameters.Red_UR.y - 1)
+		{
+			return Zone.RED;
+		}
+		else if((x > gameParameters.SV_LL.x + 1 && x < gameParameters.SV_UR.x - 1 && y > gameParameters.SV_LL.y + 1 && y < gameParameters.SV_UR.y - 1)
+				||(x > gameParameters.SH_LL.x + 1 && x < gameParameters.SH_UR.x - 1 && y > gameParameters.SH_LL.y + 1 && y < gameParameters.SH_UR.y - 1))
+		{
+			return Zone.BRIDGE;
+		}
+		else {
+			return Zone.RIVER;
+		}
+	}
+}